@@ -69,6 +69,14 @@ public class FileEncodedImageAsync extends EncodedImage {
         super.resetCache();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean isAsyncDecodeSupported() {
+        // the data is already loaded in the background by this class
+        return false;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -58,6 +58,14 @@ public class StorageImageAsync extends EncodedImage {
         super.resetCache();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean isAsyncDecodeSupported() {
+        // the data is already loaded in the background by this class
+        return false;
+    }
+
     /**
      * {@inheritDoc}
      */
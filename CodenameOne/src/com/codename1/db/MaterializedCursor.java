@@ -0,0 +1,469 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *  
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ * 
+ * Please contact Codename One through http://www.codenameone.com/ if you 
+ * need additional information or have any questions.
+ */
+package com.codename1.db;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * A cursor whose rows were fully read into memory, navigating and reading values from this cursor doesn't
+ * touch the database. Values are kept column by column in arrays of the column type with a parallel null 
+ * bitmap. The type of a column is either declared by the caller or inferred from the text of the values,
+ * blobs can't be represented as text so blob columns must be declared.
+ *
+ * @see ThreadSafeDatabase#executeQueryFully(java.lang.String, java.lang.Object[], int[])
+ */
+final class MaterializedCursor implements Cursor {
+    private final Column[] columns;
+    private final int rowCount;
+    private int position = -1;
+    private boolean lastNull;
+    private final MaterializedRow row = new MaterializedRow();
+
+    private MaterializedCursor(Column[] columns, int rowCount) {
+        this.columns = columns;
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Reads up to maxRows rows from the current position of the given cursor, this must be invoked on the
+     * thread that owns the cursor
+     *
+     * @param c the cursor to read from, the cursor is left positioned on the last row read
+     * @param maxRows the maximum number of rows to read or -1 for all the remaining rows
+     * @param types the types of the columns, one of the {@code ThreadSafeDatabase.COLUMN_*} constants per 
+     * column. Null or a shorter array infers the type of the remaining columns.
+     * @return a cursor containing the rows that were read
+     * @throws IOException thrown by the underlying cursor or if a column type isn't supported
+     */
+    static MaterializedCursor read(Cursor c, int maxRows, int[] types) throws IOException {
+        Column[] cols = null;
+        int count = 0;
+        while ((maxRows < 0 || count < maxRows) && c.next()) {
+            if (cols == null) {
+                // some platforms only provide the column meta data after moving to a row
+                cols = createColumns(c, types);
+            }
+            Row r = c.getRow();
+            for (int iter = 0; iter < cols.length; iter++) {
+                cols[iter].read(r, iter);
+            }
+            count++;
+        }
+        if (cols == null) {
+            cols = createColumns(c, types);
+        }
+        return new MaterializedCursor(cols, count);
+    }
+
+    private static Column[] createColumns(Cursor c, int[] types) throws IOException {
+        int count = c.getColumnCount();
+        Column[] cols = new Column[count];
+        for (int iter = 0; iter < count; iter++) {
+            int type = ThreadSafeDatabase.COLUMN_AUTO;
+            if (types != null && iter < types.length) {
+                type = types[iter];
+            }
+            if (type < ThreadSafeDatabase.COLUMN_AUTO || type > ThreadSafeDatabase.COLUMN_BLOB) {
+                throw new IOException("Unsupported type " + type + " for column " + c.getColumnName(iter));
+            }
+            cols[iter] = new Column(c.getColumnName(iter), type);
+        }
+        return cols;
+    }
+
+    /**
+     * Returns the number of rows in this cursor
+     *
+     * @return the number of rows
+     */
+    int getRowCount() {
+        return rowCount;
+    }
+
+    public boolean first() throws IOException {
+        return position(0);
+    }
+
+    public boolean last() throws IOException {
+        return position(rowCount - 1);
+    }
+
+    public boolean next() throws IOException {
+        if (position + 1 < rowCount) {
+            position++;
+            return true;
+        }
+        position = rowCount;
+        return false;
+    }
+
+    public boolean prev() throws IOException {
+        if (position > 0) {
+            position--;
+            return true;
+        }
+        position = -1;
+        return false;
+    }
+
+    public int getColumnIndex(String columnName) throws IOException {
+        for (int iter = 0; iter < columns.length; iter++) {
+            if (columnName.equals(columns[iter].name)) {
+                return iter;
+            }
+        }
+        return -1;
+    }
+
+    public String getColumnName(int columnIndex) throws IOException {
+        return columns[columnIndex].name;
+    }
+
+    public int getColumnCount() throws IOException {
+        return columns.length;
+    }
+
+    public int getPosition() throws IOException {
+        return position;
+    }
+
+    public boolean position(int row) throws IOException {
+        if (row < 0 || row >= rowCount) {
+            return false;
+        }
+        position = row;
+        return true;
+    }
+
+    public void close() throws IOException {
+    }
+
+    public Row getRow() throws IOException {
+        if (position < 0 || position >= rowCount) {
+            throw new IOException("Cursor is not positioned on a row");
+        }
+        return row;
+    }
+
+    /**
+     * Returns the column at the given index and updates the null state for the current row
+     */
+    private Column column(int index) throws IOException {
+        if (index < 0 || index >= columns.length) {
+            throw new IOException("Illegal column index: " + index);
+        }
+        Column col = columns[index];
+        lastNull = col.nulls[position];
+        return col;
+    }
+
+    private double numeric(int index) throws IOException {
+        Column col = column(index);
+        if (lastNull) {
+            return 0;
+        }
+        switch (col.type) {
+            case ThreadSafeDatabase.COLUMN_INTEGER:
+                return col.longs[position];
+            case ThreadSafeDatabase.COLUMN_REAL:
+                return col.doubles[position];
+            case ThreadSafeDatabase.COLUMN_BLOB:
+                throw new IOException("Column " + col.name + " is a blob");
+        }
+        String v = col.strings[position];
+        if (v.length() == 0) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(v);
+        } catch (NumberFormatException err) {
+            throw new IOException("Column " + col.name + " is not numeric: " + v);
+        }
+    }
+
+    private long integral(int index) throws IOException {
+        Column col = column(index);
+        if (lastNull) {
+            return 0;
+        }
+        if (col.type == ThreadSafeDatabase.COLUMN_INTEGER) {
+            return col.longs[position];
+        }
+        if (col.type == ThreadSafeDatabase.COLUMN_TEXT) {
+            String v = col.strings[position];
+            try {
+                return Long.parseLong(v);
+            } catch (NumberFormatException err) {
+                // fractions and exponents are converted thru a double below
+            }
+        }
+        return (long) numeric(index);
+    }
+
+    /**
+     * The values of a single column, the arrays are allocated for the type of the column and grow as rows 
+     * are added. A column whose type is inferred starts with the narrowest type that represents its text
+     * exactly and is widened from integer to real to text when a value doesn't fit.
+     */
+    static final class Column {
+        final String name;
+        final boolean inferred;
+        int type;
+        int size;
+        boolean[] nulls = new boolean[16];
+        long[] longs;
+        double[] doubles;
+        String[] strings;
+        byte[][] blobs;
+
+        Column(String name, int type) {
+            this.name = name;
+            inferred = type == ThreadSafeDatabase.COLUMN_AUTO;
+            this.type = inferred ? ThreadSafeDatabase.COLUMN_INTEGER : type;
+            allocate(16);
+        }
+
+        private void allocate(int capacity) {
+            switch (type) {
+                case ThreadSafeDatabase.COLUMN_INTEGER:
+                    longs = grow(longs, capacity);
+                    break;
+                case ThreadSafeDatabase.COLUMN_REAL:
+                    doubles = grow(doubles, capacity);
+                    break;
+                case ThreadSafeDatabase.COLUMN_TEXT:
+                    strings = grow(strings, capacity);
+                    break;
+                default:
+                    blobs = grow(blobs, capacity);
+                    break;
+            }
+        }
+
+        private static long[] grow(long[] arr, int capacity) {
+            long[] n = new long[capacity];
+            if (arr != null) {
+                System.arraycopy(arr, 0, n, 0, arr.length);
+            }
+            return n;
+        }
+
+        private static double[] grow(double[] arr, int capacity) {
+            double[] n = new double[capacity];
+            if (arr != null) {
+                System.arraycopy(arr, 0, n, 0, arr.length);
+            }
+            return n;
+        }
+
+        private static String[] grow(String[] arr, int capacity) {
+            String[] n = new String[capacity];
+            if (arr != null) {
+                System.arraycopy(arr, 0, n, 0, arr.length);
+            }
+            return n;
+        }
+
+        private static byte[][] grow(byte[][] arr, int capacity) {
+            byte[][] n = new byte[capacity][];
+            if (arr != null) {
+                System.arraycopy(arr, 0, n, 0, arr.length);
+            }
+            return n;
+        }
+
+        /**
+         * Appends the value of this column from the given row
+         */
+        void read(Row r, int index) throws IOException {
+            if (size == nulls.length) {
+                boolean[] n = new boolean[size * 2];
+                System.arraycopy(nulls, 0, n, 0, size);
+                nulls = n;
+                allocate(size * 2);
+            }
+            if (inferred) {
+                readInferred(r, index);
+            } else {
+                readDeclared(r, index);
+            }
+            size++;
+        }
+
+        private void readDeclared(Row r, int index) throws IOException {
+            switch (type) {
+                case ThreadSafeDatabase.COLUMN_INTEGER:
+                    if (isNull(r, index)) {
+                        return;
+                    }
+                    longs[size] = r.getLong(index);
+                    nulls[size] = Database.wasNull(r);
+                    return;
+                case ThreadSafeDatabase.COLUMN_REAL:
+                    if (isNull(r, index)) {
+                        return;
+                    }
+                    doubles[size] = r.getDouble(index);
+                    nulls[size] = Database.wasNull(r);
+                    return;
+                case ThreadSafeDatabase.COLUMN_TEXT:
+                    strings[size] = r.getString(index);
+                    nulls[size] = strings[size] == null || Database.wasNull(r);
+                    return;
+                default:
+                    blobs[size] = r.getBlob(index);
+                    nulls[size] = blobs[size] == null || Database.wasNull(r);
+            }
+        }
+
+        /**
+         * Numeric getters return 0 for null on platforms that don't support wasNull, the text of the value
+         * tells us whether it's null
+         */
+        private boolean isNull(Row r, int index) throws IOException {
+            if (Database.supportsWasNull(r)) {
+                return false;
+            }
+            nulls[size] = r.getString(index) == null;
+            return nulls[size];
+        }
+
+        private void readInferred(Row r, int index) throws IOException {
+            String v = r.getString(index);
+            if (v == null || Database.wasNull(r)) {
+                nulls[size] = true;
+                return;
+            }
+            if (type == ThreadSafeDatabase.COLUMN_INTEGER) {
+                try {
+                    long l = Long.parseLong(v);
+                    if (Long.toString(l).equals(v)) {
+                        longs[size] = l;
+                        return;
+                    }
+                } catch (NumberFormatException err) {
+                    // not an integer, widen the column below
+                }
+                // integers already read would change their text as reals e.g. 1 would become 1.0
+                widen(hasValues() ? ThreadSafeDatabase.COLUMN_TEXT : ThreadSafeDatabase.COLUMN_REAL);
+            }
+            if (type == ThreadSafeDatabase.COLUMN_REAL) {
+                try {
+                    double d = Double.parseDouble(v);
+                    if (Double.toString(d).equals(v)) {
+                        doubles[size] = d;
+                        return;
+                    }
+                } catch (NumberFormatException err) {
+                    // not a number, widen the column below
+                }
+                widen(ThreadSafeDatabase.COLUMN_TEXT);
+            }
+            strings[size] = v;
+        }
+
+        private boolean hasValues() {
+            for (int iter = 0; iter < size; iter++) {
+                if (!nulls[iter]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Converts the values read so far to the given type, the values were verified to convert back to 
+         * their original text so no information is lost
+         */
+        private void widen(int newType) {
+            if (newType == ThreadSafeDatabase.COLUMN_TEXT) {
+                strings = new String[nulls.length];
+                for (int iter = 0; iter < size; iter++) {
+                    if (!nulls[iter]) {
+                        strings[iter] = type == ThreadSafeDatabase.COLUMN_INTEGER
+                                ? Long.toString(longs[iter]) : Double.toString(doubles[iter]);
+                    }
+                }
+                doubles = null;
+            } else {
+                doubles = new double[nulls.length];
+            }
+            longs = null;
+            type = newType;
+        }
+    }
+
+    class MaterializedRow implements RowExt {
+        public byte[] getBlob(int index) throws IOException {
+            Column col = column(index);
+            if (lastNull) {
+                return null;
+            }
+            if (col.type != ThreadSafeDatabase.COLUMN_BLOB) {
+                throw new IOException("Column " + col.name + " wasn't read as a blob");
+            }
+            return col.blobs[position];
+        }
+
+        public double getDouble(int index) throws IOException {
+            return numeric(index);
+        }
+
+        public float getFloat(int index) throws IOException {
+            return (float) numeric(index);
+        }
+
+        public int getInteger(int index) throws IOException {
+            return (int) integral(index);
+        }
+
+        public long getLong(int index) throws IOException {
+            return integral(index);
+        }
+
+        public short getShort(int index) throws IOException {
+            return (short) integral(index);
+        }
+
+        public String getString(int index) throws IOException {
+            Column col = column(index);
+            if (lastNull) {
+                return null;
+            }
+            switch (col.type) {
+                case ThreadSafeDatabase.COLUMN_INTEGER:
+                    return Long.toString(col.longs[position]);
+                case ThreadSafeDatabase.COLUMN_REAL:
+                    return Double.toString(col.doubles[position]);
+                case ThreadSafeDatabase.COLUMN_BLOB:
+                    throw new IOException("Column " + col.name + " is a blob");
+            }
+            return col.strings[position];
+        }
+
+        public boolean wasNull() throws IOException {
+            return lastNull;
+        }
+    }
+}
@@ -24,7 +24,10 @@
 package com.codename1.db;
 
 import com.codename1.io.Log;
+import com.codename1.ui.Display;
 import com.codename1.util.EasyThread;
+import com.codename1.util.FailureCallback;
+import com.codename1.util.SuccessCallback;
 import com.codename1.util.RunnableWithResultSync;
 import java.io.IOException;
 
@@ -35,6 +38,31 @@ import java.io.IOException;
  * @deprecated platform specific nuances prevented this approach from working out, we improved the native iOS support for thread safety instead
  */
 public class ThreadSafeDatabase extends Database {
+    /**
+     * Column type for the bulk fetch methods, the type is inferred from the text of the values
+     */
+    public static final int COLUMN_AUTO = 0;
+
+    /**
+     * Column type for the bulk fetch methods, values are read with {@link Row#getString(int)}
+     */
+    public static final int COLUMN_TEXT = 1;
+
+    /**
+     * Column type for the bulk fetch methods, values are read with {@link Row#getLong(int)}
+     */
+    public static final int COLUMN_INTEGER = 2;
+
+    /**
+     * Column type for the bulk fetch methods, values are read with {@link Row#getDouble(int)}
+     */
+    public static final int COLUMN_REAL = 3;
+
+    /**
+     * Column type for the bulk fetch methods, values are read with {@link Row#getBlob(int)}
+     */
+    public static final int COLUMN_BLOB = 4;
+
     private final Database underlying;
     private final EasyThread et;
     
@@ -360,6 +388,141 @@ public class ThreadSafeDatabase extends Database {
         return new CursorWrapper(curs[0]);
     }
 
+    private Cursor executeQueryImpl(String sql, Object[] params) throws IOException {
+        if(params == null || params.length == 0) {
+            return underlying.executeQuery(sql);
+        }
+        return underlying.executeQuery(sql, params);
+    }
+
+    private Cursor readFully(String sql, Object[] params, int[] columnTypes) throws IOException {
+        Cursor c = executeQueryImpl(sql, params);
+        try {
+            return MaterializedCursor.read(c, -1, columnTypes);
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Executes the query and reads all of the resulting rows in a single round trip to the database thread.
+     * The returned cursor and its rows are held in memory so navigating them and reading values doesn't
+     * block on the database thread. The column types are inferred so blob columns can't be read, use
+     * {@link #executeQueryFully(java.lang.String, java.lang.Object[], int[])} to declare them
+     *
+     * @param sql the query
+     * @param params the query arguments
+     * @return a cursor over the fully read result
+     * @throws IOException thrown by the underlying database
+     */
+    public Cursor executeQueryFully(final String sql, final Object... params) throws IOException {
+        return executeQueryFully(sql, params, null);
+    }
+
+    /**
+     * Executes the query and reads all of the resulting rows in a single round trip to the database thread.
+     * The returned cursor and its rows are held in memory so navigating them and reading values doesn't
+     * block on the database thread.
+     *
+     * @param sql the query
+     * @param params the query arguments, can be null
+     * @param columnTypes the type of every column, one of the COLUMN_ constants. Can be null or shorter than 
+     * the number of columns in which case the type of the remaining columns is inferred
+     * @return a cursor over the fully read result
+     * @throws IOException thrown by the underlying database or if a column type isn't supported
+     */
+    public Cursor executeQueryFully(final String sql, final Object[] params, final int[] columnTypes) throws IOException {
+        return (Cursor)invokeWithException(new RunnableWithResponseOrIOException() {
+            public Object run() throws IOException {
+                return readFully(sql, params, columnTypes);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #executeQueryFully(java.lang.String, java.lang.Object...)}, the
+     * callbacks are invoked on the EDT
+     *
+     * @param sql the query
+     * @param params the query arguments, can be null
+     * @param onSuccess receives the fully read cursor
+     * @param onError invoked if the query failed, can be null in which case the error is logged
+     */
+    public void executeQueryAsync(String sql, Object[] params, SuccessCallback<Cursor> onSuccess, FailureCallback<Cursor> onError) {
+        executeQueryAsync(sql, params, null, onSuccess, onError);
+    }
+
+    /**
+     * Asynchronous version of {@link #executeQueryFully(java.lang.String, java.lang.Object[], int[])}, the
+     * callbacks are invoked on the EDT
+     *
+     * @param sql the query
+     * @param params the query arguments, can be null
+     * @param columnTypes the type of every column, one of the COLUMN_ constants or null to infer the types
+     * @param onSuccess receives the fully read cursor
+     * @param onError invoked if the query failed, can be null in which case the error is logged
+     */
+    public void executeQueryAsync(final String sql, final Object[] params, final int[] columnTypes, final SuccessCallback<Cursor> onSuccess, final FailureCallback<Cursor> onError) {
+        et.run(new Runnable() {
+            public void run() {
+                try {
+                    final Cursor c = readFully(sql, params, columnTypes);
+                    Display.getInstance().callSerially(new Runnable() {
+                        public void run() {
+                            onSuccess.onSucess(c);
+                        }
+                    });
+                } catch(final IOException err) {
+                    if(onError == null) {
+                        Log.e(err);
+                        return;
+                    }
+                    Display.getInstance().callSerially(new Runnable() {
+                        public void run() {
+                            onError.onError(ThreadSafeDatabase.this, err, -1, err.toString());
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads up to maxRows rows following the current position of a cursor returned by this database in a
+     * single round trip to the database thread. This allows paging thru large results without paying for a
+     * thread hand off on every row and column. The column types are inferred so blob columns can't be read.
+     *
+     * @param cursor a cursor returned by one of the query methods of this class
+     * @param maxRows the maximum number of rows to read
+     * @return a cursor over the rows that were read, it is empty when the end of the result was reached
+     * @throws IOException thrown by the underlying database
+     */
+    public Cursor fetch(Cursor cursor, int maxRows) throws IOException {
+        return fetch(cursor, maxRows, null);
+    }
+
+    /**
+     * Reads up to maxRows rows following the current position of a cursor returned by this database in a
+     * single round trip to the database thread. This allows paging thru large results without paying for a
+     * thread hand off on every row and column
+     *
+     * @param cursor a cursor returned by one of the query methods of this class
+     * @param maxRows the maximum number of rows to read
+     * @param columnTypes the type of every column, one of the COLUMN_ constants or null to infer the types
+     * @return a cursor over the rows that were read, it is empty when the end of the result was reached
+     * @throws IOException thrown by the underlying database or if a column type isn't supported
+     */
+    public Cursor fetch(final Cursor cursor, final int maxRows, final int[] columnTypes) throws IOException {
+        if(!(cursor instanceof CursorWrapper)) {
+            return MaterializedCursor.read(cursor, maxRows, columnTypes);
+        }
+        return (Cursor)invokeWithException(new RunnableWithResponseOrIOException() {
+            public Object run() throws IOException {
+                return MaterializedCursor.read(((CursorWrapper)cursor).underlyingCursor, maxRows, columnTypes);
+            }
+        });
+    }
+
     @Override
     public void execute(final String sql, final Object... params) throws IOException {
         invokeWithException(new RunnableWithIOException() {
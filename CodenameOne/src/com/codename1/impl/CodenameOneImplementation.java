@@ -81,6 +81,7 @@ import java.util.ArrayList;
 
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.Vector;
@@ -118,6 +119,9 @@ public abstract class CodenameOneImplementation {
     private Animation[] paintQueue = new Animation[200];
     private Animation[] paintQueueTemp = new Animation[200];
     private int paintQueueFill = 0;
+    private IdentityHashMap<Animation, Integer> paintQueueIndex = new IdentityHashMap<Animation, Integer>();
+    private ArrayList<DirtyRegion> dirtyRegions = new ArrayList<DirtyRegion>();
+    private boolean mergeDirtyRegions;
     private Graphics codenameOneGraphics;
 
     private static boolean bidi;
@@ -578,6 +582,78 @@ public abstract class CodenameOneImplementation {
      */
     private Rectangle paintDirtyTmpRect = new Rectangle();
     
+    /**
+     * A screen region that requires repainting, regions of components that overlap or touch are merged
+     * so the area is painted once
+     */
+    private static class DirtyRegion {
+        int x;
+        int y;
+        int x2;
+        int y2;
+        Form form;
+        ArrayList<Component> components = new ArrayList<Component>();
+        
+        int area() {
+            return (x2 - x) * (y2 - y);
+        }
+        
+        boolean touches(DirtyRegion r) {
+            return x <= r.x2 && r.x <= x2 && y <= r.y2 && r.y <= y2;
+        }
+        
+        /**
+         * Merging is only worthwhile if the union doesn't paint more than the two regions 
+         * would have painted separately
+         */
+        boolean shouldMerge(DirtyRegion r) {
+            if(form != r.form || !touches(r)) {
+                return false;
+            }
+            int unionArea = (Math.max(x2, r.x2) - Math.min(x, r.x)) * (Math.max(y2, r.y2) - Math.min(y, r.y));
+            return unionArea <= area() + r.area();
+        }
+        
+        void merge(DirtyRegion r) {
+            x = Math.min(x, r.x);
+            y = Math.min(y, r.y);
+            x2 = Math.max(x2, r.x2);
+            y2 = Math.max(y2, r.y2);
+            components.addAll(r.components);
+        }
+    }
+    
+    /**
+     * Adds the component to the dirty regions merging it with an existing region where possible
+     */
+    private void addDirtyRegion(Component cmp, Form form, int x, int y, int x2, int y2) {
+        DirtyRegion region = new DirtyRegion();
+        region.x = x;
+        region.y = y;
+        region.x2 = x2;
+        region.y2 = y2;
+        region.form = form;
+        region.components.add(cmp);
+        
+        // a merge grows the region so it might now touch regions it didn't touch before
+        boolean merged = true;
+        while(merged) {
+            merged = false;
+            int size = dirtyRegions.size();
+            for(int iter = 0 ; iter < size ; iter++) {
+                DirtyRegion current = dirtyRegions.get(iter);
+                if(current.shouldMerge(region)) {
+                    current.merge(region);
+                    dirtyRegions.remove(iter);
+                    region = current;
+                    merged = true;
+                    break;
+                }
+            }
+        }
+        dirtyRegions.add(region);
+    }
+    
     /**
      * Invoked by the EDT to paint the dirty regions
      */
@@ -589,6 +665,10 @@ public abstract class CodenameOneImplementation {
             paintQueue = paintQueueTemp;
             paintQueueTemp = array;
             paintQueueFill = 0;
+            if(paintQueue.length < paintQueueTemp.length) {
+                paintQueue = new Animation[paintQueueTemp.length];
+            }
+            paintQueueIndex.clear();
         }
         if (size > 0) {
             Graphics wrapper = getCodenameOneGraphics();
@@ -598,6 +678,7 @@ public abstract class CodenameOneImplementation {
             int topY = dheight;
             int bottomX = 0;
             int bottomY = 0;
+            Form current = getCurrentForm();
             for (int iter = 0; iter < size; iter++) {
                 Animation ani = paintQueueTemp[iter];
                 
@@ -606,39 +687,88 @@ public abstract class CodenameOneImplementation {
                     continue;
                 }
                 paintQueueTemp[iter] = null;
-                wrapper.translate(-wrapper.getTranslateX(), -wrapper.getTranslateY());
-                wrapper.resetAffine();
-                wrapper.setClip(0, 0, dwidth, dheight);
                 if (ani instanceof Component) {
                     Component cmp = (Component) ani;
-                    Rectangle dirty = cmp.getDirtyRegion();
-                    if (dirty != null) {
-                        Dimension d = dirty.getSize();
-                        wrapper.setClip(dirty.getX(), dirty.getY(), d.getWidth(), d.getHeight());
-                        cmp.setDirtyRegion(null);
-                    }
-                    cmp.paintComponent(wrapper);
                     getPaintableBounds(cmp, paintDirtyTmpRect);
-                    int cmpAbsX = paintDirtyTmpRect.getX();
-                    topX = Math.min(cmpAbsX, topX);
-                    bottomX = Math.max(cmpAbsX + paintDirtyTmpRect.getWidth(), bottomX);
-                    int cmpAbsY = paintDirtyTmpRect.getY();
-                    topY = Math.min(cmpAbsY, topY);
-                    bottomY = Math.max(cmpAbsY + paintDirtyTmpRect.getHeight(), bottomY);
+                    int x = paintDirtyTmpRect.getX();
+                    int y = paintDirtyTmpRect.getY();
+                    int x2 = x + paintDirtyTmpRect.getWidth();
+                    int y2 = y + paintDirtyTmpRect.getHeight();
+                    topX = Math.min(x, topX);
+                    bottomX = Math.max(x2, bottomX);
+                    topY = Math.min(y, topY);
+                    bottomY = Math.max(y2, bottomY);
+                    
+                    // components of the current form can be painted together with their neighbors, 
+                    // other components are painted on their own
+                    Form f = mergeDirtyRegions ? cmp.getComponentForm() : null;
+                    if(f != null && f == current) {
+                        Rectangle dirty = cmp.getDirtyRegion();
+                        if (dirty != null) {
+                            x = Math.max(x, dirty.getX());
+                            y = Math.max(y, dirty.getY());
+                            x2 = Math.min(x2, dirty.getX() + dirty.getWidth());
+                            y2 = Math.min(y2, dirty.getY() + dirty.getHeight());
+                        }
+                        if(x2 > x && y2 > y) {
+                            addDirtyRegion(cmp, f, x, y, x2, y2);
+                            continue;
+                        }
+                    }
+                    paintDirtyComponent(wrapper, cmp, dwidth, dheight);
                 } else {
                     bottomX = dwidth;
                     bottomY = dheight;
                     topX = 0;
                     topY = 0;
+                    resetDirtyGraphics(wrapper, dwidth, dheight);
                     ani.paint(wrapper);
                 }
             }
+            
+            int regionCount = dirtyRegions.size();
+            for(int iter = 0 ; iter < regionCount ; iter++) {
+                DirtyRegion region = dirtyRegions.get(iter);
+                int members = region.components.size();
+                if(members == 1) {
+                    paintDirtyComponent(wrapper, region.components.get(0), dwidth, dheight);
+                    continue;
+                }
+                
+                // paint the union from the form in a single pass, this also covers components 
+                // that overlap the region
+                for(int m = 0 ; m < members ; m++) {
+                    Component cmp = region.components.get(m);
+                    cmp.setDirtyRegion(null);
+                }
+                resetDirtyGraphics(wrapper, dwidth, dheight);
+                wrapper.setClip(region.x, region.y, region.x2 - region.x, region.y2 - region.y);
+                region.form.paintComponent(wrapper);
+            }
+            dirtyRegions.clear();
 
             paintOverlay(wrapper);
             //Log.p("Flushing graphics : "+topX+","+topY+","+bottomX+","+bottomY);
             flushGraphics(topX, topY, bottomX - topX, bottomY - topY);
         }
     }
+    
+    private void resetDirtyGraphics(Graphics wrapper, int dwidth, int dheight) {
+        wrapper.translate(-wrapper.getTranslateX(), -wrapper.getTranslateY());
+        wrapper.resetAffine();
+        wrapper.setClip(0, 0, dwidth, dheight);
+    }
+    
+    private void paintDirtyComponent(Graphics wrapper, Component cmp, int dwidth, int dheight) {
+        resetDirtyGraphics(wrapper, dwidth, dheight);
+        Rectangle dirty = cmp.getDirtyRegion();
+        if (dirty != null) {
+            Dimension d = dirty.getSize();
+            wrapper.setClip(dirty.getX(), dirty.getY(), d.getWidth(), d.getHeight());
+            cmp.setDirtyRegion(null);
+        }
+        cmp.paintComponent(wrapper);
+    }
 
     /**
      * This method is a callback from the edt before the edt enters to an idle 
@@ -726,16 +856,53 @@ public abstract class CodenameOneImplementation {
      */
     public void cancelRepaint(Animation cmp) {
         synchronized (displayLock) {
-            for (int iter = 0; iter < paintQueueFill; iter++) {
-                if (paintQueue[iter] == cmp) {
-                    paintQueue[iter] = null;
-                    return;
-                }
+            Integer offset = paintQueueIndex.remove(cmp);
+            if (offset != null) {
+                paintQueue[offset.intValue()] = null;
             }
+        }
+    }
 
+    /**
+     * Returns true if the component or one of its parents is waiting in the paint queue, a component that
+     * was painted as part of a merged dirty region might still consider its repaint to be pending
+     * 
+     * @param cmp the component
+     * @return true if a full repaint of the component is queued
+     */
+    public boolean isRepaintQueued(Component cmp) {
+        synchronized (displayLock) {
+            while (cmp != null) {
+                if (paintQueueIndex.containsKey(cmp)) {
+                    return true;
+                }
+                cmp = cmp.getParent();
+            }
+            return false;
         }
     }
 
+    /**
+     * Toggles merging of the dirty regions of the current form, when enabled components whose dirty regions
+     * overlap or touch are painted together from the form in a single pass. This is off by default and can be
+     * enabled with the {@code mergeDirtyRegions} display property.
+     * 
+     * @param mergeDirtyRegions true to merge dirty regions
+     */
+    public void setMergeDirtyRegions(boolean mergeDirtyRegions) {
+        this.mergeDirtyRegions = mergeDirtyRegions;
+    }
+
+    /**
+     * Indicates whether the dirty regions of the current form are merged
+     * 
+     * @return true if dirty regions are merged
+     * @see #setMergeDirtyRegions(boolean)
+     */
+    public boolean isMergeDirtyRegions() {
+        return mergeDirtyRegions;
+    }
+
     /**
      * Invoked to add an element to the paintQueue
      * 
@@ -743,28 +910,26 @@ public abstract class CodenameOneImplementation {
      */
     public void repaint(Animation cmp) {
         synchronized (displayLock) {
-            for (int iter = 0; iter < paintQueueFill; iter++) {
-                Animation ani = paintQueue[iter];
-                if (ani == cmp) {
-                    return;
-                }
-                //no need to paint a Component if one of its parent is already in the queue
-                if(ani instanceof Container && cmp instanceof Component){
-                    Component parent = ((Component)cmp).getParent();
-                    while (parent != null) {
-                        if (parent == ani) {
-                            return;
-                        }
-                        parent = parent.getParent();
+            if (paintQueueIndex.containsKey(cmp)) {
+                return;
+            }
+            //no need to paint a Component if one of its parent is already in the queue
+            if(cmp instanceof Component && paintQueueFill > 0){
+                Component parent = ((Component)cmp).getParent();
+                while (parent != null) {
+                    if (paintQueueIndex.containsKey(parent)) {
+                        return;
                     }
+                    parent = parent.getParent();
                 }
             }
-            // overcrowding the queue don't try to grow the array!
             if (paintQueueFill >= paintQueue.length) {
-                System.out.println("Warning paint queue size exceeded, please watch the amount of repaint calls");
-                return;
+                Animation[] newQueue = new Animation[paintQueue.length * 2];
+                System.arraycopy(paintQueue, 0, newQueue, 0, paintQueueFill);
+                paintQueue = newQueue;
             }
 
+            paintQueueIndex.put(cmp, new Integer(paintQueueFill));
             paintQueue[paintQueueFill] = cmp;
             paintQueueFill++;
             displayLock.notify();
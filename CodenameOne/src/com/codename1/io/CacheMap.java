@@ -25,9 +25,11 @@
 package com.codename1.io;
 
 import com.codename1.ui.Display;
-import java.io.IOException;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.Vector;
 
 /**
@@ -37,29 +39,75 @@ import java.util.Vector;
  * A cache hit is made both on fetching and putting, hence frequently fetched elements
  * will never be removed from a sufficiently large cache.
  * Cache can work purely in memory or swap data into storage based on user definitions.
- * Notice that this class isn't threadsafe.
+ * The memory cache can be limited by the number of entries and optionally by the estimated
+ * size of the entries in bytes, see {@link #setCacheSizeBytes(int)}.
  *
  * @author Shai Almog
  */
 public class CacheMap {
     private int cacheSize = 10;
-    private Hashtable memoryCache = new Hashtable();
+    private int cacheSizeBytes;
+    private int memoryBytes;
+    
+    /**
+     * Access ordered so the eldest entry is always the least recently used one
+     */
+    private LinkedHashMap<Object, Entry> memoryCache = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
     private Hashtable weakCache = new Hashtable();
 
     private int storageCacheSize = 0;
-    private Vector storageCacheContentVec;
+    
+    /**
+     * Maps storage keys to their last access time in access order
+     */
+    private LinkedHashMap<Object, Long> storageIndex;
+    private boolean storageIndexDirty;
+    private boolean storageIndexWritePending;
     private String cachePrefix = "";
     private boolean alwaysStore;
-    private int storageKey = -1;
     
-    private Vector getStorageCacheContent() {
-        if(storageCacheContentVec == null) {
-            storageCacheContentVec = (Vector)Storage.getInstance().readObject("$CACHE$Idx" + cachePrefix);
-            if(storageCacheContentVec == null) {
-                storageCacheContentVec = new Vector();
+    private int hits;
+    private int misses;
+    private int evictions;
+    
+    private static class Entry {
+        final Object value;
+        final int size;
+        
+        Entry(Object value, int size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+    
+    private LinkedHashMap<Object, Long> getStorageIndex() {
+        if(storageIndex == null) {
+            storageIndex = new LinkedHashMap<Object, Long>(16, 0.75f, true);
+            Vector v = (Vector)Storage.getInstance().readObject("$CACHE$Idx" + cachePrefix);
+            if(v != null) {
+                ArrayList<Object[]> entries = new ArrayList<Object[]>(v.size());
+                int s = v.size();
+                for(int iter = 0 ; iter < s ; iter++) {
+                    Object[] obj = (Object[])v.elementAt(iter);
+                    // entries deleted by older versions of this class were marked with MIN_VALUE
+                    if(((Long)obj[0]).longValue() == Long.MIN_VALUE && obj[0].equals(obj[1])) {
+                        continue;
+                    }
+                    entries.add(obj);
+                }
+                Collections.sort(entries, new Comparator<Object[]>() {
+                    public int compare(Object[] o1, Object[] o2) {
+                        long l1 = ((Long)o1[0]).longValue();
+                        long l2 = ((Long)o2[0]).longValue();
+                        return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+                    }
+                });
+                for(Object[] obj : entries) {
+                    storageIndex.put(obj[1], (Long)obj[0]);
+                }
             }
         }
-        return storageCacheContentVec;
+        return storageIndex;
     }
     
     /**
@@ -95,8 +143,69 @@ public class CacheMap {
      * 
      * @param cacheSize the cacheSize to set
      */
-    public void setCacheSize(int cacheSize) {
+    public synchronized void setCacheSize(int cacheSize) {
         this.cacheSize = cacheSize;
+        evictMemory();
+    }
+
+    /**
+     * Limits the memory cache by the estimated size of the values in bytes in addition to the 
+     * number of entries, 0 (the default) means only the number of entries is limited. 
+     * The size of a value is estimated by {@link #sizeOf(java.lang.Object)}
+     * 
+     * @param cacheSizeBytes the maximum estimated size of the memory cache in bytes or 0
+     */
+    public synchronized void setCacheSizeBytes(int cacheSizeBytes) {
+        if(cacheSizeBytes > 0 && this.cacheSizeBytes <= 0) {
+            memoryBytes = 0;
+            for(Object key : memoryCache.keySet().toArray()) {
+                Entry e = memoryCache.get(key);
+                e = new Entry(e.value, sizeOf(e.value));
+                memoryCache.put(key, e);
+                memoryBytes += e.size;
+            }
+        }
+        this.cacheSizeBytes = cacheSizeBytes;
+        evictMemory();
+    }
+
+    /**
+     * Returns the limit of the memory cache in bytes or 0 if the cache is limited by entry count alone
+     * 
+     * @return the maximum estimated size of the memory cache in bytes
+     */
+    public int getCacheSizeBytes() {
+        return cacheSizeBytes;
+    }
+
+    /**
+     * Returns the estimated size of the values in the memory cache, this is only tracked when a 
+     * byte limit is set with {@link #setCacheSizeBytes(int)}
+     * 
+     * @return the estimated size in bytes
+     */
+    public int getMemoryCacheBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * Estimates the memory used by a cached value, subclasses can override this to provide an 
+     * accurate size for their values. 
+     * 
+     * @param value the cached value
+     * @return the estimated size in bytes
+     */
+    protected int sizeOf(Object value) {
+        if(value instanceof byte[]) {
+            return ((byte[])value).length;
+        }
+        if(value instanceof String) {
+            return ((String)value).length() * 2;
+        }
+        if(value instanceof int[]) {
+            return ((int[])value).length * 4;
+        }
+        return 64;
     }
 
     /**
@@ -105,31 +214,30 @@ public class CacheMap {
      * @param key the key
      * @param value the value
      */
-    public void put(Object key, Object value) {
-        if(cacheSize <= memoryCache.size()) {
-            // we need to find the oldest entry
-            Enumeration e = memoryCache.keys();
-            long oldest = System.currentTimeMillis();
-            Object oldestKey = null;
-            Object[] oldestValue = null;
-            while(e.hasMoreElements()) {
-                Object currentKey = e.nextElement();
-                Object[] currentValue = (Object[])memoryCache.get(currentKey);
-                long currentAge = ((Long)currentValue[0]).longValue();
-                if(currentAge <= oldest || oldestValue == null) {
-                    oldest = currentAge;
-                    oldestKey = currentKey;
-                    oldestValue = currentValue;
-                }
-            }
-            placeInStorageCache(oldestKey, oldest, oldestValue[1]);
-            weakCache.put(oldestKey, Display.getInstance().createSoftWeakRef(oldestValue[1]));
-            memoryCache.remove(oldestKey);
+    public synchronized void put(Object key, Object value) {
+        Entry e = new Entry(value, cacheSizeBytes > 0 ? sizeOf(value) : 0);
+        Entry old = memoryCache.put(key, e);
+        if(old != null) {
+            memoryBytes -= old.size;
         }
-        long lastAccess = System.currentTimeMillis();
-        memoryCache.put(key, new Object[]{new Long(lastAccess), value});
+        memoryBytes += e.size;
+        weakCache.remove(key);
         if(alwaysStore) {
-            placeInStorageCache(key, lastAccess, value);
+            placeInStorageCache(key, System.currentTimeMillis(), value);
+        }
+        evictMemory();
+    }
+
+    private void evictMemory() {
+        while(memoryCache.size() > cacheSize || (cacheSizeBytes > 0 && memoryBytes > cacheSizeBytes && memoryCache.size() > 1)) {
+            Object eldestKey = memoryCache.keySet().iterator().next();
+            Entry eldest = memoryCache.remove(eldestKey);
+            memoryBytes -= eldest.size;
+            evictions++;
+            if(!alwaysStore) {
+                placeInStorageCache(eldestKey, System.currentTimeMillis(), eldest.value);
+            }
+            weakCache.put(eldestKey, Display.getInstance().createSoftWeakRef(eldest.value));
         }
     }
 
@@ -139,20 +247,15 @@ public class CacheMap {
      * 
      * @param key entry to remove from the cache
      */
-    public void delete(Object key) {
-        memoryCache.remove(key);
+    public synchronized void delete(Object key) {
+        Entry e = memoryCache.remove(key);
+        if(e != null) {
+            memoryBytes -= e.size;
+        }
         weakCache.remove(key);
-        Vector storageCacheContent = getStorageCacheContent();
-        int s = storageCacheContent.size();
-        for(int iter = 0 ; iter < s ; iter++) {
-            Object[] obj = (Object[])storageCacheContent.elementAt(iter);
-            if(obj[1].equals(key)) {
-                Storage.getInstance().deleteStorageFile("$CACHE$" + cachePrefix + key.toString());
-                obj[0] = new Long(Long.MIN_VALUE);
-                obj[1] = obj[0];                
-                Storage.getInstance().writeObject("$CACHE$Idx" + cachePrefix, storageCacheContent);
-                return;
-            }
+        if(storageCacheSize > 0 && getStorageIndex().remove(key) != null) {
+            Storage.getInstance().deleteStorageFile("$CACHE$" + cachePrefix + key.toString());
+            storageIndexChanged();
         }
     }
     
@@ -162,36 +265,36 @@ public class CacheMap {
      * @param key key object
      * @return value from a previous put or null
      */
-    public Object get(Object key) {
-        Object[] o = (Object[])memoryCache.get(key);
-        if(o != null) {
-            return o[1];
+    public synchronized Object get(Object key) {
+        Entry e = memoryCache.get(key);
+        if(e != null) {
+            hits++;
+            return e.value;
         }
         Object ref = weakCache.get(key);
         if(ref != null) {
             ref = Display.getInstance().extractHardRef(ref);
             if(ref != null) {
                 // cache hit! Promote it to the hard cache again
+                hits++;
                 put(key, ref);
                 return ref;
             }
+            weakCache.remove(key);
         }
-        if(storageCacheSize > 0) {
-            Vector storageCacheContent = getStorageCacheContent();
-            for(int iter = 0 ; iter < storageCacheContent.size() ; iter++) {
-                Object[] obj = (Object[])storageCacheContent.elementAt(iter);
-                if(obj[1].equals(key)) {
-                    // place the object back into the memory cache and return the value
-                    Vector v = (Vector)Storage.getInstance().readObject("$CACHE$" + cachePrefix + key.toString());
-                    if(v != null) {
-                        Object val = v.elementAt(0);
-                        put(key, val);
-                        return val;
-                    }
-                    return null;
-                }
+        if(storageCacheSize > 0 && getStorageIndex().containsKey(key)) {
+            // place the object back into the memory cache and return the value
+            Vector v = (Vector)Storage.getInstance().readObject("$CACHE$" + cachePrefix + key.toString());
+            if(v != null) {
+                Object val = v.elementAt(0);
+                hits++;
+                getStorageIndex().put(key, new Long(System.currentTimeMillis()));
+                storageIndexChanged();
+                put(key, val);
+                return val;
             }
         }
+        misses++;
         return null;
     }
 
@@ -206,63 +309,68 @@ public class CacheMap {
     /**
      * Clears the memory cache
      */
-    public void clearMemoryCache() {
+    public synchronized void clearMemoryCache() {
         memoryCache.clear();
         weakCache.clear();
+        memoryBytes = 0;
     }
 
     private void placeInStorageCache(Object key, long lastAccessed, Object value) {
         if(storageCacheSize < 1) {
             return;
         }
-
-        Vector storageCacheContent = getStorageCacheContent();
-        int vecSize = storageCacheContent.size();
-
-        // find the best place
-        for(int iter = 0 ; iter < vecSize ; iter++) {
-            Object[] index = (Object[])storageCacheContent.elementAt(iter);
-            Object indexKey = index[1];
-            if(indexKey.equals(key)) {
-                // already in storage just update the data
-                placeInStorageCache(iter, key, lastAccessed, value);
-                return;
-            }
-        }
-        
-        if(storageCacheContent.size() < storageCacheSize) {
-            placeInStorageCache(storageCacheContent.size(), key, lastAccessed, value);
-        } else {
-            long smallest = Long.MAX_VALUE;
-            int offset = 0;
-
-            // find the best place
-            for(int iter = 0 ; iter < vecSize ; iter++) {
-                Object[] index = (Object[])storageCacheContent.elementAt(iter);
-                long current = ((Long)index[0]).longValue();
-                if(smallest > current) {
-                    smallest = current;
-                    offset = iter;
-                }
-            }
-            placeInStorageCache(offset, key, lastAccessed, value);
-        }
-    }
-
-    private void placeInStorageCache(int offset, Object key, long lastAccessed, Object value) {
+        LinkedHashMap<Object, Long> index = getStorageIndex();
         Vector v = new Vector();
         v.addElement(value);
         Long l = new Long(lastAccessed);
         v.addElement(l);
         v.addElement(key);
         Storage.getInstance().writeObject("$CACHE$" + cachePrefix + key.toString(), v);
-        Vector storageCacheContent = getStorageCacheContent();
-        if(storageCacheContent.size() > offset) {
-            storageCacheContent.setElementAt(new Object[] {l, key}, offset);
-        } else {
-            storageCacheContent.insertElementAt(new Object[] {l, key}, offset);
+        index.put(key, l);
+        while(index.size() > storageCacheSize) {
+            Object eldestKey = index.keySet().iterator().next();
+            index.remove(eldestKey);
+            Storage.getInstance().deleteStorageFile("$CACHE$" + cachePrefix + eldestKey.toString());
+        }
+        storageIndexChanged();
+    }
+
+    /**
+     * The storage index is written in batches, changes made in the same EDT cycle result in a 
+     * single write
+     */
+    private void storageIndexChanged() {
+        storageIndexDirty = true;
+        if(storageIndexWritePending) {
+            return;
+        }
+        if(!Display.isInitialized()) {
+            flushStorageIndex();
+            return;
+        }
+        storageIndexWritePending = true;
+        Display.getInstance().callSerially(new Runnable() {
+            public void run() {
+                flushStorageIndex();
+            }
+        });
+    }
+
+    /**
+     * Writes pending changes of the storage cache index immediately, normally the index is 
+     * written asynchronously shortly after it changes
+     */
+    public synchronized void flushStorageIndex() {
+        storageIndexWritePending = false;
+        if(!storageIndexDirty || storageIndex == null) {
+            return;
         }
-        Storage.getInstance().writeObject("$CACHE$Idx" + cachePrefix, storageCacheContent);
+        storageIndexDirty = false;
+        Vector v = new Vector(storageIndex.size());
+        for(Object key : storageIndex.keySet().toArray()) {
+            v.addElement(new Object[] {storageIndex.get(key), key});
+        }
+        Storage.getInstance().writeObject("$CACHE$Idx" + cachePrefix, v);
     }
     
     /**
@@ -275,41 +383,30 @@ public class CacheMap {
      * @return a vector containing a snapshot of the current elements within the 
      * cache.
      */
-    public Vector getKeysInCache() {
+    public synchronized Vector getKeysInCache() {
         Vector r = new Vector();
-        Enumeration en = memoryCache.keys();
-        while(en.hasMoreElements()) {
-            r.addElement(en.nextElement());
+        for(Object key : memoryCache.keySet()) {
+            r.addElement(key);
         }
-        Vector storageCacheContent = getStorageCacheContent();
-        for(int iter = 0 ; iter < storageCacheContent.size() ; iter++) {
-            Object[] o = (Object[])storageCacheContent.elementAt(iter);
-            if(!r.contains(o[1])) {
-                r.addElement(o[1]);
+        for(Object key : getStorageIndex().keySet()) {
+            if(!memoryCache.containsKey(key)) {
+                r.addElement(key);
             }
         }
         return r;
     }
 
-    private Vector fetchFromStorageCache(int offset) {
-        Vector v = getStorageCacheContent();
-        Object[] arr = (Object[])v.elementAt(offset);
-        return (Vector)Storage.getInstance().readObject("$CACHE$" + cachePrefix + arr[1].toString());
-    }
-
     /**
      * Clears the storage cache
      */
-    public void clearStorageCache() {
+    public synchronized void clearStorageCache() {
         if(storageCacheSize > 0) {
-            Vector v = getStorageCacheContent();
-            int s = v.size();
-            for(int iter = 0 ; iter < s ; iter++) {
-                Object[] arr = (Object[])v.elementAt(iter);
-                Storage.getInstance().deleteStorageFile("$CACHE$" + cachePrefix + arr[iter].toString());
+            for(Object key : getStorageIndex().keySet()) {
+                Storage.getInstance().deleteStorageFile("$CACHE$" + cachePrefix + key.toString());
             }
             Storage.getInstance().deleteStorageFile("$CACHE$Idx" + cachePrefix);
-            storageCacheContentVec = new Vector();
+            storageIndex = new LinkedHashMap<Object, Long>(16, 0.75f, true);
+            storageIndexDirty = false;
         }
     }
 
@@ -331,18 +428,6 @@ public class CacheMap {
      */
     public void setStorageCacheSize(int storageCacheSize) {
         this.storageCacheSize = storageCacheSize;
-        /*for(int iter = 0 ; iter < storageCacheSize ; iter++) {
-            Vector v = fetchFromStorageCache(iter);
-            if(v != null) {
-                Object o = new Object[] {v.elementAt(1), v.elementAt(2)};
-                Vector storageCacheContent = getStorageCacheContent();
-                if(iter >= storageCacheContent.size()) {
-                    storageCacheContent.addElement(o);
-                } else {
-                    storageCacheContent.insertElementAt(o, iter);
-                }
-            }
-        }*/
         if(storageCacheSize == 0) {
             alwaysStore = false;
         }
@@ -360,7 +445,11 @@ public class CacheMap {
      * A prefix prepended to storage entries to differentiate them
      * @param cachePrefix the cachePrefix to set
      */
-    public void setCachePrefix(String cachePrefix) {
+    public synchronized void setCachePrefix(String cachePrefix) {
+        if(!cachePrefix.equals(this.cachePrefix)) {
+            flushStorageIndex();
+            storageIndex = null;
+        }
         this.cachePrefix = cachePrefix;
     }
 
@@ -381,4 +470,40 @@ public class CacheMap {
     public void setAlwaysStore(boolean alwaysStore) {
         this.alwaysStore = alwaysStore;
     }
+
+    /**
+     * The number of successful lookups since the statistics were reset
+     * 
+     * @return the number of cache hits
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * The number of failed lookups since the statistics were reset
+     * 
+     * @return the number of cache misses
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * The number of entries evicted from the memory cache since the statistics were reset
+     * 
+     * @return the number of evictions
+     */
+    public int getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Resets the hit/miss/eviction counters
+     */
+    public synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
 }
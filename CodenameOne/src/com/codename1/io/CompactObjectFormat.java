@@ -0,0 +1,561 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *  
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ * 
+ * Please contact Codename One through http://www.codenameone.com/ if you 
+ * need additional information or have any questions.
+ */
+package com.codename1.io;
+
+import com.codename1.properties.PropertyBusinessObject;
+import com.codename1.ui.EncodedImage;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Compact binary encoding used by {@link Util#writeObjectCompact(java.lang.Object, java.io.DataOutputStream)}.
+ * Every value starts with a single byte type tag, lengths and integral values are written as varints,
+ * primitive arrays are written as one block and strings (including externalizable object ids) are 
+ * written once per stream and referenced by index afterwards.
+ * 
+ * The stream starts with {@link #MAGIC} which can never be the first byte of the legacy format (that
+ * starts with a boolean) so {@link Util#readObject(java.io.DataInputStream)} can read both formats.
+ * Externalizable objects receive the compact stream so nested calls to Util.writeObject/readObject 
+ * within externalize/internalize use this format as well.
+ */
+final class CompactObjectFormat {
+    static final int MAGIC = 0xCF;
+    static final int VERSION = 1;
+    
+    /**
+     * Strings longer than this aren't placed in the string table since they are unlikely to repeat
+     */
+    private static final int MAX_TABLE_STRING = 256;
+    
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_INT = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_BYTE = 4;
+    private static final int TAG_SHORT = 5;
+    private static final int TAG_FLOAT = 6;
+    private static final int TAG_DOUBLE = 7;
+    private static final int TAG_TRUE = 8;
+    private static final int TAG_FALSE = 9;
+    private static final int TAG_DATE = 10;
+    private static final int TAG_VECTOR = 11;
+    private static final int TAG_COLLECTION = 12;
+    private static final int TAG_HASHTABLE = 13;
+    private static final int TAG_MAP = 14;
+    private static final int TAG_OBJECT_ARRAY = 15;
+    private static final int TAG_BYTE_ARRAY = 16;
+    private static final int TAG_SHORT_ARRAY = 17;
+    private static final int TAG_INT_ARRAY = 18;
+    private static final int TAG_LONG_ARRAY = 19;
+    private static final int TAG_FLOAT_ARRAY = 20;
+    private static final int TAG_DOUBLE_ARRAY = 21;
+    private static final int TAG_ENCODED_IMAGE = 22;
+    private static final int TAG_EXTERNALIZABLE = 23;
+    
+    private CompactObjectFormat() {}
+
+    /**
+     * Output stream carrying the string table of the stream
+     */
+    static class Output extends DataOutputStream {
+        private final HashMap<String, Integer> strings = new HashMap<String, Integer>();
+
+        Output(OutputStream out) {
+            super(out);
+        }
+    }
+
+    /**
+     * Input stream carrying the string table of the stream
+     */
+    static class Input extends DataInputStream {
+        private final ArrayList<String> strings = new ArrayList<String>();
+
+        Input(InputStream in) {
+            super(in);
+        }
+    }
+    
+    /**
+     * Writes the stream header and the object
+     */
+    static void writeStream(Object o, DataOutputStream out) throws IOException {
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        Output c = new Output(out);
+        write(o, c);
+        c.flush();
+    }
+    
+    /**
+     * Reads an object following the {@link #MAGIC} byte
+     */
+    static Object readStream(DataInputStream in) throws IOException {
+        int version = in.readUnsignedByte();
+        if(version > VERSION) {
+            throw new IOException("Unsupported object format version: " + version);
+        }
+        return read(new Input(in));
+    }
+    
+    static void writeVarInt(int v, DataOutputStream out) throws IOException {
+        while((v & ~0x7f) != 0) {
+            out.writeByte((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    static void writeVarLong(long v, DataOutputStream out) throws IOException {
+        while((v & ~0x7fL) != 0) {
+            out.writeByte((int)((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int)v);
+    }
+    
+    static int readVarInt(DataInputStream in) throws IOException {
+        int result = 0;
+        for(int shift = 0 ; shift < 35 ; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (b & 0x7f) << shift;
+            if((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long result = 0;
+        for(int shift = 0 ; shift < 70 ; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= ((long)(b & 0x7f)) << shift;
+            if((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+    
+    private static void writeString(String s, Output out) throws IOException {
+        Integer index = out.strings.get(s);
+        if(index != null) {
+            writeVarInt((index.intValue() << 1) | 1, out);
+            return;
+        }
+        byte[] b = s.getBytes("UTF-8");
+        writeVarInt(b.length << 1, out);
+        out.write(b);
+        if(s.length() <= MAX_TABLE_STRING) {
+            out.strings.put(s, new Integer(out.strings.size()));
+        }
+    }
+
+    private static String readString(Input in) throws IOException {
+        int header = readVarInt(in);
+        if((header & 1) != 0) {
+            int index = header >>> 1;
+            if(index >= in.strings.size()) {
+                throw new IOException("Illegal string reference: " + index);
+            }
+            return in.strings.get(index);
+        }
+        byte[] b = new byte[header >>> 1];
+        in.readFully(b);
+        String s = new String(b, "UTF-8");
+        if(s.length() <= MAX_TABLE_STRING) {
+            in.strings.add(s);
+        }
+        return s;
+    }
+    
+    private static void writeExternalizable(Externalizable e, Output out) throws IOException {
+        out.writeByte(TAG_EXTERNALIZABLE);
+        writeString(e.getObjectId(), out);
+        writeVarInt(e.getVersion(), out);
+        e.externalize(out);
+    }
+    
+    static void write(Object o, Output out) throws IOException {
+        if(o == null) {
+            out.writeByte(TAG_NULL);
+            return;
+        }
+        if(o instanceof String) {
+            out.writeByte(TAG_STRING);
+            writeString((String)o, out);
+            return;
+        }
+        if(o instanceof Integer) {
+            int v = ((Integer)o).intValue();
+            out.writeByte(TAG_INT);
+            writeVarInt((v << 1) ^ (v >> 31), out);
+            return;
+        }
+        if(o instanceof Long) {
+            long v = ((Long)o).longValue();
+            out.writeByte(TAG_LONG);
+            writeVarLong((v << 1) ^ (v >> 63), out);
+            return;
+        }
+        if(o instanceof Boolean) {
+            out.writeByte(((Boolean)o).booleanValue() ? TAG_TRUE : TAG_FALSE);
+            return;
+        }
+        if(o instanceof Double) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(((Double)o).doubleValue());
+            return;
+        }
+        if(o instanceof Float) {
+            out.writeByte(TAG_FLOAT);
+            out.writeFloat(((Float)o).floatValue());
+            return;
+        }
+        if(o instanceof Byte) {
+            out.writeByte(TAG_BYTE);
+            out.writeByte(((Byte)o).byteValue());
+            return;
+        }
+        if(o instanceof Short) {
+            out.writeByte(TAG_SHORT);
+            out.writeShort(((Short)o).shortValue());
+            return;
+        }
+        if(o instanceof Date) {
+            long v = ((Date)o).getTime();
+            out.writeByte(TAG_DATE);
+            writeVarLong((v << 1) ^ (v >> 63), out);
+            return;
+        }
+        if(o instanceof Externalizable) {
+            writeExternalizable((Externalizable)o, out);
+            return;
+        }
+        if(o instanceof PropertyBusinessObject) {
+            writeExternalizable(((PropertyBusinessObject)o).getPropertyIndex().asExternalizable(), out);
+            return;
+        }
+        if(o instanceof Vector) {
+            Vector v = (Vector)o;
+            int size = v.size();
+            out.writeByte(TAG_VECTOR);
+            writeVarInt(size, out);
+            for(int iter = 0 ; iter < size ; iter++) {
+                write(v.elementAt(iter), out);
+            }
+            return;
+        }
+        if(o instanceof Collection) {
+            Collection v = (Collection)o;
+            out.writeByte(TAG_COLLECTION);
+            writeVarInt(v.size(), out);
+            for(Object cur : v) {
+                write(cur, out);
+            }
+            return;
+        }
+        if(o instanceof Hashtable) {
+            Hashtable v = (Hashtable)o;
+            out.writeByte(TAG_HASHTABLE);
+            writeVarInt(v.size(), out);
+            Enumeration k = v.keys();
+            while(k.hasMoreElements()) {
+                Object key = k.nextElement();
+                write(key, out);
+                write(v.get(key), out);
+            }
+            return;
+        }
+        if(o instanceof Map) {
+            Map v = (Map)o;
+            out.writeByte(TAG_MAP);
+            writeVarInt(v.size(), out);
+            for(Object key : v.keySet()) {
+                write(key, out);
+                write(v.get(key), out);
+            }
+            return;
+        }
+        if(o instanceof EncodedImage) {
+            EncodedImage e = (EncodedImage)o;
+            out.writeByte(TAG_ENCODED_IMAGE);
+            writeVarInt(e.getWidth(), out);
+            writeVarInt(e.getHeight(), out);
+            out.writeBoolean(e.isOpaque());
+            byte[] b = e.getImageData();
+            writeVarInt(b.length, out);
+            out.write(b);
+            return;
+        }
+        if(Util.instanceofObjArray(o)) {
+            Object[] v = (Object[])o;
+            out.writeByte(TAG_OBJECT_ARRAY);
+            writeVarInt(v.length, out);
+            for(int iter = 0 ; iter < v.length ; iter++) {
+                write(v[iter], out);
+            }
+            return;
+        }
+        if(Util.instanceofByteArray(o)) {
+            byte[] v = (byte[])o;
+            out.writeByte(TAG_BYTE_ARRAY);
+            writeVarInt(v.length, out);
+            out.write(v);
+            return;
+        }
+        if(Util.instanceofIntArray(o)) {
+            int[] v = (int[])o;
+            byte[] b = new byte[v.length * 4];
+            for(int iter = 0 ; iter < v.length ; iter++) {
+                putInt(b, iter * 4, v[iter]);
+            }
+            out.writeByte(TAG_INT_ARRAY);
+            writeVarInt(v.length, out);
+            out.write(b);
+            return;
+        }
+        if(Util.instanceofLongArray(o)) {
+            long[] v = (long[])o;
+            byte[] b = new byte[v.length * 8];
+            for(int iter = 0 ; iter < v.length ; iter++) {
+                putLong(b, iter * 8, v[iter]);
+            }
+            out.writeByte(TAG_LONG_ARRAY);
+            writeVarInt(v.length, out);
+            out.write(b);
+            return;
+        }
+        if(Util.instanceofShortArray(o)) {
+            short[] v = (short[])o;
+            byte[] b = new byte[v.length * 2];
+            for(int iter = 0 ; iter < v.length ; iter++) {
+                b[iter * 2] = (byte)(v[iter] >> 8);
+                b[iter * 2 + 1] = (byte)v[iter];
+            }
+            out.writeByte(TAG_SHORT_ARRAY);
+            writeVarInt(v.length, out);
+            out.write(b);
+            return;
+        }
+        if(Util.instanceofFloatArray(o)) {
+            float[] v = (float[])o;
+            byte[] b = new byte[v.length * 4];
+            for(int iter = 0 ; iter < v.length ; iter++) {
+                putInt(b, iter * 4, Float.floatToIntBits(v[iter]));
+            }
+            out.writeByte(TAG_FLOAT_ARRAY);
+            writeVarInt(v.length, out);
+            out.write(b);
+            return;
+        }
+        if(Util.instanceofDoubleArray(o)) {
+            double[] v = (double[])o;
+            byte[] b = new byte[v.length * 8];
+            for(int iter = 0 ; iter < v.length ; iter++) {
+                putLong(b, iter * 8, Double.doubleToLongBits(v[iter]));
+            }
+            out.writeByte(TAG_DOUBLE_ARRAY);
+            writeVarInt(v.length, out);
+            out.write(b);
+            return;
+        }
+        throw new IOException("Object type not supported: " + o.getClass().getName()
+                + " value: " + o);
+    }
+    
+    private static void putInt(byte[] b, int offset, int v) {
+        b[offset] = (byte)(v >> 24);
+        b[offset + 1] = (byte)(v >> 16);
+        b[offset + 2] = (byte)(v >> 8);
+        b[offset + 3] = (byte)v;
+    }
+
+    private static void putLong(byte[] b, int offset, long v) {
+        putInt(b, offset, (int)(v >> 32));
+        putInt(b, offset + 4, (int)v);
+    }
+    
+    private static int getInt(byte[] b, int offset) {
+        return ((b[offset] & 0xff) << 24) | ((b[offset + 1] & 0xff) << 16) | 
+                ((b[offset + 2] & 0xff) << 8) | (b[offset + 3] & 0xff);
+    }
+
+    private static long getLong(byte[] b, int offset) {
+        return (((long)getInt(b, offset)) << 32) | (getInt(b, offset + 4) & 0xffffffffL);
+    }
+    
+    private static byte[] readBlock(Input in, int length) throws IOException {
+        byte[] b = new byte[length];
+        in.readFully(b);
+        return b;
+    }
+    
+    static Object read(Input in) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch(tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return readString(in);
+            case TAG_INT: {
+                int v = readVarInt(in);
+                return new Integer((v >>> 1) ^ -(v & 1));
+            }
+            case TAG_LONG: {
+                long v = readVarLong(in);
+                return new Long((v >>> 1) ^ -(v & 1));
+            }
+            case TAG_BYTE:
+                return new Byte(in.readByte());
+            case TAG_SHORT:
+                return new Short(in.readShort());
+            case TAG_FLOAT:
+                return new Float(in.readFloat());
+            case TAG_DOUBLE:
+                return new Double(in.readDouble());
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_DATE: {
+                long v = readVarLong(in);
+                return new Date((v >>> 1) ^ -(v & 1));
+            }
+            case TAG_VECTOR: {
+                int size = readVarInt(in);
+                Vector v = new Vector(size);
+                for(int iter = 0 ; iter < size ; iter++) {
+                    v.addElement(read(in));
+                }
+                return v;
+            }
+            case TAG_COLLECTION: {
+                int size = readVarInt(in);
+                Collection v = new ArrayList(size);
+                for(int iter = 0 ; iter < size ; iter++) {
+                    v.add(read(in));
+                }
+                return v;
+            }
+            case TAG_HASHTABLE: {
+                int size = readVarInt(in);
+                Hashtable v = new Hashtable();
+                for(int iter = 0 ; iter < size ; iter++) {
+                    v.put(read(in), read(in));
+                }
+                return v;
+            }
+            case TAG_MAP: {
+                int size = readVarInt(in);
+                Map v = new HashMap();
+                for(int iter = 0 ; iter < size ; iter++) {
+                    v.put(read(in), read(in));
+                }
+                return v;
+            }
+            case TAG_OBJECT_ARRAY: {
+                Object[] v = new Object[readVarInt(in)];
+                for(int iter = 0 ; iter < v.length ; iter++) {
+                    v[iter] = read(in);
+                }
+                return v;
+            }
+            case TAG_BYTE_ARRAY:
+                return readBlock(in, readVarInt(in));
+            case TAG_SHORT_ARRAY: {
+                short[] v = new short[readVarInt(in)];
+                byte[] b = readBlock(in, v.length * 2);
+                for(int iter = 0 ; iter < v.length ; iter++) {
+                    v[iter] = (short)(((b[iter * 2] & 0xff) << 8) | (b[iter * 2 + 1] & 0xff));
+                }
+                return v;
+            }
+            case TAG_INT_ARRAY: {
+                int[] v = new int[readVarInt(in)];
+                byte[] b = readBlock(in, v.length * 4);
+                for(int iter = 0 ; iter < v.length ; iter++) {
+                    v[iter] = getInt(b, iter * 4);
+                }
+                return v;
+            }
+            case TAG_LONG_ARRAY: {
+                long[] v = new long[readVarInt(in)];
+                byte[] b = readBlock(in, v.length * 8);
+                for(int iter = 0 ; iter < v.length ; iter++) {
+                    v[iter] = getLong(b, iter * 8);
+                }
+                return v;
+            }
+            case TAG_FLOAT_ARRAY: {
+                float[] v = new float[readVarInt(in)];
+                byte[] b = readBlock(in, v.length * 4);
+                for(int iter = 0 ; iter < v.length ; iter++) {
+                    v[iter] = Float.intBitsToFloat(getInt(b, iter * 4));
+                }
+                return v;
+            }
+            case TAG_DOUBLE_ARRAY: {
+                double[] v = new double[readVarInt(in)];
+                byte[] b = readBlock(in, v.length * 8);
+                for(int iter = 0 ; iter < v.length ; iter++) {
+                    v[iter] = Double.longBitsToDouble(getLong(b, iter * 8));
+                }
+                return v;
+            }
+            case TAG_ENCODED_IMAGE: {
+                int width = readVarInt(in);
+                int height = readVarInt(in);
+                boolean op = in.readBoolean();
+                byte[] data = readBlock(in, readVarInt(in));
+                return EncodedImage.create(data, width, height, op);
+            }
+            case TAG_EXTERNALIZABLE: {
+                String id = readString(in);
+                int version = readVarInt(in);
+                try {
+                    return Util.internalizeObject(id, version, in);
+                } catch(InstantiationException err) {
+                    Log.e(err);
+                    throw new IOException(err.getClass().getName() + ": " + err.getMessage());
+                } catch(IllegalAccessException err) {
+                    Log.e(err);
+                    throw new IOException(err.getClass().getName() + ": " + err.getMessage());
+                }
+            }
+        }
+        throw new IOException("Unknown type tag: " + tag);
+    }
+}
@@ -533,11 +533,20 @@ public class ConnectionRequest implements IOProgressListener {
         }
         
         if(!post && (cacheMode == CachingMode.MANUAL || cacheMode == CachingMode.SMART)) {
-            String msince = Preferences.get("cn1MSince" + createRequestURL(), null);
+            String msince;
+            String etag;
+            String[] validators = HttpCache.getInstance().getValidators(createRequestURL());
+            if(validators != null) {
+                msince = validators[0];
+                etag = validators[1];
+            } else {
+                // validators stored by older versions
+                msince = Preferences.get("cn1MSince" + createRequestURL(), null);
+                etag = Preferences.get("cn1Etag" + createRequestURL(), null);
+            }
             if(msince != null) {
                 impl.setHeader(connection, "If-Modified-Since", msince);
             } else {
-                String etag = Preferences.get("cn1Etag" + createRequestURL(), null);
                 if(etag != null) {
                     impl.setHeader(connection, "If-None-Match", etag);
                 } 
@@ -586,6 +595,7 @@ public class ConnectionRequest implements IOProgressListener {
      */
     public void purgeCache() {
         FileSystemStorage.getInstance().delete(getCacheFileName());
+        HttpCache.getInstance().remove(createRequestURL());
     }
     
     /**
@@ -614,6 +624,7 @@ public class ConnectionRequest implements IOProgressListener {
      * Purges all locally cached files
      */
     public static void purgeCacheDirectory() throws IOException {
+        HttpCache.getInstance().clear();
         Set<String> s = Preferences.keySet();
         Iterator<String> i = s.iterator();
         ArrayList<String> remove = new ArrayList<String>();
@@ -626,6 +637,17 @@ public class ConnectionRequest implements IOProgressListener {
         for(String ss : remove) {
             Preferences.set(ss, null);
         }
+        String root = getCacheDirectory();
+        FileSystemStorage fs = FileSystemStorage.getInstance();
+        for(String ss : fs.listFiles(root)) {
+            fs.delete(root + ss);
+        }
+    }
+    
+    /**
+     * Returns the directory in which the SMART mode responses are cached
+     */
+    static String getCacheDirectory() {
         String root;
         FileSystemStorage fs = FileSystemStorage.getInstance();
         if(fs.hasCachesDir()) {
@@ -633,20 +655,12 @@ public class ConnectionRequest implements IOProgressListener {
         } else {
             root = fs.getAppHomePath()+ "cn1ConCache/";
         }
-
-        for(String ss : fs.listFiles(root)) {
-            fs.delete(ss);
-        }
+        fs.mkdir(root);
+        return root;
     }
     
     private String getCacheFileName() {
-        String root;
-        if(FileSystemStorage.getInstance().hasCachesDir()) {
-            root = FileSystemStorage.getInstance().getCachesDir() + "cn1ConCache/";
-        } else {
-            root = FileSystemStorage.getInstance().getAppHomePath()+ "cn1ConCache/";
-        }
-        FileSystemStorage.getInstance().mkdir(root);
+        String root = getCacheDirectory();
         String fileName = Base64.encodeNoNewline(createRequestURL().getBytes()).replace('/', '-').replace('+', '_');
         
         // limit file name length for portability: https://stackoverflow.com/questions/54644088/why-is-codenameone-rest-giving-me-file-name-too-long-error
@@ -711,6 +725,34 @@ public class ConnectionRequest implements IOProgressListener {
             }
             return;
         }
+        if(!post && cacheMode == CachingMode.SMART && destinationFile == null && destinationStorage == null) {
+            // a fresh response based on the Cache-Control header doesn't need a server round trip
+            String cacheUrl = createRequestURL();
+            int cachedSize = HttpCache.getInstance().getFreshSize(cacheUrl);
+            if(cachedSize > -1) {
+                String s = getCacheFileName();
+                if(FileSystemStorage.getInstance().exists(s)) {
+                    InputStream is = FileSystemStorage.getInstance().openInputStream(s);
+                    responseCode = 200;
+                    contentLength = cachedSize;
+                    HttpCache.getInstance().freshHit(cacheUrl);
+                    NetworkManager.getInstance().fireProgressEvent(this, NetworkEvent.PROGRESS_TYPE_CACHE_HIT, cachedSize, cachedSize);
+                    try {
+                        readResponse(is);
+                    } finally {
+                        Util.cleanup(is);
+                    }
+                    if(!isKilled()) {
+                        Display.getInstance().callSerially(new Runnable() {
+                            public void run() {
+                                postResponse();
+                            }
+                        });
+                    }
+                    return;
+                }
+            }
+        }
         CodenameOneImplementation impl = Util.getImplementation();
         Object connection = null;
         input = null;
@@ -825,6 +867,10 @@ public class ConnectionRequest implements IOProgressListener {
             }
             
             if(responseCode == 304 && cacheMode != CachingMode.OFF) {
+                if(cacheMode == CachingMode.SMART || cacheMode == CachingMode.MANUAL) {
+                    int cachedSize = HttpCache.getInstance().notModified(createRequestURL(), getHeader(connection, "Cache-Control"));
+                    NetworkManager.getInstance().fireProgressEvent(this, NetworkEvent.PROGRESS_TYPE_CACHE_HIT, cachedSize, cachedSize);
+                }
                 cacheUnmodified();
                 return;
             }
@@ -875,8 +921,13 @@ public class ConnectionRequest implements IOProgressListener {
             if(cacheMode == CachingMode.SMART || cacheMode == CachingMode.MANUAL) {
                 String last = getHeader(connection, "Last-Modified");
                 String etag = getHeader(connection, "ETag");
-                Preferences.set("cn1MSince" + createRequestURL(), last);
-                Preferences.set("cn1Etag" + createRequestURL(), etag);
+                String cacheUrl = createRequestURL();
+                HttpCache.getInstance().responseReceived(cacheUrl, last, etag, getHeader(connection, "Cache-Control"));
+                if(Preferences.get("cn1MSince" + cacheUrl, null) != null || Preferences.get("cn1Etag" + cacheUrl, null) != null) {
+                    // migrate away from the validators stored by older versions
+                    Preferences.delete("cn1MSince" + cacheUrl);
+                    Preferences.delete("cn1Etag" + cacheUrl);
+                }
             }
             readHeaders(connection);
             contentLength = impl.getContentLength(connection);
@@ -896,9 +947,11 @@ public class ConnectionRequest implements IOProgressListener {
                 }
                 if(!post && cacheMode == CachingMode.SMART && destinationFile == null && destinationStorage == null) {
                     byte[] d = Util.readInputStream(input);
-                    OutputStream os = FileSystemStorage.getInstance().openOutputStream(getCacheFileName());
+                    String cacheFile = getCacheFileName();
+                    OutputStream os = FileSystemStorage.getInstance().openOutputStream(cacheFile);
                     os.write(d);
                     os.close();
+                    HttpCache.getInstance().stored(createRequestURL(), cacheFile, d.length);
                     readResponse(new ByteArrayInputStream(d));
                 } else {
                     readResponse(input);
@@ -0,0 +1,417 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *  
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ * 
+ * Please contact Codename One through http://www.codenameone.com/ if you 
+ * need additional information or have any questions.
+ */
+package com.codename1.io;
+
+import com.codename1.ui.Display;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Index of the HTTP responses cached by {@link ConnectionRequest} in the 
+ * {@link ConnectionRequest.CachingMode#SMART} and {@link ConnectionRequest.CachingMode#MANUAL}
+ * modes. The index keeps the validators (ETag/Last-Modified), the size, the last access order and
+ * the freshness lifetime derived from the {@code Cache-Control: max-age} header for every cached URL.</p>
+ * 
+ * <p>A request in the SMART mode whose cached response is still fresh is served from the cache without
+ * going to the network at all. When a size limit is set with {@link #setMaxSize(int)} the least recently used
+ * responses are evicted once the cache exceeds it.</p>
+ * 
+ * <p>The index is kept in memory and persisted in the background into the cache directory. Responses
+ * served from the cache fire a {@link NetworkEvent#PROGRESS_TYPE_CACHE_HIT} event to the 
+ * {@link NetworkManager} progress listeners.</p>
+ */
+public class HttpCache {
+    private static final int INDEX_VERSION = 1;
+    private static final String INDEX_FILE = ".index";
+    private static final HttpCache INSTANCE = new HttpCache();
+    
+    private LinkedHashMap<String, Entry> index;
+    private int maxSize = -1;
+    private int size;
+    private boolean saveScheduled;
+    private int hits;
+    private int revalidations;
+    private int misses;
+    private long bytesSaved;
+    
+    static class Entry {
+        String fileName;
+        String etag;
+        String lastModified;
+        long expires;
+        int size;
+    }
+    
+    private HttpCache() {}
+    
+    /**
+     * Returns the singleton instance of the cache
+     * 
+     * @return the cache instance
+     */
+    public static HttpCache getInstance() {
+        return INSTANCE;
+    }
+    
+    private LinkedHashMap<String, Entry> index() {
+        if(index == null) {
+            // access ordered map so the iteration order is least recently used first
+            index = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+            size = 0;
+            String file = ConnectionRequest.getCacheDirectory() + INDEX_FILE;
+            FileSystemStorage fs = FileSystemStorage.getInstance();
+            if(fs.exists(file)) {
+                DataInputStream di = null;
+                try {
+                    di = new DataInputStream(fs.openInputStream(file));
+                    if(di.readInt() == INDEX_VERSION) {
+                        int count = di.readInt();
+                        for(int iter = 0 ; iter < count ; iter++) {
+                            String url = di.readUTF();
+                            Entry e = new Entry();
+                            e.fileName = readString(di);
+                            e.etag = readString(di);
+                            e.lastModified = readString(di);
+                            e.expires = di.readLong();
+                            e.size = di.readInt();
+                            index.put(url, e);
+                            size += e.size;
+                        }
+                    }
+                    di.close();
+                } catch(IOException err) {
+                    Log.e(err);
+                    Util.cleanup(di);
+                    index.clear();
+                    size = 0;
+                }
+            }
+        }
+        return index;
+    }
+    
+    private static String readString(DataInputStream di) throws IOException {
+        if(di.readBoolean()) {
+            return di.readUTF();
+        }
+        return null;
+    }
+    
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if(s == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            out.writeUTF(s);
+        }
+    }
+
+    /**
+     * Writes the index in the background, this coalesces the updates from many requests into
+     * a single write
+     */
+    private void scheduleSave() {
+        if(saveScheduled) {
+            return;
+        }
+        saveScheduled = true;
+        Display.getInstance().startThread(new Runnable() {
+            public void run() {
+                Util.sleep(1000);
+                flush();
+            }
+        }, "HTTP Cache Index").start();
+    }
+    
+    /**
+     * Writes the cache index to disk, this is normally performed in the background 
+     * and shouldn't be invoked directly
+     */
+    public synchronized void flush() {
+        saveScheduled = false;
+        if(index == null) {
+            return;
+        }
+        String file = ConnectionRequest.getCacheDirectory() + INDEX_FILE;
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(FileSystemStorage.getInstance().openOutputStream(file));
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(index.size());
+            for(Map.Entry<String, Entry> me : index.entrySet()) {
+                Entry e = me.getValue();
+                out.writeUTF(me.getKey());
+                writeString(out, e.fileName);
+                writeString(out, e.etag);
+                writeString(out, e.lastModified);
+                out.writeLong(e.expires);
+                out.writeInt(e.size);
+            }
+            out.close();
+        } catch(IOException err) {
+            Log.e(err);
+            Util.cleanup(out);
+        }
+    }
+    
+    /**
+     * Returns the validators for the given URL
+     * 
+     * @return an array containing the Last-Modified and ETag values or null if the URL isn't cached
+     */
+    synchronized String[] getValidators(String url) {
+        Entry e = index().get(url);
+        if(e == null) {
+            return null;
+        }
+        return new String[] {e.lastModified, e.etag};
+    }
+
+    /**
+     * Returns the size in bytes of the cached response if it's fresh based on the Cache-Control header
+     * of the last response and -1 otherwise
+     */
+    synchronized int getFreshSize(String url) {
+        Entry e = index().get(url);
+        if(e == null || e.fileName == null || e.expires <= System.currentTimeMillis()) {
+            return -1;
+        }
+        return e.size;
+    }
+    
+    /**
+     * Updates the entry for the URL based on the headers of a 200 response
+     */
+    synchronized void responseReceived(String url, String lastModified, String etag, String cacheControl) {
+        misses++;
+        Entry e = index().get(url);
+        if(e == null) {
+            if(lastModified == null && etag == null && cacheControl == null) {
+                return;
+            }
+            e = new Entry();
+            index.put(url, e);
+        }
+        e.lastModified = lastModified;
+        e.etag = etag;
+        e.expires = expiresFromCacheControl(cacheControl);
+        scheduleSave();
+    }
+    
+    /**
+     * Invoked on a 304 response, marks the entry as recently used and updates its freshness
+     * 
+     * @return the size of the cached response
+     */
+    synchronized int notModified(String url, String cacheControl) {
+        revalidations++;
+        Entry e = index().get(url);
+        if(e == null) {
+            return 0;
+        }
+        bytesSaved += e.size;
+        if(cacheControl != null) {
+            e.expires = expiresFromCacheControl(cacheControl);
+        }
+        scheduleSave();
+        return e.size;
+    }
+
+    /**
+     * Invoked when a fresh response was served from the cache without going to the network
+     */
+    synchronized void freshHit(String url) {
+        hits++;
+        Entry e = index().get(url);
+        if(e != null) {
+            bytesSaved += e.size;
+            scheduleSave();
+        }
+    }
+    
+    /**
+     * Invoked when the body of the response was written to the cache file, this might trigger an eviction
+     */
+    synchronized void stored(String url, String fileName, int length) {
+        Entry e = index().get(url);
+        if(e == null) {
+            e = new Entry();
+            index.put(url, e);
+        }
+        size += length - e.size;
+        e.fileName = fileName;
+        e.size = length;
+        evict();
+        scheduleSave();
+    }
+    
+    private void evict() {
+        if(maxSize < 0 || size <= maxSize) {
+            return;
+        }
+        FileSystemStorage fs = FileSystemStorage.getInstance();
+        Iterator<Map.Entry<String, Entry>> i = index.entrySet().iterator();
+        // always keep the most recent entry even if it exceeds the limit on its own
+        while(size > maxSize && index.size() > 1 && i.hasNext()) {
+            Entry e = i.next().getValue();
+            i.remove();
+            size -= e.size;
+            if(e.fileName != null) {
+                fs.delete(e.fileName);
+            }
+        }
+    }
+    
+    static long expiresFromCacheControl(String cacheControl) {
+        if(cacheControl == null) {
+            return 0;
+        }
+        String c = cacheControl.toLowerCase();
+        if(c.indexOf("no-cache") > -1 || c.indexOf("no-store") > -1) {
+            return 0;
+        }
+        int pos = c.indexOf("max-age=");
+        if(pos < 0) {
+            return 0;
+        }
+        pos += 8;
+        int end = pos;
+        int len = c.length();
+        while(end < len && Character.isDigit(c.charAt(end))) {
+            end++;
+        }
+        if(end == pos) {
+            return 0;
+        }
+        try {
+            return System.currentTimeMillis() + Long.parseLong(c.substring(pos, end)) * 1000L;
+        } catch(NumberFormatException err) {
+            return 0;
+        }
+    }
+    
+    /**
+     * Removes the entry for the given URL from the index
+     */
+    synchronized void remove(String url) {
+        Entry e = index().remove(url);
+        if(e != null) {
+            size -= e.size;
+            scheduleSave();
+        }
+    }
+    
+    /**
+     * Clears the in memory index, invoked when the cache directory is purged
+     */
+    synchronized void clear() {
+        if(index != null) {
+            index.clear();
+        }
+        size = 0;
+    }
+    
+    /**
+     * Sets the maximum size in bytes of the cached responses, the least recently used responses are
+     * evicted when the cache grows beyond that size. 
+     * 
+     * @param maxSize the size in bytes or -1 for no limit (the default)
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        if(index != null) {
+            evict();
+            scheduleSave();
+        }
+    }
+
+    /**
+     * Returns the maximum size in bytes of the cached responses
+     * 
+     * @return the size in bytes or -1 for no limit
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+    
+    /**
+     * Returns the total size in bytes of the responses tracked by the cache
+     * 
+     * @return the size in bytes
+     */
+    public synchronized int getSize() {
+        index();
+        return size;
+    }
+
+    /**
+     * The number of requests that were served from the cache without contacting the server
+     * 
+     * @return the number of fresh hits
+     */
+    public int getHitCount() {
+        return hits;
+    }
+
+    /**
+     * The number of requests that were answered by the server with a 304 (not modified) response
+     * and served from the cache
+     * 
+     * @return the number of revalidated hits
+     */
+    public int getRevalidationCount() {
+        return revalidations;
+    }
+
+    /**
+     * The number of cacheable requests that resulted in a full response from the server
+     * 
+     * @return the number of misses
+     */
+    public int getMissCount() {
+        return misses;
+    }
+
+    /**
+     * The number of bytes that were served from the cache instead of being downloaded
+     * 
+     * @return the number of bytes
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+    
+    /**
+     * Resets the hit/miss statistics
+     */
+    public synchronized void resetStatistics() {
+        hits = 0;
+        revalidations = 0;
+        misses = 0;
+        bytesSaved = 0;
+    }
+}
@@ -154,19 +154,20 @@ public class JSONParser implements JSONParseCallback {
     private boolean strict = true;
     static class KeyStack extends Vector {
 		protected String peek() {
-			return (String)elementAt(0);
+			return (String)lastElement();
 		}
 
 		protected void push(String key) {
-			insertElementAt(key, 0);
+			addElement(key);
 		}
 		
 		protected String pop() {
 			if (isEmpty()) {
 				return null;
 			}
-			String key = peek();
-			removeElementAt(0);
+			int last = size() - 1;
+			String key = (String)elementAt(last);
+			removeElementAt(last);
 			return key;
 		}
 	};
@@ -220,13 +221,19 @@ public class JSONParser implements JSONParseCallback {
                         case '\\':
                             c = (char) rc.read(i);
                             if (c == 'u') {
-                                String unicode = "" + ((char) rc.read(i)) + ((char) rc.read(i)) + ((char) rc.read(i)) + ((char) rc.read(i));
-                                try {
-                                    c = (char) Integer.parseInt(unicode, 16);
-                                } catch (NumberFormatException err) {
-                                    // problem in parsing the u notation!
-                                    Log.e(err);
-                                    System.out.println("Error in parsing \\u" + unicode);
+                                int unicode = 0;
+                                for(int hex = 0 ; hex < 4 ; hex++) {
+                                    int h = Character.digit((char) rc.read(i), 16);
+                                    if(h < 0) {
+                                        // problem in parsing the u notation!
+                                        Log.p("Error in parsing \\u escape at row: " + row + " column: " + column);
+                                        unicode = -1;
+                                        break;
+                                    }
+                                    unicode = (unicode << 4) | h;
+                                }
+                                if(unicode > -1) {
+                                    c = (char) unicode;
                                 }
                             } else {
                                 switch(c) {
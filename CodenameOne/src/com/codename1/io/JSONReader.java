@@ -0,0 +1,877 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *  
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ * 
+ * Please contact Codename One through http://www.codenameone.com/ if you 
+ * need additional information or have any questions.
+ */
+package com.codename1.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * <p>Pull based JSON parser, unlike {@link JSONParser} which pushes events into a callback or builds
+ * a full {@code Map} tree this class lets the caller pull one token at a time. Token text is kept in 
+ * an internal reusable buffer and numbers can be read as primitives so large documents can be processed 
+ * without allocating intermediate objects. Values that aren't needed can be skipped with {@link #skipValue()}
+ * in which case their content isn't buffered at all.</p>
+ * 
+ * <p>The reader can work directly on an {@code InputStream} in which case the content is decoded as UTF-8 
+ * internally. A typical usage looks like this:</p>
+ * <pre>
+ * JSONReader r = new JSONReader(inputStream);
+ * r.nextToken(); // START_ARRAY
+ * while(r.hasNext()) {
+ *     r.nextToken(); // START_OBJECT
+ *     while(r.hasNext()) {
+ *         r.nextToken(); // NAME
+ *         if(r.textEquals("id")) {
+ *             int id = r.readInt();
+ *         } else if(r.textEquals("name")) {
+ *             String name = r.readString();
+ *         } else {
+ *             r.skipValue();
+ *         }
+ *     }
+ *     r.nextToken(); // END_OBJECT
+ * }
+ * r.close();
+ * </pre>
+ */
+public class JSONReader {
+    /**
+     * Token type indicating the start of an object {
+     */
+    public static final int START_OBJECT = 1;
+
+    /**
+     * Token type indicating the end of an object }
+     */
+    public static final int END_OBJECT = 2;
+
+    /**
+     * Token type indicating the start of an array [
+     */
+    public static final int START_ARRAY = 3;
+
+    /**
+     * Token type indicating the end of an array ]
+     */
+    public static final int END_ARRAY = 4;
+
+    /**
+     * Token type indicating the name of an object member, its value is the next token
+     */
+    public static final int NAME = 5;
+
+    /**
+     * Token type indicating a string value
+     */
+    public static final int STRING = 6;
+
+    /**
+     * Token type indicating a numeric value
+     */
+    public static final int NUMBER = 7;
+
+    /**
+     * Token type indicating a true or false value
+     */
+    public static final int BOOLEAN = 8;
+
+    /**
+     * Token type indicating a null value
+     */
+    public static final int NULL = 9;
+
+    /**
+     * Token type indicating the end of the input
+     */
+    public static final int END_DOCUMENT = 10;
+
+    private static final int SCOPE_EMPTY_DOCUMENT = 0;
+    private static final int SCOPE_NONEMPTY_DOCUMENT = 1;
+    private static final int SCOPE_EMPTY_OBJECT = 2;
+    private static final int SCOPE_NONEMPTY_OBJECT = 3;
+    private static final int SCOPE_DANGLING_NAME = 4;
+    private static final int SCOPE_EMPTY_ARRAY = 5;
+    private static final int SCOPE_NONEMPTY_ARRAY = 6;
+
+    private Reader reader;
+    private InputStream input;
+    private byte[] bytes;
+    private int bytePos;
+    private int byteLimit;
+    
+    private final char[] buffer = new char[8192];
+    private int pos;
+    private int limit;
+    private int line = 1;
+    
+    private char[] text = new char[64];
+    private int textLength;
+    private boolean booleanValue;
+    private boolean skipping;
+    
+    private int[] stack = new int[32];
+    private int stackSize = 1;
+    private int token;
+    private int peeked = -1;
+
+    /**
+     * Creates a reader for the given character stream
+     * 
+     * @param reader the source of the JSON
+     */
+    public JSONReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Creates a reader for the given UTF-8 encoded stream, decoding is performed internally 
+     * without an intermediate reader
+     * 
+     * @param input the source of the JSON
+     */
+    public JSONReader(InputStream input) {
+        this.input = input;
+        bytes = new byte[8192];
+    }
+    
+    /**
+     * Returns the type of the next token without consuming it
+     * 
+     * @return one of the token type constants
+     * @throws IOException if thrown by the underlying stream or in case of malformed JSON
+     */
+    public int peek() throws IOException {
+        if(peeked < 0) {
+            peeked = doPeek();
+        }
+        return peeked;
+    }
+
+    /**
+     * Moves to the next token and returns its type, the text of the token is available via
+     * {@link #getText()} or {@link #getTextCharacters()} until the next call
+     * 
+     * @return one of the token type constants
+     * @throws IOException if thrown by the underlying stream or in case of malformed JSON
+     */
+    public int nextToken() throws IOException {
+        int t = peek();
+        peeked = -1;
+        switch(t) {
+            case START_OBJECT:
+                push(SCOPE_EMPTY_OBJECT);
+                break;
+            case START_ARRAY:
+                push(SCOPE_EMPTY_ARRAY);
+                break;
+            case END_OBJECT:
+            case END_ARRAY:
+                stackSize--;
+                break;
+        }
+        token = t;
+        return t;
+    }
+    
+    /**
+     * Returns the type of the current token i.e. the value last returned by {@link #nextToken()}
+     * 
+     * @return one of the token type constants or 0 if parsing didn't start
+     */
+    public int getToken() {
+        return token;
+    }
+
+    /**
+     * Returns true if the current object or array has more elements
+     * 
+     * @return false if the next token ends the current object/array or the document
+     * @throws IOException if thrown by the underlying stream or in case of malformed JSON
+     */
+    public boolean hasNext() throws IOException {
+        int t = peek();
+        return t != END_OBJECT && t != END_ARRAY && t != END_DOCUMENT;
+    }
+    
+    /**
+     * Returns the nesting depth of the current position, 0 at the top level
+     * 
+     * @return the depth
+     */
+    public int getDepth() {
+        return stackSize - 1;
+    }
+    
+    /**
+     * Returns the current line number, useful for error messages
+     * 
+     * @return the line number starting at 1
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Skips the next value including all of its nested content without buffering it. If the next token
+     * is the name of an object member both the name and its value are skipped.
+     * 
+     * @throws IOException if thrown by the underlying stream or in case of malformed JSON
+     */
+    public void skipValue() throws IOException {
+        skipping = true;
+        try {
+            if(peek() == NAME) {
+                nextToken();
+            }
+            int depth = 0;
+            do {
+                switch(nextToken()) {
+                    case START_OBJECT:
+                    case START_ARRAY:
+                        depth++;
+                        break;
+                    case END_OBJECT:
+                    case END_ARRAY:
+                        depth--;
+                        break;
+                    case END_DOCUMENT:
+                        return;
+                }
+            } while(depth > 0);
+        } finally {
+            skipping = false;
+        }
+        textLength = 0;
+    }
+    
+    /**
+     * Returns the internal buffer containing the text of the current NAME, STRING or NUMBER token, 
+     * only the first {@link #getTextLength()} characters are valid. The buffer is reused for the next 
+     * token and must not be modified.
+     * 
+     * @return the internal buffer
+     */
+    public char[] getTextCharacters() {
+        return text;
+    }
+
+    /**
+     * Returns the length of the text within {@link #getTextCharacters()}
+     * 
+     * @return the number of valid characters
+     */
+    public int getTextLength() {
+        return textLength;
+    }
+
+    /**
+     * Returns the text of the current token as a String
+     * 
+     * @return the text of a NAME, STRING or NUMBER token, "true"/"false" for a boolean and null otherwise
+     */
+    public String getText() {
+        switch(token) {
+            case NAME:
+            case STRING:
+            case NUMBER:
+                return new String(text, 0, textLength);
+            case BOOLEAN:
+                return booleanValue ? "true" : "false";
+        }
+        return null;
+    }
+    
+    /**
+     * Compares the text of the current token to the given string without allocating, this is 
+     * useful for matching member names
+     * 
+     * @param s the string to compare to
+     * @return true if the text of the current token equals the string
+     */
+    public boolean textEquals(String s) {
+        int len = s.length();
+        if(len != textLength) {
+            return false;
+        }
+        char[] t = text;
+        for(int iter = 0 ; iter < len ; iter++) {
+            if(t[iter] != s.charAt(iter)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the value of the current BOOLEAN token
+     * 
+     * @return the boolean value
+     */
+    public boolean getBoolean() {
+        return booleanValue;
+    }
+    
+    /**
+     * Returns the value of the current NUMBER or STRING token as a long, integral values are parsed exactly
+     * and only fractions or exponents are converted thru a double
+     * 
+     * @return the numeric value
+     * @throws NumberFormatException if the text isn't a number or is out of the range of a long
+     */
+    public long getLong() {
+        char[] t = text;
+        int len = textLength;
+        if(len == 0) {
+            throw new NumberFormatException("Empty number");
+        }
+        int iter = 0;
+        boolean negative = t[0] == '-';
+        if(negative) {
+            iter = 1;
+        }
+        if(iter == len) {
+            return (long)getDouble();
+        }
+        if(len < 19) {
+            // can't overflow, parse in place without allocating a string
+            long result = 0;
+            for(; iter < len ; iter++) {
+                char c = t[iter];
+                if(c < '0' || c > '9') {
+                    return (long)getDouble();
+                }
+                result = result * 10 + (c - '0');
+            }
+            return negative ? -result : result;
+        }
+        for(; iter < len ; iter++) {
+            char c = t[iter];
+            if(c < '0' || c > '9') {
+                return (long)getDouble();
+            }
+        }
+        return Long.parseLong(new String(t, 0, len));
+    }
+    
+    /**
+     * Returns the value of the current NUMBER or STRING token as an int 
+     * 
+     * @return the numeric value
+     * @throws NumberFormatException if the text isn't a number
+     */
+    public int getInt() {
+        return (int)getLong();
+    }
+
+    /**
+     * Returns the value of the current NUMBER or STRING token as a double 
+     * 
+     * @return the numeric value
+     * @throws NumberFormatException if the text isn't a number
+     */
+    public double getDouble() {
+        return Double.parseDouble(new String(text, 0, textLength));
+    }
+
+    /**
+     * Moves to the next token which must be a member name and returns it
+     * 
+     * @return the name
+     * @throws IOException if the next token isn't a name
+     */
+    public String readName() throws IOException {
+        expect(NAME);
+        return new String(text, 0, textLength);
+    }
+    
+    /**
+     * Moves to the next token which must be a string, number, boolean or null and returns its value as a String
+     * 
+     * @return the value or null for a JSON null
+     * @throws IOException if the next token isn't a primitive value
+     */
+    public String readString() throws IOException {
+        int t = nextToken();
+        switch(t) {
+            case STRING:
+            case NUMBER:
+            case BOOLEAN:
+                return getText();
+            case NULL:
+                return null;
+        }
+        throw syntaxError("Expected a string value but found " + tokenName(t));
+    }
+
+    /**
+     * Moves to the next token which must be a number (or a string containing a number) and returns it
+     * 
+     * @return the value
+     * @throws IOException if the next token isn't a number
+     */
+    public int readInt() throws IOException {
+        return (int)readLong();
+    }
+
+    /**
+     * Moves to the next token which must be a number (or a string containing a number) and returns it
+     * 
+     * @return the value
+     * @throws IOException if the next token isn't a number
+     */
+    public long readLong() throws IOException {
+        expectNumber();
+        try {
+            return getLong();
+        } catch(NumberFormatException err) {
+            throw syntaxError("Expected a number but found " + getText());
+        }
+    }
+
+    /**
+     * Moves to the next token which must be a number (or a string containing a number) and returns it
+     * 
+     * @return the value
+     * @throws IOException if the next token isn't a number
+     */
+    public double readDouble() throws IOException {
+        expectNumber();
+        try {
+            return getDouble();
+        } catch(NumberFormatException err) {
+            throw syntaxError("Expected a number but found " + getText());
+        }
+    }
+
+    /**
+     * Moves to the next token which must be a boolean and returns it
+     * 
+     * @return the value
+     * @throws IOException if the next token isn't a boolean
+     */
+    public boolean readBoolean() throws IOException {
+        expect(BOOLEAN);
+        return booleanValue;
+    }
+    
+    /**
+     * Closes the underlying stream
+     * 
+     * @throws IOException if thrown by the stream
+     */
+    public void close() throws IOException {
+        if(reader != null) {
+            reader.close();
+        }
+        if(input != null) {
+            input.close();
+        }
+    }
+
+    private void expect(int type) throws IOException {
+        int t = nextToken();
+        if(t != type) {
+            throw syntaxError("Expected " + tokenName(type) + " but found " + tokenName(t));
+        }
+    }
+    
+    private void expectNumber() throws IOException {
+        int t = nextToken();
+        if(t != NUMBER && t != STRING) {
+            throw syntaxError("Expected a number but found " + tokenName(t));
+        }
+    }
+    
+    private static String tokenName(int t) {
+        switch(t) {
+            case START_OBJECT:
+                return "START_OBJECT";
+            case END_OBJECT:
+                return "END_OBJECT";
+            case START_ARRAY:
+                return "START_ARRAY";
+            case END_ARRAY:
+                return "END_ARRAY";
+            case NAME:
+                return "NAME";
+            case STRING:
+                return "STRING";
+            case NUMBER:
+                return "NUMBER";
+            case BOOLEAN:
+                return "BOOLEAN";
+            case NULL:
+                return "NULL";
+            case END_DOCUMENT:
+                return "END_DOCUMENT";
+        }
+        return "UNKNOWN";
+    }
+    
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at line " + line);
+    }
+
+    private void push(int scope) {
+        if(stackSize == stack.length) {
+            int[] n = new int[stackSize * 2];
+            System.arraycopy(stack, 0, n, 0, stackSize);
+            stack = n;
+        }
+        stack[stackSize] = scope;
+        stackSize++;
+    }
+    
+    private int doPeek() throws IOException {
+        int top = stackSize - 1;
+        int scope = stack[top];
+        int c;
+        switch(scope) {
+            case SCOPE_EMPTY_ARRAY:
+                stack[top] = SCOPE_NONEMPTY_ARRAY;
+                break;
+            case SCOPE_NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if(c == ']') {
+                    return END_ARRAY;
+                }
+                if(c != ',') {
+                    throw syntaxError("Unterminated array");
+                }
+                break;
+            case SCOPE_EMPTY_OBJECT:
+            case SCOPE_NONEMPTY_OBJECT:
+                stack[top] = SCOPE_DANGLING_NAME;
+                if(scope == SCOPE_NONEMPTY_OBJECT) {
+                    c = nextNonWhitespace();
+                    if(c == '}') {
+                        return END_OBJECT;
+                    }
+                    if(c != ',') {
+                        throw syntaxError("Unterminated object");
+                    }
+                }
+                c = nextNonWhitespace();
+                if(c == '"') {
+                    readQuoted();
+                    return NAME;
+                }
+                if(c == '}' && scope == SCOPE_EMPTY_OBJECT) {
+                    return END_OBJECT;
+                }
+                throw syntaxError("Expected a name");
+            case SCOPE_DANGLING_NAME:
+                stack[top] = SCOPE_NONEMPTY_OBJECT;
+                if(nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                break;
+            case SCOPE_EMPTY_DOCUMENT:
+                stack[top] = SCOPE_NONEMPTY_DOCUMENT;
+                break;
+            default:
+                c = nextNonWhitespace();
+                if(c < 0) {
+                    return END_DOCUMENT;
+                }
+                // multiple top level values
+                pos--;
+                break;
+        }
+        
+        c = nextNonWhitespace();
+        switch(c) {
+            case -1:
+                if(scope == SCOPE_EMPTY_DOCUMENT) {
+                    return END_DOCUMENT;
+                }
+                throw syntaxError("Unexpected end of input");
+            case ']':
+                if(scope == SCOPE_EMPTY_ARRAY) {
+                    return END_ARRAY;
+                }
+                throw syntaxError("Unexpected ]");
+            case '{':
+                return START_OBJECT;
+            case '[':
+                return START_ARRAY;
+            case '"':
+                readQuoted();
+                return STRING;
+            case 't':
+                readLiteral("rue");
+                booleanValue = true;
+                return BOOLEAN;
+            case 'f':
+                readLiteral("alse");
+                booleanValue = false;
+                return BOOLEAN;
+            case 'n':
+                readLiteral("ull");
+                return NULL;
+        }
+        if((c >= '0' && c <= '9') || c == '-') {
+            readNumber((char)c);
+            return NUMBER;
+        }
+        throw syntaxError("Unexpected character '" + (char)c + "'");
+    }
+    
+    private void readLiteral(String rest) throws IOException {
+        int len = rest.length();
+        for(int iter = 0 ; iter < len ; iter++) {
+            if(read() != rest.charAt(iter)) {
+                throw syntaxError("Unexpected literal");
+            }
+        }
+    }
+    
+    private void readNumber(char first) throws IOException {
+        textLength = 0;
+        append(first);
+        while(true) {
+            int c = read();
+            switch(c) {
+                case '0':
+                case '1':
+                case '2':
+                case '3':
+                case '4':
+                case '5':
+                case '6':
+                case '7':
+                case '8':
+                case '9':
+                case '-':
+                case '+':
+                case '.':
+                case 'e':
+                case 'E':
+                    append((char)c);
+                    continue;
+            }
+            if(c > -1) {
+                pos--;
+            }
+            return;
+        }
+    }
+    
+    private void readQuoted() throws IOException {
+        textLength = 0;
+        while(true) {
+            // fast path for unescaped characters directly from the buffer
+            char[] b = buffer;
+            int p = pos;
+            int l = limit;
+            while(p < l) {
+                char c = b[p];
+                if(c == '"') {
+                    appendRange(b, pos, p);
+                    pos = p + 1;
+                    return;
+                }
+                if(c == '\\') {
+                    break;
+                }
+                if(c == '\n') {
+                    line++;
+                }
+                p++;
+            }
+            appendRange(b, pos, p);
+            pos = p;
+            int c = read();
+            if(c < 0) {
+                throw syntaxError("Unterminated string");
+            }
+            if(c == '\\') {
+                append(readEscape());
+            } else if(c == '"') {
+                return;
+            } else {
+                append((char)c);
+            }
+        }
+    }
+    
+    private char readEscape() throws IOException {
+        int c = read();
+        switch(c) {
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case 'r':
+                return '\r';
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'u':
+                int value = 0;
+                for(int iter = 0 ; iter < 4 ; iter++) {
+                    int h = read();
+                    if(h >= '0' && h <= '9') {
+                        value = (value << 4) + (h - '0');
+                    } else if(h >= 'a' && h <= 'f') {
+                        value = (value << 4) + (h - 'a' + 10);
+                    } else if(h >= 'A' && h <= 'F') {
+                        value = (value << 4) + (h - 'A' + 10);
+                    } else {
+                        throw syntaxError("Malformed \\u escape");
+                    }
+                }
+                return (char)value;
+            case -1:
+                throw syntaxError("Unterminated escape");
+        }
+        return (char)c;
+    }
+    
+    private void append(char c) {
+        if(skipping) {
+            return;
+        }
+        if(textLength == text.length) {
+            char[] n = new char[textLength * 2];
+            System.arraycopy(text, 0, n, 0, textLength);
+            text = n;
+        }
+        text[textLength] = c;
+        textLength++;
+    }
+    
+    private void appendRange(char[] b, int start, int end) {
+        int len = end - start;
+        if(skipping || len <= 0) {
+            return;
+        }
+        if(textLength + len > text.length) {
+            char[] n = new char[Math.max(text.length * 2, textLength + len)];
+            System.arraycopy(text, 0, n, 0, textLength);
+            text = n;
+        }
+        System.arraycopy(b, start, text, textLength, len);
+        textLength += len;
+    }
+    
+    private int nextNonWhitespace() throws IOException {
+        while(true) {
+            int c = read();
+            switch(c) {
+                case '\n':
+                    line++;
+                    continue;
+                case ' ':
+                case '\r':
+                case '\t':
+                    continue;
+                case '\uFEFF':
+                    // byte order mark
+                    continue;
+            }
+            return c;
+        }
+    }
+    
+    private int read() throws IOException {
+        if(pos >= limit) {
+            if(!fill()) {
+                return -1;
+            }
+        }
+        return buffer[pos++];
+    }
+    
+    private boolean fill() throws IOException {
+        pos = 0;
+        if(reader != null) {
+            int n = reader.read(buffer, 0, buffer.length);
+            limit = Math.max(n, 0);
+            return n > 0;
+        }
+        limit = decode();
+        return limit > 0;
+    }
+    
+    private int readByte() throws IOException {
+        if(bytePos >= byteLimit) {
+            byteLimit = input.read(bytes, 0, bytes.length);
+            bytePos = 0;
+            if(byteLimit <= 0) {
+                byteLimit = 0;
+                return -1;
+            }
+        }
+        return bytes[bytePos++] & 0xff;
+    }
+    
+    /**
+     * Decodes UTF-8 bytes into the char buffer, we only block for more bytes when we have nothing
+     * to return or when we are in the middle of a multi byte sequence
+     */
+    private int decode() throws IOException {
+        char[] b = buffer;
+        // leave room for a surrogate pair
+        int max = b.length - 1;
+        int count = 0;
+        while(count < max) {
+            if(count > 0 && bytePos >= byteLimit) {
+                break;
+            }
+            int c = readByte();
+            if(c < 0) {
+                break;
+            }
+            if(c < 0x80) {
+                b[count++] = (char)c;
+                continue;
+            }
+            if((c & 0xe0) == 0xc0) {
+                b[count++] = (char)(((c & 0x1f) << 6) | (readByte() & 0x3f));
+                continue;
+            }
+            if((c & 0xf0) == 0xe0) {
+                int c2 = readByte();
+                int c3 = readByte();
+                b[count++] = (char)(((c & 0x0f) << 12) | ((c2 & 0x3f) << 6) | (c3 & 0x3f));
+                continue;
+            }
+            if((c & 0xf8) == 0xf0) {
+                int c2 = readByte();
+                int c3 = readByte();
+                int c4 = readByte();
+                int codePoint = ((c & 0x07) << 18) | ((c2 & 0x3f) << 12) | ((c3 & 0x3f) << 6) | (c4 & 0x3f);
+                codePoint -= 0x10000;
+                b[count++] = (char)(0xd800 + (codePoint >> 10));
+                b[count++] = (char)(0xdc00 + (codePoint & 0x3ff));
+                continue;
+            }
+            // malformed input
+            b[count++] = '\uFFFD';
+        }
+        return count;
+    }
+}
@@ -53,6 +53,12 @@ public class NetworkEvent extends ActionEvent {
      */
     public static final int PROGRESS_TYPE_COMPLETED = 4;
 
+    /**
+     * Indicates that the response was served from the {@link HttpCache}, the sent/received value 
+     * contains the number of bytes served from the cache
+     */
+    public static final int PROGRESS_TYPE_CACHE_HIT = 5;
+
     private Exception error;
     private int progressType;
     private int length = -1;
@@ -137,7 +143,7 @@ public class NetworkEvent extends ActionEvent {
      * Indicates the type of progres indication for this event
      *
      * @return One of PROGRESS_TYPE_COMPLETED, PROGRESS_TYPE_INITIALIZING, PROGRESS_TYPE_INPUT,
-     * PROGRESS_TYPE_OUTPUT
+     * PROGRESS_TYPE_OUTPUT, PROGRESS_TYPE_CACHE_HIT
      */
     public int getProgressType() {
         return progressType;
@@ -34,6 +34,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Vector;
@@ -84,6 +86,18 @@ public class NetworkManager {
     public static final int ACCESS_POINT_TYPE_CORPORATE = 6;
 
     private static final Object LOCK = new Object();
+
+    /**
+     * The longest time an idle network thread waits before checking the queue again, this only
+     * matters if a notification is missed
+     */
+    private static final int MAX_IDLE_WAIT = 2000;
+
+    /**
+     * The orders of the requests are split into one band per priority, requests inserted at the
+     * head of the queue use the lowest band
+     */
+    private static final long ORDER_BAND = 1L << 40;
     private static final NetworkManager INSTANCE = new NetworkManager();
 
     /**
@@ -102,7 +116,9 @@ public class NetworkManager {
         autoDetectURL = aAutoDetectURL;
     }
     
-    private Vector pending = new Vector();
+    private Hashtable pending = new Hashtable();
+    private int pendingCount;
+    private long queueSequence;
     private boolean running;
     private int threadCount = 1;
     private NetworkThread[] networkThreads;
@@ -114,6 +130,8 @@ public class NetworkManager {
     private boolean autoDetected;
     private static String autoDetectURL = "https://www.google.com/";
     private int nextConnectionId=1;
+    private int maxConnectionsPerHost;
+    private Hashtable hostConnections = new Hashtable();
     
     private NetworkManager() {
     }
@@ -213,8 +231,34 @@ public class NetworkManager {
         start();
     }
 
+    /**
+     * Limits the number of requests to a single host that can be processed concurrently
+     * by the network threads. When the limit is reached for a given host, idle network threads
+     * skip the requests for that host and pick up the next request in the queue that targets a
+     * different host. This only has an effect when the thread count is larger than 1.
+     *
+     * @param maxConnectionsPerHost the maximum number of concurrent requests per host, 0 or less
+     * means no limit (the default)
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        synchronized(LOCK) {
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+            LOCK.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the maximum number of requests to a single host that can be processed concurrently
+     *
+     * @return the limit or 0 or less if there is no limit
+     */
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
     class NetworkThread implements Runnable {
         private ConnectionRequest currentRequest;
+        private String currentHost;
         private Thread threadInstance;
         boolean stopped = false;
 
@@ -250,58 +294,48 @@ public class NetworkManager {
         public void run() {
             threadInstance = Thread.currentThread();
             while(running && !stopped) {
-                if(pending.size() > 0) {
+                if(pendingCount > 0) {
                     // the synchronization here isn't essential, only for good measure
                     synchronized(LOCK) {
-                        //double lock to prevent a potential exception
-                        if(pending.size() == 0){
+                        PendingRequest next = nextPending(this);
+                        if(next == null) {
+                            // everything pending is either assigned to a different thread or
+                            // blocked by the per host limit, we will be notified when a request
+                            // completes or a new request is added
+                            try {
+                                LOCK.wait(MAX_IDLE_WAIT);
+                            } catch (InterruptedException ex) {
+                                ex.printStackTrace();
+                            }
                             continue;
                         }
-                        currentRequest = (ConnectionRequest)pending.elementAt(0);
-                        pending.removeElementAt(0);
+                        currentRequest = next.request;
                         currentRequest.prepare();
                         if(currentRequest.isKilled()){
+                            currentRequest = null;
                             continue;
                         }
                         currentRequest.setId(nextConnectionId++);
                         if (nextConnectionId > 2000000000) {
                             nextConnectionId = 1;
                         }
-                    }
-                    if(userHeaders != null) {
-                        Enumeration e = userHeaders.keys();
-                        while(e.hasMoreElements()) {
-                            String key = (String)e.nextElement();
-                            String value = (String)userHeaders.get(key);
-                            currentRequest.addRequestHeaderDontRepleace(key, value);
-                        }
-                    }
-                    if(threadAssignements.size() > 0) {
-                        String n = currentRequest.getClass().getName();
-                        Integer threadOffset = (Integer)threadAssignements.get(n);
-                        NetworkThread[] networkThreads = NetworkManager.this.networkThreads;
-                        if(networkThreads == null) {
-                            return;
-                        }
-                        if(threadOffset != null && networkThreads[threadOffset.intValue()] != this) {
-                            synchronized(LOCK) {
-                                if(pending.size() > 0) {
-                                    pending.insertElementAt(currentRequest, 1);
-                                    continue;
-                                }
-                                pending.addElement(currentRequest);
-                                LOCK.notify();
-                                try {
-                                    LOCK.wait(30);
-                                } catch (InterruptedException ex) {
-                                    ex.printStackTrace();
-                                }
-                            }
+                        if(maxConnectionsPerHost > 0) {
+                            currentHost = next.host;
+                            acquireHost(currentHost);
                         }
                     }
 
                     int frameRate = -1;
                     try {
+                        if(userHeaders != null) {
+                            Enumeration e = userHeaders.keys();
+                            while(e.hasMoreElements()) {
+                                String key = (String)e.nextElement();
+                                String value = (String)userHeaders.get(key);
+                                currentRequest.addRequestHeaderDontRepleace(key, value);
+                            }
+                        }
+
                         // for higher priority tasks increase the thread priority, for lower
                         // prioirty tasks decrease it. In critical priority reduce the Codename One
                         // rendering thread speed for even faster download
@@ -351,6 +385,9 @@ public class NetworkManager {
                             Log.e(er);
                         }
                     } finally {
+                        // the slot is released even if the request failed with an error or the
+                        // completion callbacks below throw
+                        releaseHost(this);
                         Thread.currentThread().setPriority(Thread.NORM_PRIORITY);
                         if(frameRate > -1) {
                             Display.getInstance().setFramerate(frameRate);
@@ -385,8 +422,8 @@ public class NetworkManager {
                             // prevent waiting when there is still a pending request
                             // this can occur with a race condition since the synchronize
                             // scope is limited to prevent blocking on add...
-                            if(pending.size() == 0) {
-                                LOCK.wait();
+                            if(pendingCount == 0) {
+                                LOCK.wait(MAX_IDLE_WAIT);
                             }
                         } catch (InterruptedException ex) {
                             ex.printStackTrace();
@@ -412,6 +449,21 @@ public class NetworkManager {
         }
     }
 
+    /**
+     * A request waiting in the queue together with the host it was queued for and its position
+     */
+    static class PendingRequest {
+        final ConnectionRequest request;
+        final String host;
+        final long order;
+
+        PendingRequest(ConnectionRequest request, String host, long order) {
+            this.request = request;
+            this.host = host;
+            this.order = order;
+        }
+    }
+
     private NetworkThread createNetworkThread() {
         return new NetworkThread();
     }
@@ -597,15 +649,172 @@ public class NetworkManager {
         return INSTANCE;
     }
 
-    private void addSortedToQueue(ConnectionRequest request, int priority) {
-        for(int iter = 0 ; iter < pending.size() ; iter++) {
-            ConnectionRequest r = (ConnectionRequest)pending.elementAt(iter);
-            if(r.getPriority() < priority) {
-                pending.insertElementAt(request, iter);
+    /**
+     * Removes and returns the first request in the queue that the given thread may process
+     * or null if there is no such request. Must be invoked while holding the lock.
+     * Only the heads of the host buckets are compared, a bucket is only searched past its head
+     * when requests are assigned to threads
+     */
+    private PendingRequest nextPending(NetworkThread t) {
+        if(pendingCount == 0) {
+            return null;
+        }
+        NetworkThread[] threads = networkThreads;
+        boolean checkAssignments = threads != null && threadAssignements.size() > 0;
+        PendingRequest best = null;
+        Vector bestBucket = null;
+        int bestOffset = -1;
+        Enumeration hosts = pending.keys();
+        while(hosts.hasMoreElements()) {
+            String host = (String)hosts.nextElement();
+            if(maxConnectionsPerHost > 0) {
+                Integer count = (Integer)hostConnections.get(host);
+                if(count != null && count.intValue() >= maxConnectionsPerHost) {
+                    continue;
+                }
+            }
+            Vector bucket = (Vector)pending.get(host);
+            int size = bucket.size();
+            for(int iter = 0 ; iter < size ; iter++) {
+                PendingRequest p = (PendingRequest)bucket.elementAt(iter);
+                if(best != null && p.order > best.order) {
+                    break;
+                }
+                if(checkAssignments) {
+                    Integer threadOffset = (Integer)threadAssignements.get(p.request.getClass().getName());
+                    if(threadOffset != null && threadOffset.intValue() < threads.length && threads[threadOffset.intValue()] != t) {
+                        continue;
+                    }
+                }
+                best = p;
+                bestBucket = bucket;
+                bestOffset = iter;
+                break;
+            }
+        }
+        if(best != null) {
+            bestBucket.removeElementAt(bestOffset);
+            if(bestBucket.size() == 0) {
+                pending.remove(best.host);
+            }
+            pendingCount--;
+        }
+        return best;
+    }
+
+    /**
+     * Adds the request to the bucket of its host, the buckets are sorted by the order of the requests.
+     * Must be invoked while holding the lock.
+     */
+    private void enqueue(ConnectionRequest request, long order) {
+        PendingRequest p = new PendingRequest(request, getHost(request.getUrl()), order);
+        Vector bucket = (Vector)pending.get(p.host);
+        if(bucket == null) {
+            bucket = new Vector();
+            pending.put(p.host, bucket);
+        }
+        // requests are usually added behind the requests of the same priority so the search
+        // starts from the end
+        int offset = bucket.size();
+        while(offset > 0 && ((PendingRequest)bucket.elementAt(offset - 1)).order > order) {
+            offset--;
+        }
+        bucket.insertElementAt(p, offset);
+        pendingCount++;
+    }
+
+    /**
+     * Returns an order that places a request behind all the pending requests of the same or a higher priority
+     */
+    private long tailOrder(int priority) {
+        return (ConnectionRequest.PRIORITY_CRITICAL - priority + 1) * ORDER_BAND + (queueSequence++);
+    }
+
+    /**
+     * Returns an order that places a request in front of all the pending requests
+     */
+    private long headOrder() {
+        return ORDER_BAND - 1 - (queueSequence++);
+    }
+
+    private boolean isPending(ConnectionRequest request) {
+        Vector bucket = (Vector)pending.get(getHost(request.getUrl()));
+        if(bucket != null) {
+            int size = bucket.size();
+            for(int iter = 0 ; iter < size ; iter++) {
+                if(((PendingRequest)bucket.elementAt(iter)).request.equals(request)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void acquireHost(String host) {
+        Integer count = (Integer)hostConnections.get(host);
+        if(count == null) {
+            hostConnections.put(host, new Integer(1));
+        } else {
+            hostConnections.put(host, new Integer(count.intValue() + 1));
+        }
+    }
+
+    /**
+     * Releases the host slot held by the given thread if it holds one
+     */
+    private void releaseHost(NetworkThread t) {
+        synchronized(LOCK) {
+            String host = t.currentHost;
+            if(host == null) {
                 return;
             }
+            t.currentHost = null;
+            Integer count = (Integer)hostConnections.get(host);
+            if(count != null) {
+                if(count.intValue() <= 1) {
+                    hostConnections.remove(host);
+                } else {
+                    hostConnections.put(host, new Integer(count.intValue() - 1));
+                }
+            }
+            LOCK.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the number of requests to the given host that are currently processed, this is only
+     * tracked while a per host limit is set
+     */
+    int getActiveConnections(String host) {
+        synchronized(LOCK) {
+            Integer count = (Integer)hostConnections.get(host);
+            return count == null ? 0 : count.intValue();
+        }
+    }
+
+    /**
+     * Extracts the host portion of the URL for the purpose of the per host limit
+     */
+    static String getHost(String url) {
+        if(url == null) {
+            return "";
+        }
+        int start = url.indexOf("://");
+        if(start < 0) {
+            start = 0;
+        } else {
+            start += 3;
         }
-        pending.addElement(request);
+        int end = url.length();
+        int len = end;
+        for(int iter = start ; iter < len ; iter++) {
+            char c = url.charAt(iter);
+            if(c == '/' || c == '?' || c == '#') {
+                end = iter;
+                break;
+            }
+        }
+        return url.substring(start, end).toLowerCase();
     }
 
     /**
@@ -719,6 +928,8 @@ public class NetworkManager {
                         if(networkThreads[iter].currentRequest == request) {
                             networkThreads[iter].interrupt();
                             networkThreads[iter].stopped = true;
+                            // the interrupted thread might never return from the request
+                            releaseHost(networkThreads[iter]);
                             networkThreads[iter] = createNetworkThread();
                             networkThreads[iter].start();
                         }
@@ -753,7 +964,7 @@ public class NetworkManager {
             int i = request.getPriority();
             if(!retry) {
                 if(!request.isDuplicateSupported()) {
-                    if(pending.contains(request)) {
+                    if(isPending(request)) {
                         System.out.println("Duplicate entry in the queue: " + request.getClass().getName() + ": " + request);
                         return;
                     }
@@ -768,25 +979,28 @@ public class NetworkManager {
             }
             switch(i) {
                 case ConnectionRequest.PRIORITY_CRITICAL:
-                    pending.insertElementAt(request, 0);
                     ConnectionRequest currentRequest = networkThreads[0].getCurrentRequest();
                     if(currentRequest != null && currentRequest.getPriority() < ConnectionRequest.PRIORITY_CRITICAL) {
                         if(currentRequest.isPausable()) {
                             currentRequest.pause();
-                            pending.insertElementAt(currentRequest, 1);
+                            // the paused request goes right behind the critical request
+                            enqueue(currentRequest, headOrder());
                         } else {
                             currentRequest.kill();
                         }
                     }
+                    enqueue(request, headOrder());
                     break;
                 case ConnectionRequest.PRIORITY_HIGH:
                 case ConnectionRequest.PRIORITY_NORMAL:
                 case ConnectionRequest.PRIORITY_LOW:
                 case ConnectionRequest.PRIORITY_REDUNDANT:
-                    addSortedToQueue(request, i);
+                    enqueue(request, tailOrder(i));
                     break;
             }
-            LOCK.notify();
+            // a thread that is woken up might not be eligible to process this request
+            // (thread assignment or host limit) so we need to wake all of them
+            LOCK.notifyAll();
         }
     }
 
@@ -881,6 +1095,9 @@ public class NetworkManager {
      */
     public void assignToThread(Class requestType, int offset) {
         threadAssignements.put(requestType.getName(), new Integer(offset));
+        synchronized(LOCK) {
+            LOCK.notifyAll();
+        }
     }
 
     /**
@@ -888,13 +1105,26 @@ public class NetworkManager {
      * @return the queue elements
      */
     public Enumeration enumurateQueue(){
-        Vector elements = new Vector();
+        ArrayList<PendingRequest> all = new ArrayList<PendingRequest>();
         synchronized(LOCK) {
             Enumeration e = pending.elements();
             while(e.hasMoreElements()){
-                elements.addElement(e.nextElement());
+                Vector bucket = (Vector)e.nextElement();
+                int size = bucket.size();
+                for(int iter = 0 ; iter < size ; iter++) {
+                    all.add((PendingRequest)bucket.elementAt(iter));
+                }
             }
         }
+        Collections.sort(all, new Comparator<PendingRequest>() {
+            public int compare(PendingRequest a, PendingRequest b) {
+                return a.order < b.order ? -1 : (a.order == b.order ? 0 : 1);
+            }
+        });
+        Vector elements = new Vector();
+        for(PendingRequest p : all) {
+            elements.addElement(p.request);
+        }
         return elements.elements();
     }
     
@@ -907,7 +1137,7 @@ public class NetworkManager {
         return pending == null || 
                 networkThreads == null || 
                 networkThreads[0] == null || 
-                (pending.size() == 0 && networkThreads[0].getCurrentRequest() == null);
+                (pendingCount == 0 && networkThreads[0].getCurrentRequest() == null);
     }
     
     /**
@@ -22,6 +22,10 @@
  */
 package com.codename1.io;
 
+import com.codename1.ui.Display;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.ArrayList;
@@ -44,6 +48,14 @@ import java.util.Set;
  * {@code Integer}. <br>
  * The workaround is to remain consistent and use code like this {@code Preferences.get("primitiveLongValue", (long)0)}.
  * </p>
+ * 
+ * <p>
+ * By default every change rewrites the whole preferences file. When a large number of values is written in a short
+ * period (e.g. the HTTP cache headers stored by {@link ConnectionRequest}) you can enable
+ * {@link #setWriteBehind(boolean)}. In that mode changes are applied in memory immediately and written
+ * in the background as small incremental log entries that are periodically compacted back into the
+ * preferences file. Invoke {@link #flush()} before the application exits to make sure nothing is lost.
+ * </p>
  *
  * @author Shai Almog
  * @author Miguel Mu\u00f1oz
@@ -52,6 +64,23 @@ public class Preferences {
     private static Hashtable<String, Object> p;
     private static final HashMap<String, ArrayList<PreferenceListener>> listenerMap = new HashMap<String, ArrayList<PreferenceListener>>();
     private static String preferencesLocation = "CN1Preferences";
+    private static final String GENERATION_KEY = "cn1$prefsGeneration";
+    private static final Object REMOVED = new Object();
+    
+    /**
+     * Serializes the writers so the log entries and compacted files are written in the order in which they
+     * were taken, the {@code Preferences.class} lock is only held while taking the snapshot so reads and 
+     * writes of values don't wait for the storage
+     */
+    private static final Object WRITE_LOCK = new Object();
+    private static boolean writeBehind;
+    private static int writeBehindDelay = 500;
+    private static int compactionThreshold = 16;
+    private static Hashtable<String, Object> dirty;
+    private static boolean compactRequired;
+    private static boolean flushScheduled;
+    private static int generation;
+    private static int logEntries;
             
     /**
      * Block instantiation of preferences 
@@ -65,8 +94,81 @@ public class Preferences {
      * @param storageFileName the name of the preferences file
      */
     public static void setPreferencesLocation(String storageFileName) {
-        preferencesLocation = storageFileName;
-        p = null;
+        synchronized(WRITE_LOCK) {
+            flush();
+            synchronized(Preferences.class) {
+                preferencesLocation = storageFileName;
+                p = null;
+            }
+        }
+    }
+
+    /**
+     * <p>Toggles the write-behind mode. In this mode changes are applied to the in memory values immediately 
+     * but persisted on a background thread, changes made in a short burst are coalesced into a single write.
+     * Only the modified entries are written to the storage as a log entry, once the number of log entries
+     * exceeds the compaction threshold the full preferences file is rewritten.</p>
+     * <p>Notice that values that weren't flushed yet will be lost if the application is killed, you should
+     * invoke {@link #flush()} in the {@code stop()} method of the application.</p>
+     * 
+     * @param writeBehind true to persist changes in the background, false to persist them synchronously
+     * (the default)
+     */
+    public static void setWriteBehind(boolean writeBehind) {
+        Preferences.writeBehind = writeBehind;
+        if(!writeBehind) {
+            flush();
+        }
+    }
+
+    /**
+     * Indicates whether changes are persisted in the background
+     * 
+     * @return true if write-behind mode is on
+     * @see #setWriteBehind(boolean)
+     */
+    public static boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * The time in milliseconds the write-behind mode waits before persisting so subsequent changes 
+     * are coalesced into one write
+     * 
+     * @param writeBehindDelay the delay in milliseconds, defaults to 500
+     */
+    public static void setWriteBehindDelay(int writeBehindDelay) {
+        Preferences.writeBehindDelay = writeBehindDelay;
+    }
+
+    /**
+     * The time in milliseconds the write-behind mode waits before persisting so subsequent changes 
+     * are coalesced into one write
+     * 
+     * @return the delay in milliseconds
+     */
+    public static int getWriteBehindDelay() {
+        return writeBehindDelay;
+    }
+
+    /**
+     * The number of incremental log entries that can accumulate in write-behind mode before they are 
+     * compacted into the preferences file
+     * 
+     * @param compactionThreshold the number of log entries, defaults to 16
+     */
+    public static void setCompactionThreshold(int compactionThreshold) {
+        Preferences.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * The number of incremental log entries that can accumulate in write-behind mode before they are 
+     * compacted into the preferences file
+     * 
+     * @return the number of log entries
+     */
+    public static int getCompactionThreshold() {
+        return compactionThreshold;
     }
     
     /**
@@ -86,12 +188,195 @@ public class Preferences {
             if(p == null) {
                 p = new Hashtable<String, Object>();
             }
+            Integer gen = (Integer)p.remove(GENERATION_KEY);
+            if(gen != null) {
+                generation = gen.intValue();
+            } else {
+                generation = 0;
+            }
+            logEntries = 0;
+            while(Storage.getInstance().exists(logEntryName(preferencesLocation, generation, logEntries + 1))) {
+                logEntries++;
+                readLogEntry(logEntryName(preferencesLocation, generation, logEntries));
+            }
+            if(generation > 0) {
+                // left behind if we were killed after a compaction but before its log was deleted
+                deleteLog(preferencesLocation, generation - 1);
+            }
         }
         return p;
     }
     
-    private static synchronized void save() {
-        Storage.getInstance().writeObject(preferencesLocation, p);
+    private static String logEntryName(String location, int gen, int entry) {
+        return location + "$" + gen + "." + entry;
+    }
+    
+    private static void deleteLog(String location, int gen) {
+        Storage s = Storage.getInstance();
+        for(int entry = 1 ; s.exists(logEntryName(location, gen, entry)) ; entry++) {
+            s.deleteStorageFile(logEntryName(location, gen, entry));
+        }
+    }
+    
+    private static void readLogEntry(String name) {
+        DataInputStream d = null;
+        try {
+            d = new DataInputStream(Storage.getInstance().createInputStream(name));
+            int size = d.readInt();
+            for(int iter = 0 ; iter < size ; iter++) {
+                String key = d.readUTF();
+                if(d.readBoolean()) {
+                    p.put(key, Util.readObject(d));
+                } else {
+                    p.remove(key);
+                }
+            }
+            d.close();
+        } catch(Throwable err) {
+            Log.e(err);
+            Util.getImplementation().cleanup(d);
+        }
+    }
+    
+    private static boolean writeLogEntry(String name, Hashtable<String, Object> entries) {
+        DataOutputStream d = null;
+        try {
+            d = new DataOutputStream(Storage.getInstance().createOutputStream(name));
+            d.writeInt(entries.size());
+            Enumeration<String> e = entries.keys();
+            while(e.hasMoreElements()) {
+                String key = e.nextElement();
+                Object value = entries.get(key);
+                d.writeUTF(key);
+                if(value == REMOVED) {
+                    d.writeBoolean(false);
+                } else {
+                    d.writeBoolean(true);
+                    Util.writeObject(value, d);
+                }
+            }
+            d.close();
+            return true;
+        } catch(Throwable err) {
+            Log.e(err);
+            Util.getImplementation().cleanup(d);
+            Storage.getInstance().deleteStorageFile(name);
+            return false;
+        }
+    }
+    
+    /**
+     * Copies the values for a full rewrite of the preferences file, once a log was written the copy carries the
+     * next generation number which makes sure a stale log is never applied on top of a newer file if we fail 
+     * half way through. Must be invoked while holding the class lock.
+     */
+    private static Hashtable<String, Object> snapshot() {
+        Hashtable<String, Object> copy = new Hashtable<String, Object>(p);
+        if(logEntries > 0 || generation > 0) {
+            copy.put(GENERATION_KEY, new Integer(generation + 1));
+        }
+        return copy;
+    }
+    
+    /**
+     * Rewrites the full preferences file and discards the log of the previous generation
+     */
+    private static void compact(String location, int oldGeneration, Hashtable<String, Object> copy) {
+        if(!Storage.getInstance().writeObject(location, copy)) {
+            synchronized(Preferences.class) {
+                compactRequired = true;
+            }
+            return;
+        }
+        if(copy.containsKey(GENERATION_KEY)) {
+            synchronized(Preferences.class) {
+                generation = oldGeneration + 1;
+                logEntries = 0;
+            }
+            deleteLog(location, oldGeneration);
+        }
+    }
+    
+    /**
+     * Invoked after a change to the given preference while holding the class lock, either marks the file for 
+     * a synchronous rewrite or marks the entry for the next background write
+     * 
+     * @return true if the caller should invoke {@link #flush()} once it releases the lock
+     */
+    private static boolean changed(String pref, Object o) {
+        if(!writeBehind) {
+            compactRequired = true;
+            return true;
+        }
+        if(dirty == null) {
+            dirty = new Hashtable<String, Object>();
+        }
+        if(o == null) {
+            dirty.put(pref, REMOVED);
+        } else {
+            dirty.put(pref, o);
+        }
+        scheduleFlush();
+        return false;
+    }
+    
+    private static synchronized void scheduleFlush() {
+        if(flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        Display.getInstance().startThread(new Runnable() {
+            public void run() {
+                if(writeBehindDelay > 0) {
+                    Util.sleep(writeBehindDelay);
+                }
+                flush();
+            }
+        }, "Preferences Writer").start();
+    }
+    
+    /**
+     * Persists all the changes that weren't written yet in write-behind mode, this method blocks until the 
+     * changes are written. It does nothing if there are no pending changes.
+     */
+    public static void flush() {
+        synchronized(WRITE_LOCK) {
+            String location;
+            int gen;
+            int entry = 0;
+            Hashtable<String, Object> entries;
+            synchronized(Preferences.class) {
+                flushScheduled = false;
+                if(p == null) {
+                    return;
+                }
+                location = preferencesLocation;
+                gen = generation;
+                if(compactRequired || (dirty != null && dirty.size() > 0 && logEntries >= compactionThreshold)) {
+                    entries = snapshot();
+                } else {
+                    if(dirty == null || dirty.size() == 0) {
+                        return;
+                    }
+                    entries = dirty;
+                    entry = logEntries + 1;
+                }
+                compactRequired = false;
+                dirty = null;
+            }
+            if(entry > 0) {
+                if(writeLogEntry(logEntryName(location, gen, entry), entries)) {
+                    synchronized(Preferences.class) {
+                        logEntries = entry;
+                    }
+                    return;
+                }
+                synchronized(Preferences.class) {
+                    entries = snapshot();
+                }
+            }
+            compact(location, gen, entries);
+        }
     }
     
     /**
@@ -101,13 +386,21 @@ public class Preferences {
      * @param o a String a number or boolean
      */
     private static void set(String pref, Object o) {
-        Object prior = get(pref, null);
-        if(o == null) {
-            get().remove(pref);
-        } else {
-            get().put(pref, o);
+        Object prior;
+        boolean sync;
+        // the writer copies the table under the same lock
+        synchronized(Preferences.class) {
+            prior = get(pref, null);
+            if(o == null) {
+                get().remove(pref);
+            } else {
+                get().put(pref, o);
+            }
+            sync = changed(pref, o);
+        }
+        if(sync) {
+            flush();
         }
-        save();
         fireChange(pref, prior, o);
     }
     
@@ -117,18 +410,26 @@ public class Preferences {
      */
     public static void set(Map<String,Object> values) {
         ArrayList<Object[]> changeParams = new ArrayList<Object[]>();
-        for (Map.Entry<String,Object> entry : values.entrySet()) {
-            String pref = entry.getKey();
-            Object o = entry.getValue();
-            Object prior = get(pref, null);
-            if (o == null) {
-                get().remove(pref);
-            } else {
-                get().put(pref, o);
+        boolean sync = false;
+        synchronized(Preferences.class) {
+            for (Map.Entry<String,Object> entry : values.entrySet()) {
+                String pref = entry.getKey();
+                Object o = entry.getValue();
+                Object prior = get(pref, null);
+                if (o == null) {
+                    get().remove(pref);
+                } else {
+                    get().put(pref, o);
+                }
+                changeParams.add(new Object[]{pref, prior, o});
+            }
+            for (Object[] params : changeParams) {
+                sync = changed((String)params[0], params[2]) || sync;
             }
-            changeParams.add(new Object[]{pref, prior, o});
         }
-        save();
+        if(sync) {
+            flush();
+        }
         for (Object[] params : changeParams) {
             fireChange((String)params[0], params[1], params[2]);
         }
@@ -190,9 +491,16 @@ public class Preferences {
      * @param pref the preference value
      */
     public static void delete(String pref) {
-        Object prior = get(pref, null);
-        get().remove(pref);
-        save();        
+        Object prior;
+        boolean sync;
+        synchronized(Preferences.class) {
+            prior = get(pref, null);
+            get().remove(pref);
+            sync = changed(pref, null);
+        }
+        if(sync) {
+            flush();
+        }
         fireChange(pref, prior, null);
     }
 
@@ -215,8 +523,18 @@ public class Preferences {
                 }
             }
         }
-        get().clear();
-        save();        
+        boolean sync;
+        synchronized(Preferences.class) {
+            get().clear();
+            compactRequired = true;
+            sync = !writeBehind;
+            if(writeBehind) {
+                scheduleFlush();
+            }
+        }
+        if(sync) {
+            flush();
+        }
         if (priorValues != null) {
             for (String key : listenerMap.keySet()) {
                 fireChange(key, priorValues.get(key), null);
@@ -24,12 +24,17 @@
 
 package com.codename1.io;
 
+import com.codename1.ui.Display;
+import com.codename1.util.AsyncResource;
 import com.codename1.util.StringUtil;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 /**
  * <p>Abstracts the underlying application specific storage system, unlike the {@link com.codename1.io.FileSystemStorage}
@@ -50,6 +55,50 @@ public class Storage {
     private final CacheMap cache = new CacheMap();
     private static Storage INSTANCE;
     private boolean normalizeNames = true;
+    private boolean compactFormat;
+
+    /**
+     * Guards the async queues below, never held while performing I/O
+     */
+    private final Object queueLock = new Object();
+
+    /**
+     * Held while a storage file is written or deleted so synchronous calls and the worker
+     * thread don't interleave on the same file
+     */
+    private final Object ioLock = new Object();
+    private final LinkedHashMap<String, PendingWrite> pendingWrites = new LinkedHashMap<String, PendingWrite>();
+    private final LinkedHashMap<String, ArrayList<AsyncResource<Object>>> pendingReads = new LinkedHashMap<String, ArrayList<AsyncResource<Object>>>();
+    private final ArrayList<AsyncResource<Boolean>> flushWaiters = new ArrayList<AsyncResource<Boolean>>();
+    private PendingWrite inFlight;
+    private Thread worker;
+
+    /**
+     * How long the worker thread lingers waiting for more work before it exits
+     */
+    private static final int WORKER_IDLE_TIMEOUT = 2000;
+
+    /**
+     * A write queued by {@link #writeObjectAsync(java.lang.String, java.lang.Object)}, repeated writes to
+     * the same name replace the value and accumulate the listeners
+     */
+    private static class PendingWrite {
+        final String name;
+        Object value;
+        boolean cancelled;
+        final ArrayList<AsyncResource<Boolean>> listeners = new ArrayList<AsyncResource<Boolean>>();
+
+        PendingWrite(String name) {
+            this.name = name;
+        }
+
+        void complete(boolean result) {
+            Boolean b = result ? Boolean.TRUE : Boolean.FALSE;
+            for(AsyncResource<Boolean> r : listeners) {
+                r.complete(b);
+            }
+        }
+    }
 
     /**
      * Indicates the caching size, storage can be pretty slow
@@ -60,6 +109,27 @@ public class Storage {
         cache.setCacheSize(size);
     }
 
+    /**
+     * When enabled objects are written with {@link Util#writeObjectCompact(java.lang.Object, java.io.DataOutputStream)}
+     * which produces considerably smaller files that are faster to load. Objects written in either format
+     * are read regardless of this flag, however older versions of the library can't read the compact format.
+     * 
+     * @param compactFormat true to write objects in the compact format
+     */
+    public void setCompactFormat(boolean compactFormat) {
+        this.compactFormat = compactFormat;
+    }
+
+    /**
+     * Indicates whether objects are written in the compact format
+     * 
+     * @return true if objects are written in the compact format
+     * @see #setCompactFormat(boolean)
+     */
+    public boolean isCompactFormat() {
+        return compactFormat;
+    }
+
     /**
      * If a file name contains slashes replace them with underscores, same goes for *, %, ? etc.
      * @param name the file name
@@ -138,16 +208,35 @@ public class Storage {
      */
     public void deleteStorageFile(String name) {
         name = fixFileName(name);
-        Util.getImplementation().deleteStorageFile(name);
+        PendingWrite w = cancelPendingWrite(name);
+        synchronized(ioLock) {
+            Util.getImplementation().deleteStorageFile(name);
+        }
         cache.delete(name);
+        if(w != null) {
+            w.complete(false);
+        }
     }
 
     /**
      * Deletes all the files in the application storage
      */
     public void clearStorage() {
-        Util.getImplementation().clearStorage();
+        ArrayList<PendingWrite> cancelled;
+        synchronized(queueLock) {
+            cancelled = new ArrayList<PendingWrite>(pendingWrites.values());
+            pendingWrites.clear();
+            if(inFlight != null) {
+                inFlight.cancelled = true;
+            }
+        }
+        synchronized(ioLock) {
+            Util.getImplementation().clearStorage();
+        }
         cache.clearAllCache();
+        for(PendingWrite w : cancelled) {
+            w.complete(false);
+        }
     }
 
     /**
@@ -221,10 +310,26 @@ public class Storage {
     public boolean writeObject(String name, Object o) {
         name = fixFileName(name);
         cache.put(name, o);
+        PendingWrite w = cancelPendingWrite(name);
+        boolean result;
+        synchronized(ioLock) {
+            result = writeImpl(name, o);
+        }
+        if(w != null) {
+            w.complete(false);
+        }
+        return result;
+    }
+
+    private boolean writeImpl(String name, Object o) {
         DataOutputStream d = null;
         try {
             d = new DataOutputStream(createOutputStream(name));
-            Util.writeObject(o, d);
+            if(compactFormat) {
+                Util.writeObjectCompact(o, d);
+            } else {
+                Util.writeObject(o, d);
+            }
             d.close();
             return true;
         } catch(Exception err) {
@@ -238,6 +343,249 @@ public class Storage {
         }
     }
 
+    /**
+     * Removes a queued write for the given name and marks a write of that name that is currently
+     * in progress on the worker as stale, so it won't overwrite a newer synchronous write or deletion
+     *
+     * @param name the fixed file name
+     * @return the removed write or null
+     */
+    private PendingWrite cancelPendingWrite(String name) {
+        synchronized(queueLock) {
+            if(inFlight != null && inFlight.name.equals(name)) {
+                inFlight.cancelled = true;
+            }
+            return pendingWrites.remove(name);
+        }
+    }
+
+    /**
+     * <p>Writes the given object to storage on a background thread, the object is serialized and written
+     * by a single storage worker so the calling thread (typically the EDT) never blocks on I/O. The
+     * following guarantees apply:</p>
+     * <ul>
+     * <li>{@link #readObject(java.lang.String)} and {@link #readObjectAsync(java.lang.String)} return the
+     * new value immediately even before it reached storage.</li>
+     * <li>Repeated writes to the same name that weren't persisted yet are coalesced into a single write of
+     * the latest value, all of their resources complete with the result of that write.</li>
+     * <li>Writes are persisted one at a time in the order of their most recent call.</li>
+     * <li>A synchronous {@link #writeObject(java.lang.String, java.lang.Object)} or
+     * {@link #deleteStorageFile(java.lang.String)} of the same name supersedes the queued write, in that
+     * case the resource completes with false.</li>
+     * </ul>
+     * <p>Notice that the object must not be mutated until the returned resource completes, invoke
+     * {@link #flush()} in the {@code stop()} method of the application to make sure nothing is lost.</p>
+     *
+     * @param name store name
+     * @param o object to store
+     * @return a resource that completes with true for success, false for failure
+     */
+    public AsyncResource<Boolean> writeObjectAsync(String name, Object o) {
+        name = fixFileName(name);
+        cache.put(name, o);
+        AsyncResource<Boolean> r = new AsyncResource<Boolean>();
+        if(!Display.isInitialized()) {
+            r.complete(writeObject(name, o) ? Boolean.TRUE : Boolean.FALSE);
+            return r;
+        }
+        synchronized(queueLock) {
+            PendingWrite w = pendingWrites.remove(name);
+            if(w == null) {
+                w = new PendingWrite(name);
+            }
+            w.value = o;
+            w.listeners.add(r);
+            pendingWrites.put(name, w);
+            startWorker();
+        }
+        return r;
+    }
+
+    /**
+     * Reads the object from the storage on the storage worker thread, the resource completes immediately
+     * if the object is cached or has a pending write. Concurrent reads of the same name are coalesced
+     * into a single read.
+     *
+     * @param name name of the store
+     * @return a resource that completes with the object stored under that name or null if it isn't there
+     */
+    public AsyncResource<Object> readObjectAsync(String name) {
+        name = fixFileName(name);
+        AsyncResource<Object> r = new AsyncResource<Object>();
+        synchronized(queueLock) {
+            PendingWrite w = findPendingWrite(name);
+            Object o = w != null ? w.value : cache.get(name);
+            if(o != null) {
+                r.complete(o);
+                return r;
+            }
+            if(Display.isInitialized()) {
+                ArrayList<AsyncResource<Object>> l = pendingReads.get(name);
+                if(l == null) {
+                    l = new ArrayList<AsyncResource<Object>>();
+                    pendingReads.put(name, l);
+                }
+                l.add(r);
+                startWorker();
+                return r;
+            }
+        }
+        r.complete(readObject(name));
+        return r;
+    }
+
+    /**
+     * Blocks until all the writes queued with {@link #writeObjectAsync(java.lang.String, java.lang.Object)}
+     * reached storage, this is safe to invoke on the EDT.
+     */
+    public void flush() {
+        if(Thread.currentThread() == worker) {
+            return;
+        }
+        if(Display.isInitialized() && Display.getInstance().isEdt()) {
+            Display.getInstance().invokeAndBlock(new Runnable() {
+                public void run() {
+                    waitForWrites();
+                }
+            });
+        } else {
+            waitForWrites();
+        }
+    }
+
+    private void waitForWrites() {
+        synchronized(queueLock) {
+            while(!pendingWrites.isEmpty() || inFlight != null) {
+                Util.wait(queueLock);
+            }
+        }
+    }
+
+    /**
+     * Returns a resource that completes once all the writes queued with
+     * {@link #writeObjectAsync(java.lang.String, java.lang.Object)} reached storage
+     *
+     * @return a resource that completes with true once the write queue is empty
+     */
+    public AsyncResource<Boolean> flushAsync() {
+        AsyncResource<Boolean> r = new AsyncResource<Boolean>();
+        synchronized(queueLock) {
+            if(!pendingWrites.isEmpty() || inFlight != null) {
+                flushWaiters.add(r);
+                return r;
+            }
+        }
+        r.complete(Boolean.TRUE);
+        return r;
+    }
+
+    /**
+     * Returns true if there are writes queued with {@link #writeObjectAsync(java.lang.String, java.lang.Object)}
+     * that didn't reach storage yet
+     *
+     * @return true if there are pending writes
+     */
+    public boolean hasPendingWrites() {
+        synchronized(queueLock) {
+            return !pendingWrites.isEmpty() || inFlight != null;
+        }
+    }
+
+    /**
+     * Must be invoked while holding the queue lock
+     */
+    private PendingWrite findPendingWrite(String name) {
+        PendingWrite w = pendingWrites.get(name);
+        if(w == null && inFlight != null && !inFlight.cancelled && inFlight.name.equals(name)) {
+            w = inFlight;
+        }
+        return w;
+    }
+
+    /**
+     * Must be invoked while holding the queue lock
+     */
+    private void startWorker() {
+        if(worker != null) {
+            queueLock.notify();
+            return;
+        }
+        worker = Display.getInstance().startThread(new Runnable() {
+            public void run() {
+                processQueue();
+            }
+        }, "Storage Worker");
+        worker.start();
+    }
+
+    /**
+     * The body of the worker thread, reads are served before writes since a UI is usually waiting on
+     * them and reads of a name with a pending write never reach the worker
+     */
+    private void processQueue() {
+        boolean idle = false;
+        while(true) {
+            String readName = null;
+            ArrayList<AsyncResource<Object>> readers = null;
+            PendingWrite w = null;
+            ArrayList<AsyncResource<Boolean>> drained = null;
+            synchronized(queueLock) {
+                inFlight = null;
+                if(!pendingReads.isEmpty()) {
+                    Iterator<String> it = pendingReads.keySet().iterator();
+                    readName = it.next();
+                    readers = pendingReads.get(readName);
+                    it.remove();
+                } else if(!pendingWrites.isEmpty()) {
+                    Iterator<PendingWrite> it = pendingWrites.values().iterator();
+                    w = it.next();
+                    it.remove();
+                    inFlight = w;
+                } else {
+                    queueLock.notifyAll();
+                    if(!flushWaiters.isEmpty()) {
+                        drained = new ArrayList<AsyncResource<Boolean>>(flushWaiters);
+                        flushWaiters.clear();
+                    } else if(idle) {
+                        worker = null;
+                        return;
+                    } else {
+                        idle = true;
+                        Util.wait(queueLock, WORKER_IDLE_TIMEOUT);
+                        continue;
+                    }
+                }
+                idle = false;
+            }
+            try {
+                if(drained != null) {
+                    for(AsyncResource<Boolean> r : drained) {
+                        r.complete(Boolean.TRUE);
+                    }
+                } else if(readers != null) {
+                    Object o = readObject(readName);
+                    for(AsyncResource<Object> r : readers) {
+                        r.complete(o);
+                    }
+                } else {
+                    boolean result = false;
+                    synchronized(ioLock) {
+                        boolean stale;
+                        synchronized(queueLock) {
+                            stale = w.cancelled;
+                        }
+                        if(!stale) {
+                            result = writeImpl(w.name, w.value);
+                        }
+                    }
+                    w.complete(result);
+                }
+            } catch(Throwable t) {
+                Log.e(t);
+            }
+        }
+    }
+
     /**
      * <p>Reads the object from the storage, returns null if the object isn't there</p>
      * <p>
@@ -251,6 +599,12 @@ public class Storage {
      */
     public Object readObject(String name) {
         name = fixFileName(name);
+        synchronized(queueLock) {
+            PendingWrite w = findPendingWrite(name);
+            if(w != null) {
+                return w.value;
+            }
+        }
         Object o = cache.get(name);
         if(o != null) {
             return o;
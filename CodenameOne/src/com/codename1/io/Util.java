@@ -257,6 +257,24 @@ public class Util {
         externalizables.put(id, c);
     }
 
+    /**
+     * <p>Writes an object to the given output stream using a compact format, the supported types are the 
+     * same as {@link #writeObject(java.lang.Object, java.io.DataOutputStream)}. The compact format uses 
+     * single byte type tags instead of class names, varints for lengths and integral values, writes primitive
+     * arrays in bulk and writes every string (and externalizable object id) once per stream. Externalizable 
+     * objects receive a stream on which nested calls to writeObject also use the compact format.</p>
+     * 
+     * <p>{@link #readObject(java.io.DataInputStream)} detects the format so the result is read the same way
+     * as objects written with writeObject.</p>
+     *
+     * @param o the object to write which can be null
+     * @param out the destination output stream
+     * @throws IOException thrown by the stream
+     */
+    public static void writeObjectCompact(Object o, DataOutputStream out) throws IOException {
+        CompactObjectFormat.writeStream(o, out);
+    }
+
     /**
      * <p>Writes an object to the given output stream, notice that it should be externalizable or one of
      * the supported types.</p>
@@ -271,6 +289,10 @@ public class Util {
      * @throws IOException thrown by the stream
      */
     public static void writeObject(Object o, DataOutputStream out) throws IOException {
+        if(out instanceof CompactObjectFormat.Output) {
+            CompactObjectFormat.write(o, (CompactObjectFormat.Output)out);
+            return;
+        }
         if(o == null) {
             out.writeBoolean(false);
             return;
@@ -580,10 +602,17 @@ public class Util {
      * @throws IOException thrown by the stream
      */
     public static Object readObject(DataInputStream input) throws IOException {
+        if(input instanceof CompactObjectFormat.Input) {
+            return CompactObjectFormat.read((CompactObjectFormat.Input)input);
+        }
         try {
-            if (!input.readBoolean()) {
+            int header = input.readUnsignedByte();
+            if (header == 0) {
                 return null;
             }
+            if (header == CompactObjectFormat.MAGIC) {
+                return CompactObjectFormat.readStream(input);
+            }
             String type = input.readUTF();
             if ("int".equals(type)) {
                 return new Integer(input.readInt());
@@ -706,20 +735,7 @@ public class Util {
                 input.readFully(data);
                 return EncodedImage.create(data, width, height, op);
             }
-            Class cls = (Class) externalizables.get(type);
-            if (cls != null) {
-                Object o = cls.newInstance();
-                if(o instanceof Externalizable) {
-                    Externalizable ex = (Externalizable)o; 
-                    ex.internalize(input.readInt(), input);
-                    return ex;
-                } else {
-                    PropertyBusinessObject pb = (PropertyBusinessObject)o;
-                    pb.getPropertyIndex().asExternalizable().internalize(input.readInt(), input);
-                    return pb;
-                }
-            }
-            throw new IOException("Object type not supported: " + type);
+            return internalizeObject(type, input.readInt(), input);
         } catch (InstantiationException ex1) {
             Log.e(ex1);
             throw new IOException(ex1.getClass().getName() + ": " + ex1.getMessage());
@@ -729,6 +745,27 @@ public class Util {
         } 
     }
 
+    /**
+     * Creates and internalizes the externalizable object registered under the given id
+     */
+    static Object internalizeObject(String type, int version, DataInputStream input) 
+            throws IOException, InstantiationException, IllegalAccessException {
+        Class cls = (Class) externalizables.get(type);
+        if (cls != null) {
+            Object o = cls.newInstance();
+            if(o instanceof Externalizable) {
+                Externalizable ex = (Externalizable)o; 
+                ex.internalize(version, input);
+                return ex;
+            } else {
+                PropertyBusinessObject pb = (PropertyBusinessObject)o;
+                pb.getPropertyIndex().asExternalizable().internalize(version, input);
+                return pb;
+            }
+        }
+        throw new IOException("Object type not supported: " + type);
+    }
+
     /**
      * Encode a string for HTML requests
      *
@@ -341,6 +341,19 @@ public class Result {
      */
     public boolean getAsBoolean(final String path)
             throws IllegalArgumentException {
+        return getAsBoolean(ResultPath.compile(path, namespaceAliases));
+    }
+
+    /**
+     * Same as {@link #getAsBoolean(java.lang.String)} for a compiled path
+     *
+     * @param path compiled path expression to evaluate
+     * @return the value at the requested path
+     * @throws IllegalArgumentException on error traversing the document, ie.
+     * traversing into an array without using subscripts.
+     */
+    public boolean getAsBoolean(final ResultPath path)
+            throws IllegalArgumentException {
         String s = getAsString(path);
         if (s == null) {
             return false;
@@ -382,6 +395,18 @@ public class Result {
      * into an array without using subscripts.
      */
     public int getAsInteger(final String path) throws IllegalArgumentException {
+        return getAsInteger(ResultPath.compile(path, namespaceAliases));
+    }
+
+    /**
+     * Same as {@link #getAsInteger(java.lang.String)} for a compiled path
+     *
+     * @param path compiled path expression to evaluate
+     * @return the value at the requested path
+     * @throws IllegalArgumentException on error traversing the document, ie.
+     * traversing into an array without using subscripts.
+     */
+    public int getAsInteger(final ResultPath path) throws IllegalArgumentException {
         String s = getAsString(path);
         if (s == null) {
             return 0;
@@ -422,6 +447,18 @@ public class Result {
      * traversing into an array without using subscripts.
      */
     public long getAsLong(final String path) throws IllegalArgumentException {
+        return getAsLong(ResultPath.compile(path, namespaceAliases));
+    }
+
+    /**
+     * Same as {@link #getAsLong(java.lang.String)} for a compiled path
+     *
+     * @param path compiled path expression to evaluate
+     * @return the value at the requested path
+     * @throws IllegalArgumentException on error traversing the document, ie.
+     * traversing into an array without using subscripts.
+     */
+    public long getAsLong(final ResultPath path) throws IllegalArgumentException {
         String s = getAsString(path);
         if (s == null) {
             return 0;
@@ -483,6 +520,19 @@ public class Result {
      */
     public double getAsDouble(final String path)
             throws IllegalArgumentException {
+        return getAsDouble(ResultPath.compile(path, namespaceAliases));
+    }
+
+    /**
+     * Same as {@link #getAsDouble(java.lang.String)} for a compiled path
+     *
+     * @param path compiled path expression to evaluate
+     * @return the value at the requested path
+     * @throws IllegalArgumentException on error traversing the document, ie.
+     * traversing into an array without using subscripts.
+     */
+    public double getAsDouble(final ResultPath path)
+            throws IllegalArgumentException {
         String s = getAsString(path);
         if (s == null) {
             return 0;
@@ -524,6 +574,19 @@ public class Result {
      */
     public String getAsString(final String path)
             throws IllegalArgumentException {
+        return getAsString(ResultPath.compile(path, namespaceAliases));
+    }
+
+    /**
+     * Same as {@link #getAsString(java.lang.String)} for a compiled path
+     *
+     * @param path compiled path expression to evaluate
+     * @return the value at the requested path
+     * @throws IllegalArgumentException on error traversing the document, ie.
+     * traversing into an array without using subscripts.
+     */
+    public String getAsString(final ResultPath path)
+            throws IllegalArgumentException {
         Object o = _internalGet(path);
         if (o instanceof StructuredContent) {
             return ((StructuredContent) o).getText();
@@ -541,6 +604,19 @@ public class Result {
      */
     public Object get(final String path)
             throws IllegalArgumentException {
+        return get(ResultPath.compile(path, namespaceAliases));
+    }
+
+    /**
+     * Same as {@link #get(java.lang.String)} for a compiled path
+     *
+     * @param path compiled path expression to evaluate
+     * @return the value at the requested path
+     * @throws IllegalArgumentException on error traversing the document, ie.
+     * traversing into an array without using subscripts.
+     */
+    public Object get(final ResultPath path)
+            throws IllegalArgumentException {
         Object o = _internalGet(path);
         if (o instanceof StructuredContent) {
             return ((StructuredContent) o).getNativeRoot();
@@ -556,7 +632,7 @@ public class Result {
      * @return a StructuredContent node, a String, or null
      * @throws IllegalArgumentException
      */
-    private Object _internalGet(final String path) throws IllegalArgumentException {
+    private Object _internalGet(final ResultPath path) throws IllegalArgumentException {
         List v = _internalGetAsArray(path);
         if (v == null || v.size() == 0) {
             return null;
@@ -849,6 +925,18 @@ public class Result {
      * traversing into an array without using subscripts.
      */
     public List getAsArray(final String path) throws IllegalArgumentException {
+        return getAsArray(ResultPath.compile(path, namespaceAliases));
+    }
+
+    /**
+     * Same as {@link #getAsArray(java.lang.String)} for a compiled path
+     *
+     * @param path compiled path expression to evaluate
+     * @return the value at the requested path
+     * @throws IllegalArgumentException on error traversing the document, ie.
+     * traversing into an array without using subscripts.
+     */
+    public List getAsArray(final ResultPath path) throws IllegalArgumentException {
         List array = _internalGetAsArray(path);
         for (int i = 0; i < array.size(); i++) {
             array.set(i, ((StructuredContent) array.get(i)).getNativeRoot());
@@ -856,6 +944,70 @@ public class Result {
         return array;
     }
 
+    /**
+     * Evaluates elementPath against every element of the array at arrayPath in a single pass,
+     * this is considerably faster than building an indexed path for every element. E.g. for the
+     * JSON <code>{"results" : [{"name" : "a"}, {"name" : "b"}]}</code> this code returns
+     * a list containing "a" and "b":
+     * 
+     * <pre>
+     * List names = result.getAsArray(ResultPath.compile("/results"), ResultPath.compile("name"));
+     * </pre>
+     *
+     * @param arrayPath path of the array elements
+     * @param elementPath path relative to each element
+     * @return a list with an entry per array element, entries are the values that would be 
+     * returned by {@link #get(com.codename1.processing.ResultPath)} or null when the element 
+     * doesn't match elementPath
+     * @throws IllegalArgumentException on error traversing the document
+     */
+    public List getAsArray(final ResultPath arrayPath, final ResultPath elementPath)
+            throws IllegalArgumentException {
+        List array = _internalGetAsArray(arrayPath);
+        int size = array.size();
+        List response = new Vector(size);
+        for (int i = 0; i < size; i++) {
+            Object o = firstMatch((StructuredContent) array.get(i), elementPath);
+            if (o instanceof StructuredContent) {
+                o = ((StructuredContent) o).getNativeRoot();
+            }
+            response.add(o);
+        }
+        return response;
+    }
+
+    /**
+     * Evaluates elementPath against every element of the array at arrayPath in a single pass,
+     * see {@link #getAsArray(com.codename1.processing.ResultPath, com.codename1.processing.ResultPath)}
+     *
+     * @param arrayPath path of the array elements
+     * @param elementPath path relative to each element
+     * @return an array with the string value per array element, null when the element doesn't
+     * match elementPath
+     * @throws IllegalArgumentException on error traversing the document
+     */
+    public String[] getAsStringArray(final ResultPath arrayPath, final ResultPath elementPath)
+            throws IllegalArgumentException {
+        List array = _internalGetAsArray(arrayPath);
+        String[] response = new String[array.size()];
+        for (int i = 0; i < response.length; i++) {
+            Object o = firstMatch((StructuredContent) array.get(i), elementPath);
+            if (o instanceof StructuredContent) {
+                o = ((StructuredContent) o).getText();
+            }
+            response[i] = (String) o;
+        }
+        return response;
+    }
+
+    private Object firstMatch(StructuredContent element, ResultPath path) {
+        List v = _internalGetAsArray(element, path);
+        if (v == null || v.size() == 0) {
+            return null;
+        }
+        return v.get(0);
+    }
+
     /**
      * Internal function, do not use. This version does not convert the
      * structured content nodes in the array, so not to be called by end user.
@@ -866,11 +1018,30 @@ public class Result {
      */
     private List _internalGetAsArray(final String path)
             throws IllegalArgumentException {
-        final List tokens = new ResultTokenizer(path).tokenize(namespaceAliases);
+        return _internalGetAsArray(root, ResultPath.compile(path, namespaceAliases));
+    }
+
+    private List _internalGetAsArray(final ResultPath path)
+            throws IllegalArgumentException {
+        return _internalGetAsArray(root, path);
+    }
+
+    /**
+     * Internal function, do not use. Evaluates the compiled path starting
+     * from the given node.
+     *
+     * @param start the node the path is relative to
+     * @param path the compiled path
+     * @return the matching nodes
+     * @throws IllegalArgumentException
+     */
+    private List _internalGetAsArray(final StructuredContent start, final ResultPath path)
+            throws IllegalArgumentException {
+        final List tokens = path.tokens;
         if (tokens.isEmpty()) {
-            return tokens;
+            return new Vector();
         }
-        final StructuredContent obj = apply(root, tokens, 0);
+        final StructuredContent obj = apply(start, path, 0);
         if (obj == null) {
             return new Vector();
         }
@@ -913,8 +1084,9 @@ public class Result {
      * @throws IllegalArgumentException
      */
     private StructuredContent apply(final StructuredContent start,
-            final List tokens, final int firstToken)
+            final ResultPath path, final int firstToken)
             throws IllegalArgumentException {
+        final List tokens = path.tokens;
 
         if (start == null) {
             return null;
@@ -936,7 +1108,7 @@ public class Result {
                     glob = true;
                     continue;
                 } else if (tok1.equals(SELECT_PARENT)) {
-                    return apply(start.getParent(), tokens, i + 1);
+                    return apply(start.getParent(), path, i + 1);
                 }
             }
 
@@ -955,7 +1127,7 @@ public class Result {
                     }
                     if (children.size() > 0) {
                         return apply(new SubContent(children, start),
-                                tokens, i + 2);
+                                path, i + 2);
                     }
                     return null;
                 case ARRAY_START:
@@ -966,8 +1138,7 @@ public class Result {
                     }
                     final String tok3 = (String) tokens.get(i + 2);
 
-                    Evaluator evaluator = EvaluatorFactory
-                            .createEvaluator(tok3);
+                    Evaluator evaluator = path.getEvaluator(i + 2);
 
                     if (i + 3 >= nTokens) {
                         throw new IllegalArgumentException(
@@ -999,13 +1170,13 @@ public class Result {
                     Object selected = evaluator.evaluate(array);
 
                     if (selected instanceof StructuredContent) {
-                        return apply((StructuredContent) selected, tokens,
+                        return apply((StructuredContent) selected, path,
                                 i + 1);
                     } else {
                         if (selected != null && ((List) selected).size() > 0) {
                             List v = new Vector();
                             for (Object o : (List) selected) {
-                                StructuredContent sc = apply((StructuredContent) o, tokens, i + 1);
+                                StructuredContent sc = apply((StructuredContent) o, path, i + 1);
                                 v.add(sc);
                             }
                             return new SubContent(v, start);
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *  
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ * 
+ * Please contact Codename One through http://www.codenameone.com/ if you 
+ * need additional information or have any questions.
+ */
+package com.codename1.processing;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A path expression that was tokenized once so it can be evaluated against many {@link Result} objects
+ * without parsing the expression again. Compiled paths are immutable and can be shared between threads.
+ * 
+ * <pre>
+ * ResultPath name = ResultPath.compile("/profile/name");
+ * for(Result r : records) {
+ *     String n = r.getAsString(name);
+ * }
+ * </pre>
+ * 
+ * Paths passed as strings to {@link Result} are compiled thru a small internal LRU cache so repeated
+ * lookups of the same expression are also cheaper.
+ */
+public final class ResultPath {
+    private static final int CACHE_SIZE = 128;
+    private static final Map<String, ResultPath> cache = new LinkedHashMap<String, ResultPath>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, ResultPath> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    
+    private final String path;
+    final List tokens;
+    private final Evaluator[] evaluators;
+    
+    private ResultPath(String path, Map namespaceAliases) {
+        this.path = path;
+        tokens = new ResultTokenizer(path).tokenize(namespaceAliases);
+        int size = tokens.size();
+        evaluators = new Evaluator[size];
+        for (int i = 1; i < size; i++) {
+            String prev = (String) tokens.get(i - 1);
+            if (prev.length() == 1 && prev.charAt(0) == Result.ARRAY_START) {
+                try {
+                    evaluators[i] = EvaluatorFactory.createEvaluator((String) tokens.get(i));
+                } catch (IllegalStateException err) {
+                    // reported when the path is evaluated, as it was before paths were compiled
+                }
+            }
+        }
+    }
+    
+    /**
+     * Compiles the given path expression, compiled paths are cached so compiling the same path
+     * repeatedly is cheap
+     * 
+     * @param path the path expression e.g. /results[0]/address_components
+     * @return the compiled path
+     * @throws IllegalArgumentException if the path is null
+     */
+    public static ResultPath compile(String path) throws IllegalArgumentException {
+        if (path == null) {
+            throw new IllegalArgumentException("Path must not be null");
+        }
+        synchronized (cache) {
+            ResultPath p = cache.get(path);
+            if (p == null) {
+                p = new ResultPath(path, null);
+                cache.put(path, p);
+            }
+            return p;
+        }
+    }
+    
+    /**
+     * Paths that depend on namespace aliases are specific to a result and aren't cached
+     */
+    static ResultPath compile(String path, Map namespaceAliases) {
+        if (namespaceAliases == null || path == null) {
+            return compile(path);
+        }
+        return new ResultPath(path, namespaceAliases);
+    }
+    
+    /**
+     * Returns the evaluator for the predicate token at the given offset
+     */
+    Evaluator getEvaluator(int index) {
+        Evaluator e = evaluators[index];
+        if (e == null) {
+            e = EvaluatorFactory.createEvaluator((String) tokens.get(index));
+        }
+        return e;
+    }
+    
+    /**
+     * Returns the expression this path was compiled from
+     * 
+     * @return the path expression
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String toString() {
+        return path;
+    }
+}
@@ -25,6 +25,7 @@ package com.codename1.properties;
 
 import com.codename1.io.Externalizable;
 import com.codename1.io.JSONParser;
+import com.codename1.io.JSONReader;
 import com.codename1.io.Log;
 import com.codename1.io.Storage;
 import com.codename1.io.Util;
@@ -315,116 +316,263 @@ public class PropertyIndex implements Iterable<PropertyBase> {
                 }
                 Object val = m.get(p.getName());
                 if(val != null) {
-                    if(val instanceof List) {
-                        if(p instanceof CollectionProperty) {
-                            if(recursiveType != null) {
-                                if(((CollectionProperty)p) != null) {
-                                    ((CollectionProperty)p).clear();
-                                } 
-                                for(Object e : (Collection)val) {
-                                    if(e instanceof Map) {
-                                        Class eType = ((CollectionProperty) p).getGenericType();
-                                        // maybe don't use recursiveType here anymore???
-                                        // elementType is usually sufficient... 
-                                        Class type = (eType == null)? recursiveType : eType; 
-                                        PropertyBusinessObject po = (PropertyBusinessObject)type.newInstance();
-                                        po.getPropertyIndex().populateFromMap((Map<String, Object>)e, type);
-                                        ((CollectionProperty)p).add(po);
-                                        continue;
-                                    }
-                                    if(e instanceof List) {
-                                        ((CollectionProperty)p).add(listParse((List)e, recursiveType));
-                                        continue;
-                                    }
-                                    ((CollectionProperty)p).add(e);
-                                }
-                            } else {
-                                List l = (List)val;
-                                if(!l.isEmpty()) {
-                                    if(l.get(0) instanceof PropertyBusinessObject || p.getGenericType() == null) {
-                                        ((CollectionProperty)p).set((Collection)val);
-                                    } else {
-                                        Class eType = p.getGenericType();
-                                        for(Object e : l) {
-                                            PropertyBusinessObject po = (PropertyBusinessObject)eType.newInstance();
-                                            po.getPropertyIndex().populateFromMap((Map<String, Object>)e, eType);
-                                            ((CollectionProperty)p).add(po);
-                                        }
-                                    }
-                                } else {
-                                    ((CollectionProperty)p).set((Collection)val);                                
-                                }
-                            }
-                        }
-                        continue;
-                    } 
+                    populateProperty(p, val, recursiveType);
+                }
+            }
+        } catch(InstantiationException err) {
+            Log.e(err);
+            throw new RuntimeException("Can't create instanceof class: " + err);
+        } catch(IllegalAccessException err) {
+            Log.e(err);
+            throw new RuntimeException("Can't create instanceof class: " + err);
+        }            
+    }
 
-                    if(val instanceof Map) {
-                        if(p instanceof MapProperty) {
-                            ((MapProperty)p).clear();
-                            for(Object k : ((Map)val).keySet()) {
-                                Object value = ((Map)val).get(k);
-                                Class keyType = ((MapProperty)p).getKeyType();
-                                if(keyType != null && 
-                                    PropertyBusinessObject.class.isAssignableFrom(keyType)) {
-                                    PropertyBusinessObject po = (PropertyBusinessObject)keyType.newInstance();
-                                    po.getPropertyIndex().populateFromMap((Map<String, Object>)val, keyType);
-                                    k = po;
-                                }
-                                Class valueType = ((MapProperty)p).getValueType();
-                                if(valueType != null && 
-                                    PropertyBusinessObject.class.isAssignableFrom(valueType)) {
-                                    Map<String, Object> contentMap = (Map<String, Object>)val;
-                                    for(String kk : contentMap.keySet()) {
-                                        PropertyBusinessObject po = (PropertyBusinessObject)valueType.newInstance();
-                                        Map<String, Object> vv = (Map<String, Object>)contentMap.get(kk);
-                                        po.getPropertyIndex().populateFromMap(vv, valueType);
-                                        ((MapProperty)p).set(kk, po);
-                                    }
-                                    continue;
-                                } else {
-                                    if(value instanceof Map) {
-                                        PropertyBusinessObject po = (PropertyBusinessObject)p.get();
-                                        po.getPropertyIndex().populateFromMap((Map<String, Object>)value, recursiveType);
-                                        ((MapProperty)p).set(k, po);
-                                        continue;
-                                    }
-                                    if(value instanceof List) {
-                                        ((MapProperty)p).set(k, listParse((List)value, recursiveType));
-                                        continue;
-                                    }
-                                }
-                                ((MapProperty)p).set(k, value);
-                            }                        
+    private void populateProperty(PropertyBase p, Object val, Class<? extends PropertyBusinessObject>recursiveType) throws InstantiationException, IllegalAccessException {
+        if(val instanceof List) {
+            if(p instanceof CollectionProperty) {
+                if(recursiveType != null) {
+                    if(((CollectionProperty)p) != null) {
+                        ((CollectionProperty)p).clear();
+                    } 
+                    for(Object e : (Collection)val) {
+                        if(e instanceof Map) {
+                            Class eType = ((CollectionProperty) p).getGenericType();
+                            // maybe don't use recursiveType here anymore???
+                            // elementType is usually sufficient... 
+                            Class type = (eType == null)? recursiveType : eType; 
+                            PropertyBusinessObject po = (PropertyBusinessObject)type.newInstance();
+                            po.getPropertyIndex().populateFromMap((Map<String, Object>)e, type);
+                            ((CollectionProperty)p).add(po);
+                            continue;
+                        }
+                        if(e instanceof List) {
+                            ((CollectionProperty)p).add(listParse((List)e, recursiveType));
                             continue;
+                        }
+                        ((CollectionProperty)p).add(e);
+                    }
+                } else {
+                    List l = (List)val;
+                    if(!l.isEmpty()) {
+                        if(l.get(0) instanceof PropertyBusinessObject || p.getGenericType() == null) {
+                            ((CollectionProperty)p).set((Collection)val);
                         } else {
-                            if(p.get() instanceof PropertyBusinessObject) {
-                                PropertyBusinessObject po = (PropertyBusinessObject)p.get();
-                                po.getPropertyIndex().populateFromMap((Map<String, Object>)val, recursiveType);
-                            } else {
-                                if(p.getGenericType() != null) {
-                                    Object o = p.getGenericType().newInstance();
-                                    if(o instanceof PropertyBusinessObject) {
-                                        ((PropertyBusinessObject)o).getPropertyIndex().populateFromMap((Map<String, Object>)val);
-                                        p.setImpl(o);
-                                    }
-                                } else {
-                                    if(recursiveType != null) {
-                                        PropertyBusinessObject po = (PropertyBusinessObject)recursiveType.newInstance();
-                                        po.getPropertyIndex().populateFromMap((Map<String, Object>)val, recursiveType);
-                                        p.setImpl(po);
-                                    }
-                                }
+                            Class eType = p.getGenericType();
+                            for(Object e : l) {
+                                PropertyBusinessObject po = (PropertyBusinessObject)eType.newInstance();
+                                po.getPropertyIndex().populateFromMap((Map<String, Object>)e, eType);
+                                ((CollectionProperty)p).add(po);
                             }
                         }
+                    } else {
+                        ((CollectionProperty)p).set((Collection)val);                                
+                    }
+                }
+            }
+            return;
+        } 
+
+        if(val instanceof Map) {
+            if(p instanceof MapProperty) {
+                ((MapProperty)p).clear();
+                for(Object k : ((Map)val).keySet()) {
+                    Object value = ((Map)val).get(k);
+                    Class keyType = ((MapProperty)p).getKeyType();
+                    if(keyType != null && 
+                        PropertyBusinessObject.class.isAssignableFrom(keyType)) {
+                        PropertyBusinessObject po = (PropertyBusinessObject)keyType.newInstance();
+                        po.getPropertyIndex().populateFromMap((Map<String, Object>)val, keyType);
+                        k = po;
+                    }
+                    Class valueType = ((MapProperty)p).getValueType();
+                    if(valueType != null && 
+                        PropertyBusinessObject.class.isAssignableFrom(valueType)) {
+                        Map<String, Object> contentMap = (Map<String, Object>)val;
+                        for(String kk : contentMap.keySet()) {
+                            PropertyBusinessObject po = (PropertyBusinessObject)valueType.newInstance();
+                            Map<String, Object> vv = (Map<String, Object>)contentMap.get(kk);
+                            po.getPropertyIndex().populateFromMap(vv, valueType);
+                            ((MapProperty)p).set(kk, po);
+                        }
                         continue;
-                    } 
-                    if(setSimpleObject(p, val)) {
-                        continue;
+                    } else {
+                        if(value instanceof Map) {
+                            PropertyBusinessObject po = (PropertyBusinessObject)p.get();
+                            po.getPropertyIndex().populateFromMap((Map<String, Object>)value, recursiveType);
+                            ((MapProperty)p).set(k, po);
+                            continue;
+                        }
+                        if(value instanceof List) {
+                            ((MapProperty)p).set(k, listParse((List)value, recursiveType));
+                            continue;
+                        }
+                    }
+                    ((MapProperty)p).set(k, value);
+                }                        
+                return;
+            } else {
+                if(p.get() instanceof PropertyBusinessObject) {
+                    PropertyBusinessObject po = (PropertyBusinessObject)p.get();
+                    po.getPropertyIndex().populateFromMap((Map<String, Object>)val, recursiveType);
+                } else {
+                    if(p.getGenericType() != null) {
+                        Object o = p.getGenericType().newInstance();
+                        if(o instanceof PropertyBusinessObject) {
+                            ((PropertyBusinessObject)o).getPropertyIndex().populateFromMap((Map<String, Object>)val);
+                            p.setImpl(o);
+                        }
+                    } else {
+                        if(recursiveType != null) {
+                            PropertyBusinessObject po = (PropertyBusinessObject)recursiveType.newInstance();
+                            po.getPropertyIndex().populateFromMap((Map<String, Object>)val, recursiveType);
+                            p.setImpl(po);
+                        }
                     }
-                    p.setImpl(val);                
                 }
             }
+            return;
+        } 
+        if(setSimpleObject(p, val)) {
+            return;
+        }
+        p.setImpl(val);                
+    }
+    
+    /**
+     * Maps JSON member names to property offsets without allocating a String for every name, one 
+     * instance is created per business object class and cached in the class meta data
+     */
+    static class JSONLookup {
+        private final String[] names;
+        private final int[] offsets;
+        private final int mask;
+        
+        JSONLookup(PropertyBase[] properties) {
+            int size = 8;
+            while(size < properties.length * 2) {
+                size *= 2;
+            }
+            names = new String[size];
+            offsets = new int[size];
+            mask = size - 1;
+            for(int iter = 0 ; iter < properties.length ; iter++) {
+                String n = properties[iter].getName();
+                int pos = n.hashCode() & mask;
+                while(names[pos] != null) {
+                    pos = (pos + 1) & mask;
+                }
+                names[pos] = n;
+                offsets[pos] = iter;
+            }
+        }
+        
+        /**
+         * Returns the offset of the property matching the current NAME token or -1
+         */
+        int find(JSONReader r) {
+            char[] c = r.getTextCharacters();
+            int len = r.getTextLength();
+            int hash = 0;
+            for(int iter = 0 ; iter < len ; iter++) {
+                hash = 31 * hash + c[iter];
+            }
+            int pos = hash & mask;
+            while(names[pos] != null) {
+                if(r.textEquals(names[pos])) {
+                    return offsets[pos];
+                }
+                pos = (pos + 1) & mask;
+            }
+            return -1;
+        }
+    }
+    
+    private JSONLookup getJSONLookup() {
+        JSONLookup l = (JSONLookup)getMetaDataOfClass("cn1$jsonLookup");
+        if(l == null) {
+            l = new JSONLookup(properties);
+            putMetaDataOfClass("cn1$jsonLookup", l);
+        }
+        return l;
+    }
+    
+    /**
+     * <p>Populates the object from the next JSON object in the reader, the JSON is bound directly into 
+     * the properties in a single pass without building an intermediate {@code Map}. Members that don't 
+     * match a property are skipped without being parsed into objects. The binding follows the same rules
+     * as {@link #populateFromMap(java.util.Map, java.lang.Class)}.</p>
+     * 
+     * @param r the reader positioned before a JSON object
+     * @throws IOException if thrown by the reader or if the next value isn't an object
+     */
+    public void populateFromJSON(JSONReader r) throws IOException {
+        int t = r.nextToken();
+        if(t == JSONReader.NULL) {
+            return;
+        }
+        if(t != JSONReader.START_OBJECT) {
+            throw new IOException("Expected a JSON object for " + name + " at line " + r.getLine());
+        }
+        bindObject(r, parent.getClass());
+    }
+
+    /**
+     * Reads a JSON array of objects of this type from the reader, every object is bound directly into a
+     * new instance as explained in {@link #populateFromJSON(com.codename1.io.JSONReader)}
+     * 
+     * @param r the reader positioned before a JSON array
+     * @return list of property objects matching this type
+     * @throws IOException if thrown by the reader or if the next value isn't an array
+     */
+    public <X extends PropertyBusinessObject> List<X> readJSONList(JSONReader r) throws IOException {
+        List<X> response = new ArrayList<X>();
+        int t = r.nextToken();
+        if(t == JSONReader.NULL) {
+            return response;
+        }
+        if(t != JSONReader.START_ARRAY) {
+            throw new IOException("Expected a JSON array for " + name + " at line " + r.getLine());
+        }
+        while(r.hasNext()) {
+            X pb = (X)newInstance();
+            pb.getPropertyIndex().populateFromJSON(r);
+            response.add(pb);
+        }
+        r.nextToken();
+        return response;
+    }
+    
+    private boolean hasMapAdapters() {
+        for(PropertyBase p : properties) {
+            if(MapAdapter.checkInstance(p) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Binds the members of the current object, the START_OBJECT token was already consumed
+     */
+    private void bindObject(JSONReader r, Class<? extends PropertyBusinessObject> recursiveType) throws IOException {
+        if(hasMapAdapters()) {
+            // adapters can read arbitrary keys from the map so we have to build it
+            populateFromMap((Map<String, Object>)readObject(r), recursiveType);
+            return;
+        }
+        JSONLookup lookup = getJSONLookup();
+        try {
+            while(r.hasNext()) {
+                r.nextToken();
+                int offset = lookup.find(r);
+                if(offset < 0) {
+                    r.skipValue();
+                    continue;
+                }
+                bindValue(r, properties[offset], recursiveType);
+            }
+            r.nextToken();
         } catch(InstantiationException err) {
             Log.e(err);
             throw new RuntimeException("Can't create instanceof class: " + err);
@@ -434,6 +582,157 @@ public class PropertyIndex implements Iterable<PropertyBase> {
         }            
     }
     
+    private void bindValue(JSONReader r, PropertyBase p, Class<? extends PropertyBusinessObject> recursiveType) throws IOException, InstantiationException, IllegalAccessException {
+        switch(r.peek()) {
+            case JSONReader.NULL:
+                r.nextToken();
+                return;
+            case JSONReader.START_OBJECT:
+                if(p instanceof MapProperty) {
+                    populateProperty(p, readValue(r), recursiveType);
+                    return;
+                }
+                if(p.get() instanceof PropertyBusinessObject) {
+                    r.nextToken();
+                    ((PropertyBusinessObject)p.get()).getPropertyIndex().bindObject(r, recursiveType);
+                    return;
+                }
+                Class type = p.getGenericType();
+                if(type == null) {
+                    type = recursiveType;
+                }
+                if(type != null && PropertyBusinessObject.class.isAssignableFrom(type)) {
+                    PropertyBusinessObject po = (PropertyBusinessObject)type.newInstance();
+                    r.nextToken();
+                    po.getPropertyIndex().bindObject(r, p.getGenericType() == null ? recursiveType : null);
+                    p.setImpl(po);
+                    return;
+                }
+                r.skipValue();
+                return;
+            case JSONReader.START_ARRAY:
+                if(!(p instanceof CollectionProperty)) {
+                    r.skipValue();
+                    return;
+                }
+                if(recursiveType == null) {
+                    populateProperty(p, readValue(r), null);
+                    return;
+                }
+                CollectionProperty cp = (CollectionProperty)p;
+                cp.clear();
+                r.nextToken();
+                while(r.hasNext()) {
+                    switch(r.peek()) {
+                        case JSONReader.START_OBJECT:
+                            Class eType = cp.getGenericType();
+                            Class elementType = (eType == null)? recursiveType : eType; 
+                            PropertyBusinessObject po = (PropertyBusinessObject)elementType.newInstance();
+                            r.nextToken();
+                            po.getPropertyIndex().bindObject(r, elementType);
+                            cp.add(po);
+                            break;
+                        case JSONReader.START_ARRAY:
+                            cp.add(listParse((List)readValue(r), recursiveType));
+                            break;
+                        default:
+                            cp.add(readValue(r));
+                            break;
+                    }
+                }
+                r.nextToken();
+                return;
+        }
+        int t = r.nextToken();
+        Class type = p.getGenericType();
+        if(type == null || type == String.class) {
+            p.setImpl(r.getText());
+            return;
+        }
+        if(t == JSONReader.NUMBER) {
+            if(p instanceof IntProperty) {
+                p.setImpl(new Integer(r.getInt()));
+                return;
+            } 
+            if(p instanceof LongProperty) {
+                p.setImpl(new Long(r.getLong()));
+                return;
+            } 
+            if(p instanceof DoubleProperty) {
+                p.setImpl(new Double(r.getDouble()));
+                return;
+            } 
+            if(p instanceof FloatProperty) {
+                p.setImpl(new Float((float)r.getDouble()));
+                return;
+            }
+        }
+        if(t == JSONReader.BOOLEAN && p instanceof BooleanProperty) {
+            p.setImpl(r.getBoolean() ? Boolean.TRUE : Boolean.FALSE);
+            return;
+        }
+        Object val = tokenValue(r);
+        if(!setSimpleObject(p, val)) {
+            p.setImpl(val);
+        }
+    }
+    
+    /**
+     * Converts the current primitive token to the object {@link JSONParser} would produce with longs
+     * and booleans enabled
+     */
+    private static Object tokenValue(JSONReader r) {
+        switch(r.getToken()) {
+            case JSONReader.NUMBER:
+                char[] c = r.getTextCharacters();
+                int len = r.getTextLength();
+                for(int iter = 0 ; iter < len ; iter++) {
+                    char ch = c[iter];
+                    if(ch == '.' || ch == 'e' || ch == 'E') {
+                        return new Double(r.getDouble());
+                    }
+                }
+                return new Long(r.getLong());
+            case JSONReader.BOOLEAN:
+                return r.getBoolean() ? Boolean.TRUE : Boolean.FALSE;
+            case JSONReader.NULL:
+                return null;
+        }
+        return r.getText();
+    }
+    
+    /**
+     * Reads the next value into the same structure {@link JSONParser} would produce, this is used 
+     * for the cases that can't be bound directly
+     */
+    private static Object readValue(JSONReader r) throws IOException {
+        switch(r.nextToken()) {
+            case JSONReader.START_OBJECT:
+                return readObject(r);
+            case JSONReader.START_ARRAY:
+                ArrayList<Object> l = new ArrayList<Object>();
+                while(r.hasNext()) {
+                    l.add(readValue(r));
+                }
+                r.nextToken();
+                return l;
+        }
+        return tokenValue(r);
+    }
+
+    private static Object readObject(JSONReader r) throws IOException {
+        LinkedHashMap<String, Object> m = new LinkedHashMap<String, Object>();
+        while(r.hasNext()) {
+            String key = r.readName();
+            Object v = readValue(r);
+            if(v != null) {
+                m.put(key, v);
+            }
+        }
+        r.nextToken();
+        return m;
+    }
+    
     /**
      * This is useful in converting a property object to JSON
      * @return a map representation of the properties
@@ -32,7 +32,9 @@ import com.codename1.ui.EncodedImage;
 import com.codename1.util.Base64;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 
 /**
  * A simple ORM wrapper for property objects. This is a very poor mans ORM that doesn't handle relations
@@ -152,8 +154,132 @@ public class SQLMap {
     }
 
     private Database db;
+    private final HashMap<Class, TablePlan> plans = new HashMap<Class, TablePlan>();
     
     private SQLMap() {}
+
+    /**
+     * The statements and column mapping of a business object class, these are computed once per class
+     * and discarded when the mapping is changed thru one of the setters
+     */
+    static class TablePlan {
+        String tableName;
+        String pkName;
+        int pkPosition = -1;
+        
+        /**
+         * Positions within the property index of the mapped (non-excluded) properties
+         */
+        int[] positions;
+        
+        /**
+         * The type of each mapped property or null if the type is inferred from the value
+         */
+        SqlType[] types;
+        String[] columnNames;
+        String insertStatement;
+        String updateStatement;
+        String deleteStatement;
+    }
+
+    TablePlan getPlan(PropertyBusinessObject cmp) {
+        TablePlan plan = plans.get(cmp.getClass());
+        if(plan != null) {
+            return plan;
+        }
+        plan = new TablePlan();
+        PropertyIndex index = cmp.getPropertyIndex();
+        plan.tableName = getTableName(cmp);
+        plan.pkName = (String)index.getMetaDataOfClass("cn1$pk");
+        int size = index.getSize();
+        ArrayList<Integer> positions = new ArrayList<Integer>();
+        for(int iter = 0 ; iter < size ; iter++) {
+            PropertyBase p = index.get(iter);
+            if(plan.pkName != null && plan.pkPosition < 0 && p.getName().equalsIgnoreCase(plan.pkName)) {
+                plan.pkPosition = iter;
+            }
+            if(getSqlType(p) != SqlType.SQL_EXCLUDE) {
+                positions.add(iter);
+            }
+        }
+        int count = positions.size();
+        plan.positions = new int[count];
+        plan.types = new SqlType[count];
+        plan.columnNames = new String[count];
+        StringBuilder insert = new StringBuilder("INSERT INTO ");
+        insert.append(plan.tableName);
+        insert.append(" (");
+        StringBuilder update = new StringBuilder("UPDATE ");
+        update.append(plan.tableName);
+        update.append(" SET ");
+        for(int iter = 0 ; iter < count ; iter++) {
+            int pos = positions.get(iter).intValue();
+            PropertyBase p = index.get(pos);
+            plan.positions[iter] = pos;
+            if(p.getClientProperty("cn1$colType") != null || !(p instanceof Property) || p.getGenericType() != null) {
+                plan.types[iter] = getSqlType(p);
+            }
+            String columnName = getColumnName(p);
+            plan.columnNames[iter] = columnName;
+            if(iter > 0) {
+                insert.append(",");
+                update.append(",");
+            }
+            insert.append(columnName);
+            update.append(columnName);
+            update.append(" = ?");
+        }
+        insert.append(") VALUES (?");
+        for(int iter = 1 ; iter < count; iter++) {
+            insert.append(",?");
+        }
+        insert.append(")");
+        plan.insertStatement = insert.toString();
+        if(plan.pkName != null) {
+            update.append(" WHERE ");
+            update.append(plan.pkName);
+            update.append(" = ?");
+            plan.updateStatement = update.toString();
+            plan.deleteStatement = "DELETE FROM " + plan.tableName + " WHERE " + plan.pkName + " = ?";
+        }
+        plans.put(cmp.getClass(), plan);
+        return plan;
+    }
+
+    /**
+     * Returns the values of the mapped properties in column order
+     * @param plan the class plan
+     * @param cmp the business object
+     * @param extra additional slots to allocate at the end of the array
+     * @return the values array
+     */
+    private Object[] getValues(TablePlan plan, PropertyBusinessObject cmp, int extra) {
+        PropertyIndex index = cmp.getPropertyIndex();
+        Object[] values = new Object[plan.positions.length + extra];
+        for(int iter = 0 ; iter < plan.positions.length ; iter++) {
+            PropertyBase p = index.get(plan.positions[iter]);
+            if(p instanceof Property) {
+                SqlType tp = plan.types[iter];
+                if(tp == null) {
+                    tp = getSqlType(p);
+                }
+                values[iter] = tp.asUpdateInsertValue(((Property)p).get(), (Property)p);
+            } else {
+                // TODO
+                values[iter] = null;
+            }
+        }
+        return values;
+    }
+
+    private Object[] getUpdateValues(TablePlan plan, PropertyBusinessObject cmp) throws IOException {
+        if(plan.pkPosition < 0) {
+            throw new IOException("Primary key required for update");
+        }
+        Object[] values = getValues(plan, cmp, 1);
+        values[values.length - 1] = ((Property)cmp.getPropertyIndex().get(plan.pkPosition)).get();
+        return values;
+    }
     
     /**
      * Creates an SQL Map instance to the given database instance
@@ -172,6 +298,7 @@ public class SQLMap {
      * @param pk the primary key field
      */
     public void setPrimaryKey(PropertyBusinessObject cmp, Property pk) {
+        plans.clear();
         cmp.getPropertyIndex().putMetaDataOfClass("cn1$pk", pk.getName());
     }
 
@@ -182,6 +309,7 @@ public class SQLMap {
      * @param pk the primary key field
      */
     public void setPrimaryKeyAutoIncrement(PropertyBusinessObject cmp, Property pk) {
+        plans.clear();
         cmp.getPropertyIndex().putMetaDataOfClass("cn1$pk", pk.getName());
         cmp.getPropertyIndex().putMetaDataOfClass("cn1$autoinc", Boolean.TRUE);
     }
@@ -192,6 +320,7 @@ public class SQLMap {
      * @param type one of the enum values representing supported SQL data types
      */
     public void setSqlType(PropertyBase p, SqlType type) {
+        plans.clear();
         p.putClientProperty("cn1$colType", type);
     }
 
@@ -266,6 +395,7 @@ public class SQLMap {
      * @param name the name of the table
      */
     public void setTableName(PropertyBusinessObject cmp, String name) {
+        plans.clear();
         cmp.getPropertyIndex().putMetaDataOfClass("cn1$tableName", name);
     }
 
@@ -288,6 +418,7 @@ public class SQLMap {
      * @param name the name of the column
      */
     public void setColumnName(PropertyBase prop, String name) {
+        plans.clear();
         prop.putClientProperty("cn1$sqlColumn", name);
     }
     
@@ -401,41 +532,8 @@ public class SQLMap {
      * @param cmp the business component
      */
     public void insert(PropertyBusinessObject cmp) throws IOException {
-        String tableName = getTableName(cmp);
-        StringBuilder createStatement = new StringBuilder("INSERT INTO ");
-        createStatement.append(tableName);
-        createStatement.append(" (");
-
-        int count = 0;
-        ArrayList<Object> values = new ArrayList<Object>();
-        for(PropertyBase p : cmp.getPropertyIndex()) {
-            SqlType tp = getSqlType(p);
-            if(tp == SqlType.SQL_EXCLUDE) {
-                continue;
-            }
-            if(count > 0) {
-                createStatement.append(",");
-            }
-            if(p instanceof Property) {
-                values.add(tp.asUpdateInsertValue(((Property)p).get(), (Property)p));
-            } else {
-                // TODO
-                values.add(null);
-            }
-            count++;
-            String columnName = getColumnName(p);
-            createStatement.append(columnName);
-        }
-        
-        createStatement.append(") VALUES (?");
-
-        for(int iter = 1 ; iter < values.size(); iter++) {
-            createStatement.append(",?");
-        }
-        
-        createStatement.append(")");
-        
-        execute(createStatement.toString(), values.toArray());
+        TablePlan plan = getPlan(cmp);
+        execute(plan.insertStatement, getValues(plan, cmp, 0));
     }
     
     /**
@@ -444,46 +542,11 @@ public class SQLMap {
      * @throws IOException 
      */
     public void update(PropertyBusinessObject cmp) throws IOException {
-        String pkName = (String)cmp.getPropertyIndex().getMetaDataOfClass("cn1$pk");
-        if(pkName == null) {
+        TablePlan plan = getPlan(cmp);
+        if(plan.pkName == null) {
             throw new IOException("Primary key required for update");
         }
-        String tableName = getTableName(cmp);
-        StringBuilder createStatement = new StringBuilder("UPDATE ");
-        createStatement.append(tableName);
-        createStatement.append(" SET ");
-
-        int count = 0;
-        ArrayList<Object> values = new ArrayList<Object>();
-        for(PropertyBase p : cmp.getPropertyIndex()) {
-            SqlType tp = getSqlType(p);
-            if(tp == SqlType.SQL_EXCLUDE) {
-                continue;
-            }
-            if(count > 0) {
-                createStatement.append(",");
-            }
-            if(p instanceof Property) {
-                values.add(tp.asUpdateInsertValue(((Property)p).get(), (Property)p));
-            } else {
-                // TODO
-                values.add(null);
-            }
-            count++;
-            String columnName = getColumnName(p);
-            createStatement.append(columnName);
-            createStatement.append(" = ?");
-        }
-        
-        createStatement.append(" WHERE ");
-
-        createStatement.append(pkName);
-        createStatement.append(" = ?");
-        
-        Property p = (Property)cmp.getPropertyIndex().getIgnoreCase(pkName);
-        values.add(p.get());
-
-        execute(createStatement.toString(), values.toArray());
+        execute(plan.updateStatement, getUpdateValues(plan, cmp));
     }
     
     /**
@@ -491,8 +554,13 @@ public class SQLMap {
      * @param cmp the component
      */
     public void delete(PropertyBusinessObject cmp) throws IOException {
-        String pkName = (String)cmp.getPropertyIndex().getMetaDataOfClass("cn1$pk");
-        String tableName = getTableName(cmp);
+        TablePlan plan = getPlan(cmp);
+        if(plan.pkPosition > -1) {
+            execute(plan.deleteStatement, new Object[]{ ((Property)cmp.getPropertyIndex().get(plan.pkPosition)).get() });
+            return;
+        }
+        String pkName = plan.pkName;
+        String tableName = plan.tableName;
         StringBuilder createStatement = new StringBuilder("DELETE FROM ");
         createStatement.append(tableName);
         createStatement.append(" WHERE ");
@@ -536,7 +604,43 @@ public class SQLMap {
      * @return the result of the query 
      */
     public java.util.List<PropertyBusinessObject> select(PropertyBusinessObject cmp, Property orderBy, boolean ascending, int maxElements, int page) throws IOException, InstantiationException {
-        String tableName = getTableName(cmp);
+        SelectCursor c = null;
+        try {
+            ArrayList<PropertyBusinessObject> response = new ArrayList<PropertyBusinessObject>();
+            c = selectCursor(cmp, orderBy, ascending, maxElements, page);
+            while(c.next()) {
+                response.add(c.get());
+            }
+            c.close();
+            return response;
+        } catch(Throwable t) {
+            Log.e(t);
+            if(c != null) {
+                c.close();
+            }
+            if(t instanceof IOException) {
+                throw ((IOException)t);
+            } else {
+                throw new IOException(t.toString());
+            }
+        }
+    }
+
+    /**
+     * Streaming version of {@link #select(com.codename1.properties.PropertyBusinessObject, com.codename1.properties.Property, boolean, int, int)}
+     * which maps each row into a business object only when it's requested instead of building the full list.
+     * The returned cursor must be closed
+     * 
+     * @param cmp the component to match
+     * @param orderBy the column to order by, can be null to ignore order
+     * @param ascending true to indicate ascending order
+     * @param maxElements the maximum number of elements returned can be 0 or lower to ignore
+     * @param page  the page within the query to match the max elements value
+     * @return a cursor over the result of the query 
+     */
+    public SelectCursor selectCursor(PropertyBusinessObject cmp, Property orderBy, boolean ascending, int maxElements, int page) throws IOException {
+        TablePlan plan = getPlan(cmp);
+        String tableName = plan.tableName;
         StringBuilder createStatement = new StringBuilder("SELECT * FROM ");
         createStatement.append(tableName);
         ArrayList<Object> params = new ArrayList<Object>();
@@ -580,37 +684,138 @@ public class SQLMap {
             }
         }
         
-        Cursor c = null;
+        return new SelectCursor(executeQuery(createStatement.toString(), params.toArray()), cmp.getClass(), plan);
+    }
+
+    /**
+     * Iterates over the result of {@link #selectCursor(com.codename1.properties.PropertyBusinessObject, com.codename1.properties.Property, boolean, int, int)}
+     * mapping every row to a business object lazily
+     */
+    public class SelectCursor {
+        private final Cursor cursor;
+        private final Class type;
+        private final TablePlan plan;
+        private int[] columnIndexes;
+        
+        SelectCursor(Cursor cursor, Class type, TablePlan plan) {
+            this.cursor = cursor;
+            this.type = type;
+            this.plan = plan;
+        }
+        
+        /**
+         * Moves to the next row
+         * @return false if there are no further rows
+         */
+        public boolean next() throws IOException {
+            return cursor.next();
+        }
+        
+        /**
+         * Creates a business object from the current row
+         * @return a new business object instance
+         */
+        public PropertyBusinessObject get() throws IOException, InstantiationException {
+            PropertyBusinessObject pb;
+            try {
+                pb = (PropertyBusinessObject)type.newInstance();
+            } catch(IllegalAccessException err) {
+                throw new InstantiationException(err.toString());
+            }
+            if(columnIndexes == null) {
+                // column meta data is only available once the cursor is on a row 
+                columnIndexes = new int[plan.columnNames.length];
+                for(int iter = 0 ; iter < columnIndexes.length ; iter++) {
+                    columnIndexes[iter] = cursor.getColumnIndex(plan.columnNames[iter]);
+                }
+            }
+            PropertyIndex index = pb.getPropertyIndex();
+            Row currentRow = cursor.getRow();
+            for(int iter = 0 ; iter < columnIndexes.length ; iter++) {
+                PropertyBase p = index.get(plan.positions[iter]);
+                SqlType t = plan.types[iter];
+                if(t == null) {
+                    t = getSqlType(p);
+                }
+                Object value = t.getValue(currentRow, columnIndexes[iter], p);
+                if(p instanceof Property) {
+                    ((Property)p).set(value);
+                } 
+            }
+            return pb;
+        }
+        
+        /**
+         * Closes the underlying database cursor
+         */
+        public void close() throws IOException {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Inserts all the given objects using a single transaction and a statement computed once for the class
+     * @param objects the business objects to insert
+     */
+    public void insertAll(Collection<? extends PropertyBusinessObject> objects) throws IOException {
+        batch(objects, false);
+    }
+
+    /**
+     * Updates all the given objects using a single transaction and a statement computed once for the class,
+     * the objects must have a primary key
+     * @param objects the business objects to update
+     */
+    public void updateAll(Collection<? extends PropertyBusinessObject> objects) throws IOException {
+        batch(objects, true);
+    }
+
+    private void batch(Collection<? extends PropertyBusinessObject> objects, boolean update) throws IOException {
+        if(objects.isEmpty()) {
+            return;
+        }
+        db.beginTransaction();
         try {
-            ArrayList<PropertyBusinessObject> response = new ArrayList<PropertyBusinessObject>();
-            c = executeQuery(createStatement.toString(), params.toArray());
-            while(c.next()) {
-                PropertyBusinessObject pb = (PropertyBusinessObject)cmp.getClass().newInstance();
-                for(PropertyBase p : pb.getPropertyIndex()) {
-                    Row currentRow = c.getRow();
-                    SqlType t = getSqlType(p);
-                    if(t == SqlType.SQL_EXCLUDE) {
-                        continue;
+            String lastStatement = null;
+            for(PropertyBusinessObject cmp : objects) {
+                TablePlan plan = getPlan(cmp);
+                String stmt;
+                Object[] values;
+                if(update) {
+                    if(plan.pkName == null) {
+                        throw new IOException("Primary key required for update");
                     }
-                    Object value = t.getValue(currentRow, c.getColumnIndex(getColumnName(p)), p);
-                    if(p instanceof Property) {
-                        ((Property)p).set(value);
-                    } 
+                    stmt = plan.updateStatement;
+                    values = getUpdateValues(plan, cmp);
+                } else {
+                    stmt = plan.insertStatement;
+                    values = getValues(plan, cmp, 0);
                 }
-                response.add(pb);
+                if(verbose && stmt != lastStatement) {
+                    Log.p(stmt + " (batch of " + objects.size() + ")");
+                    lastStatement = stmt;
+                }
+                db.execute(stmt, values);
             }
-            c.close();
-            return response;
+            db.commitTransaction();
+        } catch(IOException err) {
+            rollback();
+            throw err;
+        } catch(RuntimeException err) {
+            rollback();
+            throw err;
+        }
+    }
+
+    /**
+     * Rolls back a failed batch, a failure of the rollback is logged so it doesn't hide the exception 
+     * that failed the batch
+     */
+    private void rollback() {
+        try {
+            db.rollbackTransaction();
         } catch(Throwable t) {
             Log.e(t);
-            if(c != null) {
-                c.close();
-            }
-            if(t instanceof IOException) {
-                throw ((IOException)t);
-            } else {
-                throw new IOException(t.toString());
-            }
         }
     }
     
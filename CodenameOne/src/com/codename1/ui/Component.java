@@ -311,6 +311,13 @@ public class Component implements Animation, StyleListener, Editable {
     private boolean handlesInput = false;
     boolean shouldCalcPreferredSize = true;
     boolean shouldCalcScrollSize = true;
+    
+    /**
+     * The preferred size at the time the component was invalidated, incremental layout compares it to 
+     * the new preferred size to decide whether the parent needs to be laid out. -1 means unknown
+     */
+    int layoutSnapshotWidth = -1;
+    int layoutSnapshotHeight = -1;
     private boolean focusable = true;
     private boolean isScrollVisible = true;
     private boolean repaintPending;
@@ -1174,6 +1181,9 @@ public class Component implements Animation, StyleListener, Editable {
      */
     public void setX(int x) {
         bounds.setX(x);
+        if (parent != null) {
+            parent.invalidateSpatialIndex();
+        }
         if(Form.activePeerCount > 0) {
             onParentPositionChange();
         }
@@ -1188,6 +1198,9 @@ public class Component implements Animation, StyleListener, Editable {
      */
     public void setY(int y) {
         bounds.setY(y);
+        if (parent != null) {
+            parent.invalidateSpatialIndex();
+        }
         if(Form.activePeerCount > 0) {
             onParentPositionChange();
         }
@@ -1514,6 +1527,9 @@ public class Component implements Animation, StyleListener, Editable {
      */
     public void setWidth(int width) {
         bounds.getSize().setWidth(width);
+        if (parent != null) {
+            parent.invalidateSpatialIndex();
+        }
     }
 
     /**
@@ -1527,6 +1543,9 @@ public class Component implements Animation, StyleListener, Editable {
      */
     public void setHeight(int height) {
         bounds.getSize().setHeight(height);
+        if (parent != null) {
+            parent.invalidateSpatialIndex();
+        }
     }
 
     /**
@@ -1542,6 +1561,9 @@ public class Component implements Animation, StyleListener, Editable {
         Dimension d2 = bounds.getSize();
         d2.setWidth(d.getWidth());
         d2.setHeight(d.getHeight());
+        if (parent != null) {
+            parent.invalidateSpatialIndex();
+        }
     }
 
     /**
@@ -2200,6 +2222,9 @@ public class Component implements Animation, StyleListener, Editable {
             return;
         }
         impl.beforeComponentPaint(this, g);
+        if(FrameProfiler.active) {
+            FrameProfiler.count(FrameProfiler.COUNTER_COMPONENTS_PAINTED, 1);
+        }
         paintInternalImpl(g, paintIntersects);
         impl.afterComponentPaint(this, g);
     }
@@ -2986,6 +3011,7 @@ public class Component implements Animation, StyleListener, Editable {
                 if(hideInLandscape && !Display.INSTANCE.isPortrait()) {
                     preferredSize = new Dimension(0, 0);
                 } else {
+                    Container.preferredSizeCounter++;
                     preferredSize = calcPreferredSize();
                     if (preferredSizeStr != null) {
                         Component.parsePreferredSize(preferredSizeStr, preferredSize);
@@ -3194,6 +3220,14 @@ public class Component implements Animation, StyleListener, Editable {
             this.shouldCalcScrollSize = shouldCalcPreferredSize;
         }
         if (shouldCalcPreferredSize != this.shouldCalcPreferredSize) {
+            if (shouldCalcPreferredSize && canDeferLayoutInvalidation()) {
+                // the parent chain is only invalidated once we know the preferred size changed
+                snapshotPreferredSize();
+                this.shouldCalcPreferredSize = true;
+                this.shouldCalcScrollSize = true;
+                Container.addPendingLayout(this);
+                return;
+            }
             this.shouldCalcPreferredSize = shouldCalcPreferredSize;
             this.shouldCalcScrollSize = shouldCalcPreferredSize;
             if (shouldCalcPreferredSize && getParent() != null) {
@@ -3207,6 +3241,28 @@ public class Component implements Animation, StyleListener, Editable {
         }
     }
 
+    /**
+     * Returns true if invalidating the preferred size of this component can be deferred to the incremental
+     * layout pass instead of invalidating the entire parent chain
+     */
+    boolean canDeferLayoutInvalidation() {
+        return Container.incrementalLayout && sameWidth == null && sameHeight == null && 
+                getParent() != null && isInitialized();
+    }
+
+    /**
+     * Stores the current preferred size so the incremental layout can detect a change
+     */
+    void snapshotPreferredSize() {
+        if (preferredSize != null && !shouldCalcPreferredSize) {
+            layoutSnapshotWidth = preferredSize.getWidth();
+            layoutSnapshotHeight = preferredSize.getHeight();
+        } else {
+            layoutSnapshotWidth = -1;
+            layoutSnapshotHeight = -1;
+        }
+    }
+
     private void setShouldCalcPreferredSizeGroup(Component[] cmps) {
         if(cmps != null) {
             for(Component c : cmps) {
@@ -3324,7 +3380,8 @@ public class Component implements Animation, StyleListener, Editable {
         Rectangle rect;
         synchronized (dirtyRegionLock) {
             if (dirtyRegion == null) {
-                if(repaintPending) {
+                // a component painted as part of a merged region doesn't clear its pending flag
+                if(repaintPending && Display.impl.isRepaintQueued(this)) {
                     return;
                 }
                 rect = new Rectangle(x, y, w, h);
@@ -74,6 +74,12 @@ import java.util.Vector;
  */
 public class Container extends Component implements Iterable<Component>{
     protected static boolean enableLayoutOnPaint = true;
+    static boolean incrementalLayout;
+    private static final java.util.ArrayList<Component> pendingLayouts = new java.util.ArrayList<Component>();
+    static int layoutCounter;
+    static int preferredSizeCounter;
+    private static int lastRevalidateLayouts;
+    private static int lastRevalidatePreferredSizes;
    	private Component leadComponent;
     private Layout layout;
     private java.util.ArrayList<Component> components = new java.util.ArrayList<Component>();
@@ -88,6 +94,14 @@ public class Container extends Component implements Iterable<Component>{
     private java.util.ArrayList<QueuedChange> changeQueue= new java.util.ArrayList<QueuedChange>();
     
     private boolean shouldLayout = true;
+    
+    /**
+     * Indicates that a descendant container needs layout even though this container doesn't
+     */
+    private boolean layoutDescendants;
+    private int lastLayoutWidth = -1;
+    private int lastLayoutHeight = -1;
+    private SpatialIndex spatialIndex;
     boolean scrollableX;
     boolean scrollableY;
     private java.util.Vector cmpTransitions;
@@ -290,6 +304,7 @@ public class Container extends Component implements Iterable<Component>{
         final Object constraint = parentLayout != null ? parentLayout.getComponentConstraint(this) : null;
         newParent.setParent(oldParent);
         newParent.components.add(this);
+        newParent.invalidateSpatialIndex();
         
         final Runnable r = new Runnable() {
             public void run() {
@@ -313,6 +328,7 @@ public class Container extends Component implements Iterable<Component>{
                         throw new RuntimeException("WTF we have parent but no index!!!!");
                     }
                     oldParent.components.set(cmpIndex, newParent);
+                    oldParent.invalidateSpatialIndex();
                 }
 
                 Container.this.setParent(newParent);
@@ -628,6 +644,7 @@ public class Container extends Component implements Iterable<Component>{
                 return;
             }
         }
+        boolean deferred = shouldCalcPreferredSize && !this.shouldCalcPreferredSize && canDeferLayoutInvalidation();
         super.setShouldCalcPreferredSize(shouldCalcPreferredSize);
         shouldLayout = shouldCalcPreferredSize;
         if (shouldLayout) {
@@ -635,7 +652,146 @@ public class Container extends Component implements Iterable<Component>{
             for(int iter = 0 ; iter < componentCount ; iter++) {
                 Component cmp = components.get(iter);
                 if (cmp instanceof Container) {
-                    ((Container) cmp).setShouldCalcPreferredSize(shouldCalcPreferredSize);
+                    if(deferred) {
+                        ((Container) cmp).invalidateLayoutTree();
+                    } else {
+                        ((Container) cmp).setShouldCalcPreferredSize(shouldCalcPreferredSize);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Marks this container and its descendant containers for layout without walking up the parent chain, the 
+     * pending layout of the ancestor takes care of that
+     */
+    private void invalidateLayoutTree() {
+        shouldCalcPreferredSize = true;
+        shouldCalcScrollSize = true;
+        shouldLayout = true;
+        layoutSnapshotWidth = -1;
+        int componentCount = components.size();
+        for(int iter = 0 ; iter < componentCount ; iter++) {
+            Component cmp = components.get(iter);
+            if (cmp instanceof Container) {
+                ((Container) cmp).invalidateLayoutTree();
+            }
+        }
+    }
+    
+    /**
+     * Toggles incremental layout, when enabled changes to the preferred size of a component that's already showing 
+     * only invalidate the parent chain up to the first container whose preferred size remained the same. Containers 
+     * whose size didn't change and that weren't invalidated aren't laid out again. This assumes layout managers 
+     * position components solely based on the preferred size of the children and the size of the container.
+     * Incremental layout is off by default
+     * 
+     * @param incremental true to enable incremental layout
+     */
+    public static void setIncrementalLayout(boolean incremental) {
+        incrementalLayout = incremental;
+    }
+
+    /**
+     * Indicates whether incremental layout is enabled
+     * 
+     * @return true if incremental layout is enabled, false by default
+     * @see #setIncrementalLayout(boolean) 
+     */
+    public static boolean isIncrementalLayout() {
+        return incrementalLayout;
+    }
+
+    /**
+     * The number of container layouts performed since the counters were reset
+     * 
+     * @return the number of layouts
+     */
+    public static int getLayoutCount() {
+        return layoutCounter;
+    }
+
+    /**
+     * The number of preferred size calculations performed since the counters were reset
+     * 
+     * @return the number of calculations
+     */
+    public static int getPreferredSizeCount() {
+        return preferredSizeCounter;
+    }
+
+    /**
+     * The number of container layouts performed by the last call to revalidate
+     * 
+     * @return the number of layouts
+     */
+    public static int getLastRevalidateLayoutCount() {
+        return lastRevalidateLayouts;
+    }
+
+    /**
+     * The number of preferred size calculations performed by the last call to revalidate
+     * 
+     * @return the number of calculations
+     */
+    public static int getLastRevalidatePreferredSizeCount() {
+        return lastRevalidatePreferredSizes;
+    }
+
+    /**
+     * Resets the layout and preferred size counters
+     */
+    public static void resetLayoutCounters() {
+        layoutCounter = 0;
+        preferredSizeCounter = 0;
+        lastRevalidateLayouts = 0;
+        lastRevalidatePreferredSizes = 0;
+    }
+    
+    static void addPendingLayout(Component cmp) {
+        synchronized(pendingLayouts) {
+            pendingLayouts.add(cmp);
+        }
+    }
+    
+    /**
+     * Processes the components whose preferred size was invalidated, the parent of a component is marked for 
+     * layout only if the preferred size of the component changed in which case the parent is checked in the 
+     * same way. Ancestors above the topmost container that needs layout are marked so the layout pass reaches it
+     */
+    private static void resolvePendingLayouts() {
+        Component[] pending;
+        synchronized(pendingLayouts) {
+            pending = new Component[pendingLayouts.size()];
+            pendingLayouts.toArray(pending);
+            pendingLayouts.clear();
+        }
+        for(Component cmp : pending) {
+            Component current = cmp;
+            Container parent = current.getParent();
+            while(parent != null) {
+                int oldWidth = current.layoutSnapshotWidth;
+                int oldHeight = current.layoutSnapshotHeight;
+                current.layoutSnapshotWidth = -1;
+                Dimension d = current.getPreferredSize();
+                if(oldWidth == d.getWidth() && oldHeight == d.getHeight()) {
+                    break;
+                }
+                parent.shouldLayout = true;
+                parent.shouldCalcScrollSize = true;
+                if(!parent.shouldCalcPreferredSize) {
+                    parent.snapshotPreferredSize();
+                    parent.shouldCalcPreferredSize = true;
+                }
+                current = parent;
+                parent = current.getParent();
+            }
+            if(current instanceof Container) {
+                parent = current.getParent();
+                while(parent != null && !parent.layoutDescendants) {
+                    parent.layoutDescendants = true;
+                    parent = parent.getParent();
                 }
             }
         }
@@ -834,6 +990,7 @@ public class Container extends Component implements Iterable<Component>{
             });
         }
         components.add(index, cmp);
+        invalidateSpatialIndex();
         if (layout instanceof BorderLayout && !BorderLayout.OVERLAY.equals(layout.getComponentConstraint(cmp))) {
             // Make sure overlay component is always on top
             Component overlay = ((BorderLayout)layout).getOverlay();
@@ -1158,6 +1315,7 @@ public class Container extends Component implements Iterable<Component>{
         if (location < components.size()) {
             components.remove(cmp);
             components.add(location, cmp);
+            invalidateSpatialIndex();
         }
     }
 
@@ -1213,6 +1371,7 @@ public class Container extends Component implements Iterable<Component>{
         cmp.setParent(this);
         cmp.deinitializeImpl();
         components.remove(cmp);
+        invalidateSpatialIndex();
         cmp.setParent(null);
         if (parentForm != null) {
             if (parentForm.getFocused() == cmp || cmp instanceof Container && ((Container) cmp).contains(parentForm.getFocused())) {
@@ -1348,6 +1507,14 @@ public class Container extends Component implements Iterable<Component>{
      * need to redo the layout
      */
     public void revalidate() {
+        int layouts = layoutCounter;
+        int preferredSizes = preferredSizeCounter;
+        revalidateImpl();
+        lastRevalidateLayouts = layoutCounter - layouts;
+        lastRevalidatePreferredSizes = preferredSizeCounter - preferredSizes;
+    }
+    
+    private void revalidateImpl() {
         setShouldCalcPreferredSize(true);
         Form root = getComponentForm();
         
@@ -1599,6 +1766,73 @@ public class Container extends Component implements Iterable<Component>{
         }
     }
     
+    /**
+     * Enables a spatial index over the children of this container. The index is a grid built from the bounds 
+     * of the children after layout, it allows painting, pointer hit testing and overlap painting to skip the 
+     * children that are outside of the affected region. This is useful for containers with hundreds of children
+     * that aren't sorted by position e.g. in a {@link com.codename1.ui.layouts.LayeredLayout} or 
+     * {@link FlowLayout}. The index is only used when the container has more than 30 children
+     * 
+     * @param enabled true to enable the spatial index
+     */
+    public void setSpatialIndexEnabled(boolean enabled) {
+        if (enabled) {
+            if (spatialIndex == null) {
+                spatialIndex = new SpatialIndex();
+            }
+        } else {
+            spatialIndex = null;
+        }
+    }
+
+    /**
+     * Indicates whether the spatial index is enabled for this container
+     * 
+     * @return true if the spatial index is enabled
+     * @see #setSpatialIndexEnabled(boolean) 
+     */
+    public boolean isSpatialIndexEnabled() {
+        return spatialIndex != null;
+    }
+    
+    /**
+     * Marks the spatial index for rebuilding, invoked when the children or their bounds change
+     */
+    void invalidateSpatialIndex() {
+        if (spatialIndex != null) {
+            spatialIndex.valid = false;
+        }
+    }
+    
+    private SpatialIndex getSpatialIndex() {
+        if (spatialIndex == null || components.size() < 30) {
+            return null;
+        }
+        if (!spatialIndex.valid) {
+            spatialIndex.build(components);
+        }
+        return spatialIndex;
+    }
+    
+    /**
+     * Returns the offsets of the children that contain the given absolute coordinate in painting order 
+     * or null if the spatial index isn't available
+     */
+    private int[] spatialHitTest(int x, int y) {
+        SpatialIndex index = getSpatialIndex();
+        if (index == null) {
+            return null;
+        }
+        int relx = x - getAbsoluteX();
+        int rely = y - getAbsoluteY();
+        int count = index.query(components, relx, rely, relx + 1, rely + 1);
+        int[] hits = new int[count];
+        int[] results = index.borrowResults();
+        System.arraycopy(results, 0, hits, 0, count);
+        index.releaseResults(results);
+        return hits;
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -1609,25 +1843,33 @@ public class Container extends Component implements Iterable<Component>{
         g.translate(getX(), getY());
         int size = components.size();
         int startIter = 0;
+        int[] indices = null;
+        SpatialIndex index = null;
         if (size >= 30) {
             int clipX1 = g.getClipX();
             int clipX2 = g.getClipX() + g.getClipWidth();
             int clipY1 = g.getClipY();
             int clipY2 = g.getClipY() + g.getClipHeight();
-            startIter = calculateFirstPaintableOffset(clipX1, clipY1, clipX2, clipY2);
-            if (startIter < 0) {
-                // There was no efficient way to calculate the offset
-                startIter = 0;
-            } else if (startIter < size){
-                // There was an efficient way to calculate the offset so we
-                // will continue this approach
-                size = calculateLastPaintableOffset(startIter, clipX1, clipY1, clipX2, clipY2)+1;
+            index = getSpatialIndex();
+            if (index != null) {
+                size = index.query(components, clipX1, clipY1, clipX2, clipY2);
+                indices = index.borrowResults();
+            } else {
+                startIter = calculateFirstPaintableOffset(clipX1, clipY1, clipX2, clipY2);
+                if (startIter < 0) {
+                    // There was no efficient way to calculate the offset
+                    startIter = 0;
+                } else if (startIter < size){
+                    // There was an efficient way to calculate the offset so we
+                    // will continue this approach
+                    size = calculateLastPaintableOffset(startIter, clipX1, clipY1, clipX2, clipY2)+1;
+                }
             }
         }
         CodenameOneImplementation impl = Display.impl;
         if(dontRecurseContainer) {
             for(int iter = startIter ; iter < size ; iter++) {
-                Component cmp = components.get(iter);
+                Component cmp = components.get(indices == null ? iter : indices[iter]);
                 if(cmp.getClass() == Container.class) {
                     paintContainerChildrenForAnimation((Container)cmp, g);
                 } else {
@@ -1636,10 +1878,13 @@ public class Container extends Component implements Iterable<Component>{
             }
         } else {
             for(int iter = startIter ; iter < size ; iter++) {
-                Component cmp = components.get(iter);
+                Component cmp = components.get(indices == null ? iter : indices[iter]);
                 cmp.paintInternal(impl.getComponentScreenGraphics(this, g), false);
             }
         }
+        if(indices != null) {
+            index.releaseResults(indices);
+        }
         int tx = g.getTranslateX();
         int ty = g.getTranslateY();
         g.translate(-tx, -ty);
@@ -1685,6 +1930,22 @@ public class Container extends Component implements Iterable<Component>{
                 endIndex = indexOfComponent;
             }
 
+            SpatialIndex index = endIndex - startIndex >= 30 ? getSpatialIndex() : null;
+            if (index != null) {
+                int absX = getAbsoluteX();
+                int absY = getAbsoluteY();
+                int count = index.query(components, x - absX, y - absY, x - absX + w, y - absY + h);
+                int[] indices = index.borrowResults();
+                for (int i = 0; i < count; i++) {
+                    int offset = indices[i];
+                    if (offset >= startIndex && offset < endIndex) {
+                        components.get(offset).paintInternal(g, false);
+                    }
+                }
+                index.releaseResults(indices);
+                return;
+            }
+
             for (int i = startIndex; i < endIndex; i++) {
                 Component cmp2 = (Component) components.get(i);
                 if(Rectangle.intersects(x, y, w, h,
@@ -1702,10 +1963,23 @@ public class Container extends Component implements Iterable<Component>{
      * Performs the layout of the container if a layout is necessary
      */
     public void layoutContainer() {
+        if (pendingLayouts.size() > 0) {
+            resolvePendingLayouts();
+        }
         //will compute the container + components and will layout the components.
         if (shouldLayout) {
             shouldLayout = false;
+            layoutDescendants = false;
             doLayout();            
+        } else if (layoutDescendants) {
+            layoutDescendants = false;
+            int count = getComponentCount();
+            for (int i = 0; i < count; i++) {
+                Component c = getComponentAt(i);
+                if (c instanceof Container) {
+                    ((Container) c).layoutContainer();
+                }
+            }
         }
     }
 
@@ -1713,12 +1987,25 @@ public class Container extends Component implements Iterable<Component>{
      * Lays out the container
      */
     void doLayout() {
+        if(FrameProfiler.active) {
+            FrameProfiler.count(FrameProfiler.COUNTER_LAYOUTS, 1);
+        }
+        layoutCounter++;
         layout.layoutContainer(this);
+        invalidateSpatialIndex();
+        lastLayoutWidth = getWidth();
+        lastLayoutHeight = getHeight();
         int count = getComponentCount();
         for (int i = 0; i < count; i++) {
             Component c = getComponentAt(i);
             if (c instanceof Container) {
-                ((Container) c).layoutContainer();
+                Container cnt = (Container) c;
+                if (incrementalLayout && (cnt.lastLayoutWidth != cnt.getWidth() || cnt.lastLayoutHeight != cnt.getHeight())) {
+                    // siblings are no longer invalidated eagerly so a resized container must be laid out again
+                    cnt.shouldLayout = true;
+                    cnt.shouldCalcScrollSize = true;
+                }
+                cnt.layoutContainer();
             }else{
                 c.laidOut();
             }
@@ -2048,23 +2335,29 @@ public class Container extends Component implements Iterable<Component>{
         }
         int startIter = 0;
         int count = getComponentCount();
+        int[] hits = null;
         if (count > 30) {
-            int relx = x - getAbsoluteX();
-            int rely = y - getAbsoluteY();
-            
-            startIter = calculateFirstPaintableOffset(relx, rely, relx, rely);
-            if (startIter < 0) {
-                // There was no efficient way to calculate the first paintable offset
-                // start counting from 0
-                startIter = 0;
-            } else if (startIter < count) {
-                // We found a start offset using an efficient method
-                // Find an appropriate end offset.
-                count = calculateLastPaintableOffset(startIter, relx, rely, relx, rely) + 1;
+            hits = spatialHitTest(x, y);
+            if (hits != null) {
+                count = hits.length;
+            } else {
+                int relx = x - getAbsoluteX();
+                int rely = y - getAbsoluteY();
+
+                startIter = calculateFirstPaintableOffset(relx, rely, relx, rely);
+                if (startIter < 0) {
+                    // There was no efficient way to calculate the first paintable offset
+                    // start counting from 0
+                    startIter = 0;
+                } else if (startIter < count) {
+                    // We found a start offset using an efficient method
+                    // Find an appropriate end offset.
+                    count = calculateLastPaintableOffset(startIter, relx, rely, relx, rely) + 1;
+                }
             }
         }
         for (int i=count-1; i>=startIter; i--) {
-            Component cmp = getComponentAt(i);
+            Component cmp = getComponentAt(hits == null ? i : hits[i]);
             if (cmp.contains(x, y)) {
                 if (!cmp.isBlockLead() && cmp instanceof Container) {
                     cmp = ((Container)cmp).getResponderAt(x, y);
@@ -2101,25 +2394,31 @@ public class Container extends Component implements Iterable<Component>{
         }
         int startIter = 0;
         int count = getComponentCount();
+        int[] hits = null;
         if (count > 30) {
-            int relx = x - getAbsoluteX();
-            int rely = y - getAbsoluteY();
-            
-            startIter = calculateFirstPaintableOffset(relx, rely, relx, rely);
-            if (startIter < 0) {
-                // There was no efficient way to calculate the first paintable offset
-                // start counting from 0
-                startIter = 0;
-            } else if (startIter < count) {
-                // We found a start offset using an efficient method
-                // Find an appropriate end offset.
-                count = calculateLastPaintableOffset(startIter, relx, rely, relx, rely) + 1;
+            hits = spatialHitTest(x, y);
+            if (hits != null) {
+                count = hits.length;
+            } else {
+                int relx = x - getAbsoluteX();
+                int rely = y - getAbsoluteY();
+
+                startIter = calculateFirstPaintableOffset(relx, rely, relx, rely);
+                if (startIter < 0) {
+                    // There was no efficient way to calculate the first paintable offset
+                    // start counting from 0
+                    startIter = 0;
+                } else if (startIter < count) {
+                    // We found a start offset using an efficient method
+                    // Find an appropriate end offset.
+                    count = calculateLastPaintableOffset(startIter, relx, rely, relx, rely) + 1;
+                }
             }
         }
         boolean overlaps = getActualLayout().isOverlapSupported();
         Component component = null;
         for (int i = count - 1; i >= startIter; i--) {
-            Component cmp = getComponentAt(i);
+            Component cmp = getComponentAt(hits == null ? i : hits[i]);
             if (cmp.contains(x, y) && cmp.isVisible()) {
                 // this is a workaround for the issue mentioned here: https://stackoverflow.com/questions/44112337/action-listening-for-container-itself-and-sub-buttons/44125364
                 // the block lead has some weird behaviors with overlap hierarchies, not sure if this is the best solution
@@ -0,0 +1,517 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *  
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ * 
+ * Please contact Codename One through http://www.codenameone.com/ if you 
+ * need additional information or have any questions.
+ */
+package com.codename1.ui;
+
+import com.codename1.io.Log;
+import com.codename1.ui.events.ScrollListener;
+import com.codename1.ui.geom.Rectangle;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Manages the decoding of {@link EncodedImage} instances (including {@link URLImage} and 
+ * {@link com.codename1.components.StorageImage}). Decoded images can be kept in a least recently used cache 
+ * that is bounded by an approximate byte size, this prevents scrolling back and forth in a list from decoding the 
+ * same images over and over again when the garbage collector reclaims the weak references.</p>
+ * 
+ * <p>When asynchronous decoding is enabled an encoded image whose size is known is never decoded on the EDT 
+ * while drawing, instead the decode is queued to a small pool of worker threads and the image is drawn as 
+ * transparent until it is ready. Images can also be decoded ahead of time with the prefetch methods e.g.:</p>
+ * <pre>
+ * DecodedImageCache dc = DecodedImageCache.getInstance();
+ * dc.setMaxBytes(8 * 1024 * 1024);
+ * dc.setAsyncDecode(true);
+ * dc.attach(myScrollableContainer, Display.getInstance().getDisplayHeight());
+ * </pre>
+ */
+public class DecodedImageCache {
+    private static final DecodedImageCache INSTANCE = new DecodedImageCache();
+    
+    private final LinkedHashMap<EncodedImage, Image> cache = new LinkedHashMap<EncodedImage, Image>(16, 0.75f, true);
+    private final ArrayList<EncodedImage> queue = new ArrayList<EncodedImage>();
+    private final HashSet<EncodedImage> pending = new HashSet<EncodedImage>();
+    private int maxBytes;
+    private int currentBytes;
+    private boolean asyncDecode;
+    private int workerCount = 2;
+    private int maxQueueSize = 32;
+    private int activeWorkers;
+    private Image placeholder;
+    
+    private int decodeCount;
+    private int edtDecodeCount;
+    private int asyncDecodeCount;
+    private long totalDecodeTime;
+    private int maxDecodeTime;
+    private int hits;
+    private int misses;
+    private int evictions;
+    
+    private final Runnable repaint = new Runnable() {
+        public void run() {
+            Form f = Display.getInstance().getCurrent();
+            if(f != null) {
+                f.repaint();
+            }
+        }
+    };
+    
+    private DecodedImageCache() {}
+    
+    /**
+     * Returns the cache instance
+     * 
+     * @return the cache
+     */
+    public static DecodedImageCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The approximate number of bytes of decoded images that are kept in the cache, the size of an image is
+     * estimated as 4 bytes per pixel
+     * 
+     * @param maxBytes the size of the cache, 0 disables the cache which is the default
+     */
+    public synchronized void setMaxBytes(int maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    /**
+     * The approximate number of bytes of decoded images that are kept in the cache
+     * 
+     * @return the size of the cache, 0 if the cache is disabled
+     */
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * The approximate number of bytes of decoded images currently in the cache
+     * 
+     * @return the number of bytes
+     */
+    public synchronized int getCurrentBytes() {
+        return currentBytes;
+    }
+    
+    /**
+     * When enabled encoded images with a known size are decoded on a worker thread instead of the EDT, the image
+     * is drawn as transparent until the decode completes
+     * 
+     * @param asyncDecode true to decode in the background
+     */
+    public void setAsyncDecode(boolean asyncDecode) {
+        this.asyncDecode = asyncDecode;
+    }
+
+    /**
+     * Indicates whether encoded images are decoded in the background
+     * 
+     * @return true if images are decoded in the background
+     */
+    public boolean isAsyncDecode() {
+        return asyncDecode;
+    }
+
+    /**
+     * The maximum number of worker threads used for decoding
+     * 
+     * @param workerCount the number of threads, defaults to 2
+     */
+    public void setWorkerCount(int workerCount) {
+        this.workerCount = Math.max(1, workerCount);
+    }
+
+    /**
+     * The maximum number of worker threads used for decoding
+     * 
+     * @return the number of threads
+     */
+    public int getWorkerCount() {
+        return workerCount;
+    }
+    
+    /**
+     * The maximum number of images waiting to be decoded in the background, when the queue is full the oldest
+     * request is dropped since it is the furthest from the viewport
+     * 
+     * @param maxQueueSize the number of images, defaults to 32
+     */
+    public synchronized void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = Math.max(1, maxQueueSize);
+        trimQueue();
+    }
+
+    /**
+     * The maximum number of images waiting to be decoded in the background
+     * 
+     * @return the number of images
+     */
+    public synchronized int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+    
+    /**
+     * The number of images waiting to be decoded in the background
+     * 
+     * @return the number of images
+     */
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+    
+    /**
+     * Removes all the images from the cache
+     */
+    public synchronized void clear() {
+        cache.clear();
+        currentBytes = 0;
+    }
+    
+    /**
+     * Queues the image for decoding on a worker thread unless it is already decoded
+     * 
+     * @param img the image to decode
+     */
+    public void prefetch(EncodedImage img) {
+        if(!img.isDecoded()) {
+            request(img);
+        }
+    }
+    
+    /**
+     * Removes the image from the queue if a worker thread didn't start decoding it yet
+     * 
+     * @param img the image that is no longer needed
+     */
+    public synchronized void cancelPrefetch(EncodedImage img) {
+        if(queue.remove(img)) {
+            pending.remove(img);
+        }
+    }
+    
+    /**
+     * Queues the encoded images of the children of the given container that are within the visible area of 
+     * the container or within the given margin around it. This covers label icons and background images.
+     * Queued images of the children outside of that area are no longer needed and are removed from the queue
+     * 
+     * @param cnt the container whose children should be checked
+     * @param margin the number of pixels around the visible area
+     */
+    public void prefetch(Container cnt, int margin) {
+        int x1 = cnt.getScrollX() - margin;
+        int y1 = cnt.getScrollY() - margin;
+        int x2 = cnt.getScrollX() + cnt.getWidth() + margin;
+        int y2 = cnt.getScrollY() + cnt.getHeight() + margin;
+        int count = cnt.getComponentCount();
+        for(int iter = 0 ; iter < count ; iter++) {
+            Component c = cnt.getComponentAt(iter);
+            boolean visible = Rectangle.intersects(x1, y1, x2 - x1, y2 - y1, c.getX(), c.getY(), c.getWidth(), c.getHeight());
+            prefetchComponent(c, visible);
+        }
+    }
+    
+    private void prefetchComponent(Component c, boolean visible) {
+        if(c instanceof Label) {
+            prefetchImage(((Label)c).getIcon(), visible);
+        }
+        prefetchImage(c.getUnselectedStyle().getBgImage(), visible);
+        if(c instanceof Container) {
+            Container cnt = (Container)c;
+            int count = cnt.getComponentCount();
+            for(int iter = 0 ; iter < count ; iter++) {
+                prefetchComponent(cnt.getComponentAt(iter), visible);
+            }
+        }
+    }
+    
+    private void prefetchImage(Image i, boolean visible) {
+        if(i instanceof EncodedImage) {
+            if(visible) {
+                prefetch((EncodedImage)i);
+            } else {
+                cancelPrefetch((EncodedImage)i);
+            }
+        }
+    }
+    
+    /**
+     * Binds a scroll listener to the container that prefetches the images of the children as the container 
+     * scrolls
+     * 
+     * @param cnt a scrollable container
+     * @param margin the number of pixels beyond the visible area for which images are decoded
+     */
+    public void attach(final Container cnt, final int margin) {
+        cnt.addScrollListener(new ScrollListener() {
+            public void scrollChanged(int scrollX, int scrollY, int oldscrollX, int oldscrollY) {
+                prefetch(cnt, margin);
+            }
+        });
+        prefetch(cnt, margin);
+    }
+    
+    /**
+     * Returns a cached decoded image
+     */
+    synchronized Image get(EncodedImage img) {
+        if(maxBytes <= 0) {
+            return null;
+        }
+        Image i = cache.get(img);
+        if(i != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return i;
+    }
+    
+    synchronized boolean contains(EncodedImage img) {
+        return cache.containsKey(img);
+    }
+    
+    synchronized void remove(EncodedImage img) {
+        Image i = cache.remove(img);
+        if(i != null) {
+            currentBytes -= imageBytes(i);
+        }
+    }
+    
+    /**
+     * Invoked by the encoded image when it finished decoding
+     */
+    synchronized void decoded(EncodedImage img, Image i, int time) {
+        decodeCount++;
+        totalDecodeTime += time;
+        maxDecodeTime = Math.max(maxDecodeTime, time);
+        if(Display.getInstance().isEdt()) {
+            edtDecodeCount++;
+        }
+        if(maxBytes > 0) {
+            int size = imageBytes(i);
+            if(size <= maxBytes) {
+                Image old = cache.put(img, i);
+                if(old != null) {
+                    currentBytes -= imageBytes(old);
+                }
+                currentBytes += size;
+                trim();
+            }
+        }
+    }
+    
+    private void trim() {
+        Iterator<Map.Entry<EncodedImage, Image>> iter = cache.entrySet().iterator();
+        while(currentBytes > maxBytes && iter.hasNext()) {
+            Map.Entry<EncodedImage, Image> e = iter.next();
+            currentBytes -= imageBytes(e.getValue());
+            iter.remove();
+            evictions++;
+        }
+    }
+    
+    private static int imageBytes(Image i) {
+        return i.getWidth() * i.getHeight() * 4;
+    }
+    
+    /**
+     * The transparent image drawn while an image is decoded
+     */
+    Image getPlaceholder() {
+        if(placeholder == null) {
+            placeholder = Image.createImage(1, 1, 0);
+        }
+        return placeholder;
+    }
+    
+    /**
+     * Queues the image for decoding in the background
+     */
+    void request(EncodedImage img) {
+        synchronized(this) {
+            if(!pending.add(img)) {
+                return;
+            }
+            // the most recent requests are the images closest to the viewport so they are decoded first
+            queue.add(img);
+            trimQueue();
+            if(activeWorkers < workerCount && activeWorkers < queue.size()) {
+                activeWorkers++;
+                Display.getInstance().startThread(new Worker(), "Image Decoder").start();
+            } else {
+                notify();
+            }
+        }
+    }
+    
+    private void trimQueue() {
+        while(queue.size() > maxQueueSize) {
+            pending.remove(queue.remove(0));
+        }
+    }
+    
+    class Worker implements Runnable {
+        public void run() {
+            while(true) {
+                final EncodedImage img;
+                synchronized(DecodedImageCache.this) {
+                    if(queue.size() == 0) {
+                        try {
+                            DecodedImageCache.this.wait(5000);
+                        } catch(InterruptedException err) {
+                        }
+                        if(queue.size() == 0) {
+                            activeWorkers--;
+                            return;
+                        }
+                    }
+                    img = queue.remove(queue.size() - 1);
+                }
+                try {
+                    final Image i = img.decode();
+                    synchronized(DecodedImageCache.this) {
+                        asyncDecodeCount++;
+                    }
+                    Display.getInstance().callSerially(new Runnable() {
+                        public void run() {
+                            img.decodedAsync(i);
+                            synchronized(DecodedImageCache.this) {
+                                pending.remove(img);
+                            }
+                            Display.getInstance().callSeriallyCoalesced(DecodedImageCache.this, repaint);
+                        }
+                    });
+                } catch(Throwable t) {
+                    Log.e(t);
+                    synchronized(DecodedImageCache.this) {
+                        pending.remove(img);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * The number of images decoded since the statistics were reset
+     * 
+     * @return the number of decodes
+     */
+    public synchronized int getDecodeCount() {
+        return decodeCount;
+    }
+
+    /**
+     * The number of images decoded on the EDT since the statistics were reset
+     * 
+     * @return the number of decodes
+     */
+    public synchronized int getEdtDecodeCount() {
+        return edtDecodeCount;
+    }
+
+    /**
+     * The number of images decoded by the worker threads since the statistics were reset
+     * 
+     * @return the number of decodes
+     */
+    public synchronized int getAsyncDecodeCount() {
+        return asyncDecodeCount;
+    }
+
+    /**
+     * The total time spent decoding images since the statistics were reset
+     * 
+     * @return time in milliseconds
+     */
+    public synchronized long getTotalDecodeTime() {
+        return totalDecodeTime;
+    }
+
+    /**
+     * The longest decode since the statistics were reset
+     * 
+     * @return time in milliseconds
+     */
+    public synchronized int getMaxDecodeTime() {
+        return maxDecodeTime;
+    }
+
+    /**
+     * The average decode time since the statistics were reset
+     * 
+     * @return time in milliseconds
+     */
+    public synchronized int getAverageDecodeTime() {
+        if(decodeCount == 0) {
+            return 0;
+        }
+        return (int)(totalDecodeTime / decodeCount);
+    }
+
+    /**
+     * The number of times a decoded image was found in the cache
+     * 
+     * @return the number of hits
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * The number of times a decoded image wasn't in the cache
+     * 
+     * @return the number of misses
+     */
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * The number of images removed from the cache to stay within its size
+     * 
+     * @return the number of evictions
+     */
+    public synchronized int getEvictions() {
+        return evictions;
+    }
+    
+    /**
+     * Resets the decode and cache statistics
+     */
+    public synchronized void resetStatistics() {
+        decodeCount = 0;
+        edtDecodeCount = 0;
+        asyncDecodeCount = 0;
+        totalDecodeTime = 0;
+        maxDecodeTime = 0;
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+}
@@ -290,6 +290,17 @@ public final class Display extends CN1Constants {
      */
     private ArrayList<Runnable> pendingSerialCalls = new ArrayList<Runnable>();
 
+    /**
+     * Spare list swapped with pendingSerialCalls when draining, null while a drain is in 
+     * progress (e.g. a nested drain from invokeAndBlock)
+     */
+    private ArrayList<Runnable> drainSerialCalls = new ArrayList<Runnable>();
+
+    /**
+     * Maps the keys of coalesced serial calls to their offset within pendingSerialCalls
+     */
+    private HashMap<Object, Integer> coalescedSerialCalls;
+
     /**
      * Contains the call serially idle elements
      */
@@ -845,6 +856,38 @@ public final class Display extends CN1Constants {
         }
     }
 
+    /**
+     * Causes the runnable to be invoked on the event dispatch thread similarly to 
+     * {@link #callSerially(java.lang.Runnable)}. However, if a runnable with an equal key was already 
+     * submitted and didn't run yet it is replaced by this runnable (keeping its place in the queue). 
+     * This is useful for background threads that post frequent updates of the same UI element
+     * e.g. a progress label, where only the latest update matters.
+     *
+     * @param key identifies the updates that can be collapsed into one
+     * @param r runnable (NOT A THREAD!) that will be invoked on the EDT serial to
+     * the paint and key handling events
+     */
+    public void callSeriallyCoalesced(Object key, Runnable r){
+        if(codenameOneRunning) {
+            synchronized(lock) {
+                Runnable actual = isEnableAsyncStackTraces()?new DebugRunnable(r) : r;
+                if(coalescedSerialCalls == null) {
+                    coalescedSerialCalls = new HashMap<Object, Integer>();
+                }
+                Integer offset = coalescedSerialCalls.get(key);
+                if(offset != null) {
+                    pendingSerialCalls.set(offset.intValue(), actual);
+                    return;
+                }
+                coalescedSerialCalls.put(key, new Integer(pendingSerialCalls.size()));
+                pendingSerialCalls.add(actual);
+                lock.notifyAll();
+            }
+        } else {
+            r.run();
+        }
+    }
+
     /**
      * Causes the runnable to be invoked on the event dispatch thread when the event 
      * dispatch thread is idle. This method returns immediately and will not wait for the serial call 
@@ -1182,66 +1225,95 @@ public final class Display extends CN1Constants {
             Log.e(ignor);
         }
         long currentTime = System.currentTimeMillis();
+        boolean profile = FrameProfiler.active;
+        if(profile) {
+            FrameProfiler.beginFrame();
+            FrameProfiler.phase(FrameProfiler.PHASE_INPUT);
+        }
         
-        // minimal amount of sync, just flipping the stack pointers
-        synchronized(lock) {
-            inputEventStackPointerTmp = inputEventStackPointer;
-            inputEventStackPointer = 0;
-            lastDragOffset = -1;
-            int[] qt = inputEventStackTmp;
-            inputEventStackTmp = inputEventStack;
-
-            // We have a special flag here for a case where the input event stack might still be processing this can 
-            // happen if an event callback calls something like invokeAndBlock while processing and might reach
-            // this code again
-            if(qt[qt.length - 1] == Integer.MAX_VALUE) {
-                inputEventStack = new int[qt.length];
-            } else {
-                inputEventStack = qt;
-                qt[qt.length - 1] = 0;
+        boolean frameCompleted = false;
+        try {
+            // minimal amount of sync, just flipping the stack pointers
+            synchronized(lock) {
+                inputEventStackPointerTmp = inputEventStackPointer;
+                inputEventStackPointer = 0;
+                lastDragOffset = -1;
+                int[] qt = inputEventStackTmp;
+                inputEventStackTmp = inputEventStack;
+
+                // We have a special flag here for a case where the input event stack might still be processing this can 
+                // happen if an event callback calls something like invokeAndBlock while processing and might reach
+                // this code again
+                if(qt[qt.length - 1] == Integer.MAX_VALUE) {
+                    inputEventStack = new int[qt.length];
+                } else {
+                    inputEventStack = qt;
+                    qt[qt.length - 1] = 0;
+                }
             }
-        }
 
-        // we copy the variables to the stack since the array might be replaced while we are working if the EDT
-        // is nested into an "invokeAndBlock"
-        int actualTmpPointer = inputEventStackPointerTmp;
-        inputEventStackPointerTmp = 0;
-        int[] actualStack = inputEventStackTmp;
-        int offset = 0;
-        actualStack[actualStack.length - 1] = Integer.MAX_VALUE;
-        while(offset < actualTmpPointer) {            
-            offset = handleEvent(offset, actualStack);
-        }
+            // we copy the variables to the stack since the array might be replaced while we are working if the EDT
+            // is nested into an "invokeAndBlock"
+            int actualTmpPointer = inputEventStackPointerTmp;
+            inputEventStackPointerTmp = 0;
+            int[] actualStack = inputEventStackTmp;
+            int offset = 0;
+            actualStack[actualStack.length - 1] = Integer.MAX_VALUE;
+            while(offset < actualTmpPointer) {            
+                offset = handleEvent(offset, actualStack);
+                if(profile) {
+                    FrameProfiler.count(FrameProfiler.COUNTER_INPUT_EVENTS, 1);
+                }
+            }
         
-        actualStack[actualStack.length - 1] = 0;
+            actualStack[actualStack.length - 1] = 0;
 
-    if(!impl.isInitialized()){
-            return;
-        }
-        codenameOneGraphics.setGraphics(impl.getNativeGraphics());
-        impl.paintDirty();
+            if(!impl.isInitialized()){
+                return;
+            }
+            codenameOneGraphics.setGraphics(impl.getNativeGraphics());
+            if(profile) {
+                FrameProfiler.phase(FrameProfiler.PHASE_PAINT);
+            }
+            impl.paintDirty();
 
-        // draw the animations
-        Form current = impl.getCurrentForm();
-        if(current != null){
-            current.repaintAnimations();
-            // check key repeat events
-            long t = System.currentTimeMillis();
-            if(keyRepeatCharged && nextKeyRepeatEvent <= t) {
-                current.keyRepeated(keyRepeatValue);
-                nextKeyRepeatEvent = t + keyRepeatNextIntervalTime;
+            // draw the animations
+            Form current = impl.getCurrentForm();
+            if(current != null){
+                if(profile) {
+                    FrameProfiler.phase(FrameProfiler.PHASE_ANIMATIONS);
+                }
+                current.repaintAnimations();
+                // check key repeat events
+                if(profile) {
+                    FrameProfiler.phase(FrameProfiler.PHASE_KEY_REPEAT);
+                }
+                long t = System.currentTimeMillis();
+                if(keyRepeatCharged && nextKeyRepeatEvent <= t) {
+                    current.keyRepeated(keyRepeatValue);
+                    nextKeyRepeatEvent = t + keyRepeatNextIntervalTime;
+                }
+                if(longPressCharged && longPressInterval <= t - longKeyPressTime) {
+                    longPressCharged = false;
+                    current.longKeyPress(keyRepeatValue);
+                }
+                if(longPointerCharged && longPressInterval <= t - longKeyPressTime) {
+                    longPointerCharged = false;
+                    current.longPointerPress(pointerX, pointerY);
+                }
             }
-            if(longPressCharged && longPressInterval <= t - longKeyPressTime) {
-                longPressCharged = false;
-                current.longKeyPress(keyRepeatValue);
+            if(profile) {
+                FrameProfiler.phase(FrameProfiler.PHASE_SERIAL_CALLS);
             }
-            if(longPointerCharged && longPressInterval <= t - longKeyPressTime) {
-                longPointerCharged = false;
-                current.longPointerPress(pointerX, pointerY);
+            processSerialCalls();
+            time = System.currentTimeMillis() - currentTime;
+            frameCompleted = true;
+        } finally {
+            if(profile) {
+                // a frame that was cut short isn't recorded but the nesting state must still be restored
+                FrameProfiler.endFrame(frameCompleted);
             }
         }
-        processSerialCalls();
-        time = System.currentTimeMillis() - currentTime;
     }
 
     boolean hasNoSerialCallsPending() {
@@ -1273,30 +1345,36 @@ public final class Display extends CN1Constants {
      */
     void processSerialCalls() {
         processingSerialCalls = true;
-        int size = pendingSerialCalls.size();
-        if(size > 0) {
-            Runnable[] array = null;
+        if(pendingSerialCalls.size() > 0) {
+            ArrayList<Runnable> calls;
             synchronized(lock) {
-                size = pendingSerialCalls.size();
-                array = new Runnable[size];
-
-                // copy all elements to an array and remove them otherwise invokeAndBlock from
-                // within a callSerially() can cause an infinite loop...
-                pendingSerialCalls.toArray(array);
-
-                if(size == pendingSerialCalls.size()) {
-                    // this is faster
-                    pendingSerialCalls.clear();
-                } else {
-                    // this can occur if an element was added during the loop
-                    for(int iter = 0 ; iter < size ; iter++) {
-                        pendingSerialCalls.remove(0);
-                    }
+                // swap the lists so new calls can be added while we run the current ones, 
+                // we must remove the elements otherwise invokeAndBlock from within a 
+                // callSerially() can cause an infinite loop...
+                calls = pendingSerialCalls;
+                ArrayList<Runnable> spare = drainSerialCalls;
+                if(spare == null) {
+                    // nested drain, the spare list is in use by the outer drain
+                    spare = new ArrayList<Runnable>();
+                }
+                drainSerialCalls = null;
+                pendingSerialCalls = spare;
+                if(coalescedSerialCalls != null) {
+                    coalescedSerialCalls.clear();
                 }
             }
 
-            for(int iter = 0 ; iter < size ; iter++) {
-                array[iter].run();
+            try {
+                int size = calls.size();
+                if(FrameProfiler.active) {
+                    FrameProfiler.count(FrameProfiler.COUNTER_SERIAL_CALLS, size);
+                }
+                for(int iter = 0 ; iter < size ; iter++) {
+                    calls.get(iter).run();
+                }
+            } finally {
+                calls.clear();
+                drainSerialCalls = calls;
             }
 
             // after finishing an event cycle there might be serial calls waiting
@@ -3283,6 +3361,9 @@ public final class Display extends CN1Constants {
         if ("blockCopyPaste".equals(key)) {
             impl.blockCopyPaste("true".equals(value));
         }
+        if ("mergeDirtyRegions".equals(key)) {
+            impl.setMergeDirtyRegions("true".equals(value));
+        }
         if(key.startsWith("platformHint.")) {
             impl.setPlatformHint(key, value);
             return;
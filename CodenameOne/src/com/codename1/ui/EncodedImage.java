@@ -112,6 +112,18 @@ public class EncodedImage extends Image {
     protected void resetCache() {
         cache = null;
         hardCache = null;
+        DecodedImageCache.getInstance().remove(this);
+    }
+    
+    /**
+     * Indicates whether the image can be decoded on a worker thread by the {@link DecodedImageCache} when
+     * asynchronous decoding is enabled. Subclasses that load their data asynchronously on their own should 
+     * return false
+     * 
+     * @return true by default
+     */
+    protected boolean isAsyncDecodeSupported() {
+        return true;
     }
 
     /**
@@ -410,6 +422,7 @@ public class EncodedImage extends Image {
             cache = null;
             width = -1;
             height = -1;
+            DecodedImageCache.getInstance().remove(this);
         }
         if(hardCache != null) {
             return hardCache;
@@ -436,6 +449,19 @@ public class EncodedImage extends Image {
                 return i;
             }
         }
+        Image i = DecodedImageCache.getInstance().get(this);
+        if(i == null) {
+            i = decode();
+        }
+        cache = Display.getInstance().createSoftWeakRef(i);
+        return i;
+    }
+    
+    /**
+     * Decodes the image data, this might be invoked on a worker thread of the {@link DecodedImageCache}
+     */
+    Image decode() {
+        long start = System.currentTimeMillis();
         Image i;
         try {
             byte[] b = getImageData();
@@ -449,9 +475,49 @@ public class EncodedImage extends Image {
             Log.e(err);
             i = Image.createImage(5, 5);
         }
-        cache = Display.getInstance().createSoftWeakRef(i);
+        DecodedImageCache.getInstance().decoded(this, i, (int)(System.currentTimeMillis() - start));
         return i;
     }
+    
+    /**
+     * Returns true if a decoded version of this image is available without decoding
+     */
+    boolean isDecoded() {
+        if(hardCache != null) {
+            return true;
+        }
+        if(cache != null && Display.getInstance().extractHardRef(cache) != null) {
+            return true;
+        }
+        return DecodedImageCache.getInstance().contains(this);
+    }
+    
+    /**
+     * Invoked on the EDT when a worker thread finished decoding the image
+     */
+    void decodedAsync(Image i) {
+        if(cache == null || Display.getInstance().extractHardRef(cache) == null) {
+            cache = Display.getInstance().createSoftWeakRef(i);
+        }
+        if(locked > 0 && hardCache == null) {
+            hardCache = i;
+        }
+    }
+    
+    /**
+     * Returns the image to draw, if asynchronous decoding is enabled and the image isn't decoded yet the decode
+     * is queued and a transparent placeholder is returned
+     */
+    private Image getInternalForDrawing() {
+        if(hardCache == null && width > -1 && height > -1 && (imageData == null || imageData.length == 1)) {
+            DecodedImageCache dc = DecodedImageCache.getInstance();
+            if(dc.isAsyncDecode() && isAsyncDecodeSupported() && !isDecoded()) {
+                dc.request(this);
+                return dc.getPlaceholder();
+            }
+        }
+        return getInternalImpl();
+    }
 
     /**
      * {@inheritDoc}
@@ -605,7 +671,7 @@ public class EncodedImage extends Image {
      */
     protected void drawImage(Graphics g, Object nativeGraphics, int x, int y) {
         Display.impl.drawingEncodedImage(this);
-        Image internal = getInternalImpl();
+        Image internal = getInternalForDrawing();
         if(width > -1 && height > -1 && (internal.getWidth() != width || internal.getHeight() != height)) {
             internal.drawImage(g, nativeGraphics, x, y, width, height);
         } else {
@@ -618,7 +684,7 @@ public class EncodedImage extends Image {
      */
     protected void drawImage(Graphics g, Object nativeGraphics, int x, int y, int w, int h) {
         Display.impl.drawingEncodedImage(this);
-        getInternalImpl().drawImage(g, nativeGraphics, x, y, w, h);
+        getInternalForDrawing().drawImage(g, nativeGraphics, x, y, w, h);
     }
 
     /**
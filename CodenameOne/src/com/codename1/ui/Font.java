@@ -81,6 +81,17 @@ public class Font extends CN {
     private String fontUniqueId;
 
     private static HashMap<String, Font> derivedFontCache = new HashMap<String, Font>();
+    
+    /**
+     * Widths of the latin characters offset by one so zero marks a width that wasn't measured yet
+     */
+    private int[] charWidthCache;
+    
+    /**
+     * Widths of other characters, bounded to prevent large alphabets from growing it indefinitely
+     */
+    private HashMap<Character, Integer> charWidthFallback;
+    private static final int MAX_FALLBACK_WIDTHS = 512;
     private static float fontReturnedHeight;
     
     /**
@@ -395,7 +406,35 @@ public class Font extends CN {
      * @return the width of the specific character when rendered alone
      */
     public int charWidth(char ch) {
-        return Display.impl.charWidth(font, ch);
+        if(ch < 256) {
+            int[] cache = charWidthCache;
+            if(cache == null) {
+                cache = new int[256];
+                charWidthCache = cache;
+            }
+            int w = cache[ch];
+            if(w == 0) {
+                w = Display.impl.charWidth(font, ch) + 1;
+                cache[ch] = w;
+            }
+            return w - 1;
+        }
+        synchronized(this) {
+            if(charWidthFallback == null) {
+                charWidthFallback = new HashMap<Character, Integer>();
+            }
+            Integer w = charWidthFallback.get(ch);
+            if(w != null) {
+                return w.intValue();
+            }
+        }
+        int w = Display.impl.charWidth(font, ch);
+        synchronized(this) {
+            if(charWidthFallback.size() < MAX_FALLBACK_WIDTHS) {
+                charWidthFallback.put(ch, w);
+            }
+        }
+        return w;
     }
     
     /**
@@ -0,0 +1,501 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *  
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ * 
+ * Please contact Codename One through http://www.codenameone.com/ if you 
+ * need additional information or have any questions.
+ */
+package com.codename1.ui;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * <p>Records per frame timing information for the event dispatch thread loop. When started the profiler 
+ * keeps the last N frames in a ring buffer, every frame records the time spent in each phase of the loop
+ * (input handling, painting, animations, key repeat and serial calls) as well as the number of components
+ * painted, serial calls executed, layout passes and input events processed. Frames that take longer than 
+ * the budget are counted as jank.</p>
+ * 
+ * <p>Times are measured with {@code System.currentTimeMillis()} so they have millisecond resolution. The data
+ * can be dumped as CSV with {@link #dump()} or streamed to a {@link FrameListener} as frames complete e.g.:</p>
+ * <pre>
+ * FrameProfiler.getInstance().start();
+ * // ... run the UI
+ * Log.p(FrameProfiler.getInstance().dump());
+ * </pre>
+ */
+public class FrameProfiler {
+    /**
+     * Processing of pointer/key input events
+     */
+    public static final int PHASE_INPUT = 0;
+
+    /**
+     * Painting of the dirty components
+     */
+    public static final int PHASE_PAINT = 1;
+
+    /**
+     * Painting of the form animations
+     */
+    public static final int PHASE_ANIMATIONS = 2;
+
+    /**
+     * Key repeat and long press detection
+     */
+    public static final int PHASE_KEY_REPEAT = 3;
+
+    /**
+     * Execution of callSerially runnables
+     */
+    public static final int PHASE_SERIAL_CALLS = 4;
+
+    /**
+     * Number of components painted in the frame
+     */
+    public static final int COUNTER_COMPONENTS_PAINTED = 0;
+
+    /**
+     * Number of callSerially runnables executed in the frame
+     */
+    public static final int COUNTER_SERIAL_CALLS = 1;
+
+    /**
+     * Number of container layout passes performed in the frame
+     */
+    public static final int COUNTER_LAYOUTS = 2;
+
+    /**
+     * Number of input events processed in the frame
+     */
+    public static final int COUNTER_INPUT_EVENTS = 3;
+
+    private static final int PHASE_COUNT = 5;
+    private static final int COUNTER_COUNT = 4;
+    private static final String[] PHASE_NAMES = {"input", "paint", "animations", "keyRepeat", "serialCalls"};
+    private static final String[] COUNTER_NAMES = {"componentsPainted", "serialCallsExecuted", "layouts", "inputEvents"};
+    
+    private static final FrameProfiler INSTANCE = new FrameProfiler();
+    
+    /**
+     * Checked by the instrumentation hooks so they cost nothing when the profiler isn't running
+     */
+    static boolean active;
+    
+    private int capacity = 300;
+    private int budget = -1;
+    private long[] startTimes;
+    private int[] durations;
+    private int[][] phaseTimes;
+    private int[][] counters;
+    private int next;
+    private int size;
+    private long totalFrames;
+    private long jankFrames;
+    
+    private boolean inFrame;
+    
+    /**
+     * The EDT loop can nest thru invokeAndBlock, only the outermost loop starts and records a frame
+     */
+    private int depth;
+    private long frameStart;
+    private int currentPhase = -1;
+    private long phaseStart;
+    private final int[] currentPhaseTimes = new int[PHASE_COUNT];
+    private final int[] currentCounters = new int[COUNTER_COUNT];
+    private ArrayList<FrameListener> listeners;
+    
+    /**
+     * Callback invoked on the EDT whenever a frame completes while the profiler is running
+     */
+    public static interface FrameListener {
+        /**
+         * Invoked when a frame is recorded, the frame is the newest frame in the profiler i.e. 
+         * {@code getFrameCount() - 1}
+         * 
+         * @param profiler the profiler instance
+         */
+        public void frameCompleted(FrameProfiler profiler);
+    }
+    
+    private FrameProfiler() {}
+    
+    /**
+     * Returns the profiler instance
+     * 
+     * @return the profiler
+     */
+    public static FrameProfiler getInstance() {
+        return INSTANCE;
+    }
+    
+    /**
+     * Starts recording frames, this discards previously recorded frames
+     */
+    public void start() {
+        startTimes = new long[capacity];
+        durations = new int[capacity];
+        phaseTimes = new int[PHASE_COUNT][capacity];
+        counters = new int[COUNTER_COUNT][capacity];
+        reset();
+        active = true;
+    }
+    
+    /**
+     * Stops recording frames, the recorded data remains available
+     */
+    public void stop() {
+        active = false;
+        inFrame = false;
+        depth = 0;
+    }
+
+    /**
+     * Returns true if the profiler is recording
+     * 
+     * @return true if recording
+     */
+    public boolean isRunning() {
+        return active;
+    }
+    
+    /**
+     * Discards the recorded frames and counts
+     */
+    public void reset() {
+        next = 0;
+        size = 0;
+        totalFrames = 0;
+        jankFrames = 0;
+        inFrame = false;
+        depth = 0;
+    }
+
+    /**
+     * The number of frames kept in the ring buffer, takes effect on the next call to {@link #start()}
+     * 
+     * @param capacity the number of frames, defaults to 300
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * The number of frames kept in the ring buffer
+     * 
+     * @return the number of frames
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Frames that take longer than the budget are considered jank
+     * 
+     * @param budget the budget in milliseconds or -1 to derive it from the frame rate of the display (the default)
+     */
+    public void setBudget(int budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Frames that take longer than the budget are considered jank
+     * 
+     * @return the budget in milliseconds
+     */
+    public int getBudget() {
+        if(budget < 0) {
+            return 1000 / Math.max(1, Display.getInstance().getFrameRate());
+        }
+        return budget;
+    }
+    
+    /**
+     * Adds a listener that is invoked on the EDT for every frame recorded
+     * 
+     * @param l the listener
+     */
+    public void addFrameListener(FrameListener l) {
+        if(listeners == null) {
+            listeners = new ArrayList<FrameListener>();
+        }
+        listeners.add(l);
+    }
+
+    /**
+     * Removes a frame listener
+     * 
+     * @param l the listener
+     */
+    public void removeFrameListener(FrameListener l) {
+        if(listeners != null) {
+            listeners.remove(l);
+        }
+    }
+    
+    static void beginFrame() {
+        INSTANCE.beginFrameImpl();
+    }
+    
+    private void beginFrameImpl() {
+        depth++;
+        if(depth > 1) {
+            // a nested loop is accounted as part of the frame that invoked it
+            return;
+        }
+        inFrame = true;
+        frameStart = System.currentTimeMillis();
+        phaseStart = frameStart;
+        currentPhase = -1;
+        for(int iter = 0 ; iter < PHASE_COUNT ; iter++) {
+            currentPhaseTimes[iter] = 0;
+        }
+        for(int iter = 0 ; iter < COUNTER_COUNT ; iter++) {
+            currentCounters[iter] = 0;
+        }
+    }
+    
+    static void phase(int phase) {
+        INSTANCE.phaseImpl(phase);
+    }
+    
+    private void phaseImpl(int phase) {
+        if(!inFrame || depth > 1) {
+            return;
+        }
+        long t = System.currentTimeMillis();
+        if(currentPhase > -1) {
+            currentPhaseTimes[currentPhase] += (int)(t - phaseStart);
+        }
+        currentPhase = phase;
+        phaseStart = t;
+    }
+    
+    static void count(int counter, int amount) {
+        INSTANCE.currentCounters[counter] += amount;
+    }
+    
+    /**
+     * Ends the frame started by the matching {@link #beginFrame()}, this must be invoked on every exit path 
+     * of the loop
+     * 
+     * @param record false to discard a frame that didn't complete e.g. because the implementation isn't 
+     * initialized or an exception was thrown
+     */
+    static void endFrame(boolean record) {
+        INSTANCE.endFrameImpl(record);
+    }
+    
+    private void endFrameImpl(boolean record) {
+        if(depth == 0) {
+            // the profiler was restarted or stopped during the frame
+            return;
+        }
+        depth--;
+        if(depth > 0 || !inFrame) {
+            return;
+        }
+        phaseImpl(-1);
+        inFrame = false;
+        if(!record) {
+            return;
+        }
+        int offset = next;
+        startTimes[offset] = frameStart;
+        int duration = (int)(phaseStart - frameStart);
+        durations[offset] = duration;
+        for(int iter = 0 ; iter < PHASE_COUNT ; iter++) {
+            phaseTimes[iter][offset] = currentPhaseTimes[iter];
+        }
+        for(int iter = 0 ; iter < COUNTER_COUNT ; iter++) {
+            counters[iter][offset] = currentCounters[iter];
+        }
+        next = (next + 1) % startTimes.length;
+        if(size < startTimes.length) {
+            size++;
+        }
+        totalFrames++;
+        if(duration > getBudget()) {
+            jankFrames++;
+        }
+        if(listeners != null) {
+            int lsize = listeners.size();
+            for(int iter = 0 ; iter < lsize ; iter++) {
+                listeners.get(iter).frameCompleted(this);
+            }
+        }
+    }
+    
+    private int index(int frame) {
+        if(frame < 0 || frame >= size) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + size);
+        }
+        return (next - size + frame + startTimes.length) % startTimes.length;
+    }
+    
+    /**
+     * The number of frames currently held in the ring buffer
+     * 
+     * @return the number of frames, frame 0 is the oldest
+     */
+    public int getFrameCount() {
+        return size;
+    }
+
+    /**
+     * The total number of frames recorded since the profiler was started
+     * 
+     * @return the number of frames
+     */
+    public long getTotalFrames() {
+        return totalFrames;
+    }
+
+    /**
+     * The total number of frames that exceeded the budget since the profiler was started
+     * 
+     * @return the number of frames
+     */
+    public long getJankFrames() {
+        return jankFrames;
+    }
+    
+    /**
+     * The time in which the frame started
+     * 
+     * @param frame the frame offset where 0 is the oldest frame in the buffer
+     * @return time in milliseconds
+     */
+    public long getFrameStart(int frame) {
+        return startTimes[index(frame)];
+    }
+
+    /**
+     * The total duration of the frame
+     * 
+     * @param frame the frame offset where 0 is the oldest frame in the buffer
+     * @return the duration in milliseconds
+     */
+    public int getFrameDuration(int frame) {
+        return durations[index(frame)];
+    }
+
+    /**
+     * Returns true if the frame exceeded the budget
+     * 
+     * @param frame the frame offset where 0 is the oldest frame in the buffer
+     * @return true for a janky frame
+     */
+    public boolean isJank(int frame) {
+        return getFrameDuration(frame) > getBudget();
+    }
+    
+    /**
+     * The time spent in the given phase during the frame
+     * 
+     * @param frame the frame offset where 0 is the oldest frame in the buffer
+     * @param phase one of the PHASE constants
+     * @return the time in milliseconds
+     */
+    public int getPhaseTime(int frame, int phase) {
+        return phaseTimes[phase][index(frame)];
+    }
+
+    /**
+     * The value of the given counter for the frame
+     * 
+     * @param frame the frame offset where 0 is the oldest frame in the buffer
+     * @param counter one of the COUNTER constants
+     * @return the counter value
+     */
+    public int getCounter(int frame, int counter) {
+        return counters[counter][index(frame)];
+    }
+    
+    /**
+     * Writes the recorded frames as CSV with a header line
+     * 
+     * @param w the destination
+     * @throws IOException if thrown by the writer
+     */
+    public void dump(Writer w) throws IOException {
+        StringBuilder b = new StringBuilder("frameStart,duration");
+        for(int iter = 0 ; iter < PHASE_COUNT ; iter++) {
+            b.append(',');
+            b.append(PHASE_NAMES[iter]);
+        }
+        for(int iter = 0 ; iter < COUNTER_COUNT ; iter++) {
+            b.append(',');
+            b.append(COUNTER_NAMES[iter]);
+        }
+        b.append(",jank\n");
+        w.write(b.toString());
+        int budgetValue = getBudget();
+        for(int frame = 0 ; frame < size ; frame++) {
+            b.setLength(0);
+            int i = index(frame);
+            b.append(startTimes[i]);
+            b.append(',');
+            b.append(durations[i]);
+            for(int iter = 0 ; iter < PHASE_COUNT ; iter++) {
+                b.append(',');
+                b.append(phaseTimes[iter][i]);
+            }
+            for(int iter = 0 ; iter < COUNTER_COUNT ; iter++) {
+                b.append(',');
+                b.append(counters[iter][i]);
+            }
+            b.append(',');
+            b.append(durations[i] > budgetValue);
+            b.append('\n');
+            w.write(b.toString());
+        }
+    }
+    
+    /**
+     * Returns the recorded frames as CSV with a header line
+     * 
+     * @return the CSV data
+     */
+    public String dump() {
+        final StringBuilder sb = new StringBuilder();
+        try {
+            dump(new Writer() {
+                public void write(char[] cbuf, int off, int len) {
+                    sb.append(cbuf, off, len);
+                }
+                
+                public void write(String str) {
+                    sb.append(str);
+                }
+
+                public void flush() {
+                }
+
+                public void close() {
+                }
+            });
+        } catch(IOException err) {
+            // can't happen with the string builder writer
+        }
+        return sb.toString();
+    }
+}
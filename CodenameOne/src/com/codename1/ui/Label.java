@@ -92,7 +92,8 @@ public class Label extends Component {
     private boolean shouldLocalize = true;
     private boolean showEvenIfBlank = false;
     private float shiftMillimeters = 0.25f;
-    private int stringWidthUnselected = -1;
+    private int cachedStringWidth = -1;
+    private Font stringWidthFont;
     
     private boolean autoSizeMode;
     private float maxAutoSize = -1;
@@ -371,7 +372,7 @@ public class Label extends Component {
         widthAtLastCheck = -1;
         this.text = text;
         localize();
-        stringWidthUnselected = -1;
+        cachedStringWidth = -1;
         setShouldCalcPreferredSize(true);
         repaint();
     }
@@ -1192,14 +1193,13 @@ public class Label extends Component {
      * @return the string width
      */
     public int getStringWidth(Font fnt) {
-        if(isUnselectedStyle) {
-            // very optimized way to get the string width of a label for the common unselected case in larger lists
-            if(stringWidthUnselected < 0) {
-                stringWidthUnselected = fnt.stringWidth(text);
-            }
-            return stringWidthUnselected;
+        // the width is kept along with the font it was measured with so switching between the selected and 
+        // unselected fonts or a font change in the style invalidates it
+        if(cachedStringWidth < 0 || stringWidthFont != fnt) {
+            cachedStringWidth = fnt.stringWidth(text);
+            stringWidthFont = fnt;
         }
-        return fnt.stringWidth(text);
+        return cachedStringWidth;
     }
 
     /**
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *  
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ * 
+ * Please contact Codename One through http://www.codenameone.com/ if you 
+ * need additional information or have any questions.
+ */
+package com.codename1.ui;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A uniform grid over the bounds of the children of a container, it allows finding the children that intersect 
+ * a region without iterating over all of them. The grid covers the union of the child bounds and is rebuilt lazily
+ * when the container is laid out, the children change or a child is moved/resized.
+ */
+class SpatialIndex {
+    private int originX;
+    private int originY;
+    private int cellWidth;
+    private int cellHeight;
+    private int columns;
+    private int rows;
+    private int[][] cells;
+    private int[] cellSizes;
+    private int[] marks;
+    private int stamp;
+    private int[] results;
+    boolean valid;
+
+    /**
+     * Rebuilds the grid from the current bounds of the components
+     * 
+     * @param components the children of the container
+     */
+    void build(List<Component> components) {
+        int count = components.size();
+        int x1 = Integer.MAX_VALUE;
+        int y1 = Integer.MAX_VALUE;
+        int x2 = Integer.MIN_VALUE;
+        int y2 = Integer.MIN_VALUE;
+        for(int iter = 0 ; iter < count ; iter++) {
+            Component c = components.get(iter);
+            x1 = Math.min(x1, c.getX());
+            y1 = Math.min(y1, c.getY());
+            x2 = Math.max(x2, c.getX() + c.getWidth());
+            y2 = Math.max(y2, c.getY() + c.getHeight());
+        }
+        if(count == 0 || x2 <= x1 || y2 <= y1) {
+            x1 = 0;
+            y1 = 0;
+            x2 = 1;
+            y2 = 1;
+        }
+        
+        // aim for a couple of components per cell
+        int side = Math.max(1, (int)Math.sqrt(count / 2));
+        originX = x1;
+        originY = y1;
+        columns = side;
+        rows = side;
+        cellWidth = Math.max(1, (x2 - x1 + columns - 1) / columns);
+        cellHeight = Math.max(1, (y2 - y1 + rows - 1) / rows);
+        int cellCount = columns * rows;
+        if(cells == null || cells.length < cellCount) {
+            cells = new int[cellCount][];
+            cellSizes = new int[cellCount];
+        } else {
+            for(int iter = 0 ; iter < cellCount ; iter++) {
+                cellSizes[iter] = 0;
+            }
+        }
+        if(marks == null || marks.length < count) {
+            marks = new int[count];
+            stamp = 0;
+        }
+        for(int iter = 0 ; iter < count ; iter++) {
+            Component c = components.get(iter);
+            int w = c.getWidth();
+            int h = c.getHeight();
+            if(w <= 0 || h <= 0) {
+                continue;
+            }
+            int col1 = column(c.getX());
+            int col2 = column(c.getX() + w - 1);
+            int row1 = row(c.getY());
+            int row2 = row(c.getY() + h - 1);
+            for(int row = row1 ; row <= row2 ; row++) {
+                for(int col = col1 ; col <= col2 ; col++) {
+                    add(row * columns + col, iter);
+                }
+            }
+        }
+        valid = true;
+    }
+    
+    private void add(int cell, int value) {
+        int[] arr = cells[cell];
+        int size = cellSizes[cell];
+        if(arr == null) {
+            arr = new int[4];
+            cells[cell] = arr;
+        } else if(size == arr.length) {
+            int[] n = new int[size * 2];
+            System.arraycopy(arr, 0, n, 0, size);
+            arr = n;
+            cells[cell] = arr;
+        }
+        arr[size] = value;
+        cellSizes[cell] = size + 1;
+    }
+    
+    private int column(int x) {
+        return Math.max(0, Math.min(columns - 1, (x - originX) / cellWidth));
+    }
+    
+    private int row(int y) {
+        return Math.max(0, Math.min(rows - 1, (y - originY) / cellHeight));
+    }
+    
+    /**
+     * Finds the children whose bounds intersect the given region, the results are placed in ascending 
+     * (painting) order into the array returned by {@link #borrowResults()}
+     * 
+     * @param components the children of the container
+     * @param x1 left edge of the region in the coordinate space of the children
+     * @param y1 top edge of the region in the coordinate space of the children
+     * @param x2 right edge of the region (exclusive)
+     * @param y2 bottom edge of the region (exclusive)
+     * @return the number of results
+     */
+    int query(List<Component> components, int x1, int y1, int x2, int y2) {
+        if(results == null || results.length < components.size()) {
+            results = new int[Math.max(16, components.size())];
+        }
+        int count = 0;
+        if(x2 <= x1 || y2 <= y1) {
+            return 0;
+        }
+        stamp++;
+        if(stamp == Integer.MAX_VALUE) {
+            stamp = 1;
+            for(int iter = 0 ; iter < marks.length ; iter++) {
+                marks[iter] = 0;
+            }
+        }
+        int col1 = column(x1);
+        int col2 = column(x2 - 1);
+        int row1 = row(y1);
+        int row2 = row(y2 - 1);
+        for(int row = row1 ; row <= row2 ; row++) {
+            for(int col = col1 ; col <= col2 ; col++) {
+                int cell = row * columns + col;
+                int[] arr = cells[cell];
+                int size = cellSizes[cell];
+                for(int iter = 0 ; iter < size ; iter++) {
+                    int offset = arr[iter];
+                    if(marks[offset] == stamp) {
+                        continue;
+                    }
+                    marks[offset] = stamp;
+                    Component c = components.get(offset);
+                    int cx = c.getX();
+                    int cy = c.getY();
+                    if(cx < x2 && cx + c.getWidth() > x1 && cy < y2 && cy + c.getHeight() > y1) {
+                        results[count] = offset;
+                        count++;
+                    }
+                }
+            }
+        }
+        if(count > 1) {
+            Arrays.sort(results, 0, count);
+        }
+        return count;
+    }
+    
+    /**
+     * Returns the results of the last query, the caller must return the array with {@link #releaseResults(int[])}
+     * so a nested query doesn't overwrite the results while they are iterated
+     * 
+     * @return the results array
+     */
+    int[] borrowResults() {
+        int[] r = results;
+        results = null;
+        return r;
+    }
+    
+    /**
+     * Returns the array obtained from {@link #borrowResults()} for reuse
+     * 
+     * @param r the results array
+     */
+    void releaseResults(int[] r) {
+        if(results == null || results.length < r.length) {
+            results = r;
+        }
+    }
+}
@@ -1054,12 +1054,44 @@ public class TextArea extends Component {
         if there is no space in the entire row we will cut the line inorder to fit in.
          */
 
+        // every paragraph after the first starts on a new row and is broken independently of the rest of the
+        // text so its rows can be reused from the layout cache, this way an edit only measures the paragraph
+        // that changed
+        TextLayoutCache layoutCache = TextLayoutCache.getInstance();
+        boolean cacheRows = layoutCache.isEnabled() && textAreaWidth > charWidth;
+        TextLayoutCache.Key paragraph = null;
+        int paragraphRow = 0;
+
         //Don't rely on the fact that short text has no newline character. we always have to parse the text.
         to = Math.max( Math.min(textLength-1,to), 0 );
         while(to<textLength) {
             if(to>textLength){
                 to=textLength;
             }
+            
+            if(cacheRows && from > 0 && text[from - 1] == '\n') {
+                if(paragraph != null) {
+                    cacheRows(layoutCache, paragraph, paragraphRow);
+                }
+                // the line break is a part of the key since it affects the rows of a paragraph that ends with a space
+                int end = indexOf(text, '\n', from, textLength - from);
+                if(end < 0) {
+                    end = textLength;
+                }
+                paragraph = new TextLayoutCache.Key(new String(text, from, Math.min(end + 1, textLength) - from), font, 
+                        textAreaWidth, charWidth, useStringWidth || actAsLabel, unsupported);
+                String[] cached = layoutCache.get(paragraph);
+                if(cached != null) {
+                    for(String r : cached) {
+                        rowStrings.add(r);
+                    }
+                    paragraph = null;
+                    from = end + 1;
+                    to = from;
+                    continue;
+                }
+                paragraphRow = rowStrings.size();
+            }
 
             spaceIndex=-1;
             rowText="";
@@ -1212,11 +1244,22 @@ public class TextArea extends Component {
             //then minCharactersInRow
             to=from;//+minCharactersInRow;
         }
+        if(paragraph != null) {
+            cacheRows(layoutCache, paragraph, paragraphRow);
+        }
         if(text[text.length -1 ] == '\n'){
             rowStrings.add("");
         }
     }
     
+    private void cacheRows(TextLayoutCache layoutCache, TextLayoutCache.Key paragraph, int firstRow) {
+        String[] rows = new String[rowStrings.size() - firstRow];
+        for(int iter = 0 ; iter < rows.length ; iter++) {
+            rows[iter] = (String)rowStrings.get(firstRow + iter);
+        }
+        layoutCache.put(paragraph, rows);
+    }
+    
     /**
      * Gets the num of pixels gap between the rows
      * 
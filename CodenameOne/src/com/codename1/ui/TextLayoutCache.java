@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *  
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ * 
+ * Please contact Codename One through http://www.codenameone.com/ if you 
+ * need additional information or have any questions.
+ */
+package com.codename1.ui;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>A least recently used cache of the rows a {@link TextArea} breaks its text into. Rows are cached per
+ * paragraph (text between line breaks) together with the font, the available width and the wrapping mode so 
+ * editing or appending to a long text such as a chat transcript or an article only measures the paragraphs that
+ * changed. The cache is shared by all text areas including the ones used internally by 
+ * {@link com.codename1.components.SpanLabel}.</p>
+ */
+public class TextLayoutCache {
+    private static final TextLayoutCache INSTANCE = new TextLayoutCache();
+    
+    private int maxEntries = 1024;
+    private int hits;
+    private int misses;
+    
+    private final LinkedHashMap<Key, String[]> cache = new LinkedHashMap<Key, String[]>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, String[]> eldest) {
+            return size() > maxEntries;
+        }
+    };
+    
+    /**
+     * The values that affect the way a paragraph is broken into rows
+     */
+    static final class Key {
+        private final String text;
+        private final Font font;
+        private final int width;
+        private final int charWidth;
+        private final boolean stringWidth;
+        private final String unsupportedChars;
+        private final int hash;
+        
+        Key(String text, Font font, int width, int charWidth, boolean stringWidth, String unsupportedChars) {
+            this.text = text;
+            this.font = font;
+            this.width = width;
+            this.charWidth = charWidth;
+            this.stringWidth = stringWidth;
+            this.unsupportedChars = unsupportedChars;
+            int h = text.hashCode();
+            h = 31 * h + font.hashCode();
+            h = 31 * h + width;
+            h = 31 * h + charWidth;
+            this.hash = stringWidth ? h * 31 : h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key)o;
+            return hash == k.hash && font == k.font && width == k.width && charWidth == k.charWidth && 
+                    stringWidth == k.stringWidth && text.equals(k.text) && unsupportedChars.equals(k.unsupportedChars);
+        }
+    }
+    
+    private TextLayoutCache() {}
+    
+    /**
+     * Returns the cache instance
+     * 
+     * @return the cache
+     */
+    public static TextLayoutCache getInstance() {
+        return INSTANCE;
+    }
+    
+    /**
+     * The maximum number of paragraphs kept in the cache
+     * 
+     * @param maxEntries the number of paragraphs, 0 disables the cache. Defaults to 1024
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = Math.max(0, maxEntries);
+        if(this.maxEntries == 0) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * The maximum number of paragraphs kept in the cache
+     * 
+     * @return the number of paragraphs
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+    
+    /**
+     * Removes all the paragraphs from the cache, useful if fonts were reloaded
+     */
+    public synchronized void clear() {
+        cache.clear();
+    }
+    
+    /**
+     * The number of paragraphs whose rows were found in the cache
+     * 
+     * @return the number of cache hits
+     */
+    public int getHits() {
+        return hits;
+    }
+    
+    /**
+     * The number of paragraphs that had to be measured
+     * 
+     * @return the number of cache misses
+     */
+    public int getMisses() {
+        return misses;
+    }
+    
+    boolean isEnabled() {
+        return maxEntries > 0;
+    }
+    
+    synchronized String[] get(Key k) {
+        String[] rows = cache.get(k);
+        if(rows == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return rows;
+    }
+    
+    synchronized void put(Key k, String[] rows) {
+        if(maxEntries > 0) {
+            cache.put(k, rows);
+        }
+    }
+}
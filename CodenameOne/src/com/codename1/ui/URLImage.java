@@ -401,6 +401,14 @@ public class URLImage extends EncodedImage {
         }
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean isAsyncDecodeSupported() {
+        // until the image is downloaded getInternal() needs to trigger the fetch
+        return imageData != null;
+    }
+
     /**
      * {@inheritDoc}
      */
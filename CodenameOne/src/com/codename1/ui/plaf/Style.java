@@ -392,8 +392,14 @@ public class Style {
     private int bgColor = 0xFFFFFF;
     private Font font = Font.getDefaultFont();
     private Image bgImage;
-    float[] padding = new float[4];
-    float[] margin = new float[4];
+    float[] padding;
+    float[] margin;
+
+    /**
+     * Set when the padding, margin and gradient arrays are shared with another style created by
+     * {@link #createSharedCopy()}, the arrays are duplicated before the first write
+     */
+    private boolean sharedArrays;
     private float[] cached_margin = null; //used to cache margin values when hidding a component
     
     /**
@@ -487,6 +493,8 @@ public class Style {
      * The Default values for each Component can be changed by using the UIManager class
      */
     public Style() {
+        padding = new float[4];
+        margin = new float[4];
         setPadding(3, 3, 3, 3);
         setMargin(2, 2, 2, 2);
         modifiedFlag = 0;
@@ -546,6 +554,62 @@ public class Style {
         }
     }
 
+    /**
+     * Copy-on-write variant of the copy constructor, the padding/margin/gradient arrays are shared
+     * with the source style and only duplicated when one of the two styles is modified
+     */
+    private Style(Style style, boolean shareArrays) {
+        fgColor = style.getFgColor();
+        bgColor = style.getBgColor();
+        font = style.getFont();
+        transparency = style.getBgTransparency();
+        bgImage = style.getBgImage();
+        border = style.getBorder();
+        padding = style.padding;
+        margin = style.margin;
+        paddingUnit = style.paddingUnit;
+        marginUnit = style.marginUnit;
+        backgroundGradient = style.backgroundGradient;
+        opacity = style.opacity;
+        align = style.align;
+        backgroundType = style.backgroundType;
+        backgroundAlignment = style.backgroundAlignment;
+        textDecoration = style.textDecoration;
+        sharedArrays = shareArrays;
+        style.sharedArrays |= shareArrays;
+    }
+
+    /**
+     * Creates a copy of this style that shares the padding, margin and gradient arrays with this
+     * instance until either style is modified. This is used by the UIManager to hand out copies of
+     * the cached theme styles cheaply
+     *
+     * @return a new style equivalent to this style
+     */
+    Style createSharedCopy() {
+        return new Style(this, true);
+    }
+
+    /**
+     * Duplicates the arrays shared with another style before they are written to
+     */
+    private void unshareArrays() {
+        if (sharedArrays) {
+            sharedArrays = false;
+            float[] p = new float[4];
+            System.arraycopy(padding, 0, p, 0, 4);
+            padding = p;
+            float[] m = new float[4];
+            System.arraycopy(margin, 0, m, 0, 4);
+            margin = m;
+            if (backgroundGradient != null) {
+                Object[] g = new Object[backgroundGradient.length];
+                System.arraycopy(backgroundGradient, 0, g, 0, g.length);
+                backgroundGradient = g;
+            }
+        }
+    }
+
     /**
      * Creates a new style with the given attributes
      *
@@ -1293,6 +1357,7 @@ public class Style {
                 padding[Component.BOTTOM] != bottom ||
                 padding[Component.LEFT] != left ||
                 padding[Component.RIGHT] != right) {
+            unshareArrays();
             padding[Component.TOP] = top;
             padding[Component.BOTTOM] = bottom;
             padding[Component.LEFT] = left;
@@ -1357,6 +1422,7 @@ public class Style {
                 margin[Component.BOTTOM] != bottom ||
                 margin[Component.LEFT] != left ||
                 margin[Component.RIGHT] != right) {
+            unshareArrays();
             margin[Component.TOP] = top;
             margin[Component.BOTTOM] = bottom;
             margin[Component.LEFT] = left;
@@ -1532,6 +1598,7 @@ public class Style {
             throw new IllegalArgumentException("padding cannot be negative");
         }
         if (padding[Component.TOP] != gap) {
+            unshareArrays();
             padding[Component.TOP] = gap;
             modifiedFlag |= PADDING_MODIFIED;
             firePropertyChanged(PADDING);
@@ -1567,6 +1634,7 @@ public class Style {
             throw new IllegalArgumentException("padding cannot be negative");
         }
         if (padding[Component.BOTTOM] != gap) {
+            unshareArrays();
             padding[Component.BOTTOM] = gap;
             modifiedFlag |= PADDING_MODIFIED;
             firePropertyChanged(PADDING);
@@ -1602,6 +1670,7 @@ public class Style {
             throw new IllegalArgumentException("padding cannot be negative");
         }
         if (padding[Component.LEFT] != gap) {
+            unshareArrays();
             padding[Component.LEFT] = gap;
             modifiedFlag |= PADDING_MODIFIED;
             firePropertyChanged(PADDING);
@@ -1637,6 +1706,7 @@ public class Style {
             throw new IllegalArgumentException("padding cannot be negative");
         }
         if (padding[Component.RIGHT] != gap) {
+            unshareArrays();
             padding[Component.RIGHT] = gap;
             modifiedFlag |= PADDING_MODIFIED;
             firePropertyChanged(PADDING);
@@ -1669,6 +1739,7 @@ public class Style {
             throw new IllegalArgumentException("Margin cannot be negative");
         }
         if (margin[Component.TOP] != gap) {
+            unshareArrays();
             margin[Component.TOP] = gap;
             modifiedFlag |= MARGIN_MODIFIED;
             firePropertyChanged(MARGIN);
@@ -1700,6 +1771,7 @@ public class Style {
             throw new IllegalArgumentException("Margin cannot be negative");
         }
         if (margin[Component.BOTTOM] != gap) {
+            unshareArrays();
             margin[Component.BOTTOM] = gap;
             modifiedFlag |= MARGIN_MODIFIED;
             firePropertyChanged(MARGIN);
@@ -1731,6 +1803,7 @@ public class Style {
             throw new IllegalArgumentException("Margin cannot be negative");
         }
         if (margin[Component.LEFT] != gap) {
+            unshareArrays();
             margin[Component.LEFT] = gap;
             modifiedFlag |= MARGIN_MODIFIED;
             firePropertyChanged(MARGIN);
@@ -1762,6 +1835,7 @@ public class Style {
             throw new IllegalArgumentException("Margin cannot be negative");
         }
         if (margin[Component.RIGHT] != gap) {
+            unshareArrays();
             margin[Component.RIGHT] = gap;
             modifiedFlag |= MARGIN_MODIFIED;
             firePropertyChanged(MARGIN);
@@ -2111,6 +2185,7 @@ public class Style {
             return;
         }
         if (((Integer) getBackgroundGradient()[0]).intValue() != backgroundGradientStartColor) {
+            unshareArrays();
             getBackgroundGradient()[0] = new Integer(backgroundGradientStartColor);
             if (!override) {
                 modifiedFlag |= BACKGROUND_GRADIENT_MODIFIED;
@@ -2134,6 +2209,7 @@ public class Style {
             return;
         }
         if (((Integer) getBackgroundGradient()[1]).intValue() != backgroundGradientEndColor) {
+            unshareArrays();
             getBackgroundGradient()[1] = new Integer(backgroundGradientEndColor);
             if (!override) {
                 modifiedFlag |= BACKGROUND_GRADIENT_MODIFIED;
@@ -2158,6 +2234,7 @@ public class Style {
             return;
         }
         if (((Float) getBackgroundGradient()[2]).floatValue() != backgroundGradientRelativeX) {
+            unshareArrays();
             getBackgroundGradient()[2] = new Float(backgroundGradientRelativeX);
             if (!override) {
                 modifiedFlag |= BACKGROUND_GRADIENT_MODIFIED;
@@ -2181,6 +2258,7 @@ public class Style {
             return;
         }
         if (((Float) getBackgroundGradient()[3]).floatValue() != backgroundGradientRelativeY) {
+            unshareArrays();
             getBackgroundGradient()[3] = new Float(backgroundGradientRelativeY);
             if (!override) {
                 modifiedFlag |= BACKGROUND_GRADIENT_MODIFIED;
@@ -2205,6 +2283,7 @@ public class Style {
             return;
         }
         if (((Float) getBackgroundGradient()[4]).floatValue() != backgroundGradientRelativeSize) {
+            unshareArrays();
             getBackgroundGradient()[4] = new Float(backgroundGradientRelativeSize);
             if (!override) {
                 modifiedFlag |= BACKGROUND_GRADIENT_MODIFIED;
@@ -2324,6 +2403,7 @@ public class Style {
             throw new IllegalArgumentException("padding cannot be negative");
         }
         if (padding[orientation] != gap) {
+            unshareArrays();
             padding[orientation] = gap;
 
             if (!override) {
@@ -2367,6 +2447,7 @@ public class Style {
             throw new IllegalArgumentException("margin cannot be negative");
         }
         if (margin[orientation] != gap) {
+            unshareArrays();
             margin[orientation] = gap;
             if (!override) {
                 modifiedFlag |= MARGIN_MODIFIED;
@@ -37,6 +37,7 @@ import com.codename1.ui.plaf.RoundBorder;
 import com.codename1.ui.plaf.RoundRectBorder;
 import com.codename1.ui.plaf.Style;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -76,6 +77,12 @@ public class Resources {
     static final byte MAGIC_DATA = (byte)0xFA;
     static final byte MAGIC_UI = (byte)0xEE;
     static final byte MAGIC_HEADER = (byte)0xFF;
+    
+    /**
+     * Table of contents listing the type, name, offset and length of every entry that follows it. Files 
+     * containing it can be loaded lazily
+     */
+    static final byte MAGIC_INDEX = (byte)0xED;
     static final byte MAGIC_PASSWORD = (byte)0xFE;
 
     /**
@@ -184,13 +191,85 @@ public class Resources {
     
     private DataInputStream input; 
     
+    /**
+     * Entries listed in the table of contents of an indexed resource file that weren't loaded yet,
+     * this is guarded by the resources instance together with the resources map
+     */
+    private volatile HashMap<String, IndexEntry> lazyEntries;
+    
+    /**
+     * The resource the file was opened from or null if it was opened from a stream, lazy entries of
+     * a resource are read again from the resource instead of being kept in memory
+     */
+    private String location;
+    
+    /**
+     * The location of an entry within the data of an indexed resource file
+     */
+    static class IndexEntry {
+        byte magic;
+        
+        /**
+         * The data following the table of contents of a file that was opened from a stream, null if 
+         * the entry is read from the location of the resources
+         */
+        byte[] data;
+        int offset;
+        int length;
+    }
+    
+    /**
+     * Tracks the position within the resource so the offsets of an indexed file can be resolved
+     */
+    private static class PositionInputStream extends InputStream {
+        private final InputStream in;
+        private int position;
+        
+        PositionInputStream(InputStream in) {
+            this.in = in;
+        }
+        
+        public int read() throws IOException {
+            int b = in.read();
+            if(b > -1) {
+                position++;
+            }
+            return b;
+        }
+        
+        public int read(byte[] b, int off, int len) throws IOException {
+            int size = in.read(b, off, len);
+            if(size > 0) {
+                position += size;
+            }
+            return size;
+        }
+        
+        public long skip(long n) throws IOException {
+            long size = in.skip(n);
+            if(size > 0) {
+                position += size;
+            }
+            return size;
+        }
+        
+        public int available() throws IOException {
+            return in.available();
+        }
+    }
+    
     // for internal use by the resource editor, creates an empty resource
     Resources() {
     }
     
     Resources(InputStream input, int dpi) throws IOException {
+        this(input, null, dpi);
+    }
+    
+    Resources(InputStream input, String location, int dpi) throws IOException {
         this.dpi = dpi;
         this.ppmm_density = dpi; //TODO remove this when the resource editor would use PPI density values (i.e DPI_xxx) rather than pixels/mm bucket (i.e DENSITY_xxx) ones
+        this.location = location;
         openFile(input);
     }
     
@@ -199,6 +278,7 @@ public class Resources {
         minorVersion = 0;
         resourceTypes.clear();
         resources.clear();
+        lazyEntries = null;
         input = null;
     }
 
@@ -271,10 +351,19 @@ public class Resources {
 
     void openFile(InputStream input) throws IOException {
         clear();
-        openFileImpl(input);
+        if(location != null) {
+            PositionInputStream p = new PositionInputStream(input);
+            openFileImpl(p, p);
+        } else {
+            openFileImpl(input);
+        }
     }
     
     private void openFileImpl(InputStream input) throws IOException {
+        openFileImpl(input, null);
+    }
+    
+    private void openFileImpl(InputStream input, PositionInputStream position) throws IOException {
         this.input = new DataInputStream(input);
         int resourceCount = this.input.readShort();
         if(resourceCount < 0) {
@@ -304,48 +393,215 @@ public class Resources {
                 case MAGIC_HEADER:
                     readHeader();
                     continue;
-                case MAGIC_THEME:
-                    setResource(id, MAGIC_THEME, loadTheme(id, magic == MAGIC_THEME));
-                    continue;
-                case MAGIC_IMAGE:
-                    Image img = createImage();
-                    img.setImageName(id);
-                    setResource(id, magic, img);
-                    continue;
-                case MAGIC_FONT:
-                    setResource(id, magic, loadFont(this.input, id, false));
-                    continue;
-                case MAGIC_DATA:
-                    setResource(id, magic, createData());
-                    continue;
-                case MAGIC_UI:
-                    setResource(id, magic, createData());
-                    continue;
-                case MAGIC_L10N:
-                    setResource(id, magic, loadL10N());
-                    continue;
-
-                // legacy file support to be removed
-                case MAGIC_IMAGE_LEGACY:
-                    setResource(id, MAGIC_IMAGE, createImage());
-                    continue;
-                case MAGIC_INDEXED_IMAGE_LEGACY:
-                    setResource(id, MAGIC_IMAGE, createPackedImage8());
-                    continue;
-                case MAGIC_THEME_LEGACY:
-                    setResource(id, MAGIC_THEME, loadTheme(id, magic == MAGIC_THEME));
-                    continue;
-                case MAGIC_FONT_LEGACY:
-                    setResource(id, MAGIC_FONT, loadFont(this.input, id, false));
-                    continue;
-                case MAGIC_INDEXED_FONT_LEGACY:
-                    setResource(id, MAGIC_FONT, loadFont(this.input, id, true));
+                case MAGIC_INDEX:
+                    if(readIndex(position)) {
+                        // the entries are materialized on demand
+                        return;
+                    }
                     continue;
                 default:
-                    throw new IOException("Corrupt theme file unrecognized magic number: " + Integer.toHexString(magic & 0xff));
+                    readEntry(id, magic);
             }
         }
     }
+    
+    /**
+     * Reads the table of contents of an indexed resource file, if lazy loading is supported the entries
+     * are decoded on first access. When the file was opened from a stream the data of the remaining entries
+     * is kept in memory until all of them were decoded, otherwise only the offsets are kept and the entries
+     * are read again from the location of the resources
+     * 
+     * @param position the position within the resource or null if the file was opened from a stream
+     * @return true if the entries were registered for lazy loading, false if they should be read sequentially
+     */
+    private boolean readIndex(PositionInputStream position) throws IOException {
+        int count = input.readShort() & 0xffff;
+        IndexEntry[] entries = new IndexEntry[count];
+        String[] ids = new String[count];
+        for(int iter = 0 ; iter < count ; iter++) {
+            IndexEntry e = new IndexEntry();
+            e.magic = input.readByte();
+            ids[iter] = input.readUTF();
+            e.offset = input.readInt();
+            e.length = input.readInt();
+            entries[iter] = e;
+        }
+        if(!isLazyLoadingSupported()) {
+            return false;
+        }
+        byte[] data = null;
+        if(position != null) {
+            for(int iter = 0 ; iter < count ; iter++) {
+                entries[iter].offset += position.position;
+            }
+        } else {
+            ByteArrayOutputStream bo = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int size = input.read(buffer);
+            while(size > -1) {
+                bo.write(buffer, 0, size);
+                size = input.read(buffer);
+            }
+            data = bo.toByteArray();
+        }
+        synchronized(this) {
+            if(lazyEntries == null) {
+                lazyEntries = new HashMap<String, IndexEntry>();
+            }
+            for(int iter = 0 ; iter < count ; iter++) {
+                IndexEntry e = entries[iter];
+                e.data = data;
+
+                // an entry in an override file replaces the entry from the main file 
+                resources.remove(ids[iter]);
+                resourceTypes.put(ids[iter], new Byte(normalizeType(e.magic)));
+                lazyEntries.put(ids[iter], e);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Indicates whether the entries of an indexed resource file can be decoded on first access
+     * 
+     * @return true by default
+     */
+    boolean isLazyLoadingSupported() {
+        return true;
+    }
+    
+    private static byte normalizeType(byte magic) {
+        switch(magic) {
+            case MAGIC_IMAGE_LEGACY:
+            case MAGIC_INDEXED_IMAGE_LEGACY:
+                return MAGIC_IMAGE;
+            case MAGIC_THEME_LEGACY:
+                return MAGIC_THEME;
+            case MAGIC_FONT_LEGACY:
+            case MAGIC_INDEXED_FONT_LEGACY:
+                return MAGIC_FONT;
+        }
+        return magic;
+    }
+    
+    /**
+     * Returns the resource with the given name decoding it first if it is a lazy entry of an indexed resource file
+     */
+    private Object resource(String id) {
+        if(lazyEntries == null) {
+            // once every entry was decoded the map is only read
+            return resources.get(id);
+        }
+        synchronized(this) {
+            Object o = resources.get(id);
+            if(o == null && lazyEntries != null) {
+                IndexEntry e = lazyEntries.remove(id);
+                if(e != null) {
+                    o = materialize(id, e);
+                }
+                if(lazyEntries.isEmpty()) {
+                    // releases the data of a file that was opened from a stream
+                    lazyEntries = null;
+                }
+            }
+            return o;
+        }
+    }
+    
+    /**
+     * Opens the resource the file was loaded from in order to read a lazy entry
+     * 
+     * @param location the resource the file was opened from
+     * @return the stream or null if the resource wasn't found
+     */
+    InputStream openLocation(String location) throws IOException {
+        return Display.getInstance().getResourceAsStream(classLoader, location);
+    }
+    
+    private byte[] readEntryData(IndexEntry e) throws IOException {
+        InputStream is = openLocation(location);
+        if(is == null) {
+            throw new IOException(location + " not found");
+        }
+        try {
+            DataInputStream di = new DataInputStream(is);
+            if(di.skipBytes(e.offset) != e.offset) {
+                throw new IOException("Unexpected end of " + location);
+            }
+            byte[] data = new byte[e.length];
+            di.readFully(data);
+            return data;
+        } finally {
+            is.close();
+        }
+    }
+    
+    private Object materialize(String id, IndexEntry e) {
+        // decoding a theme might load an image so we need to restore the stream of the outer entry
+        DataInputStream previous = input;
+        try {
+            if(e.data != null) {
+                input = new DataInputStream(new ByteArrayInputStream(e.data, e.offset, e.length));
+            } else {
+                input = new DataInputStream(new ByteArrayInputStream(readEntryData(e)));
+            }
+            startingEntry(id, e.magic);
+            readEntry(id, e.magic);
+        } catch(IOException err) {
+            Log.e(err);
+            throw new RuntimeException("Failed to load resource " + id + ": " + err);
+        } finally {
+            input = previous;
+        }
+        return resources.get(id);
+    }
+    
+    /**
+     * Reads the body of a resource entry from the input and places it in the resources
+     */
+    private void readEntry(String id, byte magic) throws IOException {
+        switch(magic) {
+            case MAGIC_THEME:
+                setResource(id, MAGIC_THEME, loadTheme(id, magic == MAGIC_THEME));
+                return;
+            case MAGIC_IMAGE:
+                Image img = createImage();
+                img.setImageName(id);
+                setResource(id, magic, img);
+                return;
+            case MAGIC_FONT:
+                setResource(id, magic, loadFont(this.input, id, false));
+                return;
+            case MAGIC_DATA:
+                setResource(id, magic, createData());
+                return;
+            case MAGIC_UI:
+                setResource(id, magic, createData());
+                return;
+            case MAGIC_L10N:
+                setResource(id, magic, loadL10N());
+                return;
+
+            // legacy file support to be removed
+            case MAGIC_IMAGE_LEGACY:
+                setResource(id, MAGIC_IMAGE, createImage());
+                return;
+            case MAGIC_INDEXED_IMAGE_LEGACY:
+                setResource(id, MAGIC_IMAGE, createPackedImage8());
+                return;
+            case MAGIC_THEME_LEGACY:
+                setResource(id, MAGIC_THEME, loadTheme(id, magic == MAGIC_THEME));
+                return;
+            case MAGIC_FONT_LEGACY:
+                setResource(id, MAGIC_FONT, loadFont(this.input, id, false));
+                return;
+            case MAGIC_INDEXED_FONT_LEGACY:
+                setResource(id, MAGIC_FONT, loadFont(this.input, id, true));
+                return;
+            default:
+                throw new IOException("Corrupt theme file unrecognized magic number: " + Integer.toHexString(magic & 0xff));
+        }
+    }
 
     /**
      * Sets the password to use for password protected resource files
@@ -468,7 +724,10 @@ public class Resources {
     /**
      * For internal use only
      */
-    void setResource(String id, byte type, Object value) {
+    synchronized void setResource(String id, byte type, Object value) {
+        if(lazyEntries != null) {
+            lazyEntries.remove(id);
+        }
         if(value == null) {
             resources.remove(id);
             resourceTypes.remove(id);
@@ -742,7 +1001,7 @@ public class Resources {
             if(is == null) {
                 throw new IOException(resource + " not found");
             }
-            Resources r = new Resources(is, dpi);
+            Resources r = new Resources(is, resource, dpi);
             is.close();
             
             if(resource.equals(Resources.systemResourceLocation)){
@@ -780,7 +1039,7 @@ public class Resources {
      * @return cached image instance
      */
     public Image getImage(String id) {
-        return (Image)resources.get(id);
+        return (Image)resource(id);
     }
     
     /**
@@ -790,7 +1049,7 @@ public class Resources {
      * @return newly created input stream that allows reading the data of the resource
      */
     public InputStream getData(String id) {
-        byte[] data = (byte[])resources.get(id);
+        byte[] data = (byte[])resource(id);
         if(data == null) {
             return null;
         }
@@ -804,7 +1063,7 @@ public class Resources {
      * @return newly created input stream that allows reading the ui of the resource
      */
     InputStream getUi(String id) {
-        byte[] d = (byte[])resources.get(id);
+        byte[] d = (byte[])resource(id);
         if(d == null) {
             return null;
         }
@@ -819,7 +1078,7 @@ public class Resources {
      * @return Hashtable containing key value pairs for localized data
      */
     public Hashtable<String, String> getL10N(String id, String locale) {
-        return (Hashtable<String, String>)((Hashtable)resources.get(id)).get(locale);
+        return (Hashtable<String, String>)((Hashtable)resource(id)).get(locale);
     }
 
     /**
@@ -829,7 +1088,7 @@ public class Resources {
      * @return enumeration of strings containing bundle names
      */
     public Enumeration listL10NLocales(String id) {
-        return ((Hashtable)resources.get(id)).keys();
+        return ((Hashtable)resource(id)).keys();
     }
 
     /**
@@ -839,7 +1098,7 @@ public class Resources {
      * @return collection of strings containing bundle names
      */
     public Collection<String> l10NLocaleSet(String id) {
-        return ((Hashtable<String, String>)resources.get(id)).keySet();
+        return ((Hashtable<String, String>)resource(id)).keySet();
     }
     
     /**
@@ -849,7 +1108,7 @@ public class Resources {
      * @return cached font instance
      */
     public Font getFont(String id) {
-        return (Font)resources.get(id);
+        return (Font)resource(id);
     }
 
     /**
@@ -859,7 +1118,7 @@ public class Resources {
      * @return cached theme instance
      */
     public Hashtable getTheme(String id) {
-        Hashtable h = (Hashtable)resources.get(id);
+        Hashtable h = (Hashtable)resource(id);
         
         // theme can be null in valid use cases such as the resource editor
         if(h != null && h.containsKey("uninitialized")) {
@@ -881,7 +1140,7 @@ public class Resources {
                         if(key.endsWith("Image")) {
                             o = getImage((String)value);
                         } else {
-                            o = resources.get(value);
+                            o = resource((String)value);
                         }
                         if(o == null) {
                             throw new IllegalArgumentException("Theme entry for " + key + " could not be found: " + value);
@@ -959,7 +1218,7 @@ public class Resources {
     }
     
     Object getResourceObject(String res) {
-        return resources.get(res);
+        return resource(res);
     }
     
     Image createImage() throws IOException {
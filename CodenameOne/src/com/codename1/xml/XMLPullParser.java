@@ -0,0 +1,1026 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *  
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ * 
+ * Please contact Codename One through http://www.codenameone.com/ if you 
+ * need additional information or have any questions.
+ */
+package com.codename1.xml;
+
+import com.codename1.ui.html.HTMLUtils;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Hashtable;
+
+/**
+ * <p>A streaming pull parser for XML documents, unlike {@link XMLParser#parse(java.io.Reader)} it never builds
+ * the whole document in memory and unlike {@link XMLParser#eventParser(java.io.Reader)} the caller drives the
+ * parsing by invoking {@link #next()}. Memory use is bound by the longest text node and the nesting depth
+ * regardless of the document size, tag and attribute names are interned so repeated names don't allocate and
+ * attribute values can be compared without creating strings.</p>
+ *
+ * <p>Interesting subtrees can be materialized into an {@link Element} using {@link #readElement()} while
+ * everything else is skipped using {@link #skipSubtree()}:</p>
+ *
+ * <pre>
+ * XMLPullParser p = new XMLPullParser(reader);
+ * int event;
+ * while((event = p.next()) != XMLPullParser.END_DOCUMENT) {
+ *     if(event == XMLPullParser.START_TAG) {
+ *         if("item".equals(p.getName())) {
+ *             Element item = p.readElement();
+ *             // ...
+ *         } else if("title".equals(p.getName()) &amp;&amp; p.getDepth() == 2) {
+ *             String title = p.nextText();
+ *         }
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>Comments, processing instructions and DOCTYPE declarations are skipped, CDATA sections are delivered
+ * as {@link #TEXT} events. The parser is lenient in the same way as {@link XMLParser}, malformed entities
+ * are kept verbatim and unquoted attribute values are accepted.</p>
+ */
+public class XMLPullParser {
+    /**
+     * The event type before the first call to {@link #next()}
+     */
+    public static final int START_DOCUMENT = 0;
+
+    /**
+     * A tag was opened, the name and attributes of the tag are available
+     */
+    public static final int START_TAG = 1;
+
+    /**
+     * A tag was closed, self closing tags such as {@code <a/>} produce a start tag event followed by an end tag event
+     */
+    public static final int END_TAG = 2;
+
+    /**
+     * A text node or CDATA section, entities are already decoded
+     */
+    public static final int TEXT = 3;
+
+    /**
+     * The end of the input was reached
+     */
+    public static final int END_DOCUMENT = 4;
+
+    /**
+     * Interning stops at this amount of distinct names so documents with generated names can't grow the table
+     */
+    private static final int MAX_INTERNED_NAMES = 4096;
+
+    private Reader reader;
+    private final char[] buffer = new char[8192];
+    private int bufferOffset;
+    private int bufferSize;
+
+    private int event = START_DOCUMENT;
+    private String name;
+    private int depth;
+    private boolean decrementDepth;
+    private boolean emptyElement;
+    private boolean pendingEndTag;
+    private String[] nameStack = new String[16];
+
+    private char[] text = new char[256];
+    private int textLength;
+
+    private char[] nameBuffer = new char[64];
+    private int nameLength;
+
+    private int attributeCount;
+    private String[] attributeNames = new String[8];
+    private int[] attributeValueStart = new int[8];
+    private int[] attributeValueLength = new int[8];
+    private char[] attributeBuffer = new char[256];
+    private int attributeBufferLength;
+
+    private final char[] entity = new char[32];
+
+    private String[] names = new String[256];
+    private int nameCount;
+
+    private boolean caseSensitive;
+    private boolean includeWhitespacesBetweenTags;
+    private Hashtable userDefinedCharEntities;
+
+    /**
+     * Creates a parser reading from the given reader, the reader isn't buffered by the caller since the parser
+     * reads in large blocks
+     *
+     * @param reader the source of the document
+     */
+    public XMLPullParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Adds the given symbol and code to the user defined char entities table
+     *
+     * @param symbol The symbol to add without the &amp; and ;
+     * @param code The symbol's code
+     */
+    public void addCharEntity(String symbol, int code) {
+        if(userDefinedCharEntities == null) {
+            userDefinedCharEntities = new Hashtable();
+        }
+        userDefinedCharEntities.put(symbol, new Integer(code));
+    }
+
+    /**
+     * Indicates whether text events consisting only of whitespace are delivered, false by default
+     *
+     * @param include true to deliver whitespace between tags
+     */
+    public void setIncludeWhitespacesBetweenTags(boolean include) {
+        includeWhitespacesBetweenTags = include;
+    }
+
+    /**
+     * Indicates whether elements created by {@link #readElement()} compare tag names case sensitively, notice
+     * that the pull parser always retains the case of names
+     *
+     * @param caseSensitive true for case sensitive elements
+     */
+    public void setCaseSensitive(boolean caseSensitive) {
+        this.caseSensitive = caseSensitive;
+    }
+
+    /**
+     * Indicates whether elements created by {@link #readElement()} compare tag names case sensitively
+     *
+     * @return true for case sensitive elements
+     */
+    public boolean isCaseSensitive() {
+        return caseSensitive;
+    }
+
+    /**
+     * Returns the type of the current event
+     *
+     * @return one of the event constants
+     */
+    public int getEventType() {
+        return event;
+    }
+
+    /**
+     * Returns the nesting depth of the current tag, the root element has a depth of 1. Text events have the
+     * depth of the enclosing tag
+     *
+     * @return the depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the name of the current tag for {@link #START_TAG} and {@link #END_TAG} events, the returned
+     * string is interned by the parser so repeated names return the same instance
+     *
+     * @return the tag name or null
+     */
+    public String getName() {
+        if(event == START_TAG || event == END_TAG) {
+            return name;
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the current start tag is self closing e.g. {@code <a/>}
+     *
+     * @return true for an empty element tag
+     */
+    public boolean isEmptyElementTag() {
+        return event == START_TAG && emptyElement;
+    }
+
+    /**
+     * Returns the amount of attributes of the current start tag
+     *
+     * @return the attribute count, 0 for other events
+     */
+    public int getAttributeCount() {
+        return event == START_TAG ? attributeCount : 0;
+    }
+
+    /**
+     * Returns the name of the given attribute, the name is interned
+     *
+     * @param index the attribute offset
+     * @return the attribute name
+     */
+    public String getAttributeName(int index) {
+        return attributeNames[index];
+    }
+
+    /**
+     * Returns the offset of the attribute with the given name, this method doesn't allocate
+     *
+     * @param attributeName the name of the attribute
+     * @return the offset of the attribute or -1 if it isn't present
+     */
+    public int getAttributeIndex(String attributeName) {
+        int count = getAttributeCount();
+        for(int iter = 0 ; iter < count ; iter++) {
+            if(attributeNames[iter].equals(attributeName)) {
+                return iter;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the value of the given attribute, this creates a new string on every call
+     *
+     * @param index the attribute offset
+     * @return the decoded attribute value
+     */
+    public String getAttributeValue(int index) {
+        return new String(attributeBuffer, attributeValueStart[index], attributeValueLength[index]);
+    }
+
+    /**
+     * Returns the value of the attribute with the given name
+     *
+     * @param attributeName the name of the attribute
+     * @return the decoded attribute value or null if the attribute isn't present
+     */
+    public String getAttributeValue(String attributeName) {
+        int index = getAttributeIndex(attributeName);
+        if(index < 0) {
+            return null;
+        }
+        return getAttributeValue(index);
+    }
+
+    /**
+     * Compares the value of the given attribute without allocating
+     *
+     * @param index the attribute offset
+     * @param value the value to compare to
+     * @return true if the attribute value equals the given value
+     */
+    public boolean isAttributeValue(int index, String value) {
+        int len = attributeValueLength[index];
+        if(value.length() != len) {
+            return false;
+        }
+        int start = attributeValueStart[index];
+        for(int iter = 0 ; iter < len ; iter++) {
+            if(attributeBuffer[start + iter] != value.charAt(iter)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the text of the current {@link #TEXT} event, this creates a new string on every call
+     *
+     * @return the decoded text or null for other events
+     */
+    public String getText() {
+        if(event != TEXT) {
+            return null;
+        }
+        return new String(text, 0, textLength);
+    }
+
+    /**
+     * Returns the internal buffer holding the text of the current {@link #TEXT} event, the buffer is reused
+     * by the following call to {@link #next()} and is only valid up to {@link #getTextLength()}
+     *
+     * @return the text buffer
+     */
+    public char[] getTextCharacters() {
+        return text;
+    }
+
+    /**
+     * Returns the length of the text of the current {@link #TEXT} event
+     *
+     * @return the length of the text
+     */
+    public int getTextLength() {
+        return event == TEXT ? textLength : 0;
+    }
+
+    /**
+     * Returns true if the current {@link #TEXT} event consists only of whitespace
+     *
+     * @return true for whitespace only text
+     */
+    public boolean isWhitespace() {
+        for(int iter = 0 ; iter < textLength ; iter++) {
+            if(!isWhiteSpace(text[iter])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Advances to the next event
+     *
+     * @return the type of the new event
+     * @throws IOException if the reader fails
+     */
+    public int next() throws IOException {
+        if(decrementDepth) {
+            decrementDepth = false;
+            depth--;
+        }
+        if(pendingEndTag) {
+            pendingEndTag = false;
+            emptyElement = false;
+            return endTag();
+        }
+        attributeCount = 0;
+        emptyElement = false;
+        while(true) {
+            int c = read();
+            if(c < 0) {
+                event = END_DOCUMENT;
+                return event;
+            }
+            if(c != '<') {
+                unread();
+                if(readText()) {
+                    event = TEXT;
+                    return event;
+                }
+                continue;
+            }
+            c = read();
+            switch(c) {
+                case -1:
+                    event = END_DOCUMENT;
+                    return event;
+                case '/':
+                    readName();
+                    skipTo('>');
+                    name = intern();
+                    return endTag();
+                case '?':
+                    skipTo("?>");
+                    break;
+                case '!':
+                    if(readMarkup()) {
+                        event = TEXT;
+                        return event;
+                    }
+                    break;
+                default:
+                    unread();
+                    readStartTag();
+                    return event;
+            }
+        }
+    }
+
+    /**
+     * Reads the text content of the current start tag and advances to its end tag, text of nested elements
+     * is skipped
+     *
+     * @return the text content of the element
+     * @throws IOException if the reader fails
+     * @throws IllegalStateException if the current event isn't a start tag
+     */
+    public String nextText() throws IOException {
+        requireStartTag();
+        int startDepth = depth;
+        StringBuilder b = null;
+        String result = null;
+        while(true) {
+            int e = next();
+            if(e == END_DOCUMENT || (e == END_TAG && depth == startDepth)) {
+                break;
+            }
+            if(e == TEXT && depth == startDepth) {
+                if(result == null) {
+                    result = getText();
+                } else {
+                    if(b == null) {
+                        b = new StringBuilder(result);
+                    }
+                    b.append(text, 0, textLength);
+                }
+            }
+        }
+        if(b != null) {
+            return b.toString();
+        }
+        if(result == null) {
+            return "";
+        }
+        return result;
+    }
+
+    /**
+     * Skips the current start tag including all of its content and advances to its end tag, this doesn't
+     * create any objects for the skipped content
+     *
+     * @throws IOException if the reader fails
+     * @throws IllegalStateException if the current event isn't a start tag
+     */
+    public void skipSubtree() throws IOException {
+        requireStartTag();
+        int startDepth = depth;
+        while(true) {
+            int e = next();
+            if(e == END_DOCUMENT || (e == END_TAG && depth == startDepth)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Materializes the current start tag including all of its content into an element and advances to its
+     * end tag, this allows processing a large document one subtree at a time
+     *
+     * @return the element representing the current tag
+     * @throws IOException if the reader fails
+     * @throws IllegalStateException if the current event isn't a start tag
+     */
+    public Element readElement() throws IOException {
+        requireStartTag();
+        int startDepth = depth;
+        Element root = createStartElement();
+        Element[] stack = new Element[8];
+        stack[0] = root;
+        while(true) {
+            int e = next();
+            switch(e) {
+                case START_TAG: {
+                    Element child = createStartElement();
+                    int offset = depth - startDepth;
+                    stack[offset - 1].addChild(child);
+                    if(offset >= stack.length) {
+                        Element[] n = new Element[stack.length * 2];
+                        System.arraycopy(stack, 0, n, 0, stack.length);
+                        stack = n;
+                    }
+                    stack[offset] = child;
+                    break;
+                }
+                case TEXT:
+                    stack[depth - startDepth].addChild(createNewTextElement(getText()));
+                    break;
+                case END_TAG:
+                    if(depth == startDepth) {
+                        return root;
+                    }
+                    break;
+                case END_DOCUMENT:
+                    return root;
+            }
+        }
+    }
+
+    /**
+     * Closes the underlying reader
+     *
+     * @throws IOException if the reader fails
+     */
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Creates a new element. This should be overriden by parsers that use a subclass of Element.
+     *
+     * @param name The new element's name
+     * @return a new instance of the element
+     */
+    protected Element createNewElement(String name) {
+        Element e = new Element(name);
+        e.caseSensitive = caseSensitive;
+        return e;
+    }
+
+    /**
+     * Creates a new text element. This should be overriden by parsers that use a subclass of Element.
+     *
+     * @param text The new element's text
+     * @return a new instance of the element
+     */
+    protected Element createNewTextElement(String text) {
+        Element e = new Element(text, true);
+        e.caseSensitive = caseSensitive;
+        return e;
+    }
+
+    private Element createStartElement() {
+        Element e = createNewElement(name);
+        for(int iter = 0 ; iter < attributeCount ; iter++) {
+            e.setAttribute(attributeNames[iter], getAttributeValue(iter));
+        }
+        return e;
+    }
+
+    private void requireStartTag() {
+        if(event != START_TAG) {
+            throw new IllegalStateException("Expected a start tag");
+        }
+    }
+
+    private int endTag() {
+        event = END_TAG;
+        attributeCount = 0;
+        if(depth > 0) {
+            // a mismatched end tag still closes the innermost element to keep the depth consistent
+            name = nameStack[depth - 1];
+            decrementDepth = true;
+        }
+        return event;
+    }
+
+    private int read() throws IOException {
+        if(bufferOffset >= bufferSize) {
+            bufferSize = reader.read(buffer, 0, buffer.length);
+            if(bufferSize <= 0) {
+                bufferSize = 0;
+                bufferOffset = 0;
+                return -1;
+            }
+            bufferOffset = 0;
+        }
+        return buffer[bufferOffset++];
+    }
+
+    /**
+     * Steps back over the last character returned by read, only valid directly after a successful read
+     */
+    private void unread() {
+        bufferOffset--;
+    }
+
+    private static boolean isWhiteSpace(int ch) {
+        return ch == ' ' || ch == '\n' || ch == '\t' || ch == '\r';
+    }
+
+    /**
+     * Reads text up to the next tag into the text buffer
+     *
+     * @return true if the text should be delivered as an event
+     */
+    private boolean readText() throws IOException {
+        textLength = 0;
+        boolean whitespace = true;
+        while(true) {
+            int c = read();
+            if(c < 0) {
+                break;
+            }
+            if(c == '<') {
+                unread();
+                break;
+            }
+            if(c == '&') {
+                readEntity(false);
+                whitespace = false;
+            } else {
+                if(whitespace && !isWhiteSpace(c)) {
+                    whitespace = false;
+                }
+                appendText((char)c);
+            }
+        }
+        return textLength > 0 && (!whitespace || includeWhitespacesBetweenTags);
+    }
+
+    /**
+     * Handles {@code <!} constructs, CDATA sections are read into the text buffer
+     *
+     * @return true if a CDATA section was read
+     */
+    private boolean readMarkup() throws IOException {
+        int c = read();
+        if(c == '-') {
+            if(read() == '-') {
+                skipTo("-->");
+            } else {
+                skipTo('>');
+            }
+            return false;
+        }
+        if(c == '[') {
+            String cdata = "CDATA[";
+            int clen = cdata.length();
+            for(int iter = 0 ; iter < clen ; iter++) {
+                c = read();
+                if(c != cdata.charAt(iter)) {
+                    if(c == '>') {
+                        return false;
+                    }
+                    skipTo('>');
+                    return false;
+                }
+            }
+            textLength = 0;
+            int brackets = 0;
+            while(true) {
+                c = read();
+                if(c < 0) {
+                    break;
+                }
+                if(c == '>' && brackets >= 2) {
+                    textLength -= 2;
+                    break;
+                }
+                if(c == ']') {
+                    brackets++;
+                } else {
+                    brackets = 0;
+                }
+                appendText((char)c);
+            }
+            return true;
+        }
+
+        // DOCTYPE and other declarations, the internal subset of a DOCTYPE may contain '>' within brackets
+        int nesting = 0;
+        while(c >= 0) {
+            if(c == '[') {
+                nesting++;
+            } else if(c == ']') {
+                nesting--;
+            } else if(c == '>' && nesting <= 0) {
+                return false;
+            }
+            c = read();
+        }
+        return false;
+    }
+
+    private void skipTo(char end) throws IOException {
+        int c = read();
+        while(c >= 0 && c != end) {
+            c = read();
+        }
+    }
+
+    private void skipTo(String end) throws IOException {
+        int len = end.length();
+        int matched = 0;
+        while(matched < len) {
+            int c = read();
+            if(c < 0) {
+                return;
+            }
+            if(c == end.charAt(matched)) {
+                matched++;
+            } else if(c == end.charAt(0)) {
+                matched = 1;
+            } else {
+                matched = 0;
+            }
+        }
+    }
+
+    /**
+     * Reads a tag or attribute name into the name buffer skipping leading whitespace
+     *
+     * @return the first character following the name
+     */
+    private int readName() throws IOException {
+        nameLength = 0;
+        int c = read();
+        while(isWhiteSpace(c)) {
+            c = read();
+        }
+        while(c >= 0 && !isWhiteSpace(c) && c != '>' && c != '/' && c != '=') {
+            if(nameLength == nameBuffer.length) {
+                char[] n = new char[nameBuffer.length * 2];
+                System.arraycopy(nameBuffer, 0, n, 0, nameLength);
+                nameBuffer = n;
+            }
+            nameBuffer[nameLength++] = (char)c;
+            c = read();
+        }
+        if(c >= 0) {
+            unread();
+        }
+        return c;
+    }
+
+    private void readStartTag() throws IOException {
+        readName();
+        name = intern();
+        attributeBufferLength = 0;
+        while(true) {
+            int c = read();
+            while(isWhiteSpace(c)) {
+                c = read();
+            }
+            if(c < 0 || c == '>') {
+                break;
+            }
+            if(c == '/') {
+                c = read();
+                if(c == '>' || c < 0) {
+                    emptyElement = true;
+                    pendingEndTag = true;
+                    break;
+                }
+                unread();
+                continue;
+            }
+            unread();
+            readName();
+            if(nameLength == 0) {
+                // stray character such as a lone '=', skip it
+                read();
+                continue;
+            }
+            String attributeName = intern();
+            c = read();
+            while(isWhiteSpace(c)) {
+                c = read();
+            }
+            int valueStart = attributeBufferLength;
+            if(c == '=') {
+                c = read();
+                while(isWhiteSpace(c)) {
+                    c = read();
+                }
+                if(c == '"' || c == '\'') {
+                    int quote = c;
+                    c = read();
+                    while(c >= 0 && c != quote) {
+                        if(c == '&') {
+                            readEntity(true);
+                        } else {
+                            appendAttribute((char)c);
+                        }
+                        c = read();
+                    }
+                } else {
+                    while(c >= 0 && !isWhiteSpace(c) && c != '>') {
+                        if(c == '&') {
+                            readEntity(true);
+                        } else {
+                            appendAttribute((char)c);
+                        }
+                        c = read();
+                    }
+                    if(c >= 0) {
+                        unread();
+                    }
+                }
+            } else if(c >= 0) {
+                unread();
+            }
+            addAttribute(attributeName, valueStart, attributeBufferLength - valueStart);
+        }
+        if(depth == nameStack.length) {
+            String[] n = new String[nameStack.length * 2];
+            System.arraycopy(nameStack, 0, n, 0, depth);
+            nameStack = n;
+        }
+        nameStack[depth] = name;
+        depth++;
+        event = START_TAG;
+    }
+
+    private void addAttribute(String attributeName, int start, int length) {
+        if(attributeCount == attributeNames.length) {
+            int size = attributeCount * 2;
+            String[] n = new String[size];
+            System.arraycopy(attributeNames, 0, n, 0, attributeCount);
+            attributeNames = n;
+            int[] s = new int[size];
+            System.arraycopy(attributeValueStart, 0, s, 0, attributeCount);
+            attributeValueStart = s;
+            int[] l = new int[size];
+            System.arraycopy(attributeValueLength, 0, l, 0, attributeCount);
+            attributeValueLength = l;
+        }
+        attributeNames[attributeCount] = attributeName;
+        attributeValueStart[attributeCount] = start;
+        attributeValueLength[attributeCount] = length;
+        attributeCount++;
+    }
+
+    private void appendText(char c) {
+        if(textLength == text.length) {
+            char[] n = new char[text.length * 2];
+            System.arraycopy(text, 0, n, 0, textLength);
+            text = n;
+        }
+        text[textLength++] = c;
+    }
+
+    private void appendAttribute(char c) {
+        if(attributeBufferLength == attributeBuffer.length) {
+            char[] n = new char[attributeBuffer.length * 2];
+            System.arraycopy(attributeBuffer, 0, n, 0, attributeBufferLength);
+            attributeBuffer = n;
+        }
+        attributeBuffer[attributeBufferLength++] = c;
+    }
+
+    private void append(boolean attribute, char c) {
+        if(attribute) {
+            appendAttribute(c);
+        } else {
+            appendText(c);
+        }
+    }
+
+    /**
+     * Decodes a char entity directly into the text or attribute buffer, the leading &amp; was already read.
+     * Entities that can't be resolved are appended verbatim
+     */
+    private void readEntity(boolean attribute) throws IOException {
+        int len = 0;
+        int c = read();
+        while(c >= 0 && c != ';' && len < entity.length && isLegalCharEntityCharacter(c)) {
+            entity[len++] = (char)c;
+            c = read();
+        }
+        if(c != ';') {
+            append(attribute, '&');
+            for(int iter = 0 ; iter < len ; iter++) {
+                append(attribute, entity[iter]);
+            }
+            if(c >= 0) {
+                unread();
+            }
+            return;
+        }
+        int code = resolveEntity(len);
+        if(code < 0) {
+            String s = convertUnknownEntity(new String(entity, 0, len));
+            int slen = s.length();
+            for(int iter = 0 ; iter < slen ; iter++) {
+                append(attribute, s.charAt(iter));
+            }
+            return;
+        }
+        if(code > 0xffff) {
+            code -= 0x10000;
+            append(attribute, (char)(0xd800 + (code >> 10)));
+            append(attribute, (char)(0xdc00 + (code & 0x3ff)));
+        } else {
+            append(attribute, (char)code);
+        }
+    }
+
+    private static boolean isLegalCharEntityCharacter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '#';
+    }
+
+    /**
+     * Resolves numeric entities and the five predefined XML entities without allocating
+     *
+     * @param len the length of the entity in the entity buffer
+     * @return the code point or -1
+     */
+    private int resolveEntity(int len) {
+        if(len > 1 && entity[0] == '#') {
+            int radix = 10;
+            int start = 1;
+            if(entity[1] == 'x' || entity[1] == 'X') {
+                radix = 16;
+                start = 2;
+            }
+            if(start == len) {
+                return -1;
+            }
+            int code = 0;
+            for(int iter = start ; iter < len ; iter++) {
+                int d = Character.digit(entity[iter], radix);
+                if(d < 0 || code > 0x10ffff) {
+                    return -1;
+                }
+                code = code * radix + d;
+            }
+            if(code > 0x10ffff) {
+                return -1;
+            }
+            return code;
+        }
+        if(isEntity(len, "lt")) {
+            return '<';
+        }
+        if(isEntity(len, "gt")) {
+            return '>';
+        }
+        if(isEntity(len, "amp")) {
+            return '&';
+        }
+        if(isEntity(len, "quot")) {
+            return '"';
+        }
+        if(isEntity(len, "apos")) {
+            return '\'';
+        }
+        return -1;
+    }
+
+    private boolean isEntity(int len, String s) {
+        if(s.length() != len) {
+            return false;
+        }
+        for(int iter = 0 ; iter < len ; iter++) {
+            if(entity[iter] != s.charAt(iter)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts an entity that isn't one of the predefined XML entities, this is the slow path and may be
+     * overriden to support additional entities
+     *
+     * @param charEntity the entity name without the &amp; and ;
+     * @return the replacement text
+     */
+    protected String convertUnknownEntity(String charEntity) {
+        try {
+            return HTMLUtils.convertCharEntity(charEntity, false, userDefinedCharEntities);
+        } catch(IllegalArgumentException iae) {
+            return "&" + charEntity + ";";
+        }
+    }
+
+    /**
+     * Returns the string for the characters in the name buffer, names are kept in an open addressing table
+     * so repeated tag and attribute names don't allocate
+     */
+    private String intern() {
+        int h = 0;
+        for(int iter = 0 ; iter < nameLength ; iter++) {
+            h = 31 * h + nameBuffer[iter];
+        }
+        int mask = names.length - 1;
+        int slot = h & mask;
+        while(true) {
+            String s = names[slot];
+            if(s == null) {
+                break;
+            }
+            if(s.length() == nameLength && matchesName(s)) {
+                return s;
+            }
+            slot = (slot + 1) & mask;
+        }
+        String s = new String(nameBuffer, 0, nameLength);
+        if(nameCount >= MAX_INTERNED_NAMES) {
+            return s;
+        }
+        names[slot] = s;
+        nameCount++;
+        if(nameCount * 4 > names.length * 3) {
+            rehash();
+        }
+        return s;
+    }
+
+    private boolean matchesName(String s) {
+        for(int iter = 0 ; iter < nameLength ; iter++) {
+            if(s.charAt(iter) != nameBuffer[iter]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        String[] old = names;
+        names = new String[old.length * 2];
+        int mask = names.length - 1;
+        for(int iter = 0 ; iter < old.length ; iter++) {
+            String s = old[iter];
+            if(s != null) {
+                int slot = s.hashCode() & mask;
+                while(names[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                names[slot] = s;
+            }
+        }
+    }
+}
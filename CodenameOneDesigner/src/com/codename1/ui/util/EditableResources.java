@@ -124,6 +124,7 @@ public class EditableResources extends Resources implements TreeModel {
     private File overrideFile;
     private EditableResources parentResource;
     private static boolean xmlEnabled;
+    private static boolean indexedFormat;
     
     private HashSet themeLoadingErrors;
     
@@ -131,6 +132,25 @@ public class EditableResources extends Resources implements TreeModel {
         xmlEnabled = b;
     }
     
+    /**
+     * Toggles writing resource files with a table of contents which allows the runtime to load entries lazily.
+     * Such files can't be read by older versions of Codename One. Password protected files are always written
+     * in the sequential format
+     * 
+     * @param b true to write indexed resource files
+     */
+    public static void setIndexedFormat(boolean b) {
+        indexedFormat = b;
+    }
+    
+    /**
+     * The designer edits all the entries so they are always loaded eagerly
+     */
+    @Override
+    boolean isLazyLoadingSupported() {
+        return false;
+    }
+    
     public void setOverrideMode(EditableResources overrideResource, File overrideFile) {
         this.overrideResource = overrideResource;
         this.overrideFile = overrideFile;
@@ -1665,6 +1685,21 @@ public class EditableResources extends Resources implements TreeModel {
         try {
             DataOutputStream output = new DataOutputStream(out);
             String[] resourceNames = getResourceNames();
+            
+            // the indexed format writes the entries to a buffer so the table of contents can precede them
+            boolean indexed = indexedFormat && currentPassword == null;
+            DataOutputStream entries = output;
+            ByteArrayOutputStream entryBuffer = null;
+            byte[] magics = null;
+            int[] entryStarts = null;
+            int[] bodyStarts = null;
+            if(indexed) {
+                entryBuffer = new ByteArrayOutputStream();
+                entries = new DataOutputStream(entryBuffer);
+                magics = new byte[resourceNames.length];
+                entryStarts = new int[resourceNames.length];
+                bodyStarts = new int[resourceNames.length];
+            }
 
             keyOffset = 0;
             if(currentPassword != null) {
@@ -1673,7 +1708,7 @@ public class EditableResources extends Resources implements TreeModel {
                 output.writeUTF("" + ((char)encode('l')) + ((char)encode('w')));
                 output.writeByte(encode(MAGIC_HEADER & 0xff));
             } else {
-                output.writeShort(resourceNames.length + 1);
+                output.writeShort(resourceNames.length + (indexed ? 2 : 1));
                 // write the header of the resource file
                 output.writeByte(MAGIC_HEADER);
             }
@@ -1704,6 +1739,10 @@ public class EditableResources extends Resources implements TreeModel {
                         magic = MAGIC_FONT;
                         break;
                 }
+                if(indexed) {
+                    magics[iter] = magic;
+                    entryStarts[iter] = entries.size();
+                }
                 if(currentPassword != null) {
                     output.writeByte(encode(magic & 0xff));
                     char[] chars = resourceNames[iter].toCharArray();
@@ -1712,8 +1751,11 @@ public class EditableResources extends Resources implements TreeModel {
                     }
                     output.writeUTF(new String(chars));
                 } else {
-                    output.writeByte(magic);
-                    output.writeUTF(resourceNames[iter]);
+                    entries.writeByte(magic);
+                    entries.writeUTF(resourceNames[iter]);
+                }
+                if(indexed) {
+                    bodyStarts[iter] = entries.size();
                 }
                 switch(magic) {
                     case MAGIC_IMAGE:
@@ -1721,13 +1763,13 @@ public class EditableResources extends Resources implements TreeModel {
                         if(!(o instanceof MultiImage)) {
                             o = null;
                         }
-                        saveImage(output, getImage(resourceNames[iter]), (MultiImage)o, BufferedImage.TYPE_INT_ARGB);
+                        saveImage(entries, getImage(resourceNames[iter]), (MultiImage)o, BufferedImage.TYPE_INT_ARGB);
                         continue;
                     case MAGIC_THEME:
-                        saveTheme(output, getTheme(resourceNames[iter]), magic == MAGIC_THEME_LEGACY);
+                        saveTheme(entries, getTheme(resourceNames[iter]), magic == MAGIC_THEME_LEGACY);
                         continue;
                     case MAGIC_FONT:
-                        saveFont(output, false, resourceNames[iter]);
+                        saveFont(entries, false, resourceNames[iter]);
                         continue;
                     case MAGIC_DATA: {
                         InputStream i = getData(resourceNames[iter]);
@@ -1738,8 +1780,8 @@ public class EditableResources extends Resources implements TreeModel {
                             val = i.read();
                         }
                         byte[] data = outArray.toByteArray();
-                        output.writeInt(data.length);
-                        output.write(data);
+                        entries.writeInt(data.length);
+                        entries.write(data);
                         continue;
                     }
                     case MAGIC_UI: {
@@ -1751,18 +1793,32 @@ public class EditableResources extends Resources implements TreeModel {
                             val = i.read();
                         }
                         byte[] data = outArray.toByteArray();
-                        output.writeInt(data.length);
-                        output.write(data);
+                        entries.writeInt(data.length);
+                        entries.write(data);
                         continue;
                     }
                     case MAGIC_L10N:
                         // we are getting the theme which allows us to acces the l10n data
-                        saveL10N(output, getTheme(resourceNames[iter]));
+                        saveL10N(entries, getTheme(resourceNames[iter]));
                         continue;
                     default:
                         throw new IOException("Corrupt theme file unrecognized magic number: " + Integer.toHexString(magic & 0xff));
                 }
             }
+            if(indexed) {
+                // offsets are relative to the first byte after the table of contents
+                output.writeByte(MAGIC_INDEX);
+                output.writeUTF("");
+                output.writeShort(resourceNames.length);
+                for(int iter = 0 ; iter < resourceNames.length ; iter++) {
+                    int entryEnd = iter + 1 < resourceNames.length ? entryStarts[iter + 1] : entries.size();
+                    output.writeByte(magics[iter]);
+                    output.writeUTF(resourceNames[iter]);
+                    output.writeInt(bodyStarts[iter]);
+                    output.writeInt(entryEnd - bodyStarts[iter]);
+                }
+                entryBuffer.writeTo(output);
+            }
             modified = false;
             updateModified();
             undoQueue.clear();
@@ -0,0 +1,303 @@
+package com.codename1.db;
+
+import com.codename1.testing.AbstractTest;
+import com.codename1.ui.Display;
+import com.codename1.util.FailureCallback;
+import com.codename1.util.SuccessCallback;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Round trips typed values thru the bulk fetch methods of the thread safe database, the database is a
+ * fake whose rows behave like the native cursors e.g. a blob can't be read as a string
+ */
+public class MaterializedCursorTests extends AbstractTest {
+    private static final long TIMEOUT = 10000;
+
+    private static final String[] COLUMNS = {"id", "ratio", "data", "name"};
+    private static final Object[][] ROWS = {
+        {new Long(1), new Double(1.5), new byte[] {0, 1, (byte)0xff, (byte)0xc3}, "Caf\u00e9"},
+        {null, null, null, null},
+        {new Long(Long.MAX_VALUE), new Double(-2.25e-10), new byte[0], "007"},
+        {new Long(-3), new Double(4), new byte[] {65}, ""}
+    };
+    private static final int[] TYPES = {
+        ThreadSafeDatabase.COLUMN_INTEGER, ThreadSafeDatabase.COLUMN_REAL, ThreadSafeDatabase.COLUMN_BLOB,
+        ThreadSafeDatabase.COLUMN_TEXT
+    };
+
+    private Object result;
+    private boolean done;
+
+    @Override
+    public boolean shouldExecuteOnEDT() {
+        return true;
+    }
+
+    @Override
+    public boolean runTest() throws Exception {
+        ThreadSafeDatabase db = new ThreadSafeDatabase(new FakeDatabase(COLUMNS, ROWS));
+        try {
+            // declared types keep blobs as bytes and numbers as numbers
+            Cursor c = (Cursor)await(db, TYPES);
+            assertEqual(4, c.getColumnCount());
+            assertEqual("ratio", c.getColumnName(1));
+            assertEqual(2, c.getColumnIndex("data"));
+            checkRows(c, 0, ROWS.length);
+            assertTrue(c.first());
+            Row r = c.getRow();
+            try {
+                r.getString(2);
+                fail("A blob can't be read as a string");
+            } catch(IOException err) {
+                // expected
+            }
+            try {
+                r.getBlob(0);
+                fail("An integer can't be read as a blob");
+            } catch(IOException err) {
+                // expected
+            }
+
+            // paging thru an open cursor
+            Cursor open = db.executeQuery("select");
+            Cursor page = db.fetch(open, 3, TYPES);
+            checkRows(page, 0, 3);
+            page = db.fetch(open, 3, TYPES);
+            checkRows(page, 3, 1);
+            page = db.fetch(open, 3, TYPES);
+            assertFalse(page.next(), "A fetch past the end should be empty");
+            assertEqual(4, page.getColumnCount(), "An empty fetch should still have the columns");
+            open.close();
+
+            // unsupported types fail the query
+            Object err = await(db, new int[] {42});
+            assertTrue(err instanceof IOException, "An unsupported column type should fail");
+            try {
+                db.fetch(db.executeQuery("select"), 1, new int[] {-1});
+                fail("An unsupported column type should fail");
+            } catch(IOException e) {
+                // expected
+            }
+
+            // the types are inferred from the text when not declared, blobs have no text
+            err = await(db, null);
+            assertTrue(err instanceof IOException, "A blob column can't be inferred");
+            c = (Cursor)await(db, new int[] {ThreadSafeDatabase.COLUMN_AUTO, ThreadSafeDatabase.COLUMN_AUTO,
+                ThreadSafeDatabase.COLUMN_BLOB});
+            checkRows(c, 0, ROWS.length);
+            c.position(2);
+            assertEqual("007", c.getRow().getString(3), "The text of a value should be kept");
+            assertEqual(7, c.getRow().getInteger(3));
+            c.position(3);
+            assertEqual("4.0", c.getRow().getString(1));
+        } finally {
+            db.close();
+        }
+        return true;
+    }
+
+    private void checkRows(Cursor c, int first, int count) throws IOException {
+        for(int iter = first ; iter < first + count ; iter++) {
+            assertTrue(c.next(), "Missing row " + iter);
+            Row r = c.getRow();
+            Object[] expected = ROWS[iter];
+            if(expected[0] == null) {
+                assertEqual(0L, r.getLong(0));
+                assertTrue(((RowExt)r).wasNull(), "A null integer should be reported as null");
+                assertEqual(0.0, r.getDouble(1), 0);
+                assertTrue(((RowExt)r).wasNull(), "A null real should be reported as null");
+                assertNull(r.getBlob(2));
+                assertTrue(((RowExt)r).wasNull());
+                assertNull(r.getString(3));
+                continue;
+            }
+            assertEqual(((Long)expected[0]).longValue(), r.getLong(0));
+            assertFalse(((RowExt)r).wasNull());
+            assertEqual(expected[0].toString(), r.getString(0));
+            assertEqual(((Double)expected[1]).doubleValue(), r.getDouble(1), 0);
+            assertEqual((int)((Double)expected[1]).doubleValue(), r.getInteger(1));
+            assertTrue(Arrays.equals((byte[])expected[2], r.getBlob(2)), "Blob mismatch in row " + iter);
+            assertFalse(((RowExt)r).wasNull());
+            assertEqual(expected[3], r.getString(3));
+        }
+        assertFalse(c.next(), "Unexpected row");
+    }
+
+    /**
+     * Runs the query asynchronously and waits for the callback on the EDT
+     */
+    private Object await(ThreadSafeDatabase db, int[] types) {
+        done = false;
+        result = null;
+        db.executeQueryAsync("select", null, types, new SuccessCallback<Cursor>() {
+            public void onSucess(Cursor value) {
+                result = value;
+                done = true;
+            }
+        }, new FailureCallback<Cursor>() {
+            public void onError(Object sender, Throwable err, int errorCode, String errorMessage) {
+                result = err;
+                done = true;
+            }
+        });
+        final long end = System.currentTimeMillis() + TIMEOUT;
+        while(!done) {
+            assertTrue(System.currentTimeMillis() < end, "Timed out waiting for the query");
+            Display.getInstance().invokeAndBlock(new Runnable() {
+                public void run() {
+                    try {
+                        Thread.sleep(5);
+                    } catch(InterruptedException err) {
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * A database whose queries all return the same rows
+     */
+    static class FakeDatabase extends Database {
+        private final String[] columns;
+        private final Object[][] rows;
+
+        FakeDatabase(String[] columns, Object[][] rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        public void beginTransaction() throws IOException {
+        }
+
+        public void commitTransaction() throws IOException {
+        }
+
+        public void rollbackTransaction() throws IOException {
+        }
+
+        public void close() throws IOException {
+        }
+
+        public void execute(String sql) throws IOException {
+        }
+
+        public void execute(String sql, String[] params) throws IOException {
+        }
+
+        public Cursor executeQuery(String sql, String[] params) throws IOException {
+            return executeQuery(sql);
+        }
+
+        public Cursor executeQuery(String sql) throws IOException {
+            return new FakeCursor(columns, rows);
+        }
+    }
+
+    static class FakeCursor implements Cursor, RowExt {
+        private final String[] columns;
+        private final Object[][] rows;
+        private int position = -1;
+        private boolean lastNull;
+
+        FakeCursor(String[] columns, Object[][] rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        public boolean first() throws IOException {
+            return position(0);
+        }
+
+        public boolean last() throws IOException {
+            return position(rows.length - 1);
+        }
+
+        public boolean next() throws IOException {
+            position++;
+            return position < rows.length;
+        }
+
+        public boolean prev() throws IOException {
+            position--;
+            return position > -1;
+        }
+
+        public int getColumnIndex(String columnName) throws IOException {
+            return Arrays.asList(columns).indexOf(columnName);
+        }
+
+        public String getColumnName(int columnIndex) throws IOException {
+            return columns[columnIndex];
+        }
+
+        public int getColumnCount() throws IOException {
+            return columns.length;
+        }
+
+        public int getPosition() throws IOException {
+            return position;
+        }
+
+        public boolean position(int row) throws IOException {
+            position = row;
+            return row > -1 && row < rows.length;
+        }
+
+        public void close() throws IOException {
+        }
+
+        public Row getRow() throws IOException {
+            return this;
+        }
+
+        private Object value(int index) {
+            Object o = rows[position][index];
+            lastNull = o == null;
+            return o;
+        }
+
+        public byte[] getBlob(int index) throws IOException {
+            Object o = value(index);
+            if(o instanceof String) {
+                return ((String)o).getBytes("UTF-8");
+            }
+            return (byte[])o;
+        }
+
+        public double getDouble(int index) throws IOException {
+            Object o = value(index);
+            return o == null ? 0 : ((Number)o).doubleValue();
+        }
+
+        public float getFloat(int index) throws IOException {
+            return (float)getDouble(index);
+        }
+
+        public int getInteger(int index) throws IOException {
+            return (int)getLong(index);
+        }
+
+        public long getLong(int index) throws IOException {
+            Object o = value(index);
+            return o == null ? 0 : ((Number)o).longValue();
+        }
+
+        public short getShort(int index) throws IOException {
+            return (short)getLong(index);
+        }
+
+        public String getString(int index) throws IOException {
+            Object o = value(index);
+            if(o instanceof byte[]) {
+                throw new IOException("Unable to convert BLOB to string");
+            }
+            return o == null ? null : o.toString();
+        }
+
+        public boolean wasNull() throws IOException {
+            return lastNull;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.codename1.io;
+
+import com.codename1.testing.AbstractTest;
+import java.util.Vector;
+
+/**
+ * Tests the eviction of the memory cache of the cache map by entry count and by the size of the entries
+ * as estimated by sizeOf
+ */
+public class CacheMapTests extends AbstractTest {
+
+    @Override
+    public boolean runTest() throws Exception {
+        // entries are evicted in least recently used order once their size exceeds the limit
+        SizedCacheMap c = new SizedCacheMap();
+        c.setCacheSize(10);
+        c.setCacheSizeBytes(100);
+        c.put("a", value(40));
+        c.put("b", value(40));
+        assertEqual(80, c.getMemoryCacheBytes());
+        assertNotNull(c.get("a"));
+        c.put("c", value(40));
+        assertKeys(c, new String[] {"a", "c"}, "The least recently used entry should be evicted");
+        assertEqual(80, c.getMemoryCacheBytes());
+        assertEqual(1, c.getEvictions());
+
+        // replacing a value accounts for the size of the new value
+        c.put("a", value(90));
+        assertKeys(c, new String[] {"a"}, "Growing an entry should evict the others");
+        assertEqual(90, c.getMemoryCacheBytes());
+
+        // an entry larger than the limit is kept on its own
+        c.put("d", value(150));
+        assertKeys(c, new String[] {"d"}, "A large entry should evict everything else");
+        assertEqual(150, c.getMemoryCacheBytes());
+        c.delete("d");
+        assertEqual(0, c.getMemoryCacheBytes());
+        assertEqual(0, c.getKeysInCache().size());
+
+        // the entry count still applies with a byte limit
+        c.setCacheSize(2);
+        c.put("e", value(1));
+        c.put("f", value(1));
+        c.put("g", value(1));
+        assertKeys(c, new String[] {"f", "g"}, "The entry count should limit the cache");
+        assertEqual(2, c.getMemoryCacheBytes());
+
+        // sizes are only estimated once a byte limit is set, the existing entries are measured then
+        c = new SizedCacheMap();
+        c.put("a", value(30));
+        c.put("b", value(30));
+        c.put("c", value(30));
+        assertEqual(0, c.sizeCalls, "Sizes shouldn't be estimated without a byte limit");
+        assertEqual(0, c.getMemoryCacheBytes());
+        c.setCacheSizeBytes(50);
+        assertEqual(3, c.sizeCalls, "Setting a limit should measure the existing entries");
+        assertKeys(c, new String[] {"c"}, "Setting a limit should evict the least recently used entries");
+        assertEqual(30, c.getMemoryCacheBytes());
+        c.clearMemoryCache();
+        assertEqual(0, c.getMemoryCacheBytes());
+
+        // the default estimate of the common value types
+        CacheMap d = new CacheMap();
+        d.setCacheSizeBytes(100);
+        d.put("bytes", new byte[60]);
+        assertEqual(60, d.getMemoryCacheBytes());
+        d.put("ints", new int[10]);
+        assertEqual(100, d.getMemoryCacheBytes());
+        d.put("string", "abcde");
+        assertKeys(d, new String[] {"ints", "string"}, "A string is estimated at two bytes per character");
+        assertEqual(50, d.getMemoryCacheBytes());
+        d.put("other", new Object());
+        assertKeys(d, new String[] {"string", "other"}, "Other values use a fixed estimate");
+        assertEqual(74, d.getMemoryCacheBytes());
+        return true;
+    }
+
+    private static String value(int length) {
+        StringBuilder b = new StringBuilder(length);
+        for(int iter = 0 ; iter < length ; iter++) {
+            b.append('x');
+        }
+        return b.toString();
+    }
+
+    private void assertKeys(CacheMap c, String[] keys, String message) {
+        Vector v = c.getKeysInCache();
+        assertEqual(keys.length, v.size(), message + ", the cache contains " + v);
+        for(String k : keys) {
+            assertTrue(v.contains(k), message + ", " + k + " is missing from " + v);
+        }
+    }
+
+    /**
+     * Estimates a string at one byte per character and counts the estimates
+     */
+    static class SizedCacheMap extends CacheMap {
+        int sizeCalls;
+
+        @Override
+        protected int sizeOf(Object value) {
+            sizeCalls++;
+            return ((String)value).length();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.codename1.io;
+
+import com.codename1.testing.AbstractTest;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Round trip tests for the compact object format and the legacy format read through the same API
+ */
+public class CompactObjectFormatTests extends AbstractTest {
+
+    @Override
+    public boolean runTest() throws Exception {
+        Util.register("CompactObjectFormatTests.Item", Item.class);
+
+        assertNull(roundTrip(null, true), "Compact round trip failed for null");
+        assertNull(roundTrip(null, false), "Legacy round trip failed for null");
+        Object[] values = new Object[] {
+            "",
+            "ascii",
+            "Caf\u00e9 \u05e9\u05dc\u05d5\u05dd \u65e5\u672c\u8a9e \ud83d\ude00",
+            new Integer(0), new Integer(-1), new Integer(Integer.MAX_VALUE), new Integer(Integer.MIN_VALUE),
+            new Long(0), new Long(-1), new Long(Long.MAX_VALUE), new Long(Long.MIN_VALUE),
+            new Byte((byte)-128), new Byte((byte)127),
+            new Short(Short.MIN_VALUE), new Short(Short.MAX_VALUE),
+            new Float(-1.5f), new Float(Float.NaN),
+            new Double(Math.PI), new Double(Double.NEGATIVE_INFINITY),
+            Boolean.TRUE, Boolean.FALSE,
+            new Date(1234567890123L)
+        };
+        for(Object o : values) {
+            assertEqual(o, roundTrip(o, true), "Compact round trip failed for " + o);
+            assertEqual(o, roundTrip(o, false), "Legacy round trip failed for " + o);
+        }
+
+        Hashtable<String, Object> nested = createNested();
+        assertEqual(nested, roundTrip(nested, true), "Nested compact round trip failed");
+        assertEqual(nested, roundTrip(nested, false), "Nested legacy round trip failed");
+        assertTrue(write(nested, true).length < write(nested, false).length, "Compact format should be smaller");
+
+        // strings longer than the string table limit are written inline every time
+        StringBuilder sb = new StringBuilder();
+        for(int iter = 0 ; iter < 300 ; iter++) {
+            sb.append((char)('\u0400' + iter));
+        }
+        Vector<Object> longStrings = new Vector<Object>();
+        longStrings.addElement(sb.toString());
+        longStrings.addElement("short");
+        longStrings.addElement(sb.toString());
+        longStrings.addElement("short");
+        assertEqual(longStrings, roundTrip(longStrings, true), "Long strings round trip failed");
+
+        int[] ints = new int[] {0, -1, 1, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        int[] intsResult = (int[])roundTrip(ints, true);
+        assertEqual(ints.length, intsResult.length);
+        for(int iter = 0 ; iter < ints.length ; iter++) {
+            assertEqual(ints[iter], intsResult[iter], "int[] round trip failed at " + iter);
+        }
+        long[] longs = new long[] {0, -1, Long.MIN_VALUE, Long.MAX_VALUE};
+        long[] longsResult = (long[])roundTrip(longs, true);
+        assertEqual(longs.length, longsResult.length);
+        for(int iter = 0 ; iter < longs.length ; iter++) {
+            assertEqual(longs[iter], longsResult[iter], "long[] round trip failed at " + iter);
+        }
+        byte[] bytes = new byte[] {0, -128, 127, 5};
+        byte[] bytesResult = (byte[])roundTrip(bytes, true);
+        assertEqual(bytes.length, bytesResult.length);
+        for(int iter = 0 ; iter < bytes.length ; iter++) {
+            assertEqual(bytes[iter], bytesResult[iter], "byte[] round trip failed at " + iter);
+        }
+        double[] doubles = new double[] {0, -0.5, Double.MAX_VALUE};
+        double[] doublesResult = (double[])roundTrip(doubles, true);
+        assertEqual(doubles.length, doublesResult.length);
+        for(int iter = 0 ; iter < doubles.length ; iter++) {
+            assertEqual(doubles[iter], doublesResult[iter], 0, "double[] round trip failed at " + iter);
+        }
+        Object[] objects = new Object[] {"a", null, new Integer(3), "a"};
+        Object[] objectsResult = (Object[])roundTrip(objects, true);
+        assertEqual(objects.length, objectsResult.length);
+        assertEqual("a", objectsResult[0]);
+        assertNull(objectsResult[1]);
+        assertEqual(new Integer(3), objectsResult[2]);
+        assertEqual("a", objectsResult[3]);
+
+        // externalizable objects share the string table with their nested writeObject calls
+        Vector<Object> items = new Vector<Object>();
+        for(int iter = 0 ; iter < 3 ; iter++) {
+            Item i = new Item();
+            i.name = "Caf\u00e9";
+            i.value = nested;
+            items.addElement(i);
+        }
+        Vector result = (Vector)roundTrip(items, true);
+        assertEqual(3, result.size());
+        for(int iter = 0 ; iter < 3 ; iter++) {
+            Item i = (Item)result.elementAt(iter);
+            assertEqual("Caf\u00e9", i.name);
+            assertEqual(nested, i.value);
+        }
+
+        // data written by the legacy format before the compact format existed
+        ByteArrayOutputStream bo = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bo);
+        out.writeBoolean(true);
+        out.writeUTF("java.util.Hashtable");
+        out.writeInt(2);
+        out.writeBoolean(true);
+        out.writeUTF("String");
+        out.writeUTF("key");
+        out.writeBoolean(true);
+        out.writeUTF("int");
+        out.writeInt(-42);
+        out.writeBoolean(true);
+        out.writeUTF("String");
+        out.writeUTF("list");
+        out.writeBoolean(true);
+        out.writeUTF("java.util.Vector");
+        out.writeInt(2);
+        out.writeBoolean(false);
+        out.writeBoolean(true);
+        out.writeUTF("String");
+        out.writeUTF("\u05e9\u05dc\u05d5\u05dd");
+        out.close();
+        Hashtable legacy = (Hashtable)Util.readObject(new DataInputStream(new ByteArrayInputStream(bo.toByteArray())));
+        assertEqual(new Integer(-42), legacy.get("key"));
+        Vector list = (Vector)legacy.get("list");
+        assertEqual(2, list.size());
+        assertNull(list.elementAt(0));
+        assertEqual("\u05e9\u05dc\u05d5\u05dd", list.elementAt(1));
+
+        // a version newer than the reader understands is rejected
+        byte[] future = write("x", true);
+        future[1] = (byte)(CompactObjectFormat.VERSION + 1);
+        try {
+            Util.readObject(new DataInputStream(new ByteArrayInputStream(future)));
+            fail("Reading a newer format version should fail");
+        } catch(IOException err) {
+            // expected
+        }
+        return true;
+    }
+
+    private Hashtable<String, Object> createNested() {
+        Hashtable<String, Object> root = new Hashtable<String, Object>();
+        Vector<Object> records = new Vector<Object>();
+        for(int iter = 0 ; iter < 20 ; iter++) {
+            Hashtable<String, Object> record = new Hashtable<String, Object>();
+            record.put("id", new Integer(iter));
+            record.put("name", "\u05e9\u05dd " + iter);
+            record.put("price", new Double(iter * 1.25));
+            record.put("created", new Date(1000000L * iter));
+            record.put("active", iter % 2 == 0 ? Boolean.TRUE : Boolean.FALSE);
+            Vector<Object> tags = new Vector<Object>();
+            tags.addElement("tag");
+            tags.addElement(null);
+            tags.addElement(new Long(-iter));
+            record.put("tags", tags);
+            records.addElement(record);
+        }
+        root.put("records", records);
+        root.put("empty", new Hashtable<String, Object>());
+        root.put("title", "\ud83d\ude00 records");
+        return root;
+    }
+
+    private byte[] write(Object o, boolean compact) throws IOException {
+        ByteArrayOutputStream bo = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bo);
+        if(compact) {
+            Util.writeObjectCompact(o, out);
+        } else {
+            Util.writeObject(o, out);
+        }
+        out.close();
+        return bo.toByteArray();
+    }
+
+    private Object roundTrip(Object o, boolean compact) throws IOException {
+        return Util.readObject(new DataInputStream(new ByteArrayInputStream(write(o, compact))));
+    }
+
+    public static class Item implements Externalizable {
+        String name;
+        Object value;
+
+        public int getVersion() {
+            return 1;
+        }
+
+        public void externalize(DataOutputStream out) throws IOException {
+            Util.writeUTF(name, out);
+            Util.writeObject(value, out);
+        }
+
+        public void internalize(int version, DataInputStream in) throws IOException {
+            name = Util.readUTF(in);
+            value = Util.readObject(in);
+        }
+
+        public String getObjectId() {
+            return "CompactObjectFormatTests.Item";
+        }
+    }
+}
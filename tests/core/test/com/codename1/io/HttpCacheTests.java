@@ -0,0 +1,117 @@
+package com.codename1.io;
+
+import com.codename1.testing.AbstractTest;
+import java.io.OutputStream;
+
+/**
+ * Tests the index of the HTTP cache: the validators and freshness of the cached responses, the least recently
+ * used eviction once the cache exceeds its size and the statistics. The responses are recorded directly in the
+ * index so no request reaches the network
+ */
+public class HttpCacheTests extends AbstractTest {
+    private static final String PREFIX = "http://cache.example.com/";
+
+    @Override
+    public boolean runTest() throws Exception {
+        HttpCache cache = HttpCache.getInstance();
+        FileSystemStorage fs = FileSystemStorage.getInstance();
+        String dir = ConnectionRequest.getCacheDirectory();
+        String bFile = dir + "HttpCacheTests-b";
+        int oldMaxSize = cache.getMaxSize();
+        cache.clear();
+        cache.resetStatistics();
+        try {
+            // the freshness lifetime comes from max-age unless the response can't be cached
+            long now = System.currentTimeMillis();
+            long expires = HttpCache.expiresFromCacheControl("public, max-age=60");
+            assertTrue(expires >= now + 60000 && expires <= System.currentTimeMillis() + 60000, "max-age should be in seconds");
+            assertTrue(HttpCache.expiresFromCacheControl("Public, MAX-AGE=5") > now, "The header is case insensitive");
+            assertEqual(0L, HttpCache.expiresFromCacheControl("no-cache, max-age=60"));
+            assertEqual(0L, HttpCache.expiresFromCacheControl("no-store"));
+            assertEqual(0L, HttpCache.expiresFromCacheControl("max-age="));
+            assertEqual(0L, HttpCache.expiresFromCacheControl("private"));
+            assertEqual(0L, HttpCache.expiresFromCacheControl(null));
+
+            // a response without validators or freshness isn't indexed
+            cache.responseReceived(PREFIX + "plain", null, null, null);
+            assertNull(cache.getValidators(PREFIX + "plain"));
+            assertEqual(1, cache.getMissCount());
+
+            // validators and freshness of a cached response
+            String a = PREFIX + "a";
+            cache.responseReceived(a, "Mon, 12 Oct 2026 10:00:00 GMT", "\"a1\"", "max-age=60");
+            String[] validators = cache.getValidators(a);
+            assertEqual("Mon, 12 Oct 2026 10:00:00 GMT", validators[0]);
+            assertEqual("\"a1\"", validators[1]);
+            assertEqual(-1, cache.getFreshSize(a), "A response without a cached body isn't fresh");
+            cache.stored(a, dir + "HttpCacheTests-a", 100);
+            assertEqual(100, cache.getFreshSize(a));
+            assertEqual(100, cache.getSize());
+
+            String b = PREFIX + "b";
+            OutputStream os = fs.openOutputStream(bFile);
+            os.write(new byte[100]);
+            os.close();
+            cache.responseReceived(b, null, "\"b1\"", null);
+            cache.stored(b, bFile, 100);
+            assertEqual(-1, cache.getFreshSize(b), "A response without max-age needs to be revalidated");
+            assertEqual(100, cache.notModified(b, "max-age=60"), "A 304 is served from the cached body");
+            assertEqual(100, cache.getFreshSize(b), "A 304 should update the freshness");
+            assertEqual(200, cache.getSize());
+
+            // statistics
+            cache.freshHit(a);
+            assertEqual(1, cache.getHitCount());
+            assertEqual(1, cache.getRevalidationCount());
+            assertEqual(3, cache.getMissCount());
+            assertEqual(200L, cache.getBytesSaved());
+
+            // replacing a body updates the size
+            cache.stored(b, bFile, 150);
+            assertEqual(250, cache.getSize());
+            cache.stored(b, bFile, 100);
+            assertEqual(200, cache.getSize());
+
+            // the least recently used response is evicted
+            cache.setMaxSize(250);
+            assertNotNull(cache.getValidators(a));
+            String c = PREFIX + "c";
+            cache.responseReceived(c, null, "\"c1\"", null);
+            cache.stored(c, dir + "HttpCacheTests-c", 100);
+            assertNull(cache.getValidators(b), "The least recently used response should be evicted");
+            assertFalse(fs.exists(bFile), "The body of an evicted response should be deleted");
+            assertNotNull(cache.getValidators(a), "A recently used response should be kept");
+            assertNotNull(cache.getValidators(c));
+            assertEqual(200, cache.getSize());
+
+            // a response larger than the limit evicts the others but is kept itself
+            cache.stored(c, dir + "HttpCacheTests-c", 300);
+            assertNull(cache.getValidators(a), "The older response should be evicted");
+            assertEqual(300, cache.getSize(), "The most recent response should be kept");
+            cache.setMaxSize(-1);
+            cache.stored(a, dir + "HttpCacheTests-a", 100);
+            assertEqual(400, cache.getSize());
+
+            cache.remove(c);
+            assertNull(cache.getValidators(c));
+            assertEqual(100, cache.getSize());
+            cache.clear();
+            assertEqual(0, cache.getSize());
+            assertEqual(-1, cache.getFreshSize(a));
+
+            cache.resetStatistics();
+            assertEqual(0, cache.getHitCount());
+            assertEqual(0, cache.getRevalidationCount());
+            assertEqual(0, cache.getMissCount());
+            assertEqual(0L, cache.getBytesSaved());
+        } finally {
+            if(fs.exists(bFile)) {
+                fs.delete(bFile);
+            }
+            cache.setMaxSize(oldMaxSize);
+            cache.clear();
+            cache.resetStatistics();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,64 @@
+package com.codename1.io;
+
+import com.codename1.testing.AbstractTest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Tests the pull based JSON reader
+ */
+public class JSONReaderTests extends AbstractTest {
+
+    @Override
+    public boolean runTest() throws Exception {
+        String json = "{\"id\": 12, \"name\": \"Caf\\u00e9\", \"skip\": {\"a\": [1, 2, {\"b\": null}]}, \"ok\": true, \"big\": 12345678901, \"ratio\": 2.5}";
+        JSONReader r = new JSONReader(new ByteArrayInputStream(json.getBytes("UTF-8")));
+        assertEqual(JSONReader.START_OBJECT, r.nextToken());
+        assertEqual("id", r.readName());
+        assertEqual(12, r.readInt());
+        assertEqual("name", r.readName());
+        assertEqual("Caf\u00e9", r.readString());
+        assertEqual(JSONReader.NAME, r.nextToken());
+        assertTrue(r.textEquals("skip"));
+        r.skipValue();
+        assertEqual("ok", r.readName());
+        assertTrue(r.readBoolean());
+        assertEqual("big", r.readName());
+        assertEqual(12345678901L, r.readLong());
+        assertEqual("ratio", r.readName());
+        assertEqual(2.5, r.readDouble(), 0.0001);
+        assertTrue(!r.hasNext());
+        assertEqual(JSONReader.END_OBJECT, r.nextToken());
+        assertEqual(JSONReader.END_DOCUMENT, r.nextToken());
+
+        r = new JSONReader(new CharArrayReader("[1, [2, 3], \"x\"]".toCharArray()));
+        assertEqual(JSONReader.START_ARRAY, r.nextToken());
+        int count = 0;
+        while(r.hasNext()) {
+            r.skipValue();
+            count++;
+        }
+        assertEqual(3, count);
+        assertEqual(JSONReader.END_ARRAY, r.nextToken());
+
+        // integral values are parsed exactly all the way to the limits of a long
+        r = new JSONReader(new CharArrayReader(("[9223372036854775807, -9223372036854775808, 9223372036854775806, "
+                + "\"-9223372036854775807\", 1234567890123456789, 1.5e3, -2.75, 9223372036854775808]").toCharArray()));
+        assertEqual(JSONReader.START_ARRAY, r.nextToken());
+        assertEqual(Long.MAX_VALUE, r.readLong());
+        assertEqual(Long.MIN_VALUE, r.readLong());
+        assertEqual(Long.MAX_VALUE - 1, r.readLong());
+        assertEqual(Long.MIN_VALUE + 1, r.readLong());
+        assertEqual(1234567890123456789L, r.readLong());
+        assertEqual(1500L, r.readLong());
+        assertEqual(-2L, r.readLong());
+        try {
+            r.readLong();
+            fail("A value out of the range of a long should fail");
+        } catch(IOException err) {
+            // expected
+        }
+        return true;
+    }
+    
+}
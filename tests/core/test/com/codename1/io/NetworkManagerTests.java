@@ -0,0 +1,218 @@
+package com.codename1.io;
+
+import com.codename1.testing.AbstractTest;
+import java.io.IOException;
+import java.util.Enumeration;
+
+/**
+ * Tests the dispatch of the network queue with a per host limit: requests of a saturated host wait while
+ * other hosts proceed and the slot of a host is released when a request fails, is killed or is retried.
+ * The requests block instead of connecting so the test controls when each of them completes
+ */
+public class NetworkManagerTests extends AbstractTest {
+    private static final long TIMEOUT = 5000;
+
+    @Override
+    public boolean runTest() throws Exception {
+        NetworkManager nm = NetworkManager.getInstance();
+        int oldThreads = nm.getThreadCount();
+        int oldLimit = nm.getMaxConnectionsPerHost();
+        nm.setMaxConnectionsPerHost(1);
+        nm.updateThreadCount(3);
+        try {
+            // a saturated host doesn't block the requests of other hosts
+            BlockingRequest a1 = new BlockingRequest("http://a.example.com/1");
+            BlockingRequest a2 = new BlockingRequest("http://A.example.com/2");
+            BlockingRequest b1 = new BlockingRequest("https://b.example.com/1");
+            nm.addToQueue(a1);
+            nm.addToQueue(a2);
+            nm.addToQueue(b1);
+            a1.awaitStart();
+            b1.awaitStart();
+            Thread.sleep(100);
+            assertFalse(a2.isStarted(), "The second request of a host should wait for the first");
+            assertEqual(1, nm.getActiveConnections("a.example.com"));
+            a1.release();
+            a2.awaitStart();
+            a2.release();
+            b1.release();
+            awaitIdle(nm, "a.example.com");
+
+            // the queue keeps the priority order while the host is saturated
+            BlockingRequest blocker = new BlockingRequest("http://c.example.com/blocker");
+            nm.addToQueue(blocker);
+            blocker.awaitStart();
+            BlockingRequest low = new BlockingRequest("http://c.example.com/low");
+            low.setPriority(ConnectionRequest.PRIORITY_LOW);
+            BlockingRequest high = new BlockingRequest("http://c.example.com/high");
+            high.setPriority(ConnectionRequest.PRIORITY_HIGH);
+            BlockingRequest normal = new BlockingRequest("http://c.example.com/normal");
+            nm.addToQueue(low);
+            nm.addToQueue(high);
+            nm.addToQueue(normal);
+            Enumeration e = nm.enumurateQueue();
+            assertTrue(e.nextElement() == high, "The queue should be sorted by priority");
+            assertTrue(e.nextElement() == normal);
+            assertTrue(e.nextElement() == low);
+            assertFalse(e.hasMoreElements());
+            blocker.release();
+            high.awaitStart();
+            assertFalse(normal.isStarted() || low.isStarted(), "The host limit should still apply");
+            high.release();
+            normal.awaitStart();
+            normal.release();
+            low.awaitStart();
+            low.release();
+            awaitIdle(nm, "c.example.com");
+
+            // a failing request releases the slot
+            BlockingRequest failing = new BlockingRequest("http://d.example.com/fail");
+            failing.failure = new RuntimeException("Expected failure");
+            BlockingRequest afterFailure = new BlockingRequest("http://d.example.com/next");
+            nm.addToQueue(failing);
+            nm.addToQueue(afterFailure);
+            failing.awaitStart();
+            failing.release();
+            afterFailure.awaitStart();
+            afterFailure.release();
+            awaitIdle(nm, "d.example.com");
+
+            // so does a request that fails with an error, the network thread dies but the others continue
+            BlockingRequest error = new BlockingRequest("http://e.example.com/error");
+            error.error = new Error("Expected error");
+            BlockingRequest afterError = new BlockingRequest("http://e.example.com/next");
+            nm.addToQueue(error);
+            nm.addToQueue(afterError);
+            error.awaitStart();
+            error.release();
+            afterError.awaitStart();
+            afterError.release();
+            awaitIdle(nm, "e.example.com");
+            nm.updateThreadCount(3);
+
+            // a killed request that never returns releases the slot when its thread is replaced
+            BlockingRequest stuck = new BlockingRequest("http://f.example.com/stuck");
+            BlockingRequest afterKill = new BlockingRequest("http://f.example.com/next");
+            nm.addToQueue(stuck);
+            nm.addToQueue(afterKill);
+            stuck.awaitStart();
+            stuck.kill();
+            nm.kill9(stuck);
+            afterKill.awaitStart();
+            assertEqual(1, nm.getActiveConnections("f.example.com"));
+            // when the killed request finally returns it doesn't release the slot again
+            stuck.release();
+            Thread.sleep(100);
+            assertEqual(1, nm.getActiveConnections("f.example.com"), "A killed request released its slot twice");
+            afterKill.release();
+            awaitIdle(nm, "f.example.com");
+
+            // a retry waits for the slot of the attempt that requested it
+            BlockingRequest retried = new BlockingRequest("http://g.example.com/retry");
+            retried.retries = 1;
+            nm.addToQueue(retried);
+            retried.awaitRuns(1);
+            retried.release();
+            retried.awaitRuns(2);
+            assertEqual(1, nm.getActiveConnections("g.example.com"));
+            retried.release();
+            awaitIdle(nm, "g.example.com");
+            assertEqual(2, retried.getRuns());
+        } finally {
+            nm.setMaxConnectionsPerHost(oldLimit);
+            nm.updateThreadCount(oldThreads);
+        }
+        return true;
+    }
+
+    private void awaitIdle(NetworkManager nm, String host) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while(nm.getActiveConnections(host) > 0 || nm.enumurateQueue().hasMoreElements()) {
+            assertTrue(System.currentTimeMillis() < end, "Timed out waiting for the requests of " + host);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * A request that blocks in place of the connection until it is released, it ignores interrupts
+     * like a request that is stuck in native code
+     */
+    static class BlockingRequest extends ConnectionRequest {
+        private final Object lock = new Object();
+        private boolean started;
+        private boolean released;
+        private int runs;
+        int retries;
+        RuntimeException failure;
+        Error error;
+
+        BlockingRequest(String url) {
+            setUrl(url);
+            setFailSilently(true);
+        }
+
+        @Override
+        void performOperation() throws IOException {
+            synchronized(lock) {
+                started = true;
+                runs++;
+                lock.notifyAll();
+                while(!released) {
+                    try {
+                        lock.wait();
+                    } catch(InterruptedException err) {
+                        // keep blocking
+                    }
+                }
+                released = false;
+            }
+            if(retries > 0) {
+                retries--;
+                retry();
+                return;
+            }
+            if(failure != null) {
+                throw failure;
+            }
+            if(error != null) {
+                throw error;
+            }
+        }
+
+        boolean isStarted() {
+            synchronized(lock) {
+                return started;
+            }
+        }
+
+        int getRuns() {
+            synchronized(lock) {
+                return runs;
+            }
+        }
+
+        void awaitStart() throws InterruptedException {
+            awaitRuns(1);
+        }
+
+        void awaitRuns(int count) throws InterruptedException {
+            long end = System.currentTimeMillis() + TIMEOUT;
+            synchronized(lock) {
+                while(runs < count) {
+                    long remaining = end - System.currentTimeMillis();
+                    if(remaining <= 0) {
+                        throw new RuntimeException("Timed out waiting for " + getUrl());
+                    }
+                    lock.wait(remaining);
+                }
+            }
+        }
+
+        void release() {
+            synchronized(lock) {
+                released = true;
+                lock.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.codename1.io;
+
+import com.codename1.testing.AbstractTest;
+
+/**
+ * Tests the incremental log of the write-behind preferences: appending entries, replaying them when the
+ * preferences are loaded and compacting them into the preferences file
+ */
+public class PreferencesTests extends AbstractTest {
+    private static final String LOCATION = "PreferencesTests";
+
+    @Override
+    public boolean runTest() throws Exception {
+        Storage oldStorage = Storage.getInstance();
+        String oldLocation = Preferences.getPreferencesLocation();
+        boolean oldWriteBehind = Preferences.isWriteBehind();
+        int oldDelay = Preferences.getWriteBehindDelay();
+        int oldThreshold = Preferences.getCompactionThreshold();
+        StorageAsyncTests.MemoryStorage s = new StorageAsyncTests.MemoryStorage();
+        s.setNormalizeNames(false);
+        Preferences.flush();
+        Storage.setStorageInstance(s);
+        try {
+            Preferences.setPreferencesLocation(LOCATION);
+            // the background writer is only used as a fallback, the test flushes explicitly
+            Preferences.setWriteBehindDelay(60000);
+            Preferences.setCompactionThreshold(3);
+            Preferences.setWriteBehind(true);
+
+            // every flush appends the changed keys as a log entry
+            Preferences.set("a", "first");
+            Preferences.set("b", 2);
+            Preferences.set("a", "second");
+            assertEqual("second", Preferences.get("a", null), "Values should be visible before they are written");
+            assertFalse(s.exists(LOCATION + "$0.1"), "Nothing should be written before the flush");
+            Preferences.flush();
+            assertTrue(s.exists(LOCATION + "$0.1"), "The flush should write a log entry");
+            assertFalse(s.exists(LOCATION), "A log entry shouldn't rewrite the preferences file");
+            assertEqual(1, s.writeCount(LOCATION + "$0.1"), "Coalesced changes should be written once");
+            Preferences.flush();
+            assertFalse(s.exists(LOCATION + "$0.2"), "A flush without changes shouldn't write");
+            Preferences.delete("b");
+            Preferences.set("c", true);
+            Preferences.flush();
+            assertTrue(s.exists(LOCATION + "$0.2"));
+
+            // the log is replayed in order when the preferences are loaded
+            reload(s);
+            assertEqual("second", Preferences.get("a", null));
+            assertEqual(-1, Preferences.get("b", -1), "A deleted key should stay deleted after replay");
+            assertTrue(Preferences.get("c", false));
+
+            // once the threshold is reached the preferences file is rewritten with the next generation
+            Preferences.set("d", 4L);
+            Preferences.flush();
+            assertTrue(s.exists(LOCATION + "$0.3"));
+            Preferences.set("e", "compacted");
+            Preferences.flush();
+            assertTrue(s.exists(LOCATION), "The compaction should write the preferences file");
+            for(int iter = 1 ; iter <= 4 ; iter++) {
+                assertFalse(s.exists(LOCATION + "$0." + iter), "The log of the old generation should be deleted");
+            }
+            Preferences.set("f", 1.5);
+            Preferences.flush();
+            assertTrue(s.exists(LOCATION + "$1.1"), "New entries should go to the log of the new generation");
+            reload(s);
+            assertEqual("second", Preferences.get("a", null));
+            assertEqual(4L, Preferences.get("d", 0L));
+            assertEqual("compacted", Preferences.get("e", null));
+            assertEqual(1.5, Preferences.get("f", 0.0), 0.0001);
+
+            // a log of an older generation left behind by a compaction is never replayed and is removed on load
+            byte[] staleLog = Util.readInputStream(s.createInputStream(LOCATION + "$1.1"));
+            Preferences.set("f", 2.5);
+            Preferences.set("g", "g");
+            Preferences.flush();
+            assertTrue(s.exists(LOCATION + "$1.2"));
+            Preferences.clearAll();
+            Preferences.set("h", "after clear");
+            Preferences.flush();
+            assertFalse(s.exists(LOCATION + "$1.1"), "clearAll should compact the log");
+            assertFalse(s.exists(LOCATION + "$1.2"), "clearAll should compact the log");
+            s.put(LOCATION + "$1.1", staleLog);
+            reload(s);
+            assertEqual(-1.0, Preferences.get("f", -1.0), 0.0001, "A log of an older generation was replayed");
+            assertEqual("after clear", Preferences.get("h", null));
+            assertFalse(s.exists(LOCATION + "$1.1"), "The stale log should be deleted on load");
+
+            // values can be read and changed while the storage write is in progress
+            Preferences.set("i", "pending");
+            s.block();
+            Thread writer = new Thread() {
+                public void run() {
+                    Preferences.flush();
+                }
+            };
+            writer.start();
+            s.awaitBlocked();
+            s.unblockLater();
+            long time = System.currentTimeMillis();
+            assertEqual("pending", Preferences.get("i", null));
+            Preferences.set("j", "during write");
+            assertTrue(System.currentTimeMillis() - time < 150, "Preferences access waited for the storage");
+            writer.join();
+            Preferences.flush();
+            reload(s);
+            assertEqual("pending", Preferences.get("i", null));
+            assertEqual("during write", Preferences.get("j", null));
+
+            // the synchronous mode rewrites the file on every change
+            Preferences.setWriteBehind(false);
+            int count = s.writeCount(LOCATION);
+            Preferences.set("k", "sync");
+            assertEqual(count + 1, s.writeCount(LOCATION), "A synchronous change should rewrite the file");
+            reload(s);
+            assertEqual("sync", Preferences.get("k", null));
+        } finally {
+            Preferences.setWriteBehind(oldWriteBehind);
+            Preferences.setWriteBehindDelay(oldDelay);
+            Preferences.setCompactionThreshold(oldThreshold);
+            Storage.setStorageInstance(oldStorage);
+            Preferences.setPreferencesLocation(oldLocation);
+        }
+        return true;
+    }
+
+    private void reload(Storage s) {
+        Preferences.flush();
+        s.clearCache();
+        Preferences.setPreferencesLocation(LOCATION);
+    }
+}
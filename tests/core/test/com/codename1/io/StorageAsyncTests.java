@@ -0,0 +1,227 @@
+package com.codename1.io;
+
+import com.codename1.testing.AbstractTest;
+import com.codename1.util.AsyncResource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Verifies that the asynchronous storage reads and writes complete and report failures, the storage is
+ * backed by memory so the test doesn't depend on the storage of the platform
+ */
+public class StorageAsyncTests extends AbstractTest {
+    private static final long TIMEOUT = 10000;
+
+    @Override
+    public boolean runTest() throws Exception {
+        MemoryStorage s = new MemoryStorage();
+        s.setNormalizeNames(false);
+
+        // a simple write and read through the worker
+        Hashtable<String, Object> value = new Hashtable<String, Object>();
+        value.put("name", "Caf\u00e9");
+        Vector<Object> list = new Vector<Object>();
+        list.addElement(new Integer(1));
+        list.addElement(null);
+        value.put("list", list);
+        AsyncResource<Boolean> write = s.writeObjectAsync("a", value);
+        assertEqual(value, s.readObject("a"), "A pending write should be visible to readObject");
+        assertEqual(Boolean.TRUE, await(write), "Write should succeed");
+        s.flush();
+        assertFalse(s.hasPendingWrites(), "No writes should be pending after flush");
+        assertEqual(1, s.writeCount("a"));
+        s.clearCache();
+        assertEqual(value, await(s.readObjectAsync("a")), "Reading from storage returned a different value");
+        assertEqual(value, await(s.readObjectAsync("a")), "Reading from the cache returned a different value");
+
+        // writes of the same name queued behind a write in progress are coalesced
+        s.block();
+        AsyncResource<Boolean> blocker = s.writeObjectAsync("blocker", "x");
+        s.awaitBlocked();
+        assertTrue(s.hasPendingWrites(), "A write in progress should be pending");
+        AsyncResource<Boolean> b1 = s.writeObjectAsync("b", "first");
+        AsyncResource<Boolean> b2 = s.writeObjectAsync("b", "second");
+        assertEqual("second", s.readObject("b"), "The latest queued value should be returned");
+        assertEqual("second", await(s.readObjectAsync("b")), "The latest queued value should be returned");
+        AsyncResource<Boolean> flushed = s.flushAsync();
+        assertFalse(flushed.isDone(), "flushAsync shouldn't complete while writes are pending");
+        s.unblock();
+        assertEqual(Boolean.TRUE, await(blocker));
+        assertEqual(Boolean.TRUE, await(b1), "A coalesced write should complete with the result of the write");
+        assertEqual(Boolean.TRUE, await(b2));
+        assertEqual(Boolean.TRUE, await(flushed));
+        assertEqual(1, s.writeCount("b"), "Coalesced writes should reach storage once");
+        s.clearCache();
+        assertEqual("second", s.readObject("b"));
+
+        // a synchronous write supersedes a queued write of the same name
+        s.block();
+        blocker = s.writeObjectAsync("blocker", "y");
+        s.awaitBlocked();
+        AsyncResource<Boolean> c = s.writeObjectAsync("c", "async");
+        s.unblockLater();
+        assertTrue(s.writeObject("c", "sync"));
+        assertEqual(Boolean.FALSE, await(c), "A superseded write should complete with false");
+        s.flush();
+        assertEqual(1, s.writeCount("c"), "The superseded write shouldn't reach storage");
+        s.clearCache();
+        assertEqual("sync", s.readObject("c"));
+
+        // a queued write followed by a delete
+        s.block();
+        blocker = s.writeObjectAsync("blocker", "z");
+        s.awaitBlocked();
+        AsyncResource<Boolean> d = s.writeObjectAsync("d", "deleted");
+        s.unblockLater();
+        s.deleteStorageFile("d");
+        assertEqual(Boolean.FALSE, await(d), "A write followed by a delete should complete with false");
+        s.flush();
+        assertFalse(s.exists("d"));
+        assertNull(await(s.readObjectAsync("d")), "A deleted entry should read as null");
+
+        // failures are reported through the resources
+        s.failWrites = true;
+        assertEqual(Boolean.FALSE, await(s.writeObjectAsync("e", "x")), "A failing stream should complete with false");
+        s.failWrites = false;
+        assertFalse(s.exists("e"), "A failed write shouldn't leave an entry behind");
+        assertEqual(Boolean.FALSE, await(s.writeObjectAsync("f", new Object())), "An unsupported type should complete with false");
+        s.clearCache();
+        assertNull(await(s.readObjectAsync("missing")), "A missing entry should read as null");
+        s.put("corrupt", new byte[] {1, 2, 3});
+        assertNull(await(s.readObjectAsync("corrupt")), "A corrupt entry should read as null");
+        s.failReads = true;
+        s.put("g", new byte[] {0});
+        assertNull(await(s.readObjectAsync("g")), "A failing stream should read as null");
+        s.failReads = false;
+
+        // the worker keeps serving requests after failures
+        assertEqual(Boolean.TRUE, await(s.writeObjectAsync("h", "ok")));
+        s.clearCache();
+        assertEqual("ok", await(s.readObjectAsync("h")));
+        assertEqual(Boolean.TRUE, await(s.flushAsync()), "flushAsync should complete when nothing is pending");
+        return true;
+    }
+
+    private <T> T await(AsyncResource<T> r) {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while(!r.isDone()) {
+            assertTrue(System.currentTimeMillis() < end, "Timed out waiting for the storage worker");
+            Util.sleep(5);
+        }
+        return r.get();
+    }
+
+    /**
+     * Storage held in memory, writes can be held in progress to test the queue
+     */
+    static class MemoryStorage extends Storage {
+        private final HashMap<String, byte[]> data = new HashMap<String, byte[]>();
+        private final HashMap<String, Integer> writes = new HashMap<String, Integer>();
+        private final Object gate = new Object();
+        private boolean blocked;
+        private boolean waiting;
+        volatile boolean failWrites;
+        volatile boolean failReads;
+
+        void block() {
+            synchronized(gate) {
+                blocked = true;
+                waiting = false;
+            }
+        }
+
+        void awaitBlocked() {
+            long end = System.currentTimeMillis() + TIMEOUT;
+            synchronized(gate) {
+                while(!waiting) {
+                    if(System.currentTimeMillis() > end) {
+                        throw new RuntimeException("Timed out waiting for the write to start");
+                    }
+                    Util.wait(gate, 10);
+                }
+            }
+        }
+
+        void unblock() {
+            synchronized(gate) {
+                blocked = false;
+                gate.notifyAll();
+            }
+        }
+
+        void unblockLater() {
+            new Thread() {
+                public void run() {
+                    Util.sleep(200);
+                    unblock();
+                }
+            }.start();
+        }
+
+        synchronized void put(String name, byte[] b) {
+            data.put(name, b);
+        }
+
+        synchronized int writeCount(String name) {
+            Integer i = writes.get(name);
+            return i == null ? 0 : i.intValue();
+        }
+
+        private synchronized void store(String name, byte[] b) {
+            data.put(name, b);
+            Integer i = writes.get(name);
+            writes.put(name, new Integer(i == null ? 1 : i.intValue() + 1));
+        }
+
+        @Override
+        public OutputStream createOutputStream(final String name) throws IOException {
+            synchronized(gate) {
+                waiting = true;
+                gate.notifyAll();
+                while(blocked) {
+                    Util.wait(gate, 10);
+                }
+            }
+            if(failWrites) {
+                throw new IOException("Write failed");
+            }
+            return new ByteArrayOutputStream() {
+                public void close() throws IOException {
+                    super.close();
+                    store(name, toByteArray());
+                }
+            };
+        }
+
+        @Override
+        public synchronized InputStream createInputStream(String name) throws IOException {
+            byte[] b = data.get(name);
+            if(b == null) {
+                throw new IOException("Storage key " + name + " does not exist");
+            }
+            if(failReads) {
+                throw new IOException("Read failed");
+            }
+            return new ByteArrayInputStream(b);
+        }
+
+        @Override
+        public synchronized boolean exists(String name) {
+            return data.containsKey(name);
+        }
+
+        @Override
+        public void deleteStorageFile(String name) {
+            super.deleteStorageFile(name);
+            synchronized(this) {
+                data.remove(name);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.codename1.processing;
+
+import com.codename1.testing.AbstractTest;
+import java.util.HashMap;
+
+/**
+ * Tests the compiled path cache and verifies compiled paths evaluate the same as paths that bypass the cache
+ */
+public class ResultPathTests extends AbstractTest {
+    private static final String JSON = "{\"profile\": {\"name\": \"Jo\", \"age\": 41, \"score\": 2.5, \"active\": true},"
+            + " \"results\": [{\"name\": \"a\", \"size\": 1}, {\"name\": \"b\", \"size\": 2}, {\"name\": \"c\", \"size\": 3}]}";
+
+    private static final String[] PATHS = {
+        "/profile/name", "profile/age", "/profile/score", "/profile/active", "/results[1]/name",
+        "/results[name=b]/size", "//name", "/results", "/missing", "/results[0]/missing"
+    };
+
+    @Override
+    public boolean runTest() throws Exception {
+        // hits return the same compiled instance
+        ResultPath p = ResultPath.compile("/profile/name");
+        assertTrue(p == ResultPath.compile("/profile/name"), "Compiling the same path twice should hit the cache");
+        assertEqual("/profile/name", p.getPath());
+        assertTrue(p != ResultPath.compile("/profile/age"), "Different paths shouldn't share an entry");
+
+        // the cache holds 128 entries and evicts the least recently used entry
+        ResultPath eldest = ResultPath.compile("/evict/eldest");
+        ResultPath touched = ResultPath.compile("/evict/touched");
+        for(int iter = 0 ; iter < 126 ; iter++) {
+            ResultPath.compile("/evict/" + iter);
+        }
+        assertTrue(eldest == ResultPath.compile("/evict/eldest"), "128 entries should fit in the cache");
+        assertTrue(touched == ResultPath.compile("/evict/touched"), "128 entries should fit in the cache");
+        for(int iter = 126 ; iter < 254 ; iter++) {
+            if(iter % 16 == 0) {
+                ResultPath.compile("/evict/touched");
+            }
+            ResultPath.compile("/evict/" + iter);
+        }
+        assertTrue(touched == ResultPath.compile("/evict/touched"), "A recently used entry shouldn't be evicted");
+        assertTrue(eldest != ResultPath.compile("/evict/eldest"), "The least recently used entry should be evicted");
+
+        try {
+            ResultPath.compile(null);
+            fail("compile(null) should throw an IllegalArgumentException");
+        } catch(IllegalArgumentException err) {
+            // expected
+        }
+
+        // compiled paths evaluate the same as string paths and as paths that bypass the cache
+        Result r = Result.fromContent(JSON, Result.JSON);
+        HashMap aliases = new HashMap();
+        for(String path : PATHS) {
+            ResultPath compiled = ResultPath.compile(path);
+            ResultPath uncached = ResultPath.compile(path, aliases);
+            assertTrue(compiled != uncached, "Paths with namespace aliases shouldn't be cached");
+            assertEqual(String.valueOf(r.get(path)), String.valueOf(r.get(compiled)), "Mismatch for " + path);
+            assertEqual(String.valueOf(r.get(uncached)), String.valueOf(r.get(compiled)), "Mismatch for " + path);
+        }
+        assertEqual("Jo", r.getAsString(ResultPath.compile("/profile/name")));
+        assertEqual(41, r.getAsInteger(ResultPath.compile("profile/age")));
+        assertEqual(2.5, r.getAsDouble(ResultPath.compile("/profile/score")), 0.0001);
+        assertTrue(r.getAsBoolean(ResultPath.compile("/profile/active")));
+        assertEqual("b", r.getAsString(ResultPath.compile("/results[1]/name")));
+        assertEqual(3, r.getAsArray(ResultPath.compile("/results")).size());
+        assertNull(r.get(ResultPath.compile("/missing")));
+        String[] names = r.getAsStringArray(ResultPath.compile("/results"), ResultPath.compile("name"));
+        assertEqual(3, names.length);
+        assertEqual("c", names[2]);
+        return true;
+    }
+}
@@ -0,0 +1,128 @@
+package com.codename1.properties;
+
+import com.codename1.io.CharArrayReader;
+import com.codename1.io.JSONReader;
+import com.codename1.testing.AbstractTest;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Tests binding JSON directly into property business objects with the pull reader, the result should match
+ * the result of parsing the same JSON into a map with fromJSON
+ */
+public class JSONBindingTests extends AbstractTest {
+    private static final String ORDER = "{\"id\": 7, \"name\": \"Caf\\u00e9\", \"unknown\": {\"deep\": [1, {\"x\": null}]}, "
+            + "\"total\": 12.5, \"count\": 12345678901, \"paid\": true, \"note\": null, "
+            + "\"customer\": {\"name\": \"Ann\", \"vip\": false}, "
+            + "\"items\": [{\"sku\": \"a\", \"qty\": 2}, {\"sku\": \"b\", \"qty\": 1, \"extra\": \"skip\"}], "
+            + "\"tags\": [\"x\", \"y\"], \"attrs\": {\"color\": \"red\"}, \"Aa\": \"first\", \"BB\": \"second\"}";
+
+    @Override
+    public boolean runTest() throws Exception {
+        Order o = new Order();
+        o.note.set("kept");
+        o.getPropertyIndex().populateFromJSON(reader(ORDER));
+        assertEqual(new Integer(7), o.id.get());
+        assertEqual("Caf\u00e9", o.name.get());
+        assertEqual(12.5, o.total.get().doubleValue(), 0.0001);
+        assertEqual(new Long(12345678901L), o.count.get());
+        assertEqual(Boolean.TRUE, o.paid.get());
+        assertEqual("kept", o.note.get(), "A null member shouldn't change the property");
+        assertNotNull(o.customer.get(), "A nested object should be bound into a new instance");
+        assertEqual("Ann", o.customer.get().name.get());
+        assertEqual(Boolean.FALSE, o.customer.get().vip.get());
+        assertEqual(2, o.items.size());
+        assertEqual("a", o.items.get(0).sku.get());
+        assertEqual(new Integer(2), o.items.get(0).qty.get());
+        assertEqual("b", o.items.get(1).sku.get());
+        assertEqual(2, o.tags.size());
+        assertEqual("y", o.tags.get(1));
+        assertEqual("red", o.attrs.get("color"));
+        // the names of these properties have the same hash code
+        assertEqual("first", o.aa.get());
+        assertEqual("second", o.bb.get());
+
+        // binding follows the same rules as parsing into a map
+        Order parsed = new Order();
+        parsed.getPropertyIndex().fromJSON(ORDER);
+        o.note.set(null);
+        assertEqual(parsed.getPropertyIndex().toJSON(), o.getPropertyIndex().toJSON());
+
+        // binding again replaces the collections
+        o.getPropertyIndex().populateFromJSON(reader("{\"items\": [{\"sku\": \"c\"}], \"tags\": []}"));
+        assertEqual(1, o.items.size());
+        assertEqual("c", o.items.get(0).sku.get());
+        assertEqual(0, o.tags.size());
+        assertEqual(new Integer(7), o.id.get(), "Missing members shouldn't change the properties");
+
+        // lists of objects
+        JSONReader r = reader("[{\"sku\": \"a\", \"qty\": 1}, {\"qty\": 3}, {}]");
+        List<Item> items = new Item().getPropertyIndex().readJSONList(r);
+        assertEqual(3, items.size());
+        assertEqual("a", items.get(0).sku.get());
+        assertNull(items.get(1).sku.get());
+        assertEqual(new Integer(3), items.get(1).qty.get());
+        assertEqual(JSONReader.END_DOCUMENT, r.nextToken());
+        assertEqual(0, new Item().getPropertyIndex().readJSONList(reader("null")).size());
+
+        // a value of the wrong shape fails with the line number
+        try {
+            new Item().getPropertyIndex().readJSONList(reader("\n{\"sku\": \"a\"}"));
+            fail("An object isn't a list");
+        } catch(IOException err) {
+            assertTrue(err.getMessage().indexOf("line 2") > -1, "The message should have the line: " + err.getMessage());
+        }
+        try {
+            new Item().getPropertyIndex().populateFromJSON(reader("[1]"));
+            fail("A list isn't an object");
+        } catch(IOException err) {
+            assertTrue(err.getMessage().startsWith("Expected a JSON object"), err.getMessage());
+        }
+        return true;
+    }
+
+    private static JSONReader reader(String json) {
+        return new JSONReader(new CharArrayReader(json.toCharArray()));
+    }
+
+    public static class Order implements PropertyBusinessObject {
+        public final IntProperty<Order> id = new IntProperty<Order>("id");
+        public final Property<String, Order> name = new Property<String, Order>("name");
+        public final DoubleProperty<Order> total = new DoubleProperty<Order>("total");
+        public final LongProperty<Order> count = new LongProperty<Order>("count");
+        public final BooleanProperty<Order> paid = new BooleanProperty<Order>("paid");
+        public final Property<String, Order> note = new Property<String, Order>("note");
+        public final Property<Customer, Order> customer = new Property<Customer, Order>("customer", Customer.class);
+        public final ListProperty<Item, Order> items = new ListProperty<Item, Order>("items", Item.class);
+        public final ListProperty<String, Order> tags = new ListProperty<String, Order>("tags");
+        public final MapProperty<String, String, Order> attrs = new MapProperty<String, String, Order>("attrs", String.class, String.class);
+        public final Property<String, Order> aa = new Property<String, Order>("Aa");
+        public final Property<String, Order> bb = new Property<String, Order>("BB");
+        private final PropertyIndex idx = new PropertyIndex(this, "Order", id, name, total, count, paid, note, customer, items,
+                tags, attrs, aa, bb);
+
+        public PropertyIndex getPropertyIndex() {
+            return idx;
+        }
+    }
+
+    public static class Customer implements PropertyBusinessObject {
+        public final Property<String, Customer> name = new Property<String, Customer>("name");
+        public final BooleanProperty<Customer> vip = new BooleanProperty<Customer>("vip");
+        private final PropertyIndex idx = new PropertyIndex(this, "Customer", name, vip);
+
+        public PropertyIndex getPropertyIndex() {
+            return idx;
+        }
+    }
+
+    public static class Item implements PropertyBusinessObject {
+        public final Property<String, Item> sku = new Property<String, Item>("sku");
+        public final IntProperty<Item> qty = new IntProperty<Item>("qty");
+        private final PropertyIndex idx = new PropertyIndex(this, "Item", sku, qty);
+
+        public PropertyIndex getPropertyIndex() {
+            return idx;
+        }
+    }
+}
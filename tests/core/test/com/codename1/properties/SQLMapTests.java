@@ -0,0 +1,163 @@
+package com.codename1.properties;
+
+import com.codename1.db.Cursor;
+import com.codename1.db.Database;
+import com.codename1.testing.AbstractTest;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tests the statements cached per class by the SQL map and the transaction handling of the batch operations,
+ * the database only records the statements so the test doesn't depend on SQLite
+ */
+public class SQLMapTests extends AbstractTest {
+
+    @Override
+    public boolean runTest() throws Exception {
+        RecordingDatabase db = new RecordingDatabase();
+        SQLMap sm = SQLMap.create(db);
+        Person p = new Person();
+
+        // the plan is computed once per class
+        SQLMap.TablePlan plan = sm.getPlan(p);
+        assertTrue(plan == sm.getPlan(new Person()), "The plan should be cached for the class");
+        assertEqual("INSERT INTO Person (id,name,age) VALUES (?,?,?)", plan.insertStatement);
+        assertNull(plan.updateStatement, "There is no update statement without a primary key");
+
+        // every setter discards the cached plans
+        sm.setPrimaryKey(p, p.id);
+        plan = assertNewPlan(sm, p, plan);
+        assertEqual("UPDATE Person SET id = ?,name = ?,age = ? WHERE id = ?", plan.updateStatement);
+        assertEqual("DELETE FROM Person WHERE id = ?", plan.deleteStatement);
+        sm.setTableName(p, "People");
+        plan = assertNewPlan(sm, p, plan);
+        assertEqual("INSERT INTO People (id,name,age) VALUES (?,?,?)", plan.insertStatement);
+        sm.setColumnName(p.name, "fullName");
+        plan = assertNewPlan(sm, p, plan);
+        assertEqual("INSERT INTO People (id,fullName,age) VALUES (?,?,?)", plan.insertStatement);
+        sm.setSqlType(p.age, SQLMap.SqlType.SQL_EXCLUDE);
+        plan = assertNewPlan(sm, p, plan);
+        assertEqual("INSERT INTO People (id,fullName) VALUES (?,?)", plan.insertStatement);
+        assertEqual(2, plan.positions.length);
+        sm.setPrimaryKeyAutoIncrement(p, p.id);
+        plan = assertNewPlan(sm, p, plan);
+
+        // a batch executes the cached statements in a single transaction
+        ArrayList<Person> people = new ArrayList<Person>();
+        for(int iter = 0 ; iter < 3 ; iter++) {
+            Person c = new Person();
+            c.id.set(iter);
+            c.name.set("n" + iter);
+            people.add(c);
+        }
+        sm.insertAll(people);
+        assertEqual(Arrays.asList("begin", "INSERT INTO People (id,fullName) VALUES (?,?) [0, n0]",
+                "INSERT INTO People (id,fullName) VALUES (?,?) [1, n1]",
+                "INSERT INTO People (id,fullName) VALUES (?,?) [2, n2]", "commit"), db.log);
+        db.log.clear();
+        sm.updateAll(people.subList(0, 1));
+        assertEqual(Arrays.asList("begin", "UPDATE People SET id = ?,fullName = ? WHERE id = ? [0, n0, 0]", "commit"), db.log);
+
+        // a failing statement rolls back and the original exception is thrown
+        db.log.clear();
+        db.failOn = "n1";
+        try {
+            sm.insertAll(people);
+            fail("The batch should fail");
+        } catch(IOException err) {
+            assertEqual("Failed on n1", err.getMessage());
+        }
+        assertEqual("rollback", db.log.get(db.log.size() - 1));
+        assertTrue(!db.log.contains("commit"), "A failed batch shouldn't commit");
+
+        // a failing rollback doesn't hide the exception that failed the batch
+        db.log.clear();
+        db.failRollback = true;
+        try {
+            sm.insertAll(people);
+            fail("The batch should fail");
+        } catch(IOException err) {
+            assertEqual("Failed on n1", err.getMessage(), "The rollback failure replaced the original exception");
+        }
+        db.failRollback = false;
+
+        // a failing commit is rolled back
+        db.log.clear();
+        db.failOn = null;
+        db.failCommit = true;
+        try {
+            sm.insertAll(people.subList(0, 1));
+            fail("The batch should fail");
+        } catch(IOException err) {
+            assertEqual("Commit failed", err.getMessage());
+        }
+        assertEqual("rollback", db.log.get(db.log.size() - 1));
+        return true;
+    }
+
+    private SQLMap.TablePlan assertNewPlan(SQLMap sm, Person p, SQLMap.TablePlan old) {
+        SQLMap.TablePlan plan = sm.getPlan(p);
+        assertTrue(plan != old, "Changing the mapping should discard the cached plan");
+        assertTrue(plan == sm.getPlan(p), "The new plan should be cached");
+        return plan;
+    }
+
+    public static class Person implements PropertyBusinessObject {
+        public final IntProperty<Person> id = new IntProperty<Person>("id");
+        public final Property<String, Person> name = new Property<String, Person>("name");
+        public final IntProperty<Person> age = new IntProperty<Person>("age");
+        private final PropertyIndex idx = new PropertyIndex(this, "Person", id, name, age);
+
+        public PropertyIndex getPropertyIndex() {
+            return idx;
+        }
+    }
+
+    static class RecordingDatabase extends Database {
+        final ArrayList<String> log = new ArrayList<String>();
+        String failOn;
+        boolean failRollback;
+        boolean failCommit;
+
+        public void beginTransaction() throws IOException {
+            log.add("begin");
+        }
+
+        public void commitTransaction() throws IOException {
+            if(failCommit) {
+                throw new IOException("Commit failed");
+            }
+            log.add("commit");
+        }
+
+        public void rollbackTransaction() throws IOException {
+            if(failRollback) {
+                throw new IOException("Rollback failed");
+            }
+            log.add("rollback");
+        }
+
+        public void close() throws IOException {
+        }
+
+        public void execute(String sql) throws IOException {
+            log.add(sql);
+        }
+
+        public void execute(String sql, String[] params) throws IOException {
+            if(failOn != null && Arrays.asList(params).contains(failOn)) {
+                throw new IOException("Failed on " + failOn);
+            }
+            log.add(sql + " " + Arrays.asList(params));
+        }
+
+        public Cursor executeQuery(String sql, String[] params) throws IOException {
+            throw new IOException("Not supported");
+        }
+
+        public Cursor executeQuery(String sql) throws IOException {
+            throw new IOException("Not supported");
+        }
+    }
+}
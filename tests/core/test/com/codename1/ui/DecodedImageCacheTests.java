@@ -0,0 +1,190 @@
+package com.codename1.ui;
+
+import com.codename1.testing.AbstractTest;
+import com.codename1.ui.layouts.BoxLayout;
+
+/**
+ * Tests the least recently used eviction and the statistics of the decoded image cache and the queue of
+ * background decodes, the images report fixed sizes and record their decodes instead of decoding data
+ */
+public class DecodedImageCacheTests extends AbstractTest {
+    private static final long TIMEOUT = 5000;
+
+    @Override
+    public boolean runTest() throws Exception {
+        DecodedImageCache dc = DecodedImageCache.getInstance();
+        int oldMaxBytes = dc.getMaxBytes();
+        int oldWorkers = dc.getWorkerCount();
+        int oldQueueSize = dc.getMaxQueueSize();
+        dc.clear();
+        dc.resetStatistics();
+        TestImage blocker = new TestImage();
+        try {
+            // 10x10 images take 400 bytes
+            dc.setMaxBytes(1000);
+            TestImage a = new TestImage();
+            TestImage b = new TestImage();
+            TestImage c = new TestImage();
+            dc.decoded(a, new SizedImage(10, 10), 3);
+            dc.decoded(b, new SizedImage(10, 10), 7);
+            assertEqual(800, dc.getCurrentBytes());
+            assertNotNull(dc.get(a), "A cached image should be a hit");
+            dc.decoded(c, new SizedImage(10, 10), 2);
+            assertTrue(dc.contains(a), "A recently used image shouldn't be evicted");
+            assertFalse(dc.contains(b), "The least recently used image should be evicted");
+            assertTrue(dc.contains(c));
+            assertEqual(800, dc.getCurrentBytes());
+            assertNull(dc.get(b), "An evicted image should be a miss");
+            assertEqual(1, dc.getHits());
+            assertEqual(1, dc.getMisses());
+            assertEqual(1, dc.getEvictions());
+            assertEqual(3, dc.getDecodeCount());
+            assertEqual(7, dc.getMaxDecodeTime());
+            assertEqual(12L, dc.getTotalDecodeTime());
+            assertEqual(4, dc.getAverageDecodeTime());
+
+            // an image larger than the cache isn't kept, shrinking the cache evicts
+            dc.decoded(b, new SizedImage(20, 20), 1);
+            assertFalse(dc.contains(b), "An image larger than the cache shouldn't be cached");
+            dc.setMaxBytes(400);
+            assertEqual(400, dc.getCurrentBytes());
+            assertTrue(dc.contains(c) && !dc.contains(a), "Shrinking should evict the least recently used image");
+            dc.remove(c);
+            assertEqual(0, dc.getCurrentBytes());
+            dc.setMaxBytes(0);
+            assertNull(dc.get(c), "A disabled cache shouldn't return images");
+            dc.resetStatistics();
+            assertEqual(0, dc.getHits());
+
+            // the queue keeps the most recent requests, the oldest are dropped when it is full
+            dc.setWorkerCount(1);
+            dc.setMaxQueueSize(3);
+            blocker.block = true;
+            dc.prefetch(blocker);
+            blocker.awaitDecode();
+            TestImage[] queued = new TestImage[4];
+            for(int iter = 0 ; iter < queued.length ; iter++) {
+                queued[iter] = new TestImage();
+                dc.prefetch(queued[iter]);
+            }
+            assertEqual(3, dc.getQueueSize(), "The queue should be bounded");
+            dc.cancelPrefetch(queued[2]);
+            assertEqual(2, dc.getQueueSize(), "A cancelled image should leave the queue");
+
+            // images of components that scrolled away are removed from the queue
+            TestImage visibleIcon = new TestImage();
+            TestImage hiddenIcon = new TestImage();
+            dc.prefetch(hiddenIcon);
+            Container cnt = new Container(BoxLayout.y());
+            cnt.setWidth(100);
+            cnt.setHeight(100);
+            // a label decodes its icon right away so the images are used as backgrounds
+            Label visible = new Label();
+            visible.getUnselectedStyle().setBgImage(visibleIcon);
+            visible.setWidth(100);
+            visible.setHeight(50);
+            Label hidden = new Label();
+            hidden.getUnselectedStyle().setBgImage(hiddenIcon);
+            hidden.setY(500);
+            hidden.setWidth(100);
+            hidden.setHeight(50);
+            cnt.add(hidden).add(visible);
+            dc.prefetch(cnt, 10);
+            assertEqual(3, dc.getQueueSize(), "The visible icon should replace the hidden icon in the queue");
+
+            blocker.release();
+            queued[3].awaitDecode();
+            queued[1].awaitDecode();
+            visibleIcon.awaitDecode();
+            Thread.sleep(50);
+            assertFalse(queued[0].decoded, "The oldest request should have been dropped");
+            assertFalse(queued[2].decoded, "A cancelled request shouldn't be decoded");
+            assertFalse(hiddenIcon.decoded, "The icon of a hidden component shouldn't be decoded");
+            assertEqual(0, dc.getQueueSize());
+
+            // a dropped request can be queued again
+            dc.prefetch(queued[0]);
+            queued[0].awaitDecode();
+        } finally {
+            blocker.release();
+            dc.setMaxBytes(oldMaxBytes);
+            dc.setWorkerCount(oldWorkers);
+            dc.setMaxQueueSize(oldQueueSize);
+            dc.clear();
+            dc.resetStatistics();
+        }
+        return true;
+    }
+
+    /**
+     * An image with a fixed size that doesn't need a native image
+     */
+    static class SizedImage extends Image {
+        private final int width;
+        private final int height;
+
+        SizedImage(int width, int height) {
+            super(null);
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+    }
+
+    /**
+     * An encoded image that records its decodes and can block the decoding worker
+     */
+    static class TestImage extends EncodedImage {
+        private final Object lock = new Object();
+        boolean block;
+        boolean decoded;
+
+        TestImage() {
+            super(10, 10);
+        }
+
+        @Override
+        Image decode() {
+            synchronized(lock) {
+                decoded = true;
+                lock.notifyAll();
+                while(block) {
+                    try {
+                        lock.wait();
+                    } catch(InterruptedException err) {
+                    }
+                }
+            }
+            return new SizedImage(10, 10);
+        }
+
+        void release() {
+            synchronized(lock) {
+                block = false;
+                lock.notifyAll();
+            }
+        }
+
+        void awaitDecode() throws InterruptedException {
+            long end = System.currentTimeMillis() + TIMEOUT;
+            synchronized(lock) {
+                while(!decoded) {
+                    long remaining = end - System.currentTimeMillis();
+                    if(remaining <= 0) {
+                        throw new RuntimeException("Timed out waiting for a decode");
+                    }
+                    lock.wait(remaining);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.codename1.ui;
+
+import com.codename1.testing.AbstractTest;
+import com.codename1.testing.TestUtils;
+import com.codename1.ui.geom.Dimension;
+import com.codename1.ui.layouts.BorderLayout;
+import com.codename1.ui.layouts.BoxLayout;
+import com.codename1.ui.layouts.LayeredLayout;
+
+/**
+ * Verifies that overlapping and nested repaints paint every dirty component exactly once, with and
+ * without merging of the dirty regions
+ */
+public class DirtyRegionTests extends AbstractTest {
+    private PaintCounter bottom;
+    private PaintCounter top;
+    private Container nested;
+    private PaintCounter child;
+    private PaintCounter other;
+
+    @Override
+    public boolean shouldExecuteOnEDT() {
+        return true;
+    }
+
+    @Override
+    public boolean runTest() throws Exception {
+        boolean merge = Display.impl.isMergeDirtyRegions();
+        try {
+            Form f = new Form("Dirty Regions", new BorderLayout());
+            Container layers = new Container(new LayeredLayout());
+            bottom = new PaintCounter();
+            top = new PaintCounter();
+            layers.add(bottom).add(top);
+            nested = new Container(BoxLayout.y());
+            child = new PaintCounter();
+            nested.add(child);
+            other = new PaintCounter();
+            f.add(BorderLayout.NORTH, layers).add(BorderLayout.CENTER, nested).add(BorderLayout.SOUTH, other);
+            f.show();
+            TestUtils.waitForFormTitle("Dirty Regions", 2000);
+
+            Display.getInstance().setProperty("mergeDirtyRegions", "false");
+            assertFalse(Display.impl.isMergeDirtyRegions());
+            // a child repainted after its parent is covered by the parent
+            reset();
+            nested.repaint();
+            child.repaint();
+            other.repaint();
+            Display.impl.paintDirty();
+            assertPainted(child, 1, "A child of a repainted container");
+            assertPainted(other, 1, "A separate component");
+            assertPainted(bottom, 0, "A component that wasn't repainted");
+
+            Display.getInstance().setProperty("mergeDirtyRegions", "true");
+            assertTrue(Display.impl.isMergeDirtyRegions());
+            // overlapping components are painted in one pass
+            reset();
+            bottom.repaint();
+            top.repaint();
+            Display.impl.paintDirty();
+            assertPainted(bottom, 1, "The bottom of overlapping components");
+            assertPainted(top, 1, "The top of overlapping components");
+            assertPainted(child, 0, "A component that wasn't repainted");
+
+            // a child repainted before its parent is merged into the parent
+            reset();
+            child.repaint();
+            nested.repaint();
+            other.repaint();
+            Display.impl.paintDirty();
+            assertPainted(child, 1, "A child repainted before its container");
+            assertPainted(other, 1, "A separate component");
+            assertPainted(top, 0, "A component that wasn't repainted");
+
+            // partial repaints of a merged component still reach the paint queue
+            reset();
+            child.repaint(child.getAbsoluteX(), child.getAbsoluteY(), 5, 5);
+            Display.impl.paintDirty();
+            assertPainted(child, 1, "A partial repaint after a merged paint");
+        } finally {
+            Display.getInstance().setProperty("mergeDirtyRegions", merge ? "true" : "false");
+        }
+        return true;
+    }
+
+    private void reset() {
+        // drain anything queued by the form itself
+        Display.impl.paintDirty();
+        bottom.paints = 0;
+        top.paints = 0;
+        child.paints = 0;
+        other.paints = 0;
+    }
+
+    private void assertPainted(PaintCounter cmp, int count, String message) {
+        assertEqual(count, cmp.paints, message + " was painted " + cmp.paints + " times");
+    }
+
+    static class PaintCounter extends Component {
+        int paints;
+
+        PaintCounter() {
+            setPreferredSize(new Dimension(100, 40));
+        }
+
+        @Override
+        public void paint(Graphics g) {
+            paints++;
+        }
+    }
+}
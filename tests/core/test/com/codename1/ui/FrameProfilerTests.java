@@ -0,0 +1,82 @@
+package com.codename1.ui;
+
+import com.codename1.testing.AbstractTest;
+
+/**
+ * Tests the frame bookkeeping of the profiler for nested event loops and for frames that are cut short,
+ * the hooks are invoked directly in the same order the EDT loop invokes them
+ */
+public class FrameProfilerTests extends AbstractTest {
+
+    @Override
+    public boolean shouldExecuteOnEDT() {
+        return true;
+    }
+
+    @Override
+    public boolean runTest() throws Exception {
+        FrameProfiler fp = FrameProfiler.getInstance();
+        boolean wasRunning = fp.isRunning();
+        fp.setBudget(1000);
+        fp.start();
+        try {
+            // a plain frame
+            frame(fp, 2);
+            assertEqual(1, fp.getFrameCount());
+            assertEqual(2, fp.getCounter(0, FrameProfiler.COUNTER_INPUT_EVENTS));
+
+            // invokeAndBlock nests the loop, the inner loop is part of the outer frame
+            FrameProfiler.beginFrame();
+            FrameProfiler.phase(FrameProfiler.PHASE_INPUT);
+            FrameProfiler.count(FrameProfiler.COUNTER_INPUT_EVENTS, 1);
+            FrameProfiler.phase(FrameProfiler.PHASE_SERIAL_CALLS);
+            long outerStart = System.currentTimeMillis();
+            frame(fp, 3);
+            assertEqual(1, fp.getFrameCount(), "A nested loop shouldn't record a frame of its own");
+            FrameProfiler.beginFrame();
+            FrameProfiler.phase(FrameProfiler.PHASE_INPUT);
+            FrameProfiler.endFrame(false);
+            Thread.sleep(20);
+            FrameProfiler.endFrame(true);
+            assertEqual(2, fp.getFrameCount(), "The outer frame should be recorded once");
+            assertEqual(4, fp.getCounter(1, FrameProfiler.COUNTER_INPUT_EVENTS), "Counters of the nested loop belong to the outer frame");
+            assertTrue(fp.getFrameStart(1) <= outerStart, "The nested loop replaced the start of the outer frame");
+            assertTrue(fp.getFrameDuration(1) >= 20, "The outer frame should include the time after the nested loop");
+            assertTrue(fp.getPhaseTime(1, FrameProfiler.PHASE_SERIAL_CALLS) >= 20,
+                    "The nested loop shouldn't change the phase of the outer frame");
+
+            // the loop returns early while the implementation isn't initialized, the frame is discarded
+            FrameProfiler.beginFrame();
+            FrameProfiler.phase(FrameProfiler.PHASE_INPUT);
+            FrameProfiler.endFrame(false);
+            assertEqual(2, fp.getFrameCount(), "A frame that was cut short shouldn't be recorded");
+            assertEqual(2L, fp.getTotalFrames());
+            frame(fp, 1);
+            assertEqual(3, fp.getFrameCount(), "Frames should be recorded after a frame was cut short");
+            assertEqual(1, fp.getCounter(2, FrameProfiler.COUNTER_INPUT_EVENTS));
+
+            // stopping and starting during a frame doesn't leave the profiler in a frame
+            FrameProfiler.beginFrame();
+            fp.start();
+            FrameProfiler.endFrame(true);
+            assertEqual(0, fp.getFrameCount());
+            frame(fp, 1);
+            assertEqual(1, fp.getFrameCount());
+        } finally {
+            fp.setBudget(-1);
+            if(!wasRunning) {
+                fp.stop();
+            }
+        }
+        return true;
+    }
+
+    private void frame(FrameProfiler fp, int inputEvents) {
+        FrameProfiler.beginFrame();
+        FrameProfiler.phase(FrameProfiler.PHASE_INPUT);
+        FrameProfiler.count(FrameProfiler.COUNTER_INPUT_EVENTS, inputEvents);
+        FrameProfiler.phase(FrameProfiler.PHASE_PAINT);
+        FrameProfiler.phase(FrameProfiler.PHASE_SERIAL_CALLS);
+        FrameProfiler.endFrame(true);
+    }
+}
@@ -0,0 +1,134 @@
+package com.codename1.ui;
+
+import com.codename1.testing.AbstractTest;
+import static com.codename1.ui.ComponentSelector.$;
+import com.codename1.ui.geom.Dimension;
+import com.codename1.ui.layouts.BorderLayout;
+import com.codename1.ui.layouts.BoxLayout;
+import com.codename1.ui.layouts.FlowLayout;
+
+/**
+ * Verifies that incremental layout places components exactly where the eager layout does
+ */
+public class IncrementalLayoutTests extends AbstractTest {
+
+    @Override
+    public boolean runTest() throws Exception {
+        boolean incremental = Container.isIncrementalLayout();
+        assertFalse(incremental, "Incremental layout should be off by default");
+        try {
+            Component[] eager = createTree();
+            Component[] inc = createTree();
+            layout(eager, false);
+            layout(inc, true);
+            assertSameBounds(eager, inc, "initial layout");
+
+            // a grows, the change propagates all the way to the root
+            resize(eager, 0, 180, 60, false);
+            resize(inc, 0, 180, 60, true);
+            assertSameBounds(eager, inc, "growing a");
+
+            // d keeps its size, the incremental layout stops at d
+            int layouts = Container.getLayoutCount();
+            resize(eager, 3, 40, 40, false);
+            int eagerLayouts = Container.getLayoutCount() - layouts;
+            layouts = Container.getLayoutCount();
+            resize(inc, 3, 40, 40, true);
+            int incLayouts = Container.getLayoutCount() - layouts;
+            assertSameBounds(eager, inc, "invalidating d without a size change");
+            assertTrue(incLayouts < eagerLayouts, "Incremental layout should skip containers whose size didn't change");
+
+            // c shrinks inside the nested row
+            resize(eager, 2, 10, 5, false);
+            resize(inc, 2, 10, 5, true);
+            assertSameBounds(eager, inc, "shrinking c");
+
+            // several changes resolved by a single layout
+            Container.setIncrementalLayout(false);
+            ((SizedComponent)eager[1]).changeSize(280, 20);
+            ((SizedComponent)eager[4]).changeSize(320, 90);
+            layout(eager, false);
+            Container.setIncrementalLayout(true);
+            ((SizedComponent)inc[1]).changeSize(280, 20);
+            ((SizedComponent)inc[4]).changeSize(320, 90);
+            layout(inc, true);
+            assertSameBounds(eager, inc, "multiple pending changes");
+        } finally {
+            Container.setIncrementalLayout(incremental);
+        }
+        return true;
+    }
+
+    /**
+     * Builds root(BorderLayout) with a column in the center holding a flow row [a, b] and a box row
+     * [c, nested(BorderLayout center d)], e is placed in the south. Returns a, b, c, d, e followed by the
+     * containers with the root last
+     */
+    private Component[] createTree() {
+        Component a = new SizedComponent(100, 40);
+        Component b = new SizedComponent(150, 30);
+        Component c = new SizedComponent(60, 60);
+        Component d = new SizedComponent(40, 40);
+        Component e = new SizedComponent(320, 50);
+        Container nested = BorderLayout.center(d);
+        Container row1 = new Container(new FlowLayout());
+        row1.add(a).add(b);
+        Container row2 = new Container(new BoxLayout(BoxLayout.X_AXIS));
+        row2.add(c).add(nested);
+        Container column = new Container(new BoxLayout(BoxLayout.Y_AXIS));
+        column.add(row1).add(row2);
+        Container root = new Container(new BorderLayout());
+        root.add(BorderLayout.CENTER, column).add(BorderLayout.SOUTH, e);
+        root.setRTL(false);
+        root.setWidth(320);
+        root.setHeight(500);
+        Component[] all = new Component[] {a, b, c, d, e, nested, row1, row2, column, root};
+        $(all).setPadding(0).setMargin(0);
+        for(Component cmp : all) {
+            cmp.setInitialized(true);
+        }
+        return all;
+    }
+
+    private void layout(Component[] tree, boolean incremental) {
+        Container.setIncrementalLayout(incremental);
+        ((Container)tree[tree.length - 1]).layoutContainer();
+    }
+
+    private void resize(Component[] tree, int index, int width, int height, boolean incremental) {
+        Container.setIncrementalLayout(incremental);
+        ((SizedComponent)tree[index]).changeSize(width, height);
+        layout(tree, incremental);
+    }
+
+    private void assertSameBounds(Component[] eager, Component[] inc, String step) {
+        for(int iter = 0 ; iter < eager.length ; iter++) {
+            String msg = step + ": component " + iter;
+            assertEqual(eager[iter].getX(), inc[iter].getX(), msg + " x");
+            assertEqual(eager[iter].getY(), inc[iter].getY(), msg + " y");
+            assertEqual(eager[iter].getWidth(), inc[iter].getWidth(), msg + " width");
+            assertEqual(eager[iter].getHeight(), inc[iter].getHeight(), msg + " height");
+        }
+    }
+
+    static class SizedComponent extends Component {
+        private int width;
+        private int height;
+
+        SizedComponent(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        void changeSize(int width, int height) {
+            this.width = width;
+            this.height = height;
+            setShouldCalcPreferredSize(true);
+        }
+
+        @Override
+        protected Dimension calcPreferredSize() {
+            return new Dimension(width, height);
+        }
+    }
+}
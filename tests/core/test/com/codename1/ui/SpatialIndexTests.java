@@ -0,0 +1,204 @@
+package com.codename1.ui;
+
+import com.codename1.testing.AbstractTest;
+import com.codename1.testing.TestUtils;
+import com.codename1.ui.geom.Dimension;
+import com.codename1.ui.layouts.BorderLayout;
+import com.codename1.ui.layouts.Layout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Verifies that the spatial index of a container finds the same children as a search over all of them: the
+ * grid queries are compared with a brute force search and the hit testing and painting of a large container
+ * with unsorted overlapping children are compared with and without the index
+ */
+public class SpatialIndexTests extends AbstractTest {
+    private static final int CHILDREN = 120;
+    private static final int SIZE = 400;
+
+    @Override
+    public boolean shouldExecuteOnEDT() {
+        return true;
+    }
+
+    @Override
+    public boolean runTest() throws Exception {
+        Random r = new Random(17);
+
+        // grid queries find exactly the non empty components intersecting the region in painting order
+        List<Component> components = new ArrayList<Component>();
+        for(int iter = 0 ; iter < 200 ; iter++) {
+            Component c = new Component();
+            // some components are empty or outside of the common area
+            c.setX(r.nextInt(SIZE) - 20);
+            c.setY(r.nextInt(SIZE) - 20);
+            c.setWidth(iter % 10 == 0 ? 0 : r.nextInt(80));
+            c.setHeight(r.nextInt(80) + 1);
+            components.add(c);
+        }
+        SpatialIndex index = new SpatialIndex();
+        index.build(components);
+        assertQueries(r, index, components);
+
+        // moving the components requires a rebuild
+        for(Component c : components) {
+            c.setX(r.nextInt(SIZE * 2));
+            c.setWidth(r.nextInt(120) + 1);
+        }
+        index.build(components);
+        assertQueries(r, index, components);
+        index.build(new ArrayList<Component>());
+        assertEqual(0, index.query(new ArrayList<Component>(), 0, 0, SIZE, SIZE), "An empty index has no results");
+
+        // hit testing and painting of a container match the results without the index
+        Form f = new Form("Spatial Index", new BorderLayout());
+        ScatterLayout layout = new ScatterLayout(r);
+        Container cnt = new Container(layout);
+        for(int iter = 0 ; iter < CHILDREN ; iter++) {
+            cnt.add(new PaintCounter());
+        }
+        f.add(BorderLayout.CENTER, cnt);
+        f.show();
+        TestUtils.waitForFormTitle("Spatial Index", 2000);
+        cnt.setSpatialIndexEnabled(true);
+        assertTrue(cnt.isSpatialIndexEnabled());
+        assertHitTesting(r, cnt);
+
+        // the index follows a child that moves after the layout
+        Component moved = cnt.getComponentAt(0);
+        moved.setX(SIZE + 10);
+        moved.setY(SIZE + 10);
+        moved.setWidth(5);
+        moved.setHeight(5);
+        cnt.setWidth(SIZE + 20);
+        cnt.setHeight(SIZE + 20);
+        int x = cnt.getAbsoluteX() + SIZE + 12;
+        int y = cnt.getAbsoluteY() + SIZE + 12;
+        assertTrue(cnt.getComponentAt(x, y) == moved, "A moved child should be found at its new position");
+        assertHitTesting(r, cnt);
+
+        // children added or removed are reflected after the next layout
+        PaintCounter added = new PaintCounter();
+        cnt.add(added);
+        cnt.removeComponent(cnt.getComponentAt(1));
+        cnt.revalidate();
+        assertHitTesting(r, cnt);
+        assertTrue(cnt.getComponentAt(added.getAbsoluteX() + added.getWidth() / 2, added.getAbsoluteY() + added.getHeight() / 2) == added,
+                "The last child is on top");
+
+        int paintedTotal = 0;
+        for(int iter = 0 ; iter < 10 ; iter++) {
+            int rx = r.nextInt(SIZE - 50);
+            int ry = r.nextInt(SIZE - 50);
+            int rw = r.nextInt(100) + 1;
+            int rh = r.nextInt(100) + 1;
+            List<Component> expected = paintRegion(cnt, rx, ry, rw, rh, false);
+            assertEqual(expected, paintRegion(cnt, rx, ry, rw, rh, true), "The painted children differ for " + rx + ", " + ry + ", " + rw + ", " + rh);
+            paintedTotal += expected.size();
+        }
+        assertTrue(paintedTotal > 0, "The repainted regions should contain children");
+        cnt.setSpatialIndexEnabled(false);
+        assertFalse(cnt.isSpatialIndexEnabled());
+        return true;
+    }
+
+    private void assertQueries(Random r, SpatialIndex index, List<Component> components) {
+        for(int iter = 0 ; iter < 300 ; iter++) {
+            int x1 = r.nextInt(SIZE * 3) - SIZE;
+            int y1 = r.nextInt(SIZE * 3) - SIZE;
+            int x2 = x1 + r.nextInt(SIZE / 2);
+            int y2 = y1 + r.nextInt(SIZE / 2);
+            int count = index.query(components, x1, y1, x2, y2);
+            if(x2 == x1 || y2 == y1) {
+                assertEqual(0, count, "An empty region shouldn't intersect anything");
+                continue;
+            }
+            int[] results = index.borrowResults();
+            int found = 0;
+            for(int offset = 0 ; offset < components.size() ; offset++) {
+                Component c = components.get(offset);
+                // empty components have nothing to paint or hit
+                if(c.getWidth() > 0 && c.getHeight() > 0 && c.getX() < x2 && c.getX() + c.getWidth() > x1 && c.getY() < y2 && c.getY() + c.getHeight() > y1) {
+                    assertTrue(found < count && results[found] == offset, "Component " + offset + " is missing from the query " +
+                            x1 + ", " + y1 + ", " + x2 + ", " + y2);
+                    found++;
+                }
+            }
+            assertEqual(found, count, "The query returned components outside of the region");
+            index.releaseResults(results);
+        }
+    }
+
+    private void assertHitTesting(Random r, Container cnt) {
+        for(int iter = 0 ; iter < 300 ; iter++) {
+            int x = cnt.getAbsoluteX() + r.nextInt(cnt.getWidth());
+            int y = cnt.getAbsoluteY() + r.nextInt(cnt.getHeight());
+            cnt.setSpatialIndexEnabled(false);
+            Component expected = cnt.getComponentAt(x, y);
+            Component expectedResponder = cnt.getResponderAt(x, y);
+            cnt.setSpatialIndexEnabled(true);
+            assertTrue(expected == cnt.getComponentAt(x, y), "Different component at " + x + ", " + y);
+            assertTrue(expectedResponder == cnt.getResponderAt(x, y), "Different responder at " + x + ", " + y);
+        }
+    }
+
+    /**
+     * Repaints a region of the container and returns the children that were painted
+     */
+    private List<Component> paintRegion(Container cnt, int x, int y, int w, int h, boolean spatialIndex) {
+        cnt.setSpatialIndexEnabled(spatialIndex);
+        Display.impl.paintDirty();
+        for(Component c : cnt) {
+            ((PaintCounter)c).paints = 0;
+        }
+        cnt.repaint(cnt.getAbsoluteX() + x, cnt.getAbsoluteY() + y, w, h);
+        Display.impl.paintDirty();
+        List<Component> painted = new ArrayList<Component>();
+        for(Component c : cnt) {
+            if(((PaintCounter)c).paints > 0) {
+                painted.add(c);
+            }
+        }
+        return painted;
+    }
+
+    /**
+     * Places the children at random overlapping positions that aren't sorted by their order
+     */
+    static class ScatterLayout extends Layout {
+        private final Random random;
+
+        ScatterLayout(Random random) {
+            this.random = random;
+        }
+
+        public void layoutContainer(Container parent) {
+            for(Component c : parent) {
+                c.setX(random.nextInt(SIZE - 60));
+                c.setY(random.nextInt(SIZE - 60));
+                c.setWidth(random.nextInt(60) + 1);
+                c.setHeight(random.nextInt(60) + 1);
+            }
+        }
+
+        public Dimension getPreferredSize(Container parent) {
+            return new Dimension(SIZE, SIZE);
+        }
+
+        @Override
+        public boolean isOverlapSupported() {
+            return true;
+        }
+    }
+
+    static class PaintCounter extends Component {
+        int paints;
+
+        @Override
+        public void paint(Graphics g) {
+            paints++;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.codename1.ui;
+
+import com.codename1.testing.AbstractTest;
+import java.util.Random;
+
+/**
+ * Verifies that the paragraph rows reused from the {@link TextLayoutCache} are identical to the rows a
+ * {@link TextArea} produces when the cache is disabled
+ */
+public class TextLayoutCacheTests extends AbstractTest {
+    private static final int CACHE_SIZE = 1024;
+    private int charWidth;
+
+    @Override
+    public boolean shouldExecuteOnEDT() {
+        return true;
+    }
+
+    @Override
+    public boolean runTest() throws Exception {
+        TextLayoutCache cache = TextLayoutCache.getInstance();
+        int maxEntries = cache.getMaxEntries();
+        // widths are expressed in characters so the rows break in similar places regardless of the font size
+        charWidth = Math.max(1, new TextArea().getUnselectedStyle().getFont().charWidth('W'));
+        int[] widths = new int[] {8 * charWidth, 13 * charWidth, 21 * charWidth + charWidth / 2, 40 * charWidth};
+        try {
+            String[] texts = new String[] {
+                "first paragraph\nends with a space \nlast",
+                "trailing newline\nsecond paragraph\n",
+                "no final newline\nsecond paragraph with enough words to wrap onto several rows of the text area",
+                "space at the very end \nand again \n",
+                "repeated paragraph \nrepeated paragraph \nrepeated paragraph ",
+                "x\nrepeated paragraph ending with a space \nrepeated paragraph ending with a space ",
+                "\n\nempty paragraphs\n\n\nbetween\n",
+                "averyveryverylongwordthatcannotbebrokenatanyspaceatall\nshort\naveryveryverylongwordthatcannotbebrokenatanyspaceatall",
+                "emoji \ud83d\ude00 paragraph\n\ud83d\ude00\ud83d\ude00\ud83d\ude00\ud83d\ude00\ud83d\ude00\ud83d\ude00\ud83d\ude00\ud83d\ude00\ud83d\ude00\ud83d\ude00\ud83d\ude00\ud83d\ude00",
+                "single paragraph without any line breaks that is long enough to wrap"
+            };
+            for(String text : texts) {
+                for(int width : widths) {
+                    verify(text, width, false);
+                    verify(text, width, true);
+                }
+            }
+
+            // random widths make it likely that a paragraph ending with a space is broken right at the space
+            Random r = new Random(4242);
+            for(int iter = 0 ; iter < 1000 ; iter++) {
+                int width = 6 * charWidth + r.nextInt(30 * charWidth);
+                verify(randomText(r), width, iter % 3 == 0);
+                verify(randomParagraphs(r), width, iter % 3 == 0);
+            }
+
+            // the rows of the last paragraph are served from the cache
+            cache.setMaxEntries(CACHE_SIZE);
+            cache.clear();
+            String text = "first\nsecond paragraph that wraps onto more than one row \nthe last paragraph is reused";
+            String[] expected = rows(text, 21 * charWidth, false);
+            int hits = cache.getHits();
+            assertArrayEqual(expected, rows(text, 21 * charWidth, false), "Rows served from the cache differ");
+            assertEqual(hits + 2, cache.getHits(), "Both paragraphs after the first should be cache hits");
+
+            // editing a paragraph only measures that paragraph
+            String edited = "first\nsecond paragraph was edited \nthe last paragraph is reused";
+            cache.setMaxEntries(0);
+            String[] uncached = rows(edited, 21 * charWidth, false);
+            cache.setMaxEntries(CACHE_SIZE);
+            cache.clear();
+            rows(text, 21 * charWidth, false);
+            hits = cache.getHits();
+            int misses = cache.getMisses();
+            assertArrayEqual(uncached, rows(edited, 21 * charWidth, false), "Rows after an edit differ");
+            assertEqual(hits + 1, cache.getHits(), "The unchanged last paragraph should be a cache hit");
+            assertEqual(misses + 1, cache.getMisses(), "Only the edited paragraph should be measured");
+        } finally {
+            cache.setMaxEntries(maxEntries);
+        }
+        return true;
+    }
+
+    /**
+     * Compares the rows of the text with the cache disabled to the rows produced while filling the cache
+     * and to the rows produced from the cache
+     */
+    private void verify(String text, int width, boolean actAsLabel) {
+        TextLayoutCache cache = TextLayoutCache.getInstance();
+        cache.setMaxEntries(0);
+        String[] expected = rows(text, width, actAsLabel);
+        cache.setMaxEntries(CACHE_SIZE);
+        cache.clear();
+        String msg = "Text \"" + text + "\" width " + width + " actAsLabel " + actAsLabel;
+        assertArrayEqual(expected, rows(text, width, actAsLabel), msg + " rows differ while filling the cache");
+        assertArrayEqual(expected, rows(text, width, actAsLabel), msg + " rows differ when read from the cache");
+    }
+
+    private String[] rows(String text, int width, boolean actAsLabel) {
+        TextArea t = new TextArea(text);
+        t.setActAsLabel(actAsLabel);
+        t.setWidth(width);
+        int lines = t.getLines();
+        String[] result = new String[lines];
+        for(int iter = 0 ; iter < lines ; iter++) {
+            result[iter] = t.getTextAt(iter);
+        }
+        return result;
+    }
+
+    private String randomText(Random r) {
+        String[] words = new String[] {"a", "to", "the", "word", "layout", "paragraph", "wrapping", "x",
+            "internationalization", "  ", " ", "\n", "\n\n", " \n", "\n "};
+        StringBuilder sb = new StringBuilder();
+        int count = 1 + r.nextInt(40);
+        for(int iter = 0 ; iter < count ; iter++) {
+            if(iter > 0 && r.nextInt(3) > 0) {
+                sb.append(' ');
+            }
+            sb.append(words[r.nextInt(words.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Builds a text from a small pool of paragraphs so the same paragraph appears in the middle of the text
+     * and as the last paragraph
+     */
+    private String randomParagraphs(Random r) {
+        String[] paragraphs = new String[] {"", " ", "short", "short ", "two words ", 
+            "a paragraph that is long enough to wrap", "a paragraph that is long enough to wrap ",
+            "ab cd ef gh ij kl", "ab cd ef gh ij kl "};
+        StringBuilder sb = new StringBuilder();
+        int count = 2 + r.nextInt(6);
+        for(int iter = 0 ; iter < count ; iter++) {
+            if(iter > 0) {
+                sb.append('\n');
+            }
+            sb.append(paragraphs[r.nextInt(paragraphs.length)]);
+        }
+        if(r.nextBoolean()) {
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private void assertArrayEqual(String[] expected, String[] actual, String msg) {
+        assertEqual(expected.length, actual.length, msg + ": row count");
+        for(int iter = 0 ; iter < expected.length ; iter++) {
+            assertEqual(expected[iter], actual[iter], msg + ": row " + iter);
+        }
+    }
+}
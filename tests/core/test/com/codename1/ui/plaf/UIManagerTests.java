@@ -0,0 +1,34 @@
+package com.codename1.ui.plaf;
+
+import com.codename1.testing.AbstractTest;
+
+/**
+ * Tests that re-parsing inline styles replaces the cached copy-on-write custom styles
+ */
+public class UIManagerTests extends AbstractTest {
+
+    @Override
+    public boolean runTest() throws Exception {
+        UIManager manager = UIManager.getInstance();
+        boolean copyOnWrite = manager.isCopyOnWriteStyles();
+        try {
+            manager.setCopyOnWriteStyles(true);
+            for(String type : new String[] {"press", "dis"}) {
+                String uiid = "UIManagerTests" + type;
+                Style s = manager.parseComponentCustomStyle(null, "Button", uiid, type, "fgColor:ff0000");
+                assertEqual(0xff0000, s.getFgColor(), "Parsed " + type + " style should use the new color");
+                assertEqual(0xff0000, manager.getComponentCustomStyle(uiid, type).getFgColor(), 
+                        "Cached " + type + " style should match the parsed style");
+
+                s = manager.parseComponentCustomStyle(null, "Button", uiid, type, "fgColor:00ff00");
+                assertEqual(0x00ff00, s.getFgColor(), "Re-parsed " + type + " style should use the new color");
+                assertEqual(0x00ff00, manager.getComponentCustomStyle(uiid, type).getFgColor(), 
+                        "Re-parsed " + type + " style should replace the cached style");
+            }
+        } finally {
+            manager.setCopyOnWriteStyles(copyOnWrite);
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.codename1.ui.util;
+
+import com.codename1.io.Util;
+import com.codename1.testing.AbstractTest;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Tests the lazy entries of indexed resource files: entries of a file opened from a stream are decoded
+ * from the data kept in memory, entries of a file opened from a location are read again from the location,
+ * and concurrent lookups decode every entry once
+ */
+public class ResourcesTests extends AbstractTest {
+    private static final String[] NAMES = {"first", "second", "third", "empty"};
+    private static final String[] VALUES = {"one", "two", "three", ""};
+
+    @Override
+    public boolean runTest() throws Exception {
+        byte[] file = createIndexedFile(NAMES, VALUES);
+
+        // a file opened from a stream keeps the data of the entries until they are decoded
+        Resources r = Resources.open(new ByteArrayInputStream(file));
+        assertEqual(NAMES.length, r.getDataResourceNames().length, "The names should be known before decoding");
+        for(int iter = NAMES.length - 1 ; iter >= 0 ; iter--) {
+            assertEqual(VALUES[iter], read(r, NAMES[iter]));
+        }
+        assertEqual("two", read(r, "second"), "A decoded entry should still be available");
+        assertNull(r.getData("missing"));
+
+        // an override replaces the lazy entries of the main file
+        r = Resources.open(new ByteArrayInputStream(file));
+        r.override(new ByteArrayInputStream(createIndexedFile(new String[] {"second"}, new String[] {"overridden"})));
+        assertEqual("overridden", read(r, "second"));
+        assertEqual("one", read(r, "first"));
+
+        // a file opened from a location reads each entry from the location when it is first requested
+        LocatedResources located = new LocatedResources(file);
+        assertEqual(0, located.opens, "Opening the file shouldn't read the entries");
+        assertEqual("three", read(located, "third"));
+        assertEqual(1, located.opens);
+        assertEqual("three", read(located, "third"));
+        assertEqual(1, located.opens, "A decoded entry shouldn't be read again");
+        assertEqual("", read(located, "empty"));
+        assertEqual("one", read(located, "first"));
+        assertEqual(3, located.opens);
+
+        // concurrent lookups decode every entry once
+        final LocatedResources shared = new LocatedResources(file);
+        final String[] results = new String[NAMES.length * 4];
+        Thread[] threads = new Thread[results.length];
+        for(int iter = 0 ; iter < threads.length ; iter++) {
+            final int offset = iter;
+            threads[iter] = new Thread() {
+                public void run() {
+                    try {
+                        results[offset] = read(shared, NAMES[offset % NAMES.length]);
+                    } catch(IOException err) {
+                        results[offset] = err.toString();
+                    }
+                }
+            };
+        }
+        for(Thread t : threads) {
+            t.start();
+        }
+        for(Thread t : threads) {
+            t.join();
+        }
+        for(int iter = 0 ; iter < results.length ; iter++) {
+            assertEqual(VALUES[iter % NAMES.length], results[iter], "Concurrent lookup " + iter + " failed");
+        }
+        assertEqual(NAMES.length, shared.opens, "Every entry should be decoded once");
+        return true;
+    }
+
+    private String read(Resources r, String name) throws IOException {
+        InputStream is = r.getData(name);
+        assertNotNull(is, "Missing entry " + name);
+        return new String(Util.readInputStream(is), "UTF-8");
+    }
+
+    /**
+     * Writes an indexed resource file containing the given data entries in the layout of the designer
+     */
+    private static byte[] createIndexedFile(String[] names, String[] values) throws IOException {
+        ByteArrayOutputStream entryBuffer = new ByteArrayOutputStream();
+        DataOutputStream entries = new DataOutputStream(entryBuffer);
+        int[] starts = new int[names.length + 1];
+        for(int iter = 0 ; iter < names.length ; iter++) {
+            starts[iter] = entries.size();
+            byte[] data = values[iter].getBytes("UTF-8");
+            entries.writeInt(data.length);
+            entries.write(data);
+        }
+        starts[names.length] = entries.size();
+
+        ByteArrayOutputStream bo = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bo);
+        output.writeShort(names.length + 2);
+        output.writeByte(Resources.MAGIC_HEADER);
+        output.writeUTF("");
+        output.writeShort(6);
+        output.writeShort(1);
+        output.writeShort(10);
+        output.writeShort(0);
+        output.writeByte(Resources.MAGIC_INDEX);
+        output.writeUTF("");
+        output.writeShort(names.length);
+        for(int iter = 0 ; iter < names.length ; iter++) {
+            output.writeByte(Resources.MAGIC_DATA);
+            output.writeUTF(names[iter]);
+            output.writeInt(starts[iter]);
+            output.writeInt(starts[iter + 1] - starts[iter]);
+        }
+        entryBuffer.writeTo(output);
+        return bo.toByteArray();
+    }
+
+    /**
+     * Resources opened from a location, the location is served from memory and every read is counted
+     */
+    static class LocatedResources extends Resources {
+        private byte[] file;
+        int opens;
+
+        LocatedResources(byte[] file) throws IOException {
+            super(new ByteArrayInputStream(file), "/located.res", -1);
+            this.file = file;
+        }
+
+        @Override
+        InputStream openLocation(String location) throws IOException {
+            if(!"/located.res".equals(location)) {
+                throw new IOException("Unexpected location " + location);
+            }
+            synchronized(this) {
+                opens++;
+            }
+            return new ByteArrayInputStream(file);
+        }
+    }
+}
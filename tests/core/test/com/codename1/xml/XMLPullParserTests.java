@@ -0,0 +1,269 @@
+package com.codename1.xml;
+
+import com.codename1.io.CharArrayReader;
+import com.codename1.testing.AbstractTest;
+import java.io.IOException;
+
+/**
+ * Tests the streaming XML pull parser
+ */
+public class XMLPullParserTests extends AbstractTest {
+
+    @Override
+    public boolean runTest() throws Exception {
+        testStructure();
+        testEntities();
+        testCData();
+        testAttributes();
+        testSelfClosing();
+        testSubtrees();
+        testMalformed();
+        return true;
+    }
+
+    private XMLPullParser parser(String xml) {
+        return new XMLPullParser(new CharArrayReader(xml.toCharArray()));
+    }
+
+    private void testStructure() throws IOException {
+        XMLPullParser p = parser("<?xml version=\"1.0\"?>\n<!DOCTYPE root [<!ENTITY x \"y\">]>\n"
+                + "<root>\n  <!-- a comment -->\n  <a>text</a>\n  <b><c/></b>\n</root>");
+        assertEqual(XMLPullParser.START_DOCUMENT, p.getEventType());
+        assertEqual(XMLPullParser.START_TAG, p.next());
+        assertEqual("root", p.getName());
+        assertEqual(1, p.getDepth());
+        assertEqual(XMLPullParser.START_TAG, p.next(), "Whitespace and comments should be skipped");
+        assertEqual("a", p.getName());
+        assertEqual(2, p.getDepth());
+        assertEqual(XMLPullParser.TEXT, p.next());
+        assertEqual("text", p.getText());
+        assertEqual(2, p.getDepth(), "Text has the depth of the enclosing tag");
+        assertEqual(XMLPullParser.END_TAG, p.next());
+        assertEqual("a", p.getName());
+        assertEqual(2, p.getDepth());
+        assertEqual(XMLPullParser.START_TAG, p.next());
+        assertEqual("b", p.getName());
+        assertEqual(XMLPullParser.START_TAG, p.next());
+        assertEqual("c", p.getName());
+        assertEqual(3, p.getDepth());
+        assertEqual(XMLPullParser.END_TAG, p.next());
+        assertEqual("c", p.getName());
+        assertEqual(XMLPullParser.END_TAG, p.next());
+        assertEqual("b", p.getName());
+        assertEqual(XMLPullParser.END_TAG, p.next());
+        assertEqual("root", p.getName());
+        assertEqual(1, p.getDepth());
+        assertEqual(XMLPullParser.END_DOCUMENT, p.next());
+        assertEqual(XMLPullParser.END_DOCUMENT, p.next(), "The end of the document should be sticky");
+
+        p = parser("<a> <b/> </a>");
+        p.setIncludeWhitespacesBetweenTags(true);
+        p.next();
+        assertEqual(XMLPullParser.TEXT, p.next());
+        assertTrue(p.isWhitespace());
+        assertEqual(" ", p.getText());
+    }
+
+    private void testEntities() throws IOException {
+        XMLPullParser p = parser("<a>&lt;tag&gt; &amp; &quot;q&quot; &apos;s&apos; &#65;&#x42;&#X43; &#x1F600; &eacute; &bogus; &amp &#xZZ;</a>");
+        p.next();
+        assertEqual(XMLPullParser.TEXT, p.next());
+        // like XMLParser, HTML entities are only resolved when they are added as user defined entities
+        assertEqual("<tag> & \"q\" 's' ABC \ud83d\ude00 &eacute; &bogus; &amp &#xZZ;", p.getText());
+
+        p = parser("<a>&custom;</a>");
+        p.addCharEntity("custom", 0x263a);
+        p.next();
+        p.next();
+        assertEqual("\u263a", p.getText(), "User defined entities should be resolved");
+
+        p = parser("<a>x &");
+        p.next();
+        assertEqual(XMLPullParser.TEXT, p.next());
+        assertEqual("x &", p.getText(), "A trailing ampersand should be kept verbatim");
+        assertEqual(XMLPullParser.END_DOCUMENT, p.next());
+    }
+
+    private void testCData() throws IOException {
+        XMLPullParser p = parser("<a>before<![CDATA[<not> &amp; a tag]]]>after</a>");
+        p.next();
+        assertEqual(XMLPullParser.TEXT, p.next());
+        assertEqual("before", p.getText());
+        assertEqual(XMLPullParser.TEXT, p.next());
+        assertEqual("<not> &amp; a tag]", p.getText(), "CDATA content should be delivered verbatim");
+        assertEqual(XMLPullParser.TEXT, p.next());
+        assertEqual("after", p.getText());
+        assertEqual(XMLPullParser.END_TAG, p.next());
+
+        p = parser("<a><![CDATA[]]></a>");
+        p.next();
+        assertEqual(XMLPullParser.TEXT, p.next());
+        assertEqual("", p.getText(), "An empty CDATA section is still a text event");
+        assertEqual(XMLPullParser.END_TAG, p.next());
+
+        p = parser("<a>one<![CDATA[ two ]]>three</a>");
+        p.next();
+        assertEqual("one two three", p.nextText(), "nextText should join text and CDATA");
+    }
+
+    private void testAttributes() throws IOException {
+        XMLPullParser p = parser("<item id=\"1\" name='single' empty=\"\" spaced = \"a b\" unquoted=value "
+                + "ent=\"&lt;&#65;&amp;\" flag>x</item>");
+        assertEqual(XMLPullParser.START_TAG, p.next());
+        assertEqual(7, p.getAttributeCount());
+        assertEqual("id", p.getAttributeName(0));
+        assertEqual("1", p.getAttributeValue(0));
+        assertEqual("single", p.getAttributeValue("name"));
+        assertEqual("", p.getAttributeValue("empty"));
+        assertEqual("a b", p.getAttributeValue("spaced"));
+        assertEqual("value", p.getAttributeValue("unquoted"));
+        assertEqual("<A&", p.getAttributeValue("ent"));
+        assertEqual("", p.getAttributeValue("flag"), "An attribute without a value should be empty");
+        assertNull(p.getAttributeValue("missing"));
+        assertEqual(-1, p.getAttributeIndex("missing"));
+        assertTrue(p.isAttributeValue(p.getAttributeIndex("name"), "single"));
+        assertFalse(p.isAttributeValue(p.getAttributeIndex("name"), "singlE"));
+        assertFalse(p.isAttributeValue(p.getAttributeIndex("name"), "sing"));
+        assertEqual(XMLPullParser.TEXT, p.next());
+        assertEqual(0, p.getAttributeCount(), "Attributes belong to the start tag only");
+
+        // names are interned so repeated tags and attributes return the same instance
+        p = parser("<r><i k=\"1\"/><i k=\"2\"/></r>");
+        p.next();
+        p.next();
+        String tag = p.getName();
+        String attr = p.getAttributeName(0);
+        p.next();
+        p.next();
+        assertSame(tag, p.getName());
+        assertSame(attr, p.getAttributeName(0));
+        assertEqual("2", p.getAttributeValue(0));
+
+        // attribute values spanning several reads of the underlying buffer
+        StringBuilder sb = new StringBuilder();
+        for(int iter = 0 ; iter < 10000 ; iter++) {
+            sb.append((char)('a' + iter % 26));
+        }
+        p = parser("<a v=\"" + sb + "\">" + sb + "</a>");
+        p.next();
+        assertEqual(sb.toString(), p.getAttributeValue("v"));
+        p.next();
+        assertEqual(sb.toString(), p.getText());
+    }
+
+    private void testSelfClosing() throws IOException {
+        XMLPullParser p = parser("<r><br/><img src=\"x.png\" /><empty></empty></r>");
+        p.next();
+        assertEqual(XMLPullParser.START_TAG, p.next());
+        assertEqual("br", p.getName());
+        assertTrue(p.isEmptyElementTag());
+        assertEqual(2, p.getDepth());
+        assertEqual(XMLPullParser.END_TAG, p.next());
+        assertEqual("br", p.getName());
+        assertFalse(p.isEmptyElementTag());
+        assertEqual(2, p.getDepth());
+        assertEqual(XMLPullParser.START_TAG, p.next());
+        assertEqual("img", p.getName());
+        assertTrue(p.isEmptyElementTag());
+        assertEqual("x.png", p.getAttributeValue("src"));
+        assertEqual(XMLPullParser.END_TAG, p.next());
+        assertEqual("img", p.getName());
+        assertEqual(XMLPullParser.START_TAG, p.next());
+        assertEqual("empty", p.getName());
+        assertFalse(p.isEmptyElementTag());
+        assertEqual("", p.nextText());
+        assertEqual(XMLPullParser.END_TAG, p.getEventType());
+        assertEqual(XMLPullParser.END_TAG, p.next());
+        assertEqual("r", p.getName());
+        assertEqual(1, p.getDepth());
+    }
+
+    private void testSubtrees() throws IOException {
+        XMLPullParser p = parser("<feed><skip><x><y>deep</y></x></skip><item id=\"7\"><title>T</title>body<br/></item><title>Feed</title></feed>");
+        p.next();
+        p.next();
+        assertEqual("skip", p.getName());
+        p.skipSubtree();
+        assertEqual(XMLPullParser.END_TAG, p.getEventType());
+        assertEqual("skip", p.getName());
+        assertEqual(XMLPullParser.START_TAG, p.next());
+        Element item = p.readElement();
+        assertEqual(XMLPullParser.END_TAG, p.getEventType());
+        assertEqual("item", p.getName());
+        assertEqual("item", item.getTagName());
+        assertEqual("7", item.getAttribute("id"));
+        assertEqual(3, item.getNumChildren());
+        assertEqual("title", item.getChildAt(0).getTagName());
+        assertEqual("T", item.getChildAt(0).getChildAt(0).getText());
+        assertTrue(item.getChildAt(1).isTextElement());
+        assertEqual("body", item.getChildAt(1).getText());
+        assertEqual("br", item.getChildAt(2).getTagName());
+        assertEqual(XMLPullParser.START_TAG, p.next());
+        assertEqual("Feed", p.nextText());
+        assertEqual(XMLPullParser.END_TAG, p.next());
+        assertEqual("feed", p.getName());
+
+        p = parser("<a>text</a>");
+        try {
+            p.readElement();
+            fail("readElement should require a start tag");
+        } catch(IllegalStateException err) {
+            // expected
+        }
+    }
+
+    private void testMalformed() throws IOException {
+        // unclosed elements end with the document
+        XMLPullParser p = parser("<a><b>text");
+        assertEqual(XMLPullParser.START_TAG, p.next());
+        assertEqual(XMLPullParser.START_TAG, p.next());
+        assertEqual(XMLPullParser.TEXT, p.next());
+        assertEqual("text", p.getText());
+        assertEqual(XMLPullParser.END_DOCUMENT, p.next());
+
+        // a mismatched end tag closes the innermost element so the depth stays consistent
+        p = parser("<a><b></c></a>");
+        p.next();
+        p.next();
+        assertEqual(XMLPullParser.END_TAG, p.next());
+        assertEqual("b", p.getName());
+        assertEqual(2, p.getDepth());
+        assertEqual(XMLPullParser.END_TAG, p.next());
+        assertEqual("a", p.getName());
+        assertEqual(1, p.getDepth());
+        assertEqual(XMLPullParser.END_DOCUMENT, p.next());
+
+        // a stray end tag at the top level doesn't make the depth negative
+        p = parser("</x><a/>");
+        assertEqual(XMLPullParser.END_TAG, p.next());
+        assertEqual(0, p.getDepth());
+        assertEqual(XMLPullParser.START_TAG, p.next());
+        assertEqual("a", p.getName());
+        assertEqual(1, p.getDepth());
+
+        // truncated markup
+        String[] truncated = new String[] {"<", "<a", "<a b=\"unterminated", "<a><!-- open comment",
+            "<a><![CDATA[open", "<a><![CDA", "<?xml", "<!DOCTYPE x [", "<a>&#x", "<a b=&amp"};
+        for(String xml : truncated) {
+            p = parser(xml);
+            int events = 0;
+            while(p.next() != XMLPullParser.END_DOCUMENT) {
+                events++;
+                assertTrue(events < 10, "Parser didn't terminate for " + xml);
+            }
+        }
+
+        p = parser("<a><![CDATA[open");
+        p.next();
+        assertEqual(XMLPullParser.TEXT, p.next());
+        assertEqual("open", p.getText(), "An unterminated CDATA section runs to the end of the input");
+
+        // stray characters inside a tag are ignored
+        p = parser("<a = b=\"1\" / c=2>x</a>");
+        assertEqual(XMLPullParser.START_TAG, p.next());
+        assertEqual("1", p.getAttributeValue("b"));
+        assertEqual("2", p.getAttributeValue("c"));
+        assertFalse(p.isEmptyElementTag());
+        assertEqual("x", p.nextText());
+    }
+}
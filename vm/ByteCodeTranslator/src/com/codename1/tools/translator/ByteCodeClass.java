@@ -25,10 +25,12 @@ package com.codename1.tools.translator;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 /**
  * Parsed class file
@@ -76,7 +78,7 @@ public class ByteCodeClass {
     private static boolean saveUnitTests;
     private boolean isUnitTest;
 
-    private static Set<String> arrayTypes = new TreeSet<String>();
+    private static Set<String> arrayTypes = new ConcurrentSkipListSet<String>();
     
     private ByteCodeClass baseClassObject;
     private List<ByteCodeClass> baseInterfacesObject;
@@ -90,7 +92,8 @@ public class ByteCodeClass {
     private static ByteCodeClass mainClass;
     private boolean finalClass;
     private boolean isEnum;
-    private static Set<String> writableFields = new HashSet<String>();
+    private static Set<String> writableFields = Collections.synchronizedSet(new HashSet<String>());
+    private byte[] inputHash;
     
     /**
      * 
@@ -113,16 +116,51 @@ public class ByteCodeClass {
 		return mainClass;
     }
     
+    static Set<String> getArrayTypes() {
+        return arrayTypes;
+    }
+    
+    static Set<String> getWritableFields() {
+        return writableFields;
+    }
+    
+    Set<String> getDependsClassesInterfaces() {
+        return dependsClassesInterfaces;
+    }
+    
+    /**
+     * Adds a class whose header the generated code needs, used by optimizations that run after the 
+     * dependencies were calculated
+     */
+    void addDependency(String cls) {
+        if(!cls.equals(clsName)) {
+            dependsClassesInterfaces.add(cls);
+        }
+    }
+    
+    /**
+     * The digest of the class file, used by the translation cache
+     */
+    byte[] getInputHash() {
+        return inputHash;
+    }
+    
+    void setInputHash(byte[] inputHash) {
+        this.inputHash = inputHash;
+    }
+    
     static void setSaveUnitTests(boolean save) {
         saveUnitTests = save;
     }
     
     public void addMethod(BytecodeMethod m) {
         if(m.isMain()) {
-            if (mainClass == null) {
-                mainClass = this;
-            } else {
-                throw new RuntimeException("Multiple main classes: "+mainClass.clsName+" and "+this.clsName);
+            synchronized(ByteCodeClass.class) {
+                if (mainClass == null) {
+                    mainClass = this;
+                } else {
+                    throw new RuntimeException("Multiple main classes: "+mainClass.clsName+" and "+this.clsName);
+                }
             }
         }
         m.setSourceFile(sourceFile);
@@ -251,6 +289,9 @@ public class ByteCodeClass {
                 bm.addToConstantPool();
             }
         }
+        for(ByteCodeField bf : fields) {
+            bf.addToConstantPool();
+        }
         
         for(String s : dependsClassesInterfaces) {
             ByteCodeClass cls = findClass(s, lst);
@@ -369,10 +410,7 @@ public class ByteCodeClass {
     }
     
     public static void addArrayType(String type, int dimenstions) {
-        String arr = dimenstions + "_" + type;
-        if(!arrayTypes.contains(arr)) {
-            arrayTypes.add(arr);
-        }
+        arrayTypes.add(dimenstions + "_" + type);
     }
     
     public String generateCCode(List<ByteCodeClass> allClasses) {        
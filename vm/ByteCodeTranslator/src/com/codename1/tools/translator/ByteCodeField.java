@@ -50,9 +50,6 @@ public class ByteCodeField {
         this.clsName = clsName;
         this.value = value;
         privateField = (access & Opcodes.ACC_PRIVATE) == Opcodes.ACC_PRIVATE;
-        if(value != null && value instanceof String) {
-            Parser.addToConstantPool((String)value);
-        }
         staticField = (access & Opcodes.ACC_STATIC) == Opcodes.ACC_STATIC;
         finalField = (access & Opcodes.ACC_FINAL) == Opcodes.ACC_FINAL;
         fieldName = name.replace('$', '_');
@@ -105,6 +102,16 @@ public class ByteCodeField {
         }
     }
 
+    /**
+     * Adds the string value of this field to the constant pool, invoked once the class is known to be
+     * used so the pool order doesn't depend on the order in which classes were parsed
+     */
+    public void addToConstantPool() {
+        if(value instanceof String) {
+            Parser.addToConstantPool((String)value);
+        }
+    }
+
     public String getFieldName() {
         return fieldName;
     }
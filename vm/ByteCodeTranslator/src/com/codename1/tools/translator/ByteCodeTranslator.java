@@ -72,12 +72,17 @@ public class ByteCodeTranslator {
      * Recursively parses the files in the hierarchy to the output directory
      */
     void execute(File[] sourceDirs, File outputDir) throws Exception {
+        List<File> classFiles = new ArrayList<File>();
         for(File f : sourceDirs) {
-            execute(f, outputDir);
+            execute(f, outputDir, classFiles);
         }
+        Parser.parse(classFiles);
     }
     
-    void execute(File sourceDir, File outputDir) throws Exception {
+    /**
+     * Copies the resources in the hierarchy to the output directory and collects the class files for parsing
+     */
+    private void execute(File sourceDir, File outputDir, List<File> classFiles) throws Exception {
         File[] directoryList = sourceDir.listFiles(new FileFilter() {
             @Override
             public boolean accept(File pathname) {
@@ -93,7 +98,7 @@ public class ByteCodeTranslator {
         if(fileList != null) {
             for(File f : fileList) {
                 if(f.getName().endsWith(".class")) {
-                    Parser.parse(f);
+                    classFiles.add(f);
                 } else {
                     if(!f.isDirectory()) {
                         // copy the file to the dest dir
@@ -108,7 +113,7 @@ public class ByteCodeTranslator {
                     copyDir(f, outputDir);
                     continue;
                 }
-                execute(f, outputDir);
+                execute(f, outputDir, classFiles);
             }
         }
     }
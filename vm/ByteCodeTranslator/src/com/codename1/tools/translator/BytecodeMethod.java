@@ -67,14 +67,14 @@ public class BytecodeMethod implements SignatureSet {
      * @return the acceptStaticOnEquals
      */
     public static boolean isAcceptStaticOnEquals() {
-        return acceptStaticOnEquals;
+        return acceptStaticOnEquals.get() == Boolean.TRUE;
     }
 
     /**
      * @param aAcceptStaticOnEquals the acceptStaticOnEquals to set
      */
     public static void setAcceptStaticOnEquals(boolean aAcceptStaticOnEquals) {
-        acceptStaticOnEquals = aAcceptStaticOnEquals;
+        acceptStaticOnEquals.set(Boolean.valueOf(aAcceptStaticOnEquals));
     }
     private List<ByteCodeMethodArg> arguments = new ArrayList<ByteCodeMethodArg>();
     private Set<LocalVariable> localVariables = new HashSet<LocalVariable>();
@@ -85,6 +85,7 @@ public class BytecodeMethod implements SignatureSet {
     private boolean staticMethod;
     private boolean privateMethod;
     private boolean nativeMethod;
+    private boolean abstractMethod;
     private List<String> dependentClasses = new ArrayList<String>();
     //private List<String> exportedClasses = new ArrayList<String>();
     private List<Instruction> instructions = new ArrayList<Instruction>();
@@ -92,7 +93,7 @@ public class BytecodeMethod implements SignatureSet {
     private String sourceFile;
     private int maxStack;
     private int maxLocals;
-    private static boolean acceptStaticOnEquals;
+    private static final ThreadLocal<Boolean> acceptStaticOnEquals = new ThreadLocal<Boolean>();
     private int methodOffset;
     private boolean forceVirtual;
     private boolean virtualOverriden;
@@ -117,6 +118,7 @@ public class BytecodeMethod implements SignatureSet {
         this.desc = desc;
         privateMethod = (access & Opcodes.ACC_PRIVATE) == Opcodes.ACC_PRIVATE;
         nativeMethod = (access & Opcodes.ACC_NATIVE) == Opcodes.ACC_NATIVE;
+        abstractMethod = (access & Opcodes.ACC_ABSTRACT) == Opcodes.ACC_ABSTRACT;
         staticMethod = (access & Opcodes.ACC_STATIC) == Opcodes.ACC_STATIC;
         finalMethod = (access & Opcodes.ACC_FINAL) == Opcodes.ACC_FINAL;
         synchronizedMethod = (access & Opcodes.ACC_SYNCHRONIZED) == Opcodes.ACC_SYNCHRONIZED;
@@ -302,6 +304,26 @@ public class BytecodeMethod implements SignatureSet {
         return usedMethods.contains(bm.desc + "." + bm.methodName);
     }
     
+    /**
+     * The instructions of the method body, modified in place by the optimizer passes
+     */
+    List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * Adds the methods invoked by this method in the desc.name form returned by
+     * {@link Instruction#getMethodUsed()}
+     */
+    public void addInvokedMethods(Set<String> out) {
+        for(Instruction ins : instructions) {
+            String s = ins.getMethodUsed();
+            if(s != null) {
+                out.add(s);
+            }
+        }
+    }
+
     public void findWritableFields(Set<String> outSet) {
         int len = instructions.size();
         for (int i=0; i<len; i++) {
@@ -752,6 +774,10 @@ public class BytecodeMethod implements SignatureSet {
         appendVirtualMethodC(cls, b, offset, false);
     }
     
+    static Set<String> getVirtualMethodsInvoked() {
+        return virtualMethodsInvoked;
+    }
+    
     public static void addVirtualMethodsInvoked(String m) {
         if(!virtualMethodsInvoked.contains(m)) {
             virtualMethodsInvoked.add(m);
@@ -878,7 +904,7 @@ public class BytecodeMethod implements SignatureSet {
         if(val != 0) {
             return false;
         }
-        if(acceptStaticOnEquals) {
+        if(isAcceptStaticOnEquals()) {
             if(bm.arguments.size() != arguments.size()) {
                 return false;
             }            
@@ -921,6 +947,10 @@ public class BytecodeMethod implements SignatureSet {
         return nativeMethod;
     }
     
+    public boolean isAbstract() {
+        return abstractMethod;
+    }
+    
     public String getVariableNameForTypeIndex(int index, char type) {
         for(Instruction i : instructions) {
             if(i instanceof LocalVariable) {
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *  
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ * 
+ * Please contact Codename One through http://www.codenameone.com/ if you 
+ * need additional information or have any questions.
+ */
+
+package com.codename1.tools.translator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The call graph of the translated methods, built in a single pass over the instructions. Invocations are
+ * resolved by name and descriptor regardless of the owner class which conservatively covers virtual and
+ * interface dispatch to every override in the class hierarchy, this is the same notion of "used" the
+ * translator always applied.
+ */
+class CallGraph {
+    private final Map<String, List<BytecodeMethod>> methodsBySignature = new HashMap<String, List<BytecodeMethod>>();
+    private final Map<BytecodeMethod, List<BytecodeMethod>> callees = new IdentityHashMap<BytecodeMethod, List<BytecodeMethod>>();
+    private int methodCount;
+    private int edgeCount;
+
+    /**
+     * Builds the graph for the methods of the given classes, eliminated methods are excluded since their
+     * body is never generated
+     */
+    public CallGraph(List<ByteCodeClass> classes) {
+        for(ByteCodeClass bc : classes) {
+            for(BytecodeMethod m : bc.getMethods()) {
+                if(m.isEliminated()) {
+                    continue;
+                }
+                methodCount++;
+                String key = signatureKey(m);
+                List<BytecodeMethod> l = methodsBySignature.get(key);
+                if(l == null) {
+                    l = new ArrayList<BytecodeMethod>(1);
+                    methodsBySignature.put(key, l);
+                }
+                l.add(m);
+            }
+        }
+        Set<String> invoked = new HashSet<String>();
+        for(ByteCodeClass bc : classes) {
+            for(BytecodeMethod m : bc.getMethods()) {
+                if(m.isEliminated()) {
+                    continue;
+                }
+                invoked.clear();
+                m.addInvokedMethods(invoked);
+                List<BytecodeMethod> out = null;
+                for(String s : invoked) {
+                    List<BytecodeMethod> targets = methodsBySignature.get(s);
+                    if(targets != null) {
+                        if(out == null) {
+                            out = new ArrayList<BytecodeMethod>();
+                        }
+                        out.addAll(targets);
+                    }
+                }
+                if(out != null) {
+                    edgeCount += out.size();
+                    callees.put(m, out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the key under which invocations of the given method are recorded, in the
+     * {@code desc.name} form used by {@link com.codename1.tools.translator.bytecodes.Instruction#getMethodUsed()}
+     */
+    static String signatureKey(BytecodeMethod m) {
+        String name = m.getMethodName();
+        if(name.equals("__INIT__")) {
+            name = "<init>";
+        }
+        return m.getSignature() + "." + name;
+    }
+
+    public int getMethodCount() {
+        return methodCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Returns the methods invoked by the given method
+     */
+    public List<BytecodeMethod> getCallees(BytecodeMethod m) {
+        List<BytecodeMethod> l = callees.get(m);
+        if(l == null) {
+            return Collections.emptyList();
+        }
+        return l;
+    }
+
+    /**
+     * Computes the set of methods reachable from the given roots using a worklist, every method is
+     * visited once
+     */
+    public Set<BytecodeMethod> reachableFrom(Collection<BytecodeMethod> roots) {
+        Set<BytecodeMethod> reached = Collections.newSetFromMap(new IdentityHashMap<BytecodeMethod, Boolean>());
+        ArrayDeque<BytecodeMethod> worklist = new ArrayDeque<BytecodeMethod>();
+        for(BytecodeMethod m : roots) {
+            if(reached.add(m)) {
+                worklist.add(m);
+            }
+        }
+        while(!worklist.isEmpty()) {
+            BytecodeMethod m = worklist.poll();
+            List<BytecodeMethod> l = callees.get(m);
+            if(l != null) {
+                for(BytecodeMethod c : l) {
+                    if(reached.add(c)) {
+                        worklist.add(c);
+                    }
+                }
+            }
+        }
+        return reached;
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *  
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ * 
+ * Please contact Codename One through http://www.codenameone.com/ if you 
+ * need additional information or have any questions.
+ */
+
+package com.codename1.tools.translator;
+
+import com.codename1.tools.translator.bytecodes.BasicInstruction;
+import com.codename1.tools.translator.bytecodes.CustomIntruction;
+import com.codename1.tools.translator.bytecodes.Field;
+import com.codename1.tools.translator.bytecodes.Instruction;
+import com.codename1.tools.translator.bytecodes.Invoke;
+import com.codename1.tools.translator.bytecodes.LabelInstruction;
+import com.codename1.tools.translator.bytecodes.LineNumber;
+import com.codename1.tools.translator.bytecodes.VarOp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Whole program optimization of call sites that runs once the set of translated classes is final. A virtual
+ * or interface invocation is converted to a direct call when every concrete class that can be the receiver 
+ * resolves the method to the same implementation. Direct calls to trivial getters, setters and empty 
+ * constructors are replaced with the field access they perform or dropped entirely. A call site that no longer
+ * goes through the vtable or the method body checks the receiver for null so a null receiver still throws a 
+ * NullPointerException. The pass is off by default and is enabled with the devirtualize system property.
+ */
+class Devirtualizer {
+    private static final int NOT_TRIVIAL = 0;
+    private static final int GETTER = 1;
+    private static final int SETTER = 2;
+    private static final int EMPTY_CONSTRUCTOR = 3;
+    
+    private final Map<String, ByteCodeClass> classIndex = new HashMap<String, ByteCodeClass>();
+    private final Map<ByteCodeClass, List<ByteCodeClass>> concreteSubtypes = new IdentityHashMap<ByteCodeClass, List<ByteCodeClass>>();
+    private final Map<String, BytecodeMethod> implementations = new HashMap<String, BytecodeMethod>();
+    private final Map<BytecodeMethod, Integer> trivialMethods = new IdentityHashMap<BytecodeMethod, Integer>();
+    
+    private int virtualCalls;
+    private int devirtualized;
+    private int getters;
+    private int setters;
+    private int constructors;
+    private int nullChecks;
+    
+    /**
+     * Returns true if the pass was enabled with the devirtualize system property
+     */
+    public static boolean isEnabled() {
+        return "true".equals(System.getProperty("devirtualize", "false"));
+    }
+    
+    public Devirtualizer(List<ByteCodeClass> classes) {
+        for(ByteCodeClass bc : classes) {
+            classIndex.put(bc.getClsName(), bc);
+        }
+        for(ByteCodeClass bc : classes) {
+            if(!bc.isIsInterface() && !bc.isIsAbstract()) {
+                addConcreteSubtype(bc, bc, Collections.newSetFromMap(new IdentityHashMap<ByteCodeClass, Boolean>()));
+            }
+        }
+    }
+    
+    private void addConcreteSubtype(ByteCodeClass type, ByteCodeClass concrete, Set<ByteCodeClass> visited) {
+        if(type == null || !visited.add(type)) {
+            return;
+        }
+        List<ByteCodeClass> l = concreteSubtypes.get(type);
+        if(l == null) {
+            l = new ArrayList<ByteCodeClass>();
+            concreteSubtypes.put(type, l);
+        }
+        l.add(concrete);
+        addConcreteSubtype(type.getBaseClassObject(), concrete, visited);
+        if(type.getBaseInterfacesObject() != null) {
+            for(ByteCodeClass c : type.getBaseInterfacesObject()) {
+                addConcreteSubtype(c, concrete, visited);
+            }
+        }
+    }
+    
+    private static String mangle(String cls) {
+        return cls.replace('/', '_').replace('$', '_');
+    }
+    
+    private static String methodName(String name) {
+        if(name.equals("<init>")) {
+            return "__INIT__";
+        }
+        return name;
+    }
+    
+    /**
+     * Optimizes the call sites in all the methods that weren't eliminated
+     */
+    public void optimize(List<ByteCodeClass> classes) {
+        for(ByteCodeClass bc : classes) {
+            for(BytecodeMethod m : bc.getMethods()) {
+                if(m.isEliminated()) {
+                    continue;
+                }
+                List<Instruction> instructions = m.getInstructions();
+                boolean thisFixed = !m.isStatic() && !storesToLocal(instructions, 0);
+                for(int iter = 0 ; iter < instructions.size() ; iter++) {
+                    Instruction current = instructions.get(iter);
+                    if(!(current instanceof Invoke)) {
+                        continue;
+                    }
+                    Invoke inv = (Invoke)current;
+                    BytecodeMethod target;
+                    switch(inv.getOpcode()) {
+                        case Opcodes.INVOKEVIRTUAL:
+                        case Opcodes.INVOKEINTERFACE:
+                            virtualCalls++;
+                            target = findSingleImplementation(inv);
+                            if(target == null) {
+                                continue;
+                            }
+                            ByteCodeClass targetClass = classIndex.get(target.getClsName());
+                            inv = new Invoke(Opcodes.INVOKESPECIAL, targetClass.getOriginalClassName(), inv.getName(), inv.getDesc(), false);
+                            instructions.set(iter, inv);
+                            bc.addDependency(targetClass.getClsName());
+                            devirtualized++;
+                            iter = addNullCheck(bc, instructions, iter, Util.getMethodArgs(inv.getDesc()).size() + 1, thisFixed);
+                            break;
+                        case Opcodes.INVOKESPECIAL:
+                            target = resolve(classIndex.get(mangle(inv.getOwner())), methodName(inv.getName()), inv.getDesc());
+                            if(target == null) {
+                                continue;
+                            }
+                            int kind = getTrivialKind(target);
+                            if(kind == GETTER || kind == SETTER) {
+                                // a direct call dereferences the receiver inside the method, the inlined field
+                                // access needs the same check
+                                iter = addNullCheck(bc, instructions, iter, kind == GETTER ? 1 : 2, thisFixed);
+                            }
+                            break;
+                        default:
+                            continue;
+                    }
+                    iter = inline(bc, instructions, iter, target);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Inserts a check of the receiver that is the given number of entries below the top of the stack before the
+     * call at the given offset, the check is skipped when the receiver is pushed by loading this right before
+     * the call. Returns the new offset of the call
+     */
+    private int addNullCheck(ByteCodeClass bc, List<Instruction> instructions, int iter, int depth, boolean thisFixed) {
+        if(thisFixed && iter >= depth) {
+            boolean simpleArgs = true;
+            for(int arg = 1 ; arg < depth ; arg++) {
+                Instruction i = instructions.get(iter - arg);
+                if(!(i instanceof VarOp) || i.getOpcode() < Opcodes.ILOAD || i.getOpcode() > Opcodes.ALOAD) {
+                    simpleArgs = false;
+                    break;
+                }
+            }
+            if(simpleArgs && isLoadThis(instructions.get(iter - depth))) {
+                return iter;
+            }
+        }
+        String code = "    if(SP[-" + depth + "].data.o == JAVA_NULL) THROW_NULL_POINTER_EXCEPTION();\n";
+        instructions.add(iter, new CustomIntruction(code, code, null));
+        bc.addDependency("java_lang_NullPointerException");
+        nullChecks++;
+        return iter + 1;
+    }
+    
+    private static boolean storesToLocal(List<Instruction> instructions, int index) {
+        for(Instruction i : instructions) {
+            if(i instanceof VarOp && i.getOpcode() == Opcodes.ASTORE && ((VarOp)i).getIndex() == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Returns the method invoked by the given virtual call if all the possible receivers share the same 
+     * implementation
+     */
+    private BytecodeMethod findSingleImplementation(Invoke inv) {
+        String key = inv.getOwner() + "." + inv.getName() + inv.getDesc();
+        if(implementations.containsKey(key)) {
+            return implementations.get(key);
+        }
+        BytecodeMethod result = null;
+        ByteCodeClass owner = inv.getOwner().startsWith("[") ? null : classIndex.get(mangle(inv.getOwner()));
+        List<ByteCodeClass> receivers = owner == null ? null : concreteSubtypes.get(owner);
+        if(receivers != null) {
+            String name = methodName(inv.getName());
+            for(ByteCodeClass c : receivers) {
+                BytecodeMethod m = resolve(c, name, inv.getDesc());
+                if(m == null || m.isAbstract() || m.isEliminated() || (result != null && result != m)) {
+                    result = null;
+                    break;
+                }
+                result = m;
+            }
+        }
+        implementations.put(key, result);
+        return result;
+    }
+    
+    /**
+     * Finds the instance method with the given name and descriptor in the class or its base classes
+     */
+    private static BytecodeMethod resolve(ByteCodeClass cls, String name, String desc) {
+        while(cls != null) {
+            for(BytecodeMethod m : cls.getMethods()) {
+                if(!m.isStatic() && m.getMethodName().equals(name) && m.getSignature().equals(desc)) {
+                    return m;
+                }
+            }
+            cls = cls.getBaseClassObject();
+        }
+        return null;
+    }
+    
+    /**
+     * Replaces the direct call at the given offset if the target is trivial, returns the offset of the last
+     * instruction that was processed
+     */
+    private int inline(ByteCodeClass bc, List<Instruction> instructions, int iter, BytecodeMethod target) {
+        switch(getTrivialKind(target)) {
+            case GETTER: {
+                Field f = (Field)getBody(target).get(1);
+                instructions.set(iter, new Field(Opcodes.GETFIELD, f.getOwner(), f.getFieldName(), f.getDesc()));
+                bc.addDependency(mangle(f.getOwner()));
+                getters++;
+                return iter;
+            }
+            case SETTER: {
+                Field f = (Field)getBody(target).get(2);
+                instructions.set(iter, new Field(Opcodes.PUTFIELD, f.getOwner(), f.getFieldName(), f.getDesc()));
+                bc.addDependency(mangle(f.getOwner()));
+                setters++;
+                return iter;
+            }
+            case EMPTY_CONSTRUCTOR: {
+                // the receiver of a constructor call is always a new object or this so it can't be null
+                constructors++;
+                Instruction prev = iter > 0 ? instructions.get(iter - 1) : null;
+                if((prev instanceof BasicInstruction && prev.getOpcode() == Opcodes.DUP) || 
+                        (prev instanceof VarOp && prev.getOpcode() == Opcodes.ALOAD)) {
+                    // the common new X() and super() sequences, the reference pushed for the call isn't needed
+                    instructions.remove(iter);
+                    instructions.remove(iter - 1);
+                    return iter - 2;
+                }
+                instructions.set(iter, new BasicInstruction(Opcodes.POP, 0));
+                return iter;
+            }
+        }
+        return iter;
+    }
+    
+    /**
+     * The instructions of the method without labels and line numbers
+     */
+    private static List<Instruction> getBody(BytecodeMethod m) {
+        List<Instruction> body = new ArrayList<Instruction>();
+        for(Instruction i : m.getInstructions()) {
+            if(!(i instanceof LabelInstruction) && !(i instanceof LineNumber)) {
+                body.add(i);
+            }
+        }
+        return body;
+    }
+    
+    private int getTrivialKind(BytecodeMethod m) {
+        Integer kind = trivialMethods.get(m);
+        if(kind == null) {
+            // guards against recursion while checking a constructor chain
+            trivialMethods.put(m, NOT_TRIVIAL);
+            kind = computeTrivialKind(m);
+            trivialMethods.put(m, kind);
+        }
+        return kind;
+    }
+    
+    private int computeTrivialKind(BytecodeMethod m) {
+        if(m.isStatic() || m.isNative() || m.isAbstract() || m.isSynchronizedMethod() || m.isEliminated()) {
+            return NOT_TRIVIAL;
+        }
+        List<Instruction> body = getBody(m);
+        int size = body.size();
+        if(size == 0 || body.get(size - 1).getOpcode() < Opcodes.IRETURN || body.get(size - 1).getOpcode() > Opcodes.RETURN) {
+            return NOT_TRIVIAL;
+        }
+        if(m.getMethodName().equals("__INIT__")) {
+            if(!m.getSignature().equals("()V")) {
+                return NOT_TRIVIAL;
+            }
+            if(size == 1) {
+                return EMPTY_CONSTRUCTOR;
+            }
+            if(size == 3 && isLoadThis(body.get(0)) && body.get(1) instanceof Invoke && body.get(1).getOpcode() == Opcodes.INVOKESPECIAL) {
+                Invoke sup = (Invoke)body.get(1);
+                if(sup.getName().equals("<init>") && sup.getDesc().equals("()V")) {
+                    BytecodeMethod s = resolve(classIndex.get(mangle(sup.getOwner())), "__INIT__", "()V");
+                    if(s != null && s != m && getTrivialKind(s) == EMPTY_CONSTRUCTOR) {
+                        return EMPTY_CONSTRUCTOR;
+                    }
+                }
+            }
+            return NOT_TRIVIAL;
+        }
+        if(size == 3 && isLoadThis(body.get(0)) && body.get(1) instanceof Field && body.get(1).getOpcode() == Opcodes.GETFIELD &&
+                body.get(2).getOpcode() != Opcodes.RETURN && m.getSignature().startsWith("()")) {
+            return GETTER;
+        }
+        if(size == 4 && isLoadThis(body.get(0)) && body.get(1) instanceof VarOp && ((VarOp)body.get(1)).getIndex() == 1 &&
+                body.get(1).getOpcode() >= Opcodes.ILOAD && body.get(1).getOpcode() <= Opcodes.ALOAD &&
+                body.get(2) instanceof Field && body.get(2).getOpcode() == Opcodes.PUTFIELD && 
+                body.get(3).getOpcode() == Opcodes.RETURN && Util.getMethodArgs(m.getSignature()).size() == 1) {
+            return SETTER;
+        }
+        return NOT_TRIVIAL;
+    }
+    
+    private static boolean isLoadThis(Instruction i) {
+        return i instanceof VarOp && i.getOpcode() == Opcodes.ALOAD && ((VarOp)i).getIndex() == 0;
+    }
+    
+    @Override
+    public String toString() {
+        return "devirtualized " + devirtualized + " of " + virtualCalls + " virtual calls, inlined " + 
+                getters + " getters, " + setters + " setters and " + constructors + " empty constructors with " + nullChecks + " null checks";
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *  
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ * 
+ * Please contact Codename One through http://www.codenameone.com/ if you 
+ * need additional information or have any questions.
+ */
+
+package com.codename1.tools.translator;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An index of the C identifiers appearing in the native sources, replaces scanning every native source
+ * with {@code String.contains()} for every method. A function pointer is considered referenced when it
+ * appears in an identifier either at its start or right after an underscore, which covers references
+ * such as {@code virtual_} prefixed calls and longer overloads the same way the substring scan did.
+ */
+class NativeSymbolIndex {
+    private final Set<String> identifiers = new HashSet<String>();
+    private String[] suffixes;
+
+    /**
+     * Adds the identifiers of the given native source to the index
+     */
+    public void addSource(String source) {
+        int len = source.length();
+        int start = -1;
+        for(int iter = 0 ; iter <= len ; iter++) {
+            boolean identifierChar = iter < len && isIdentifierChar(source.charAt(iter));
+            if(identifierChar) {
+                if(start < 0) {
+                    start = iter;
+                }
+            } else if(start > -1) {
+                identifiers.add(source.substring(start, iter));
+                start = -1;
+            }
+        }
+        suffixes = null;
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '$';
+    }
+
+    /**
+     * Returns the amount of distinct identifiers in the native sources
+     */
+    public int size() {
+        return identifiers.size();
+    }
+
+    private void buildSuffixes() {
+        Set<String> s = new HashSet<String>();
+        for(String id : identifiers) {
+            s.add(id);
+            int len = id.length();
+            for(int iter = 1 ; iter < len ; iter++) {
+                if(id.charAt(iter - 1) == '_' && id.charAt(iter) != '_') {
+                    s.add(id.substring(iter));
+                }
+            }
+        }
+        suffixes = s.toArray(new String[s.size()]);
+        Arrays.sort(suffixes);
+    }
+
+    /**
+     * Returns true if the given symbol appears in a native source
+     */
+    public boolean contains(String symbol) {
+        if(suffixes == null) {
+            buildSuffixes();
+        }
+        int idx = Arrays.binarySearch(suffixes, symbol);
+        if(idx >= 0) {
+            return true;
+        }
+        // all the suffixes starting with the symbol sort directly after it
+        idx = -idx - 1;
+        return idx < suffixes.length && suffixes[idx].startsWith(symbol);
+    }
+}
@@ -25,8 +25,18 @@ package com.codename1.tools.translator;
 
 import java.io.*;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.Attribute;
 import org.objectweb.asm.ClassReader;
@@ -48,18 +58,69 @@ import com.codename1.tools.translator.bytecodes.LabelInstruction;
 public class Parser extends ClassVisitor {
     private ByteCodeClass cls;
     private String clsName;
-    private static String[] nativeSources;
+    private static NativeSymbolIndex nativeSymbols;
     private static List<ByteCodeClass> classes = new ArrayList<ByteCodeClass>();
+    private static TranslationCache cache;
     public static void cleanup() {
-    	nativeSources = null;
+    	nativeSymbols = null;
+    	cache = null;
     	classes.clear();
     	LabelInstruction.cleanup();
     }
     public static void parse(File sourceFile) throws Exception {
+        classes.add(parseClass(sourceFile));
+    }
+
+    /**
+     * Parses the given class files on the translator thread pool, the classes are added in the order of the
+     * list regardless of the order in which they finish so the output remains stable between runs
+     */
+    public static void parse(List<File> sourceFiles) throws Exception {
+        int threads = getThreadCount();
+        if(threads < 2 || sourceFiles.size() < 2) {
+            for(File f : sourceFiles) {
+                parse(f);
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<ByteCodeClass>> results = new ArrayList<Future<ByteCodeClass>>(sourceFiles.size());
+            for(final File f : sourceFiles) {
+                results.add(pool.submit(new Callable<ByteCodeClass>() {
+                    @Override
+                    public ByteCodeClass call() throws Exception {
+                        return parseClass(f);
+                    }
+                }));
+            }
+            for(Future<ByteCodeClass> r : results) {
+                classes.add(waitFor(r));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static ByteCodeClass parseClass(File sourceFile) throws Exception {
         if(ByteCodeTranslator.verbose) {
             System.out.println("Parsing: " + sourceFile.getAbsolutePath());
         }
-        ClassReader r = new ClassReader(new FileInputStream(sourceFile));
+        byte[] data = new byte[(int)sourceFile.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(sourceFile));
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+        return parseClass(data);
+    }
+
+    /**
+     * Parses a single class from its class file bytes without adding it to the translated classes
+     */
+    static ByteCodeClass parseClass(byte[] data) throws Exception {
+        ClassReader r = new ClassReader(data);
         /*if(ByteCodeTranslator.verbose) {
             System.out.println("Class: " + r.getClassName() + " derives from: " + r.getSuperName() + " interfaces: " + Arrays.asList(r.getInterfaces()));
         }*/
@@ -68,8 +129,33 @@ public class Parser extends ClassVisitor {
         p.clsName = r.getClassName().replace('/', '_').replace('$', '_');
         p.cls = new ByteCodeClass(p.clsName, r.getClassName());
         r.accept(p, ClassReader.EXPAND_FRAMES);
-        
-        classes.add(p.cls);
+        if(TranslationCache.isEnabled()) {
+            p.cls.setInputHash(TranslationCache.createDigest().digest(data));
+        }
+        return p.cls;
+    }
+
+    /**
+     * The number of threads used to parse and generate classes, defaults to the number of cores and can be
+     * set with the translatorThreads system property. A value of 1 disables concurrency
+     */
+    static int getThreadCount() {
+        return Math.max(1, Integer.getInteger("translatorThreads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    private static <T> T waitFor(Future<T> f) throws Exception {
+        try {
+            return f.get();
+        } catch(ExecutionException e) {
+            Throwable t = e.getCause();
+            if(t instanceof Exception) {
+                throw (Exception)t;
+            }
+            if(t instanceof Error) {
+                throw (Error)t;
+            }
+            throw e;
+        }
     }
     
     private static ByteCodeClass getClassByName(String name) {
@@ -102,6 +188,7 @@ public class Parser extends ClassVisitor {
     }
 
     private static ArrayList<String> constantPool = new ArrayList<String>();
+    private static Map<String, Integer> constantPoolIndex = new HashMap<String, Integer>();
     
     public static ByteCodeClass getClassObject(String name) {
         for(ByteCodeClass cls : classes) {
@@ -115,11 +202,12 @@ public class Parser extends ClassVisitor {
     /**
      * Adds the given string to the hardcoded constant pool strings returns the offset in the pool
      */
-    public static int addToConstantPool(String s) {
-        int i = constantPool.indexOf(s);
-        if(i < 0) {
+    public static synchronized int addToConstantPool(String s) {
+        Integer i = constantPoolIndex.get(s);
+        if(i == null) {
+            i = constantPool.size();
             constantPool.add(s);
-            return constantPool.size() - 1;
+            constantPoolIndex.put(s, i);
         }
         return i;
     }
@@ -330,6 +418,10 @@ public class Parser extends ClassVisitor {
         fos = new FileOutputStream(new File(outputDirectory, "cn1_class_method_index.m"));
         fos.write(bldM.toString().getBytes("UTF-8"));
         fos.close();
+        
+        if(cache != null) {
+            cache.setGlobalInputs(classes, bld, bldM);
+        }
     }
     
     private static String encodeString(String con) {
@@ -425,23 +517,29 @@ public class Parser extends ClassVisitor {
 
             // loop over methods and start eliminating the body of unused methods
             if (BytecodeMethod.optimizerOn) {
-                Date now = new Date();
+                long now = System.currentTimeMillis();
                 int neliminated = eliminateUnusedMethods();
-                Date later = new Date();
-                long dif = later.getTime()-now.getTime();
-                System.out.println("unusued Method cull removed "+neliminated+" methods in "+(dif/1000)+" seconds");
+                long dif = System.currentTimeMillis() - now;
+                System.out.println("unusued Method cull removed "+neliminated+" methods in "+dif+"ms");
             }
 
+            if (BytecodeMethod.optimizerOn && Devirtualizer.isEnabled()) {
+                long now = System.currentTimeMillis();
+                Devirtualizer d = new Devirtualizer(classes);
+                d.optimize(classes);
+                System.out.println("Call site optimization " + d + " in " + (System.currentTimeMillis() - now) + "ms");
+            }
+
+            cache = TranslationCache.create();
             generateClassAndMethodIndexHeader(outputDirectory);
 
             boolean concatenate = "true".equals(System.getProperty("concatenateFiles", "false"));
             ConcatenatingFileOutputStream cos = concatenate ? new ConcatenatingFileOutputStream(outputDirectory) : null;
 
-            for(ByteCodeClass bc : classes) {
-                file = bc.getClsName();
-                writeFile(bc, outputDirectory, cos);
-            }
+            long now = System.currentTimeMillis();
+            writeFiles(outputDirectory, cos);
             if (cos != null) cos.realClose();
+            if (cache != null) cache.printReport(System.currentTimeMillis() - now);
 
         } catch(Throwable t) {
             System.out.println("Error while working with the class: " + file);
@@ -457,13 +555,14 @@ public class Parser extends ClassVisitor {
     }
     
     private static void readNativeFiles(File outputDirectory) throws IOException {
+        long start = System.currentTimeMillis();
         File[] mFiles = outputDirectory.listFiles(new FileFilter() {
             @Override
             public boolean accept(File file) {
                 return file.getName().endsWith(".m");
             }
         });
-        nativeSources = new String[mFiles.length];
+        nativeSymbols = new NativeSymbolIndex();
         int size = 0;
         System.out.println(""+mFiles.length +" native files");
         for(int iter = 0 ; iter < mFiles.length ; iter++) { 
@@ -474,158 +573,284 @@ public class Parser extends ClassVisitor {
             byte[] dat = new byte[len];
             di.readFully(dat);
             fi.close();
-            nativeSources[iter] = new String(dat, "UTF-8");
+            nativeSymbols.addSource(new String(dat, "UTF-8"));
         }
-        System.out.println("Native files total "+(size/1024)+"K");
+        System.out.println("Native files total "+(size/1024)+"K, "+nativeSymbols.size()+" symbols indexed in "+(System.currentTimeMillis() - start)+"ms");
         
     }
     
+    /**
+     * Eliminates the body of every method that isn't reachable from the root methods, after every pass
+     * the classes that are no longer referenced are removed and since that can remove roots the process
+     * repeats until nothing changes
+     */
     private static int eliminateUnusedMethods() {
         usedByNativeCheck();
-    	return(eliminateUnusedMethods(0));
+        int total = 0;
+        int pass = 1;
+        while(true) {
+            long start = System.currentTimeMillis();
+            CallGraph graph = new CallGraph(classes);
+            long graphTime = System.currentTimeMillis();
+            Set<BytecodeMethod> reachable = graph.reachableFrom(findRootMethods());
+            long reachTime = System.currentTimeMillis();
+            int nfound = cullMethods(reachable);
+            int classCount = classes.size();
+            if(nfound > 0) {
+                cullClasses();
+            }
+            long end = System.currentTimeMillis();
+            System.out.println("Method cull pass " + pass + ": call graph of " + graph.getMethodCount() + " methods and " + 
+                    graph.getEdgeCount() + " calls in " + (graphTime - start) + "ms, " + reachable.size() + " reachable in " + 
+                    (reachTime - graphTime) + "ms, eliminated " + nfound + " methods and " + (classCount - classes.size()) + 
+                    " classes in " + (end - reachTime) + "ms");
+            total += nfound;
+            if(nfound == 0 || classCount == classes.size()) {
+                return total;
+            }
+            pass++;
+        }
     }
 
-    private static int eliminateUnusedMethods(int depth) {
-        int nfound = cullMethods(false);
-        cullClasses(nfound>0, depth);
-        return(nfound);
+    /**
+     * Runs the method cull on the given classes with the given native sources and returns the classes that
+     * remain, the static state of the parser is reset afterwards
+     */
+    static List<ByteCodeClass> eliminateUnusedMethods(List<ByteCodeClass> cls, NativeSymbolIndex natives) {
+        classes = new ArrayList<ByteCodeClass>(cls);
+        nativeSymbols = natives;
+        try {
+            eliminateUnusedMethods();
+            return classes;
+        } finally {
+            classes = new ArrayList<ByteCodeClass>();
+            nativeSymbols = null;
+        }
+    }
+
+    private static boolean isRootMethod(ByteCodeClass cls, BytecodeMethod mtd) {
+        if(mtd.isUsedByNative() || mtd.isMain() || mtd.getMethodName().equals("__CLINIT__") || mtd.getMethodName().equals("finalize") || mtd.isNative()) {
+            return true;
+        }
+        // Class.newInstance() invokes the default constructor through __NEW_INSTANCE_
+        return mtd.isDefaultConstructor() && !cls.isIsAbstract() && !cls.isIsInterface();
+    }
+
+    /**
+     * The entry points listed in the keepAlive system property, a comma separated list of classes whose methods
+     * are all kept or of methods in the com.package.Class.method form. These are invoked through reflection or
+     * from code that isn't translated so they are treated like methods referenced from native code
+     */
+    private static Set<String> findKeepAliveEntries() {
+        Set<String> result = new HashSet<String>();
+        String prop = System.getProperty("keepAlive");
+        if(prop == null) {
+            return result;
+        }
+        for(String entry : prop.split(",")) {
+            entry = entry.trim();
+            if(entry.length() == 0) {
+                continue;
+            }
+            result.add(entry.replace('.', '_').replace('$', '_'));
+            int pos = entry.lastIndexOf('.');
+            if(pos > 0) {
+                result.add(entry.substring(0, pos).replace('.', '_').replace('$', '_') + entry.substring(pos));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * The methods that are used regardless of the invocations in the translated code: methods of interfaces and
+     * Object, methods referenced from native code or listed in the keepAlive property, methods overriding such a
+     * method and the default constructors that reflection can invoke
+     */
+    private static List<BytecodeMethod> findRootMethods() {
+        List<BytecodeMethod> roots = new ArrayList<BytecodeMethod>();
+        Map<ByteCodeClass, Set<String>> nativeNames = new IdentityHashMap<ByteCodeClass, Set<String>>();
+        for(ByteCodeClass bc : classes) {
+            boolean keepAll = bc.isIsInterface() || bc.getBaseClass() == null;
+            for(BytecodeMethod mtd : bc.getMethods()) {
+                if(mtd.isEliminated()) {
+                    continue;
+                }
+                if(keepAll || isRootMethod(bc, mtd) || isMethodUsedByBaseClassOrInterface(mtd, bc, nativeNames)) {
+                    roots.add(mtd);
+                }
+            }
+        }
+        return roots;
     }
 
-    private static int cullMethods(boolean found) {
+    private static int cullMethods(Set<BytecodeMethod> reachable) {
     	int nfound = 0;
         for(ByteCodeClass bc : classes) {
-            bc.unmark();
             if(bc.isIsInterface() || bc.getBaseClass() == null) {
                 continue;
             }
             for(BytecodeMethod mtd : bc.getMethods()) {
-                if(mtd.isEliminated() || mtd.isUsedByNative() || mtd.isMain() || mtd.getMethodName().equals("__CLINIT__") || mtd.getMethodName().equals("finalize") || mtd.isNative()) {
+                if(mtd.isEliminated() || reachable.contains(mtd)) {
                     continue;
                 }
-
-                if(!isMethodUsed(mtd)) {
-                    if(isMethodUsedByBaseClassOrInterface(mtd, bc)) {
-                        continue;
-                    }
-                    found = true;
-                    mtd.setEliminated(true);
-                    nfound++;
-                    /*if(ByteCodeTranslator.verbose) {
-                    System.out.println("Eliminating method: " + mtd.getClsName() + "." + mtd.getMethodName());
-                    }*/
-                } 
+                mtd.setEliminated(true);
+                nfound++;
+                /*if(ByteCodeTranslator.verbose) {
+                System.out.println("Eliminating method: " + mtd.getClsName() + "." + mtd.getMethodName());
+                }*/
             }
         }
         return nfound;
     }
     
-    private static boolean isMethodUsedByBaseClassOrInterface(BytecodeMethod mtd, ByteCodeClass cls) {
-        boolean b = checkMethodUsedByBaseClassOrInterface(mtd, cls.getBaseClassObject());
-        if(b) {
+    private static boolean isMethodUsedByBaseClassOrInterface(BytecodeMethod mtd, ByteCodeClass cls, Map<ByteCodeClass, Set<String>> cache) {
+        if(nativeMethodNamesInHierarchy(cls.getBaseClassObject(), cache).contains(mtd.getMethodName())) {
             return true;
         }
         for(ByteCodeClass bc : cls.getBaseInterfacesObject()) {
-            b = checkMethodUsedByBaseClassOrInterface(mtd, bc);
-            if(b) {
+            if(nativeMethodNamesInHierarchy(bc, cache).contains(mtd.getMethodName())) {
                 return true;
             }
         }
         return false;
     }
 
-    private static boolean checkMethodUsedByBaseClassOrInterface(BytecodeMethod mtd, ByteCodeClass cls) {
+    /**
+     * Returns the names of the methods used by native code in the given class, its base classes and all of
+     * the interfaces they implement
+     */
+    private static Set<String> nativeMethodNamesInHierarchy(ByteCodeClass cls, Map<ByteCodeClass, Set<String>> cache) {
         if(cls == null) {
-            return false;
+            return Collections.emptySet();
         }
-        if(cls.getBaseInterfacesObject() != null) {
-            for(ByteCodeClass bc : cls.getBaseInterfacesObject()) {
-                for(BytecodeMethod m :  bc.getMethods()) {
-                    if(m.getMethodName().equals(mtd.getMethodName())) {
-                        if(m.isUsedByNative()) {
-                            return true;
-                        }
-                        break;
-                    }
-                }
-            }
+        Set<String> names = cache.get(cls);
+        if(names != null) {
+            return names;
         }
+        names = new HashSet<String>();
+        // guards against cycles in broken hierarchies
+        cache.put(cls, names);
         for(BytecodeMethod m :  cls.getMethods()) {
-            if(m.getMethodName().equals(mtd.getMethodName())) {
-                if(m.isUsedByNative()) {
-                    return true;
-                }
-                break;
+            if(m.isUsedByNative()) {
+                names.add(m.getMethodName());
             }
         }
-        return false;
-    }
-
-    private static void cullClasses(boolean found, int depth) {
-        if(found && depth < 3) {
-            for(ByteCodeClass bc : classes) {
-                bc.updateAllDependencies();
-            }   
-            //int classCount = classes.size();
-            ByteCodeClass.markDependencies(classes);
-            List<ByteCodeClass> tmp = ByteCodeClass.clearUnmarked(classes);
-            /*if(ByteCodeTranslator.verbose) {
-            System.out.println("Classes removed from: " + classCount + " to " + classes.size());
-            for(ByteCodeClass bc : classes) {
-            if(!tmp.contains(bc)) {
-            System.out.println("Removed class: " + bc.getClsName());
-            }
+        names.addAll(nativeMethodNamesInHierarchy(cls.getBaseClassObject(), cache));
+        if(cls.getBaseInterfacesObject() != null) {
+            for(ByteCodeClass bc : cls.getBaseInterfacesObject()) {
+                names.addAll(nativeMethodNamesInHierarchy(bc, cache));
             }
-            }*/
-            classes = tmp;
-            eliminateUnusedMethods(depth + 1);
         }
+        return names;
+    }
+
+    private static void cullClasses() {
+        for(ByteCodeClass bc : classes) {
+            bc.updateAllDependencies();
+            bc.unmark();
+        }   
+        ByteCodeClass.markDependencies(classes);
+        classes = ByteCodeClass.clearUnmarked(classes);
     }
     
     private static void usedByNativeCheck() {
+        Set<String> keepAlive = findKeepAliveEntries();
         for(ByteCodeClass bc : classes) {
+            boolean keepClass = keepAlive.contains(bc.getClsName());
             //java_lang_Thread_runImpl___long
             for(BytecodeMethod mtd : bc.getMethods()) {
-                // check native code        
+                if(mtd.isUsedByNative()) {
+                    continue;
+                }
+                if(keepClass || keepAlive.contains(bc.getClsName() + "." + mtd.getMethodName())) {
+                    mtd.setUsedByNative(true);
+                    continue;
+                }
                 StringBuilder b = new StringBuilder();
                 mtd.appendFunctionPointer(b);
-                String str = b.toString();
-                for(String s : nativeSources) {
-                    if(s.contains(str)) {
-                        mtd.setUsedByNative(true);
-                        break;
-                    }
-                }  
+                if(nativeSymbols.contains(b.toString())) {
+                    mtd.setUsedByNative(true);
+                }
             }
         }
     }
-    
-    private static boolean isMethodUsed(BytecodeMethod m) {
-        for(ByteCodeClass bc : classes) {
-            for(BytecodeMethod mtd : bc.getMethods()) {
-                if(mtd.isEliminated() || mtd == m) {
-                    continue;
+
+    /**
+     * Generates the classes on the translator thread pool. Every class writes its own files unless they are
+     * concatenated, in which case the code is generated concurrently and written in the order of the class list
+     */
+    private static void writeFiles(final File outputDir, final ConcatenatingFileOutputStream cos) throws Exception {
+        int threads = getThreadCount();
+        if(threads < 2) {
+            for(ByteCodeClass bc : classes) {
+                try {
+                    writeFile(bc, outputDir, cos, generateCode(bc));
+                } catch(Exception e) {
+                    System.out.println("Error while working with the class: " + bc.getClsName());
+                    throw e;
                 }
-                if(mtd.isMethodUsed(m)) {
-                    return true;
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<byte[][]>> results = new ArrayList<Future<byte[][]>>(classes.size());
+            for(final ByteCodeClass bc : classes) {
+                results.add(pool.submit(new Callable<byte[][]>() {
+                    @Override
+                    public byte[][] call() throws Exception {
+                        try {
+                            byte[][] code = generateCode(bc);
+                            if(cos == null) {
+                                writeFile(bc, outputDir, null, code);
+                                return null;
+                            }
+                            return code;
+                        } catch(Exception e) {
+                            System.out.println("Error while working with the class: " + bc.getClsName());
+                            throw e;
+                        }
+                    }
+                }));
+            }
+            for(int iter = 0 ; iter < results.size() ; iter++) {
+                byte[][] code = waitFor(results.get(iter));
+                results.set(iter, null);
+                if(cos != null) {
+                    writeFile(classes.get(iter), outputDir, cos, code);
                 }
             }
+        } finally {
+            pool.shutdownNow();
         }
-        
-        // check native code        
-        StringBuilder b = new StringBuilder();
-        m.appendFunctionPointer(b);
-        String str = b.toString();
-        for(String s : nativeSources) {
-            if(s.contains(str)) {
-                return true;
+    }
+
+    /**
+     * Returns the content of the files of the class, reusing the output of a previous build if the translation 
+     * cache has it
+     */
+    private static byte[][] generateCode(ByteCodeClass cls) {
+        String key = null;
+        if(cache != null) {
+            key = cache.getKey(cls);
+            byte[][] code = cache.get(cls, key);
+            if(code != null) {
+                return code;
             }
         }
-        
-        
-        return false;
+        byte[][] code;
+        if(ByteCodeTranslator.output == ByteCodeTranslator.OutputType.OUTPUT_TYPE_IOS) {
+            code = new byte[][] {cls.generateCCode(classes).getBytes(), cls.generateCHeader().getBytes()};
+        } else {
+            code = new byte[][] {cls.generateCSharpCode().getBytes()};
+        }
+        if(cache != null) {
+            cache.put(cls, key, code);
+        }
+        return code;
     }
 
-    private static void writeFile(ByteCodeClass cls, File outputDir, ConcatenatingFileOutputStream writeBufferInstead) throws Exception {
+    private static void writeFile(ByteCodeClass cls, File outputDir, ConcatenatingFileOutputStream writeBufferInstead, byte[][] code) throws Exception {
         OutputStream outMain =
                 writeBufferInstead != null && ByteCodeTranslator.output == ByteCodeTranslator.OutputType.OUTPUT_TYPE_IOS ?
                         writeBufferInstead :
@@ -635,16 +860,16 @@ public class Parser extends ClassVisitor {
             ((ConcatenatingFileOutputStream)outMain).beginNextFile(cls.getClsName());
         }
         if(ByteCodeTranslator.output == ByteCodeTranslator.OutputType.OUTPUT_TYPE_IOS) {
-            outMain.write(cls.generateCCode(classes).getBytes());
+            outMain.write(code[0]);
             outMain.close();
 
             // we also need to write the header file for iOS
             String headerName = cls.getClsName() + ".h";
             FileOutputStream outHeader = new FileOutputStream(new File(outputDir, headerName));
-            outHeader.write(cls.generateCHeader().getBytes());
+            outHeader.write(code[1]);
             outHeader.close();
         } else {
-            outMain.write(cls.generateCSharpCode().getBytes());
+            outMain.write(code[0]);
             outMain.close();        
         }
     }
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *  
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ * 
+ * Please contact Codename One through http://www.codenameone.com/ if you 
+ * need additional information or have any questions.
+ */
+
+package com.codename1.tools.translator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the code generated for every class in a local directory so unchanged classes aren't regenerated on the
+ * next build. A class is reused when its key matches, the key covers the class file of the class, its base
+ * classes, interfaces and dependencies as well as the global inputs of the generated code such as the class
+ * index, the constant pool and the set of culled methods. Enabled with the translatorCache system property
+ * pointing at the cache directory.
+ */
+class TranslationCache {
+    /**
+     * Bump this whenever the generated code changes so caches created by older translators are discarded
+     */
+    private static final int VERSION = 1;
+    
+    private final File directory;
+    private final Map<String, ByteCodeClass> classIndex = new HashMap<String, ByteCodeClass>();
+    private byte[] globalKey;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    
+    private TranslationCache(File directory) {
+        this.directory = directory;
+    }
+    
+    static boolean isEnabled() {
+        return System.getProperty("translatorCache") != null;
+    }
+    
+    /**
+     * Returns the cache for this run or null if incremental translation is disabled
+     */
+    static TranslationCache create() {
+        String dir = System.getProperty("translatorCache");
+        if(dir == null) {
+            return null;
+        }
+        File f = new File(dir);
+        f.mkdirs();
+        if(!f.isDirectory()) {
+            System.out.println("Translation cache directory " + f.getAbsolutePath() + " isn't writable, translating all classes");
+            return null;
+        }
+        return new TranslationCache(f);
+    }
+    
+    static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch(NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Hashes the inputs shared by all the classes, invoked once the class and method index is generated and
+     * before any class is written
+     */
+    void setGlobalInputs(List<ByteCodeClass> classes, CharSequence indexHeader, CharSequence indexSource) {
+        MessageDigest md = createDigest();
+        update(md, "v" + VERSION);
+        update(md, translatorVersion());
+        update(md, ByteCodeTranslator.output.name());
+        update(md, String.valueOf(BytecodeMethod.optimizerOn));
+        String[] props = {"INCLUDE_NPE_CHECKS", "fieldNullChecks", "saveUnitTests", "devirtualize", "keepAlive"};
+        for(String p : props) {
+            update(md, p + "=" + System.getProperty(p));
+        }
+        
+        // the index covers the class ids, method offsets and the constant pool
+        update(md, indexHeader);
+        update(md, indexSource);
+        for(ByteCodeClass bc : classes) {
+            classIndex.put(bc.getClsName(), bc);
+            for(BytecodeMethod m : bc.getMethods()) {
+                update(md, m.getMethodName() + m.getSignature() + ":" + m.isEliminated() + m.isVirtualOverriden() + m.isForceVirtual());
+            }
+        }
+        for(String s : BytecodeMethod.getVirtualMethodsInvoked()) {
+            update(md, s);
+        }
+        for(String s : ByteCodeClass.getArrayTypes()) {
+            update(md, s);
+        }
+        synchronized(ByteCodeClass.getWritableFields()) {
+            for(String s : new TreeSet<String>(ByteCodeClass.getWritableFields())) {
+                update(md, s);
+            }
+        }
+        globalKey = md.digest();
+    }
+    
+    /**
+     * The translator build, so upgrading the translator invalidates the cache even if the version wasn't bumped
+     */
+    private static String translatorVersion() {
+        try {
+            URL u = TranslationCache.class.getProtectionDomain().getCodeSource().getLocation();
+            File f = new File(u.toURI());
+            if(f.isFile()) {
+                return f.length() + ":" + f.lastModified();
+            }
+            File cls = new File(f, TranslationCache.class.getName().replace('.', '/') + ".class");
+            return cls.length() + ":" + cls.lastModified();
+        } catch(Exception e) {
+            return "";
+        }
+    }
+    
+    private static void update(MessageDigest md, CharSequence s) {
+        int len = s.length();
+        for(int iter = 0 ; iter < len ; iter++) {
+            char c = s.charAt(iter);
+            md.update((byte)(c >> 8));
+            md.update((byte)c);
+        }
+        md.update((byte)0);
+    }
+    
+    /**
+     * Computes the key of the given class
+     */
+    String getKey(ByteCodeClass cls) {
+        MessageDigest md = createDigest();
+        md.update(globalKey);
+        Set<ByteCodeClass> inputs = new TreeSet<ByteCodeClass>(new Comparator<ByteCodeClass>() {
+            @Override
+            public int compare(ByteCodeClass o1, ByteCodeClass o2) {
+                return o1.getClsName().compareTo(o2.getClsName());
+            }
+        });
+        addHierarchy(cls, inputs);
+        for(String s : cls.getDependsClassesInterfaces()) {
+            ByteCodeClass dep = classIndex.get(s);
+            if(dep != null) {
+                addHierarchy(dep, inputs);
+            }
+        }
+        for(ByteCodeClass bc : inputs) {
+            update(md, bc.getClsName());
+            if(bc.getInputHash() != null) {
+                md.update(bc.getInputHash());
+            }
+        }
+        byte[] digest = md.digest();
+        StringBuilder b = new StringBuilder();
+        for(byte d : digest) {
+            b.append(Character.forDigit((d >> 4) & 0xf, 16));
+            b.append(Character.forDigit(d & 0xf, 16));
+        }
+        return b.toString();
+    }
+    
+    private static void addHierarchy(ByteCodeClass bc, Set<ByteCodeClass> inputs) {
+        if(bc == null || !inputs.add(bc)) {
+            return;
+        }
+        addHierarchy(bc.getBaseClassObject(), inputs);
+        if(bc.getBaseInterfacesObject() != null) {
+            for(ByteCodeClass c : bc.getBaseInterfacesObject()) {
+                addHierarchy(c, inputs);
+            }
+        }
+    }
+    
+    private File getFile(ByteCodeClass cls) {
+        return new File(directory, cls.getClsName() + ".cache");
+    }
+    
+    /**
+     * Returns the files generated for the class when it was last translated or null if the key changed since
+     */
+    byte[][] get(ByteCodeClass cls, String key) {
+        File f = getFile(cls);
+        if(f.exists()) {
+            try {
+                DataInputStream in = new DataInputStream(new FileInputStream(f));
+                try {
+                    if(in.readInt() == VERSION && key.equals(in.readUTF())) {
+                        byte[][] code = new byte[in.readInt()][];
+                        for(int iter = 0 ; iter < code.length ; iter++) {
+                            code[iter] = new byte[in.readInt()];
+                            in.readFully(code[iter]);
+                        }
+                        hits.incrementAndGet();
+                        return code;
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch(IOException e) {
+                System.out.println("Failed to read the translation cache for " + cls.getClsName() + ": " + e);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+    
+    /**
+     * Stores the files generated for the class, failures are logged and don't fail the build
+     */
+    void put(ByteCodeClass cls, String key, byte[][] code) {
+        File f = getFile(cls);
+        File tmp = new File(directory, cls.getClsName() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp));
+            try {
+                out.writeInt(VERSION);
+                out.writeUTF(key);
+                out.writeInt(code.length);
+                for(byte[] b : code) {
+                    out.writeInt(b.length);
+                    out.write(b);
+                }
+            } finally {
+                out.close();
+            }
+            f.delete();
+            if(!tmp.renameTo(f)) {
+                tmp.delete();
+            }
+        } catch(IOException e) {
+            System.out.println("Failed to write the translation cache for " + cls.getClsName() + ": " + e);
+            tmp.delete();
+        }
+    }
+    
+    void printReport(long time) {
+        int h = hits.get();
+        int total = h + misses.get();
+        System.out.println("Translation cache: reused " + h + " of " + total + " classes, regenerated " + (total - h) + 
+                " in " + time + "ms");
+    }
+}
@@ -34,9 +34,21 @@ public class BasicInstruction extends Instruction implements AssignableExpressio
     private final int value;
     private int maxStack;
     private int maxLocals;
-    private static boolean synchronizedMethod;
-    private static boolean staticMethod;
-    private static String className;
+
+    /**
+     * The method whose code is currently generated, kept per thread since classes are generated concurrently
+     */
+    private static class MethodContext {
+        boolean synchronizedMethod;
+        boolean staticMethod;
+        String className;
+    }
+    private static final ThreadLocal<MethodContext> currentMethod = new ThreadLocal<MethodContext>() {
+        @Override
+        protected MethodContext initialValue() {
+            return new MethodContext();
+        }
+    };
     
     public BasicInstruction(int opcode, int value) {
         super(opcode);
@@ -48,9 +60,10 @@ public class BasicInstruction extends Instruction implements AssignableExpressio
     }
     
     public static void setSynchronizedMethod(boolean b, boolean stat, String cls) {
-        synchronizedMethod = b;
-        staticMethod = stat;
-        className = cls;
+        MethodContext c = currentMethod.get();
+        c.synchronizedMethod = b;
+        c.staticMethod = stat;
+        c.className = cls;
     }
     
     public void setMaxes(int maxStack, int maxLocals) {
@@ -59,10 +72,11 @@ public class BasicInstruction extends Instruction implements AssignableExpressio
     }
 
     private void appendSynchronized(StringBuilder b) {
-        if(synchronizedMethod) {
-            if(staticMethod) {
+        MethodContext c = currentMethod.get();
+        if(c.synchronizedMethod) {
+            if(c.staticMethod) {
                 b.append("    monitorExit(threadStateData, (JAVA_OBJECT)&class__");
-                b.append(className);
+                b.append(c.className);
                 b.append(");\n");
             } else {
                 b.append("    monitorExit(threadStateData, __cn1ThisObject);\n");
@@ -577,7 +591,7 @@ public class BasicInstruction extends Instruction implements AssignableExpressio
             case Opcodes.RETURN:
                 appendSynchronized(b);
                 
-                if(!hasInstructions) {
+                if(!hasInstructions()) {
                     b.append("    return;\n");
                     break;
                 }
@@ -46,6 +46,18 @@ public class Field extends Instruction implements AssignableExpression {
         this.desc = desc;
     }
 
+    public String getOwner() {
+        return owner;
+    }
+    
+    public String getFieldName() {
+        return name;
+    }
+    
+    public String getDesc() {
+        return desc;
+    }
+    
     public boolean isObject() {
         char c = desc.charAt(0);
         return c == '[' || c == 'L';
@@ -34,14 +34,21 @@ import java.util.List;
  */
 public abstract class Instruction implements SignatureSet
 {
-    static boolean hasInstructions;
+    /**
+     * Whether the method currently generated has a body, kept per thread since classes are generated concurrently
+     */
+    private static final ThreadLocal<Boolean> hasInstructions = new ThreadLocal<Boolean>();
     private boolean optimized=false;
     private BytecodeMethod method;
     
     public static void setHasInstructions(boolean h) {
-        hasInstructions = h;
+        hasInstructions.set(Boolean.valueOf(h));
     }   
 
+    static boolean hasInstructions() {
+        return hasInstructions.get() == Boolean.TRUE;
+    }
+
     @Override
     public SignatureSet nextSignature() {
         return null;
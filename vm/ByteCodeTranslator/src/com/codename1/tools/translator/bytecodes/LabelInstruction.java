@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
 
@@ -46,9 +47,10 @@ public class LabelInstruction extends Instruction {
             this.cls = cls; this.counter = counter;
         }
     }
-    private static Map<Label, List<Pair>> tryBeginLabels = new HashMap<Label, List<Pair>>();
-    private static Map<Label, Integer> tryEndLabels = new HashMap<Label, Integer>();
-    private static Map<Label, Integer> labelCatchDepth = new HashMap<Label, Integer>();
+    // labels belong to a single method so each map entry is only touched by the thread generating that method
+    private static Map<Label, List<Pair>> tryBeginLabels = new ConcurrentHashMap<Label, List<Pair>>();
+    private static Map<Label, Integer> tryEndLabels = new ConcurrentHashMap<Label, Integer>();
+    private static Map<Label, Integer> labelCatchDepth = new ConcurrentHashMap<Label, Integer>();
     // [ddyer 4/2017] convert this from a tree of strings to use the label itself
     // this fixes the problem of mysterious "statement expected" errors from builds,
     // caused because labels created by the assembler are not globally unique.
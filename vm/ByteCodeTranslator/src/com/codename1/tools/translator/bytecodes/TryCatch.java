@@ -37,14 +37,27 @@ public class TryCatch extends Instruction {
     private Label end;
     private Label handler;
     private String type;
-    private static boolean firstException;
-    private static boolean hasTryCatch;
-    private static int counter;
+
+    /**
+     * Try/catch state of the method currently generated, kept per thread since classes are generated concurrently
+     */
+    private static class MethodState {
+        boolean firstException;
+        boolean hasTryCatch;
+        int counter;
+    }
+    private static final ThreadLocal<MethodState> state = new ThreadLocal<MethodState>() {
+        @Override
+        protected MethodState initialValue() {
+            return new MethodState();
+        }
+    };
     
     public static void reset() {
-        firstException = true;
-        hasTryCatch = false;
-        counter = 1;
+        MethodState s = state.get();
+        s.firstException = true;
+        s.hasTryCatch = false;
+        s.counter = 1;
     }
     
     public TryCatch(Label start, Label end, Label handler, String type) {
@@ -67,17 +80,19 @@ public class TryCatch extends Instruction {
     }
     
     public static boolean isTryCatchInMethod() {
-        return hasTryCatch;
+        return state.get().hasTryCatch;
     }
     
     @Override
     public void appendInstruction(StringBuilder b) {
-        hasTryCatch = true;
-        if(firstException) {
+        MethodState s = state.get();
+        s.hasTryCatch = true;
+        if(s.firstException) {
             // we need to append basic exception handling logic
             b.append("    DEFINE_EXCEPTION_HANDLING_CONSTANTS();\n");
-            firstException = false;
+            s.firstException = false;
         }
+        int counter = s.counter;
         
         String cid = "0";
         if(type != null) {
@@ -104,7 +119,7 @@ public class TryCatch extends Instruction {
         b.append(counter);
         b.append(");\n");
         LabelInstruction.addTryEndLabel(end);
-        counter++;
+        s.counter++;
 //        b.append("/* try/catch start: ");
 //        b.append(start);
 //        b.append(", end: ");
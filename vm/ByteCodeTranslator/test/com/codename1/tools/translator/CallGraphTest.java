@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.tools.translator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Runs the unused method cull on a small application and verifies which methods survive: methods reached
+ * from main, from native code, through reflection or from the keepAlive entry points are kept while dead
+ * code and overrides of methods that are never invoked are eliminated. The translator has no test framework
+ * on its classpath so this is a plain program that exits with an error when a check fails.
+ */
+public class CallGraphTest {
+    private static final String PREFIX = "com_codename1_tools_translator_CallGraphTest_";
+    private final List<ByteCodeClass> classes = new ArrayList<ByteCodeClass>();
+    private List<ByteCodeClass> remaining;
+    private int checks;
+
+    public static void main(String[] args) throws Exception {
+        CallGraphTest t = new CallGraphTest();
+        t.run();
+        System.out.println("CallGraphTest passed " + t.checks + " checks");
+    }
+
+    private void run() throws Exception {
+        checkNativeSymbols();
+
+        classes.add(Parser.parseClass(createObject()));
+        Class[] fixtures = {App.class, Widget.class, Fancy.class, Plugin.class, Service.class, Unused.class};
+        for(Class c : fixtures) {
+            classes.add(Parser.parseClass(readClass(c)));
+        }
+        for(ByteCodeClass bc : classes) {
+            bc.setBaseClassObject(find(bc.getBaseClass()));
+            List<ByteCodeClass> interfaces = new ArrayList<ByteCodeClass>();
+            for(String s : bc.getBaseInterfaces()) {
+                interfaces.add(find(s));
+            }
+            bc.setBaseInterfacesObject(interfaces);
+        }
+
+        // the call graph resolves invocations by name and descriptor so both implementations of draw are callees
+        CallGraph graph = new CallGraph(classes);
+        List<BytecodeMethod> callees = graph.getCallees(method("Widget", "draw"));
+        check(callees.contains(method("Widget", "helper")), "Widget.draw should call helper");
+        check(graph.reachableFrom(callees).contains(method("Widget", "helper")), "A callee should be reachable");
+        check(graph.getCallees(method("Widget", "helper")).isEmpty(), "helper doesn't call anything");
+
+        NativeSymbolIndex natives = new NativeSymbolIndex();
+        natives.addSource("JAVA_VOID " + PREFIX + "Widget_onNativeEvent___R_int(CODENAME_ONE_THREAD_STATE, JAVA_OBJECT w) {\n"
+                + "    virtual_" + PREFIX + "Widget_refresh__(threadStateData, w);\n}\n");
+        String oldKeepAlive = System.getProperty("keepAlive");
+        System.setProperty("keepAlive", CallGraphTest.class.getName() + "$Plugin.start, " + CallGraphTest.class.getName() + "$Service");
+        try {
+            remaining = Parser.eliminateUnusedMethods(classes, natives);
+        } finally {
+            if(oldKeepAlive == null) {
+                System.clearProperty("keepAlive");
+            } else {
+                System.setProperty("keepAlive", oldKeepAlive);
+            }
+        }
+
+        // reached from main
+        checkKept("App", "main");
+        checkKept("Widget", "draw");
+        checkKept("Widget", "helper");
+        checkKept("Fancy", "draw");
+
+        // reached from native code, including the override of a method that native code calls
+        checkKept("Widget", "refresh");
+        checkKept("Fancy", "refresh");
+        checkKept("Widget", "layout");
+
+        // reached through reflection, Class.newInstance() invokes the default constructor
+        checkKept("Plugin", "__INIT__");
+
+        // the keepAlive entry points
+        checkKept("Plugin", "start");
+        checkKept("Plugin", "configure");
+        checkKept("Service", "connect");
+        checkKept("Service", "disconnect");
+        check(remaining.contains(find(PREFIX + "Service")), "A class listed in keepAlive should remain");
+
+        // dead code
+        checkEliminated("Widget", "unused");
+        checkEliminated("Widget", "ping");
+        checkEliminated("Widget", "pong");
+        checkEliminated("Plugin", "stop");
+        checkEliminated("Widget", "dispose");
+        checkEliminated("Fancy", "dispose");
+        check(!remaining.contains(find(PREFIX + "Unused")), "A class nothing refers to should be removed");
+    }
+
+    /**
+     * A symbol is found at the start of an identifier or right after an underscore but not in the middle of a word
+     */
+    private void checkNativeSymbols() {
+        NativeSymbolIndex index = new NativeSymbolIndex();
+        index.addSource("void x() { virtual_java_lang_Object_hashCode___R_int(t, o); java_lang_String_length___R_int(t, s); }");
+        check(index.contains("java_lang_Object_hashCode___R_int"), "A symbol after a prefix should be found");
+        check(index.contains("java_lang_String_length__"), "A symbol that starts an identifier should be found");
+        check(!index.contains("ang_String_length___R_int"), "A symbol in the middle of a word shouldn't be found");
+        check(!index.contains("java_lang_Object_equals___java_lang_Object_R_boolean"), "A missing symbol shouldn't be found");
+    }
+
+    private ByteCodeClass find(String name) {
+        if(name == null) {
+            return null;
+        }
+        String mangled = name.replace('/', '_').replace('$', '_');
+        for(ByteCodeClass bc : classes) {
+            if(bc.getClsName().equals(mangled)) {
+                return bc;
+            }
+        }
+        throw new IllegalArgumentException("Missing class " + name);
+    }
+
+    private BytecodeMethod method(String cls, String method) {
+        for(BytecodeMethod m : find(PREFIX + cls).getMethods()) {
+            if(m.getMethodName().equals(method)) {
+                return m;
+            }
+        }
+        throw new IllegalArgumentException("Missing method " + cls + "." + method);
+    }
+
+    private void checkKept(String cls, String method) {
+        check(remaining.contains(find(PREFIX + cls)), cls + " should remain");
+        check(!method(cls, method).isEliminated(), cls + "." + method + " should be kept");
+    }
+
+    private void checkEliminated(String cls, String method) {
+        check(method(cls, method).isEliminated(), cls + "." + method + " should be eliminated");
+    }
+
+    private void check(boolean condition, String message) {
+        checks++;
+        if(!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    private static byte[] readClass(Class c) throws Exception {
+        InputStream in = c.getResourceAsStream("/" + c.getName().replace('.', '/') + ".class");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int size = in.read(buffer);
+            while(size > -1) {
+                out.write(buffer, 0, size);
+                size = in.read(buffer);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] createObject() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC, "java/lang/Object", null, null, null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    static class App {
+        static Object plugin;
+
+        public static void main(String[] args) {
+            Widget w = new Widget();
+            w.draw();
+            w = new Fancy();
+            w.draw();
+            plugin = Plugin.class;
+        }
+    }
+
+    static class Widget {
+        void draw() {
+            helper();
+        }
+
+        void helper() {
+        }
+
+        void refresh() {
+            layout();
+        }
+
+        void layout() {
+        }
+
+        void dispose() {
+        }
+
+        void unused() {
+            dispose();
+            ping(3);
+        }
+
+        void ping(int count) {
+            if(count > 0) {
+                pong(count - 1);
+            }
+        }
+
+        void pong(int count) {
+            if(count > 0) {
+                ping(count - 1);
+            }
+        }
+    }
+
+    static class Fancy extends Widget {
+        void draw() {
+        }
+
+        void refresh() {
+        }
+
+        void dispose() {
+        }
+    }
+
+    static class Plugin {
+        int state;
+
+        Plugin() {
+            state = 1;
+        }
+
+        void start() {
+            configure();
+        }
+
+        void configure() {
+            state = 2;
+        }
+
+        void stop() {
+            state = 0;
+        }
+    }
+
+    static class Service {
+        void connect() {
+        }
+
+        void disconnect() {
+        }
+    }
+
+    static class Unused {
+        void run() {
+        }
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.tools.translator;
+
+import com.codename1.tools.translator.bytecodes.CustomIntruction;
+import com.codename1.tools.translator.bytecodes.Field;
+import com.codename1.tools.translator.bytecodes.Instruction;
+import com.codename1.tools.translator.bytecodes.Invoke;
+import com.codename1.tools.translator.bytecodes.TypeInstruction;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Runs the call site optimization on a small class hierarchy and verifies the rewritten instructions. The
+ * translator has no test framework on its classpath so this is a plain program that exits with an error
+ * when a check fails.
+ */
+public class DevirtualizerTest {
+    private static final String PREFIX = "com_codename1_tools_translator_DevirtualizerTest_";
+    private final List<ByteCodeClass> classes = new ArrayList<ByteCodeClass>();
+    private int checks;
+
+    public static void main(String[] args) throws Exception {
+        DevirtualizerTest t = new DevirtualizerTest();
+        t.run();
+        System.out.println("DevirtualizerTest passed " + t.checks + " checks");
+    }
+
+    private void run() throws Exception {
+        check(!Devirtualizer.isEnabled(), "The pass should be off by default");
+
+        classes.add(Parser.parseClass(createObject()));
+        classes.add(Parser.parseClass(createGreeter()));
+        classes.add(Parser.parseClass(createGreeterImpl()));
+        classes.add(Parser.parseClass(createGreeterCaller()));
+        // the callers come first so constructors are classified before their own super() calls are removed
+        Class[] fixtures = {Caller.class, Counter.class, EmptyChild.class, Empty.class, Base.class, Sub.class, Leaf.class,
+            Shape.class, Square.class, Animal.class, Dog.class, Cat.class, Orphan.class, Named.class, NamedImpl.class};
+        for(Class c : fixtures) {
+            classes.add(Parser.parseClass(readClass(c)));
+        }
+        for(ByteCodeClass bc : classes) {
+            bc.setBaseClassObject(find(bc.getBaseClass()));
+            List<ByteCodeClass> interfaces = new ArrayList<ByteCodeClass>();
+            for(String s : bc.getBaseInterfaces()) {
+                interfaces.add(find(s));
+            }
+            bc.setBaseInterfacesObject(interfaces);
+        }
+
+        Devirtualizer d = new Devirtualizer(classes);
+        d.optimize(classes);
+
+        // overridden methods
+        checkInvoke("Caller", "callBase", Opcodes.INVOKEVIRTUAL, "Base", "compute");
+        checkInvoke("Caller", "callSub", Opcodes.INVOKESPECIAL, "Sub", "compute");
+        checkNullCheck("Caller", "callSub", 1);
+        checkInvoke("Caller", "callLeaf", Opcodes.INVOKESPECIAL, "Sub", "compute");
+
+        // abstract targets
+        checkInvoke("Caller", "area", Opcodes.INVOKESPECIAL, "Square", "area");
+        checkInvoke("Caller", "sides", Opcodes.INVOKESPECIAL, "Shape", "sides");
+        checkInvoke("Caller", "sound", Opcodes.INVOKEVIRTUAL, "Animal", "sound");
+        checkInvoke("Caller", "orphan", Opcodes.INVOKEVIRTUAL, "Orphan", "value");
+
+        // interface targets
+        checkInvoke("Caller", "name", Opcodes.INVOKESPECIAL, "NamedImpl", "name");
+        checkNullCheck("Caller", "name", 1);
+        checkInvoke("Caller", "describe", Opcodes.INVOKESPECIAL, "NamedImpl", "describe");
+        checkNullCheck("Caller", "describe", 2);
+        checkInvoke("GreeterCaller", "call", Opcodes.INVOKEINTERFACE, "Greeter", "greet");
+        checkNullCheck("GreeterCaller", "call", -1);
+
+        // trivial getters and setters
+        checkField("Caller", "getter", Opcodes.GETFIELD, "value");
+        checkNullCheck("Caller", "getter", 1);
+        checkField("Caller", "setter", Opcodes.PUTFIELD, "value");
+        checkNullCheck("Caller", "setter", 2);
+        checkField("Base", "twice", Opcodes.GETFIELD, "value");
+        checkNullCheck("Base", "twice", -1);
+        checkField("Base", "copyTo", Opcodes.PUTFIELD, "value");
+        checkNullCheck("Base", "copyTo", 2);
+
+        // constructors
+        List<Instruction> create = instructions("Caller", "create");
+        check(count(create, Invoke.class) == 0, "The empty constructor call should be removed");
+        check(count(create, TypeInstruction.class) == 1, "The allocation should remain");
+        check(count(create, CustomIntruction.class) == 0, "Constructor calls don't need a null check");
+        check(count(instructions("Caller", "createChild"), Invoke.class) == 0, "A constructor chain of empty constructors should be removed");
+        check(count(instructions("EmptyChild", "__INIT__"), Invoke.class) == 0, "The super() call of an empty chain should be removed");
+        checkInvoke("Caller", "createCounter", Opcodes.INVOKESPECIAL, "Counter", "<init>");
+        check(count(instructions("Counter", "__INIT__"), Invoke.class) == 0, "Counter only calls an empty super constructor");
+    }
+
+    private ByteCodeClass find(String name) {
+        if(name == null) {
+            return null;
+        }
+        String mangled = name.replace('/', '_').replace('$', '_');
+        for(ByteCodeClass bc : classes) {
+            if(bc.getClsName().equals(mangled)) {
+                return bc;
+            }
+        }
+        throw new IllegalArgumentException("Missing class " + name);
+    }
+
+    private List<Instruction> instructions(String cls, String method) {
+        for(BytecodeMethod m : find(PREFIX + cls).getMethods()) {
+            if(m.getMethodName().equals(method)) {
+                return m.getInstructions();
+            }
+        }
+        throw new IllegalArgumentException("Missing method " + cls + "." + method);
+    }
+
+    private static int count(List<Instruction> instructions, Class type) {
+        int result = 0;
+        for(Instruction i : instructions) {
+            if(type.isInstance(i)) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    private void checkInvoke(String cls, String method, int opcode, String owner, String name) {
+        for(Instruction i : instructions(cls, method)) {
+            if(i instanceof Invoke && ((Invoke)i).getName().equals(name)) {
+                Invoke inv = (Invoke)i;
+                String msg = cls + "." + method + " calling " + name;
+                check(inv.getOpcode() == opcode, msg + " has opcode " + inv.getOpcode() + " expected " + opcode);
+                check(inv.getOwner().endsWith("$" + owner), msg + " resolved to " + inv.getOwner() + " expected " + owner);
+                return;
+            }
+        }
+        check(false, cls + "." + method + " doesn't call " + name);
+    }
+
+    private void checkField(String cls, String method, int opcode, String name) {
+        List<Instruction> l = instructions(cls, method);
+        check(count(l, Invoke.class) == 0, cls + "." + method + " should be inlined");
+        for(Instruction i : l) {
+            if(i instanceof Field && i.getOpcode() == opcode && ((Field)i).getFieldName().equals(name)) {
+                return;
+            }
+        }
+        check(false, cls + "." + method + " doesn't access " + name + " with opcode " + opcode);
+    }
+
+    /**
+     * Verifies the null check of the receiver at the given depth right before the call or the inlined field
+     * access, -1 verifies there is no check
+     */
+    private void checkNullCheck(String cls, String method, int depth) {
+        List<Instruction> l = instructions(cls, method);
+        String msg = cls + "." + method;
+        if(depth < 0) {
+            check(count(l, CustomIntruction.class) == 0, msg + " shouldn't check the receiver");
+            return;
+        }
+        check(count(l, CustomIntruction.class) == 1, msg + " should check the receiver once");
+        for(int iter = 0 ; iter < l.size() ; iter++) {
+            if(l.get(iter) instanceof CustomIntruction) {
+                StringBuilder b = new StringBuilder();
+                l.get(iter).appendInstruction(b, l);
+                check(b.toString().contains("SP[-" + depth + "].data.o == JAVA_NULL"), msg + " checks " + b);
+                Instruction next = l.get(iter + 1);
+                check(next instanceof Invoke || next instanceof Field, msg + " check isn't followed by the call");
+            }
+        }
+    }
+
+    private void check(boolean condition, String message) {
+        checks++;
+        if(!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    private static byte[] readClass(Class c) throws Exception {
+        InputStream in = c.getResourceAsStream("/" + c.getName().replace('.', '/') + ".class");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int size = in.read(buffer);
+            while(size > -1) {
+                out.write(buffer, 0, size);
+                size = in.read(buffer);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] createObject() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC, "java/lang/Object", null, null, null);
+        emptyConstructor(cw, null);
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void emptyConstructor(ClassWriter cw, String superName) {
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        if(superName != null) {
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        }
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * An interface with a default method, the fixtures are compiled for Java 6 so it is generated
+     */
+    private static byte[] createGreeter() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT,
+                "com/codename1/tools/translator/DevirtualizerTest$Greeter", null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "greet", "()Ljava/lang/String;", null, null);
+        mv.visitCode();
+        mv.visitLdcInsn("hello");
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static byte[] createGreeterImpl() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "com/codename1/tools/translator/DevirtualizerTest$GreeterImpl",
+                null, "java/lang/Object", new String[] {"com/codename1/tools/translator/DevirtualizerTest$Greeter"});
+        emptyConstructor(cw, "java/lang/Object");
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static byte[] createGreeterCaller() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "com/codename1/tools/translator/DevirtualizerTest$GreeterCaller",
+                null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "call",
+                "(Lcom/codename1/tools/translator/DevirtualizerTest$Greeter;)Ljava/lang/String;", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, "com/codename1/tools/translator/DevirtualizerTest$Greeter",
+                "greet", "()Ljava/lang/String;", true);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    static class Base {
+        int value;
+
+        int getValue() {
+            return value;
+        }
+
+        void setValue(int value) {
+            this.value = value;
+        }
+
+        int compute() {
+            return 1;
+        }
+
+        int twice() {
+            return getValue() * 2;
+        }
+
+        void copyTo(Base other) {
+            other.setValue(value);
+        }
+    }
+
+    static class Sub extends Base {
+        int compute() {
+            return 2;
+        }
+    }
+
+    static class Leaf extends Sub {
+    }
+
+    abstract static class Shape {
+        abstract int area();
+
+        int sides() {
+            return 4;
+        }
+    }
+
+    static class Square extends Shape {
+        int area() {
+            return 1;
+        }
+    }
+
+    abstract static class Animal {
+        abstract String sound();
+    }
+
+    static class Dog extends Animal {
+        String sound() {
+            return "woof";
+        }
+    }
+
+    static class Cat extends Animal {
+        String sound() {
+            return "meow";
+        }
+    }
+
+    abstract static class Orphan {
+        abstract int value();
+    }
+
+    interface Named {
+        String name();
+
+        String describe(String prefix);
+    }
+
+    static class NamedImpl implements Named {
+        public String name() {
+            return "name";
+        }
+
+        public String describe(String prefix) {
+            return prefix;
+        }
+    }
+
+    static class Empty {
+    }
+
+    static class EmptyChild extends Empty {
+    }
+
+    static class Counter extends Empty {
+        int count;
+
+        Counter() {
+            count = 1;
+        }
+    }
+
+    static class Caller {
+        int callBase(Base b) {
+            return b.compute();
+        }
+
+        int callSub(Sub s) {
+            return s.compute();
+        }
+
+        int callLeaf(Leaf l) {
+            return l.compute();
+        }
+
+        int area(Shape s) {
+            return s.area();
+        }
+
+        int sides(Shape s) {
+            return s.sides();
+        }
+
+        String sound(Animal a) {
+            return a.sound();
+        }
+
+        int orphan(Orphan o) {
+            return o.value();
+        }
+
+        String name(Named n) {
+            return n.name();
+        }
+
+        String describe(Named n) {
+            return n.describe("x");
+        }
+
+        int getter(Base b) {
+            return b.getValue();
+        }
+
+        void setter(Base b) {
+            b.setValue(3);
+        }
+
+        Object create() {
+            return new Empty();
+        }
+
+        Object createChild() {
+            return new EmptyChild();
+        }
+
+        Object createCounter() {
+            return new Counter();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.tools.translator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Verifies that the translation cache only reuses the code of a class when the translator flags, the global
+ * inputs and the class files the class depends on are unchanged. The translator has no test framework on its
+ * classpath so this is a plain program that exits with an error when a check fails.
+ */
+public class TranslationCacheTest {
+    private static final String PREFIX = "com_codename1_tools_translator_TranslationCacheTest_";
+    private static final String[] FLAGS = {"translatorCache", "INCLUDE_NPE_CHECKS", "fieldNullChecks", "saveUnitTests", "devirtualize", "keepAlive"};
+    private final List<ByteCodeClass> classes = new ArrayList<ByteCodeClass>();
+    private int checks;
+
+    public static void main(String[] args) throws Exception {
+        TranslationCacheTest t = new TranslationCacheTest();
+        String[] old = new String[FLAGS.length];
+        for(int iter = 0 ; iter < FLAGS.length ; iter++) {
+            old[iter] = System.getProperty(FLAGS[iter]);
+        }
+        File dir = File.createTempFile("translatorCache", "");
+        dir.delete();
+        try {
+            t.run(dir);
+        } finally {
+            for(int iter = 0 ; iter < FLAGS.length ; iter++) {
+                if(old[iter] == null) {
+                    System.clearProperty(FLAGS[iter]);
+                } else {
+                    System.setProperty(FLAGS[iter], old[iter]);
+                }
+            }
+            File[] files = dir.listFiles();
+            if(files != null) {
+                for(File f : files) {
+                    f.delete();
+                }
+            }
+            dir.delete();
+        }
+        System.out.println("TranslationCacheTest passed " + t.checks + " checks");
+    }
+
+    private void run(File dir) throws Exception {
+        for(String p : FLAGS) {
+            System.clearProperty(p);
+        }
+        check(!TranslationCache.isEnabled(), "The cache should be off without the translatorCache property");
+        check(TranslationCache.create() == null, "No cache should be created without the translatorCache property");
+        System.setProperty("translatorCache", dir.getAbsolutePath());
+        check(TranslationCache.isEnabled(), "The translatorCache property should enable the cache");
+
+        Class[] fixtures = {Base.class, Child.class, User.class, Other.class};
+        for(Class c : fixtures) {
+            byte[] data = readClass(c);
+            ByteCodeClass bc = Parser.parseClass(data);
+            bc.setInputHash(TranslationCache.createDigest().digest(data));
+            classes.add(bc);
+        }
+        for(ByteCodeClass bc : classes) {
+            if(bc.getBaseClass() != null && bc.getBaseClass().startsWith("com/codename1")) {
+                bc.setBaseClassObject(find(bc.getBaseClass()));
+            }
+            bc.setBaseInterfacesObject(new ArrayList<ByteCodeClass>());
+            bc.updateAllDependencies();
+        }
+        ByteCodeClass child = find(PREFIX + "Child");
+        ByteCodeClass user = find(PREFIX + "User");
+        check(user.getDependsClassesInterfaces().contains(PREFIX + "Other"), "User should depend on Other");
+
+        // the same inputs give the same key and the stored code is reused
+        TranslationCache cache = createCache();
+        String childKey = cache.getKey(child);
+        String userKey = cache.getKey(user);
+        check(childKey.equals(createCache().getKey(child)), "The key should be stable for the same inputs");
+        check(!childKey.equals(userKey), "Different classes should have different keys");
+        check(cache.get(child, childKey) == null, "An empty cache shouldn't have the class");
+        byte[][] code = {"header".getBytes("UTF-8"), "source".getBytes("UTF-8")};
+        cache.put(child, childKey, code);
+        byte[][] cached = createCache().get(child, childKey);
+        check(cached != null && cached.length == 2, "The stored code should be reused");
+        check(Arrays.equals(code[0], cached[0]) && Arrays.equals(code[1], cached[1]), "The reused code should match");
+        check(createCache().get(child, userKey) == null, "Code stored under a different key shouldn't be reused");
+
+        // the flags that change the generated code
+        for(String p : new String[] {"INCLUDE_NPE_CHECKS", "fieldNullChecks", "saveUnitTests", "devirtualize", "keepAlive"}) {
+            System.setProperty(p, "true");
+            check(!childKey.equals(createCache().getKey(child)), "The " + p + " flag should change the key");
+            System.clearProperty(p);
+        }
+        boolean optimizer = BytecodeMethod.optimizerOn;
+        BytecodeMethod.optimizerOn = !optimizer;
+        check(!childKey.equals(createCache().getKey(child)), "The optimizer flag should change the key");
+        BytecodeMethod.optimizerOn = optimizer;
+        ByteCodeTranslator.OutputType output = ByteCodeTranslator.output;
+        ByteCodeTranslator.output = output == ByteCodeTranslator.OutputType.OUTPUT_TYPE_IOS ?
+                ByteCodeTranslator.OutputType.OUTPUT_TYPE_CSHARP : ByteCodeTranslator.OutputType.OUTPUT_TYPE_IOS;
+        check(!childKey.equals(createCache().getKey(child)), "The output type should change the key");
+        ByteCodeTranslator.output = output;
+        check(childKey.equals(createCache().getKey(child)), "Restoring the flags should restore the key");
+
+        // the global inputs
+        TranslationCache changed = TranslationCache.create();
+        changed.setGlobalInputs(classes, "header", "other index");
+        check(!childKey.equals(changed.getKey(child)), "A change to the class index should change the key");
+        BytecodeMethod m = method(find(PREFIX + "Other"), "value");
+        m.setEliminated(true);
+        check(!childKey.equals(createCache().getKey(child)), "A culled method should change the key");
+        m.setEliminated(false);
+
+        // the class files of the class, its base classes and its dependencies
+        ByteCodeClass base = find(PREFIX + "Base");
+        ByteCodeClass other = find(PREFIX + "Other");
+        byte[] baseHash = base.getInputHash();
+        base.setInputHash(new byte[] {1});
+        check(!childKey.equals(createCache().getKey(child)), "A change to the base class should change the key");
+        base.setInputHash(baseHash);
+        byte[] otherHash = other.getInputHash();
+        other.setInputHash(new byte[] {1});
+        check(!userKey.equals(createCache().getKey(user)), "A change to a dependency should change the key");
+        check(childKey.equals(createCache().getKey(child)), "A change to an unrelated class shouldn't change the key");
+        other.setInputHash(otherHash);
+        check(userKey.equals(createCache().getKey(user)), "Restoring the class files should restore the key");
+    }
+
+    private TranslationCache createCache() {
+        TranslationCache cache = TranslationCache.create();
+        check(cache != null, "The cache directory should be created");
+        cache.setGlobalInputs(classes, "header", "index");
+        return cache;
+    }
+
+    private ByteCodeClass find(String name) {
+        String mangled = name.replace('/', '_').replace('$', '_');
+        for(ByteCodeClass bc : classes) {
+            if(bc.getClsName().equals(mangled)) {
+                return bc;
+            }
+        }
+        throw new IllegalArgumentException("Missing class " + name);
+    }
+
+    private static BytecodeMethod method(ByteCodeClass cls, String name) {
+        for(BytecodeMethod m : cls.getMethods()) {
+            if(m.getMethodName().equals(name)) {
+                return m;
+            }
+        }
+        throw new IllegalArgumentException("Missing method " + cls.getClsName() + "." + name);
+    }
+
+    private void check(boolean condition, String message) {
+        checks++;
+        if(!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    private static byte[] readClass(Class c) throws Exception {
+        InputStream in = c.getResourceAsStream("/" + c.getName().replace('.', '/') + ".class");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int size = in.read(buffer);
+            while(size > -1) {
+                out.write(buffer, 0, size);
+                size = in.read(buffer);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    static class Base {
+        int compute() {
+            return 1;
+        }
+    }
+
+    static class Child extends Base {
+        int compute() {
+            return 2;
+        }
+    }
+
+    static class User {
+        int use(Other o) {
+            return o.value();
+        }
+    }
+
+    static class Other {
+        int value() {
+            return 3;
+        }
+    }
+}